@@ -0,0 +1,249 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.attachments;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * AttachmentKey.
+ *
+ * A typed attachment key. The name is interned into a slot number
+ * when the key is created, so implementations can store the attachment
+ * in an array instead of hashing the name on every lookup.
+ *
+ * Keys are meant to be created once and held in a constant, e.g.
+ * <pre>
+ * public static final AttachmentKey&lt;Foo&gt; FOO = AttachmentKey.getKey(Foo.class);
+ * </pre>
+ *
+ * @param <T> the attachment type
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class AttachmentKey<T> implements Serializable
+{
+   /** The serialVersionUID */
+   private static final long serialVersionUID = -2938402371823145067L;
+
+   /** The slots by name */
+   private static final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+   /** The names by slot */
+   private static volatile String[] names = new String[0];
+
+   /** The name */
+   private final String name;
+
+   /** The type */
+   private final Class<T> type;
+
+   /** The slot */
+   private final transient int slot;
+
+   /**
+    * Get the key for a type, the name is the class name
+    *
+    * @param <T> the type
+    * @param type the type
+    * @return the key
+    * @throws IllegalArgumentException for a null type
+    */
+   public static <T> AttachmentKey<T> getKey(Class<T> type)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      return getKey(type.getName(), type);
+   }
+
+   /**
+    * Get the key for a name
+    *
+    * @param <T> the type
+    * @param name the attachment name
+    * @param type the expected type
+    * @return the key
+    * @throws IllegalArgumentException for a null name or type
+    */
+   public static <T> AttachmentKey<T> getKey(String name, Class<T> type)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Null name");
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      return new AttachmentKey<T>(name, type, intern(name));
+   }
+
+   /**
+    * Get the slot for a name
+    *
+    * @param name the attachment name
+    * @return the slot or -1 if no key was created for the name
+    */
+   public static int getSlot(String name)
+   {
+      Integer slot = slots.get(name);
+      return slot != null ? slot : -1;
+   }
+
+   /**
+    * Get the number of slots handed out so far
+    *
+    * @return the slot count
+    */
+   public static int getSlotCount()
+   {
+      return names.length;
+   }
+
+   /**
+    * Get the name of a slot
+    *
+    * @param slot the slot
+    * @return the name
+    * @throws ArrayIndexOutOfBoundsException for an unknown slot
+    */
+   public static String getSlotName(int slot)
+   {
+      return names[slot];
+   }
+
+   /**
+    * Intern a name
+    *
+    * @param name the name
+    * @return the slot
+    */
+   private static int intern(String name)
+   {
+      Integer slot = slots.get(name);
+      if (slot != null)
+         return slot;
+
+      synchronized (slots)
+      {
+         slot = slots.get(name);
+         if (slot != null)
+            return slot;
+
+         String[] current = names;
+         String[] result = new String[current.length + 1];
+         System.arraycopy(current, 0, result, 0, current.length);
+         result[current.length] = name;
+         // publish the name before the slot becomes visible
+         names = result;
+         slots.put(name, current.length);
+         return current.length;
+      }
+   }
+
+   /**
+    * Create a new AttachmentKey.
+    *
+    * @param name the name
+    * @param type the type
+    * @param slot the slot
+    */
+   private AttachmentKey(String name, Class<T> type, int slot)
+   {
+      this.name = name;
+      this.type = type;
+      this.slot = slot;
+   }
+
+   /**
+    * Get the name.
+    *
+    * @return the name.
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Get the type.
+    *
+    * @return the type.
+    */
+   public Class<T> getType()
+   {
+      return type;
+   }
+
+   /**
+    * Get the slot.
+    *
+    * @return the slot.
+    */
+   public int getSlot()
+   {
+      return slot;
+   }
+
+   /**
+    * Cast an attachment to the key's type
+    *
+    * @param attachment the attachment
+    * @return the cast attachment
+    * @throws ClassCastException when the attachment is not of the key's type
+    */
+   public T cast(Object attachment)
+   {
+      return type.cast(attachment);
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj == this)
+         return true;
+      if (obj == null || obj instanceof AttachmentKey == false)
+         return false;
+      AttachmentKey<?> other = (AttachmentKey<?>) obj;
+      return name.equals(other.name) && type.equals(other.type);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return name.hashCode();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "AttachmentKey{" + name + "/" + type.getName() + "}";
+   }
+
+   /**
+    * Slots are local to this VM, resolve the slot for the name.
+    *
+    * @return the resolved key
+    * @throws ObjectStreamException for any error
+    */
+   private Object readResolve() throws ObjectStreamException
+   {
+      return getKey(name, type);
+   }
+}
@@ -25,7 +25,11 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.jboss.deployers.spi.attachments.AttachmentKey;
 import org.jboss.deployers.spi.attachments.Attachments;
 
 /**
@@ -39,6 +43,28 @@ public abstract class AbstractAttachments implements Attachments, Externalizable
    /** The serialVersionUID */
    private static final long serialVersionUID = -4084792454892396925L;
 
+   /**
+    * Get the attachments that are instances of a type
+    * 
+    * @param <T> the type
+    * @param type the type
+    * @return the unmodifiable attachments of that type by name
+    * @throws IllegalArgumentException for a null type
+    */
+   public <T> Map<String, T> getAttachmentsByType(Class<T> type)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      Map<String, T> result = new HashMap<String, T>();
+      for (Map.Entry<String, Object> entry : getAttachments().entrySet())
+      {
+         Object attachment = entry.getValue();
+         if (type.isInstance(attachment))
+            result.put(entry.getKey(), type.cast(attachment));
+      }
+      return Collections.unmodifiableMap(result);
+   }
+
    public <T> T getAttachment(String name, Class<T> expectedType)
    {
       if (expectedType == null)
@@ -56,6 +82,21 @@ public abstract class AbstractAttachments implements Attachments, Externalizable
       return getAttachment(type.getName(), type);
    }
 
+   /**
+    * Get attachment
+    * 
+    * @param <T> the expected type
+    * @param key the key
+    * @return the attachment or null if not present
+    * @throws IllegalArgumentException for a null key
+    */
+   public <T> T getAttachment(AttachmentKey<T> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      return getAttachment(key.getName(), key.getType());
+   }
+
    public boolean isAttachmentPresent(String name, Class<?> expectedType)
    {
       if (expectedType == null)
@@ -81,6 +122,62 @@ public abstract class AbstractAttachments implements Attachments, Externalizable
       return isAttachmentPresent(type.getName(), type);
    }
 
+   /**
+    * Is the attachment present
+    * 
+    * @param key the key
+    * @return true when the attachment is present
+    * @throws IllegalArgumentException for a null key
+    */
+   public boolean isAttachmentPresent(AttachmentKey<?> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      return isAttachmentPresent(key.getName(), key.getType());
+   }
+
+   /**
+    * Get the modification version.<p>
+    * 
+    * Unlike the change count the version is never cleared,
+    * it changes on every modification, so it can validate cached lookups.
+    * 
+    * @return the version or -1 when modifications are not tracked
+    */
+   public long getVersion()
+   {
+      return -1;
+   }
+
+   /**
+    * Add a listener for the names attached and removed.<p>
+    * 
+    * This implementation doesn't notify its changes,
+    * subclasses that do override it.
+    * 
+    * @param listener the listener
+    * @return true when the listener will be notified, false otherwise
+    * @throws IllegalArgumentException for a null listener
+    */
+   public boolean addAttachmentsListener(AttachmentsListener listener)
+   {
+      if (listener == null)
+         throw new IllegalArgumentException("Null listener");
+      return false;
+   }
+
+   /**
+    * Remove a listener
+    * 
+    * @param listener the listener
+    * @throws IllegalArgumentException for a null listener
+    */
+   public void removeAttachmentsListener(AttachmentsListener listener)
+   {
+      if (listener == null)
+         throw new IllegalArgumentException("Null listener");
+   }
+
    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
    {
    }
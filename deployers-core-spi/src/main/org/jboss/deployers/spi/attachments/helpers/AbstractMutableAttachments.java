@@ -24,6 +24,7 @@ package org.jboss.deployers.spi.attachments.helpers;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.jboss.deployers.spi.attachments.AttachmentKey;
 import org.jboss.deployers.spi.attachments.MutableAttachments;
 
 /**
@@ -67,6 +68,22 @@ public abstract class AbstractMutableAttachments extends AbstractAttachments imp
       return addAttachment(type.getName(), attachment, type);
    }
 
+   /**
+    * Add attachment
+    *
+    * @param <T> the expected type
+    * @param key the key
+    * @param attachment the attachment
+    * @return any previous attachment
+    * @throws IllegalArgumentException for a null key or attachment
+    */
+   public <T> T addAttachment(AttachmentKey<T> key, T attachment)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      return addAttachment(key.getName(), attachment, key.getType());
+   }
+
    public <T> T removeAttachment(String name, Class<T> expectedType)
    {
       if (expectedType == null)
@@ -85,4 +102,19 @@ public abstract class AbstractMutableAttachments extends AbstractAttachments imp
          throw new IllegalArgumentException("Null type");
       return removeAttachment(type.getName(), type);
    }
+
+   /**
+    * Remove attachment
+    * 
+    * @param <T> the expected type
+    * @param key the key
+    * @return the attachment or null if not present
+    * @throws IllegalArgumentException for a null key
+    */
+   public <T> T removeAttachment(AttachmentKey<T> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      return removeAttachment(key.getName(), key.getType());
+   }
 }
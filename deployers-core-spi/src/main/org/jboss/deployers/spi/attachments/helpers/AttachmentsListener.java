@@ -0,0 +1,46 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.attachments.helpers;
+
+import org.jboss.deployers.spi.attachments.Attachments;
+
+/**
+ * Notified when a name is attached to or removed from attachments.
+ * 
+ * @see AbstractAttachments#addAttachmentsListener(AttachmentsListener)
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface AttachmentsListener
+{
+   /**
+    * The presence of a name changed.<p>
+    * 
+    * Replacing an attachment is not notified. The notification follows
+    * the change, concurrent changes of the same name can be notified
+    * in any order, so the listener should check the attachments for the
+    * current presence of the name.
+    * 
+    * @param attachments the attachments
+    * @param name the name
+    */
+   void attachmentChanged(Attachments attachments, String name);
+}
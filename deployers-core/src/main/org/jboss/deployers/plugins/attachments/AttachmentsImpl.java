@@ -25,15 +25,34 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.jboss.deployers.spi.attachments.AttachmentKey;
 import org.jboss.deployers.spi.attachments.helpers.AbstractMutableAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AttachmentsListener;
 
 /**
  * Attachments implementation
  * 
+ * Attachments whose name has an {@link AttachmentKey} are also kept
+ * in an array indexed by the key's slot, so keyed lookups don't hash the name.
+ * The map stays the reference for the string api and serialization,
+ * string writes of names without a key don't take the lock.
+ * 
+ * Once a type has been queried with {@link #getAttachmentsByType(Class)}
+ * the attachments of that type are indexed and the index is kept up-to-date
+ * on every change, so further queries don't scan the attachments.
+ * 
+ * Listeners are notified when a name is attached or removed.
+ * 
  * @author <a href="adrian@jboss.com">Adrian Brock</a>
  * @version $Revision: 1.1 $
  */
@@ -45,23 +64,54 @@ public class AttachmentsImpl extends AbstractMutableAttachments
    /** The attachments */
    private Map<String, Object> attachments = new ConcurrentHashMap<String, Object>();
    
+   /** The attachments by key slot */
+   private transient volatile AtomicReferenceArray<Object> slots = new AtomicReferenceArray<Object>(0);
+
+   /** The slots below this one mirror the attachments map */
+   private transient volatile int syncedSlots;
+
+   /** The attachments by queried type */
+   private transient Map<Class<?>, Map<String, Object>> types = new ConcurrentHashMap<Class<?>, Map<String, Object>>();
+
+   /** Whether a type was queried, writes have to maintain the type indexes */
+   private transient volatile boolean indexed;
+
    /** The number of changes since construction or clearing of the change count */
    private AtomicInteger changeCount = new AtomicInteger();
 
+   /** The modification version, never cleared */
+   private transient AtomicLong version = new AtomicLong();
+
+   /** The listeners, null until one is added */
+   private transient volatile List<AttachmentsListener> listeners;
+
    public Map<String, Object> getAttachments()
    {
       return Collections.unmodifiableMap(attachments);
    }
 
    @Override
-   public void setAttachments(Map<String, Object> map)
+   public synchronized void setAttachments(Map<String, Object> map)
    {
       if (map == null)
          throw new IllegalArgumentException("Null map");
       
+      Set<String> changed = getNames();
       attachments.clear();
+      slots = new AtomicReferenceArray<Object>(0);
+      types.clear();
+      indexed = false;
       attachments.putAll(map);
+      for (Map.Entry<String, Object> entry : map.entrySet())
+         setSlot(AttachmentKey.getSlot(entry.getKey()), entry.getValue());
       changeCount.addAndGet(map.size());
+      version.incrementAndGet();
+      if (changed != null)
+      {
+         changed.addAll(map.keySet());
+         for (String name : changed)
+            fireChanged(name);
+      }
    }
 
    public Object addAttachment(String name, Object attachment)
@@ -70,9 +120,34 @@ public class AttachmentsImpl extends AbstractMutableAttachments
          throw new IllegalArgumentException("Null name");
       if (attachment == null)
          throw new IllegalArgumentException("Null attachment");
-      Object value = attachments.put(name, attachment);
-      changeCount.incrementAndGet();
-      return value;
+      return putAttachment(name, AttachmentKey.getSlot(name), attachment);
+   }
+
+   @Override
+   public <T> T addAttachment(AttachmentKey<T> key, T attachment)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      if (attachment == null)
+         throw new IllegalArgumentException("Null attachment");
+      Object result = putAttachment(key.getName(), key.getSlot(), attachment);
+      if (result == null)
+         return null;
+      if (key.getType().isInstance(result) == false)
+         throw new IllegalArgumentException("Previous attachment not of the same type: expected=" + key.getType() + ", previous=" + result);
+      return key.cast(result);
+   }
+
+   @Override
+   @SuppressWarnings("unchecked")
+   public <T> Map<String, T> getAttachmentsByType(Class<T> type)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      Map<String, Object> result = types.get(type);
+      if (result == null)
+         result = indexType(type);
+      return Collections.unmodifiableMap((Map<String, T>) result);
    }
 
    public Object getAttachment(String name)
@@ -82,6 +157,17 @@ public class AttachmentsImpl extends AbstractMutableAttachments
       return attachments.get(name);
    }
 
+   @Override
+   public <T> T getAttachment(AttachmentKey<T> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      Object result = getSlot(key);
+      if (result == null)
+         return null;
+      return key.cast(result);
+   }
+
    public boolean isAttachmentPresent(String name)
    {
       if (name == null)
@@ -89,19 +175,48 @@ public class AttachmentsImpl extends AbstractMutableAttachments
       return attachments.containsKey(name);
    }
 
+   @Override
+   public boolean isAttachmentPresent(AttachmentKey<?> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      return key.getType().isInstance(getSlot(key));
+   }
+
    public Object removeAttachment(String name)
    {
       if (name == null)
          throw new IllegalArgumentException("Null name");
-      Object value = attachments.remove(name);
-      changeCount.incrementAndGet();
-      return value;
+      return putAttachment(name, AttachmentKey.getSlot(name), null);
+   }
+
+   @Override
+   public <T> T removeAttachment(AttachmentKey<T> key)
+   {
+      if (key == null)
+         throw new IllegalArgumentException("Null key");
+      Object result = putAttachment(key.getName(), key.getSlot(), null);
+      if (result == null)
+         return null;
+      if (key.getType().isInstance(result) == false)
+         throw new IllegalArgumentException("Removed attachment not of the same type: expected=" + key.getType() + ", removed=" + result);
+      return key.cast(result);
    }
 
-   public void clear()
+   public synchronized void clear()
    {
+      Set<String> changed = getNames();
       attachments.clear();
+      slots = new AtomicReferenceArray<Object>(0);
+      types.clear();
+      indexed = false;
       changeCount.incrementAndGet();
+      version.incrementAndGet();
+      if (changed != null)
+      {
+         for (String name : changed)
+            fireChanged(name);
+      }
    }
 
    public boolean hasAttachments()
@@ -119,6 +234,233 @@ public class AttachmentsImpl extends AbstractMutableAttachments
       changeCount.set(0);
    }
 
+   @Override
+   public long getVersion()
+   {
+      return version.get();
+   }
+
+   @Override
+   public boolean addAttachmentsListener(AttachmentsListener listener)
+   {
+      if (listener == null)
+         throw new IllegalArgumentException("Null listener");
+      synchronized (this)
+      {
+         if (listeners == null)
+            listeners = new CopyOnWriteArrayList<AttachmentsListener>();
+      }
+      listeners.add(listener);
+      return true;
+   }
+
+   @Override
+   public void removeAttachmentsListener(AttachmentsListener listener)
+   {
+      if (listener == null)
+         throw new IllegalArgumentException("Null listener");
+      List<AttachmentsListener> current = listeners;
+      if (current != null)
+         current.remove(listener);
+   }
+
+   /**
+    * Add or remove an attachment.
+    *
+    * The map is written without locking, the slots and type indexes
+    * are only reconciled when the name has a key or a type was queried.
+    *
+    * @param name the name
+    * @param slot the slot, -1 when the name has no key
+    * @param attachment the attachment or null to remove it
+    * @return any previous attachment
+    */
+   private Object putAttachment(String name, int slot, Object attachment)
+   {
+      Object value;
+      if (attachment != null)
+         value = attachments.put(name, attachment);
+      else
+         value = attachments.remove(name);
+      changeCount.incrementAndGet();
+      version.incrementAndGet();
+
+      // a key for the name might have been created meanwhile
+      if (slot < 0)
+         slot = AttachmentKey.getSlot(name);
+      if (slot >= 0 || indexed)
+         reconcile(name, slot);
+      if ((attachment == null) != (value == null))
+         fireChanged(name);
+      return value;
+   }
+
+   /**
+    * Get the names to notify of a reset, must hold the lock.
+    * 
+    * @return the current names or null when there are no listeners
+    */
+   private Set<String> getNames()
+   {
+      if (listeners == null)
+         return null;
+      return new HashSet<String>(attachments.keySet());
+   }
+
+   /**
+    * Notify the listeners that the presence of a name changed
+    * 
+    * @param name the name
+    */
+   private void fireChanged(String name)
+   {
+      List<AttachmentsListener> current = listeners;
+      if (current == null)
+         return;
+      for (AttachmentsListener listener : current)
+         listener.attachmentChanged(this, name);
+   }
+
+   /**
+    * Bring the slot and type indexes of a name in line with the map.
+    *
+    * @param name the name
+    * @param slot the slot, -1 when the name has no key
+    */
+   private synchronized void reconcile(String name, int slot)
+   {
+      Object attachment = attachments.get(name);
+      setSlot(slot, attachment);
+      for (Map.Entry<Class<?>, Map<String, Object>> entry : types.entrySet())
+      {
+         if (entry.getKey().isInstance(attachment))
+            entry.getValue().put(name, attachment);
+         else
+            entry.getValue().remove(name);
+      }
+   }
+
+   /**
+    * Index the attachments of a type.
+    *
+    * @param type the type
+    * @return the attachments of that type by name
+    */
+   private synchronized Map<String, Object> indexType(Class<?> type)
+   {
+      Map<String, Object> result = types.get(type);
+      if (result != null)
+         return result;
+
+      // writers reconcile from now on, so the scan can't miss one
+      indexed = true;
+      result = new ConcurrentHashMap<String, Object>();
+      for (Map.Entry<String, Object> entry : attachments.entrySet())
+      {
+         if (type.isInstance(entry.getValue()))
+            result.put(entry.getKey(), entry.getValue());
+      }
+      types.put(type, result);
+      return result;
+   }
+
+   /**
+    * Get the attachment for a key.
+    *
+    * Keys created after the last keyed write are not mirrored yet,
+    * for those we fall back to the map.
+    *
+    * @param key the key
+    * @return the attachment or null if not present
+    */
+   private Object getSlot(AttachmentKey<?> key)
+   {
+      int slot = key.getSlot();
+      if (slot < syncedSlots)
+      {
+         AtomicReferenceArray<Object> current = slots;
+         return slot < current.length() ? current.get(slot) : null;
+      }
+      return attachments.get(key.getName());
+   }
+
+   /**
+    * Set the attachment for a slot, must hold the lock.
+    *
+    * @param slot the slot, -1 when the name has no key
+    * @param attachment the attachment or null to clear it
+    */
+   private void setSlot(int slot, Object attachment)
+   {
+      syncSlots();
+      if (slot < 0)
+         return;
+      AtomicReferenceArray<Object> current = slots;
+      if (slot >= current.length())
+      {
+         if (attachment == null)
+            return;
+         current = grow(current, slot + 1);
+      }
+      current.set(slot, attachment);
+   }
+
+   /**
+    * Mirror the attachments of keys created since the last sync, must hold the lock.
+    *
+    * The slots only grow to the highest slot with an attachment,
+    * not to the number of keys in the VM.
+    */
+   private void syncSlots()
+   {
+      int count = AttachmentKey.getSlotCount();
+      int synced = syncedSlots;
+      if (synced >= count)
+         return;
+
+      Object[] found = null;
+      int length = 0;
+      for (int slot = synced; slot < count; ++slot)
+      {
+         Object attachment = attachments.get(AttachmentKey.getSlotName(slot));
+         if (attachment != null)
+         {
+            if (found == null)
+               found = new Object[count - synced];
+            found[slot - synced] = attachment;
+            length = slot + 1;
+         }
+      }
+      if (found != null)
+      {
+         AtomicReferenceArray<Object> current = slots;
+         if (length > current.length())
+            current = grow(current, length);
+         for (int slot = synced; slot < length; ++slot)
+         {
+            if (found[slot - synced] != null)
+               current.set(slot, found[slot - synced]);
+         }
+      }
+      syncedSlots = count;
+   }
+
+   /**
+    * Grow the slots, must hold the lock.
+    *
+    * @param current the current slots
+    * @param length the new length
+    * @return the new slots
+    */
+   private AtomicReferenceArray<Object> grow(AtomicReferenceArray<Object> current, int length)
+   {
+      AtomicReferenceArray<Object> result = new AtomicReferenceArray<Object>(length);
+      for (int i = 0; i < current.length(); ++i)
+         result.set(i, current.get(i));
+      slots = result;
+      return result;
+   }
+
    @Override
    public String toString()
    {
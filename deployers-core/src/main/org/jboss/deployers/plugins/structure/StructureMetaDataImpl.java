@@ -25,7 +25,11 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jboss.deployers.spi.structure.ContextInfo;
@@ -34,6 +38,8 @@ import org.jboss.deployers.spi.structure.StructureMetaData;
 /**
  * StructureMetaDataImpl.
  * 
+ * The contexts are indexed by path and kept in the order they were added.
+ * 
  * @author <a href="adrian@jboss.org">Adrian Brock</a>
  * @version $Revision: 1.1 $
  */
@@ -42,10 +48,13 @@ public class StructureMetaDataImpl implements StructureMetaData, Externalizable
    /** The serialVersionUID */
    private static final long serialVersionUID = 2341637762171510800L;
    
-   /** The contexts */
-   private List<ContextInfo> contexts = new CopyOnWriteArrayList<ContextInfo>();
+   /** The contexts by path */
+   private Map<String, ContextInfo> contexts = new LinkedHashMap<String, ContextInfo>();
+
+   /** The snapshot of the contexts, null when it needs rebuilding */
+   private volatile List<ContextInfo> snapshot;
 
-   public void addContext(ContextInfo context)
+   public synchronized void addContext(ContextInfo context)
    {
       if (context == null)
          throw new IllegalArgumentException("Null context");
@@ -53,48 +62,59 @@ public class StructureMetaDataImpl implements StructureMetaData, Externalizable
       if (path == null)
          throw new IllegalArgumentException("Context has no path");
 
-      for (ContextInfo other : contexts)
-      {
-         if (path.equals(other.getPath()))
-            throw new IllegalStateException("Context already exists with path '" + path + "' contexts=" + getContexts());
-      }
-      contexts.add(context);
+      if (contexts.containsKey(path))
+         throw new IllegalStateException("Context already exists with path '" + path + "' contexts=" + getContexts());
+      contexts.put(path, context);
+      snapshot = null;
    }
 
-   public ContextInfo getContext(String path)
+   public synchronized ContextInfo getContext(String path)
    {
       if (path == null)
          throw new IllegalArgumentException("Null path");
-      for (ContextInfo context : contexts)
-      {
-         if (path.equals(context.getPath()))
-            return context;
-      }
-      return null;
+      return contexts.get(path);
    }
 
-   public void removeContext(ContextInfo context)
+   public synchronized void removeContext(ContextInfo context)
    {
       if (context == null)
          throw new IllegalArgumentException("Null context");
-      contexts.remove(context);
+      String path = context.getPath();
+      if (path == null)
+         return;
+      ContextInfo existing = contexts.get(path);
+      if (existing != null && existing.equals(context))
+      {
+         contexts.remove(path);
+         snapshot = null;
+      }
    }
 
-   public void removeContext(String path)
+   public synchronized void removeContext(String path)
    {
       if (path == null)
          throw new IllegalArgumentException("Null path");
       
-      for (ContextInfo context : contexts)
-      {
-         if (path.equals(context.getPath()))
-            contexts.remove(context);
-      }
+      if (contexts.remove(path) != null)
+         snapshot = null;
    }
 
    public List<ContextInfo> getContexts()
    {
-      return contexts;
+      List<ContextInfo> result = snapshot;
+      if (result == null)
+      {
+         synchronized (this)
+         {
+            result = snapshot;
+            if (result == null)
+            {
+               result = Collections.unmodifiableList(new ArrayList<ContextInfo>(contexts.values()));
+               snapshot = result;
+            }
+         }
+      }
+      return result;
    }
    
    @Override
@@ -115,7 +135,7 @@ public class StructureMetaDataImpl implements StructureMetaData, Externalizable
     */
    protected void toString(StringBuilder builder)
    {
-      builder.append("contexts=").append(contexts);
+      builder.append("contexts=").append(getContexts());
    }
    
    @Override
@@ -147,7 +167,15 @@ public class StructureMetaDataImpl implements StructureMetaData, Externalizable
    @SuppressWarnings("unchecked")
    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
    {
-      contexts = (List) in.readObject();
+      List<ContextInfo> list = (List) in.readObject();
+      Map<String, ContextInfo> result = new LinkedHashMap<String, ContextInfo>();
+      for (ContextInfo context : list)
+         result.put(context.getPath(), context);
+      synchronized (this)
+      {
+         contexts = result;
+         snapshot = null;
+      }
    }
 
    /**
@@ -157,6 +185,7 @@ public class StructureMetaDataImpl implements StructureMetaData, Externalizable
     */
    public void writeExternal(ObjectOutput out) throws IOException
    {
-      out.writeObject(getContexts());
+      // keep the serialized form, it was a copy on write list
+      out.writeObject(new CopyOnWriteArrayList<ContextInfo>(getContexts()));
    }
 }
@@ -25,6 +25,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 
+import org.jboss.test.deployers.attachments.test.AttachmentKeyUnitTestCase;
 import org.jboss.test.deployers.attachments.test.AttachmentsFactoryUnitTestCase;
 import org.jboss.test.deployers.attachments.test.AttachmentsUnitTestCase;
 import org.jboss.test.deployers.attachments.test.ManagedObjectsAttachmentsImplPredeterminedUnitTestCase;
@@ -59,6 +60,7 @@ public class AttachmentsTestSuite extends TestSuite
       suite.addTest(ManagedObjectsWithTransientAttachmentsImplPredeterminedManagedObjectsUnitTestCase.suite());
       suite.addTest(ManagedObjectsWithTransientAttachmentsImplTransientManagedObjectUnitTestCase.suite());
       suite.addTest(ManagedObjectsWithTransientAttachmentsImplUnitTestCase.suite());
+      suite.addTest(AttachmentKeyUnitTestCase.suite());
 
       return suite;
    }
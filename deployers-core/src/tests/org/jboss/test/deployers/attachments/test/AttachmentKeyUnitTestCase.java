@@ -0,0 +1,321 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.attachments.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.plugins.attachments.AttachmentsImpl;
+import org.jboss.deployers.spi.attachments.AttachmentKey;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.test.BaseTestCase;
+
+/**
+ * AttachmentKeyUnitTestCase.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AttachmentKeyUnitTestCase extends BaseTestCase
+{
+   /** The number of benchmark iterations */
+   private static final int ITERATIONS = 500000;
+
+   public static Test suite()
+   {
+      return new TestSuite(AttachmentKeyUnitTestCase.class);
+   }
+
+   public AttachmentKeyUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   public void testKeyInterning() throws Exception
+   {
+      AttachmentKey<String> key1 = AttachmentKey.getKey("key-interning", String.class);
+      AttachmentKey<String> key2 = AttachmentKey.getKey("key-interning", String.class);
+      AttachmentKey<Object> key3 = AttachmentKey.getKey("key-interning", Object.class);
+      AttachmentKey<String> other = AttachmentKey.getKey("key-interning-other", String.class);
+
+      assertEquals(key1, key2);
+      assertEquals(key1.getSlot(), key2.getSlot());
+      assertEquals(key1.getSlot(), key3.getSlot());
+      assertFalse(key1.equals(key3));
+      assertFalse(key1.getSlot() == other.getSlot());
+      assertEquals(key1.getSlot(), AttachmentKey.getSlot("key-interning"));
+      assertEquals("key-interning", AttachmentKey.getSlotName(key1.getSlot()));
+      assertEquals(-1, AttachmentKey.getSlot("key-interning-never-used"));
+      assertEquals(String.class.getName(), AttachmentKey.getKey(String.class).getName());
+   }
+
+   public void testKeyAndNameAreTheSameAttachment() throws Exception
+   {
+      AttachmentKey<String> key = AttachmentKey.getKey("key-and-name", String.class);
+      AttachmentsImpl attachments = new AttachmentsImpl();
+
+      assertNull(attachments.addAttachment(key, "first"));
+      assertEquals("first", attachments.getAttachment("key-and-name"));
+      assertEquals("first", attachments.addAttachment("key-and-name", "second"));
+      assertEquals("second", attachments.getAttachment(key));
+      assertTrue(attachments.isAttachmentPresent(key));
+      assertFalse(attachments.isAttachmentPresent(AttachmentKey.getKey("key-and-name", Integer.class)));
+
+      assertEquals("second", attachments.removeAttachment("key-and-name"));
+      assertNull(attachments.getAttachment(key));
+      assertFalse(attachments.isAttachmentPresent(key));
+
+      attachments.addAttachment(key, "third");
+      attachments.clear();
+      assertNull(attachments.getAttachment(key));
+      assertNull(attachments.getAttachment("key-and-name"));
+   }
+
+   public void testKeyCreatedAfterAttachment() throws Exception
+   {
+      AttachmentsImpl attachments = new AttachmentsImpl();
+      attachments.addAttachment("key-created-after", "before");
+
+      AttachmentKey<String> key = AttachmentKey.getKey("key-created-after", String.class);
+      assertEquals("before", attachments.getAttachment(key));
+
+      // a write mirrors the attachments of the new key
+      attachments.addAttachment("something-else", "x");
+      assertEquals("before", attachments.getAttachment(key));
+
+      attachments.removeAttachment(key);
+      assertNull(attachments.getAttachment(key));
+      assertNull(attachments.getAttachment("key-created-after"));
+   }
+
+   public void testWrongType() throws Exception
+   {
+      AttachmentsImpl attachments = new AttachmentsImpl();
+      attachments.addAttachment("wrong-type", 1);
+
+      AttachmentKey<String> key = AttachmentKey.getKey("wrong-type", String.class);
+      try
+      {
+         attachments.getAttachment(key);
+         fail("Should not be here!");
+      }
+      catch (Throwable t)
+      {
+         checkThrowable(ClassCastException.class, t);
+      }
+      try
+      {
+         attachments.addAttachment(key, "string");
+         fail("Should not be here!");
+      }
+      catch (Throwable t)
+      {
+         checkThrowable(IllegalArgumentException.class, t);
+      }
+   }
+
+   public void testSerialization() throws Exception
+   {
+      AttachmentKey<String> key = AttachmentKey.getKey("serialized", String.class);
+      AttachmentsImpl attachments = new AttachmentsImpl();
+      attachments.addAttachment(key, "value");
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(key);
+      oos.writeObject(attachments);
+      oos.close();
+
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+      AttachmentKey<?> readKey = (AttachmentKey<?>) ois.readObject();
+      AttachmentsImpl readAttachments = (AttachmentsImpl) ois.readObject();
+
+      assertEquals(key, readKey);
+      assertEquals(key.getSlot(), readKey.getSlot());
+      assertEquals("value", readAttachments.getAttachment(key));
+   }
+
+   public void testConcurrentWrites() throws Exception
+   {
+      final AttachmentsImpl attachments = new AttachmentsImpl();
+      final AttachmentKey<Integer> key = AttachmentKey.getKey("concurrent-keyed", Integer.class);
+      final int threads = 4;
+      final int iterations = 10000;
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Throwable> problems = new CopyOnWriteArrayList<Throwable>();
+      Thread[] writers = new Thread[threads];
+      for (int i = 0; i < threads; ++i)
+      {
+         final int id = i;
+         writers[i] = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  start.await();
+                  for (int j = 0; j < iterations; ++j)
+                  {
+                     String name = "concurrent-" + id + "-" + (j % 10);
+                     if (j % 3 == 0)
+                        attachments.removeAttachment(name);
+                     else if (j % 2 == 0)
+                        attachments.addAttachment(name, j);
+                     else
+                        attachments.addAttachment(name, "s" + j);
+                     attachments.addAttachment(key, j);
+                  }
+               }
+               catch (Throwable t)
+               {
+                  problems.add(t);
+               }
+            }
+         };
+         writers[i].start();
+      }
+      start.countDown();
+      // index the types while the writers are running
+      attachments.getAttachmentsByType(Integer.class);
+      attachments.getAttachmentsByType(String.class);
+      for (Thread writer : writers)
+         writer.join();
+      assertTrue(problems.toString(), problems.isEmpty());
+
+      assertEquals(filter(attachments.getAttachments(), Integer.class), attachments.getAttachmentsByType(Integer.class));
+      assertEquals(filter(attachments.getAttachments(), String.class), attachments.getAttachmentsByType(String.class));
+      assertEquals(attachments.getAttachment(key.getName()), attachments.getAttachment(key));
+   }
+
+   private static Map<String, Object> filter(Map<String, Object> attachments, Class<?> type)
+   {
+      Map<String, Object> result = new HashMap<String, Object>();
+      for (Map.Entry<String, Object> entry : attachments.entrySet())
+      {
+         if (type.isInstance(entry.getValue()))
+            result.put(entry.getKey(), entry.getValue());
+      }
+      return result;
+   }
+
+   /**
+    * Compares keyed access with the typed access by class the deployers use today.
+    *
+    * @throws Exception for any error
+    */
+   @SuppressWarnings("unchecked")
+   public void testBenchmark() throws Exception
+   {
+      Class<Object>[] types = new Class[] { String.class, Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class, Character.class };
+      Object[] values = { "string", 1, 2L, (short) 3, (byte) 4, 5d, 6f, 'c' };
+      AttachmentKey<Object>[] keys = new AttachmentKey[types.length];
+      for (int i = 0; i < types.length; ++i)
+         keys[i] = AttachmentKey.getKey(types[i]);
+
+      MutableAttachments byType = new AttachmentsImpl();
+      AttachmentsImpl byKey = new AttachmentsImpl();
+
+      // warm up
+      for (int i = 0; i < 3; ++i)
+      {
+         putTypes(byType, types, values, ITERATIONS);
+         putKeys(byKey, keys, values, ITERATIONS);
+         getTypes(byType, types, ITERATIONS);
+         getKeys(byKey, keys, ITERATIONS);
+      }
+
+      long start = System.nanoTime();
+      putTypes(byType, types, values, ITERATIONS);
+      long typePutTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      putKeys(byKey, keys, values, ITERATIONS);
+      long keyPutTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int found = getTypes(byType, types, ITERATIONS);
+      long typeGetTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      found += getKeys(byKey, keys, ITERATIONS);
+      long keyGetTime = System.nanoTime() - start;
+
+      assertEquals(2 * types.length * ITERATIONS, found);
+      getLog().info("put by type: " + (typePutTime / 1000000) + "ms, by key: " + (keyPutTime / 1000000) + "ms");
+      getLog().info("get by type: " + (typeGetTime / 1000000) + "ms, by key: " + (keyGetTime / 1000000) + "ms");
+   }
+
+   private static void putTypes(MutableAttachments attachments, Class<Object>[] types, Object[] values, int iterations)
+   {
+      for (int i = 0; i < iterations; ++i)
+      {
+         for (int j = 0; j < types.length; ++j)
+            attachments.addAttachment(types[j], values[j]);
+      }
+   }
+
+   private static void putKeys(AttachmentsImpl attachments, AttachmentKey<Object>[] keys, Object[] values, int iterations)
+   {
+      for (int i = 0; i < iterations; ++i)
+      {
+         for (int j = 0; j < keys.length; ++j)
+            attachments.addAttachment(keys[j], values[j]);
+      }
+   }
+
+   private static int getTypes(MutableAttachments attachments, Class<Object>[] types, int iterations)
+   {
+      int found = 0;
+      for (int i = 0; i < iterations; ++i)
+      {
+         for (Class<Object> type : types)
+         {
+            if (attachments.getAttachment(type) != null)
+               ++found;
+         }
+      }
+      return found;
+   }
+
+   private static int getKeys(AttachmentsImpl attachments, AttachmentKey<Object>[] keys, int iterations)
+   {
+      int found = 0;
+      for (int i = 0; i < iterations; ++i)
+      {
+         for (AttachmentKey<Object> key : keys)
+         {
+            if (attachments.getAttachment(key) != null)
+               ++found;
+         }
+      }
+      return found;
+   }
+}
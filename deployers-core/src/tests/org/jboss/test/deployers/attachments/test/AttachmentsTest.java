@@ -21,11 +21,15 @@
 */
 package org.jboss.test.deployers.attachments.test;
 
+import java.util.Collections;
+import java.util.Map;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import org.jboss.deployers.spi.attachments.Attachments;
 import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AbstractAttachments;
 import org.jboss.test.BaseTestCase;
 
 /**
@@ -477,6 +481,41 @@ public abstract class AttachmentsTest extends BaseTestCase
       }
    }
    
+   public void testGetAttachmentsByType() throws Exception
+   {
+      AbstractAttachments attachments = (AbstractAttachments) getAttachments();
+      MutableAttachments mutable = getMutable();
+      
+      try
+      {
+         attachments.getAttachmentsByType(null);
+         fail("Should not be here!");
+      }
+      catch (Throwable t)
+      {
+         checkThrowable(IllegalArgumentException.class, t);
+      }
+
+      assertTrue(attachments.getAttachmentsByType(CharSequence.class).isEmpty());
+      mutable.addAttachment("string", "Hello");
+      mutable.addAttachment("integer", 1);
+      mutable.addAttachment("builder", new StringBuilder("builder"));
+
+      Map<String, CharSequence> sequences = attachments.getAttachmentsByType(CharSequence.class);
+      assertEquals(2, sequences.size());
+      assertEquals("Hello", sequences.get("string"));
+      assertEquals(Collections.singletonMap("integer", 1), attachments.getAttachmentsByType(Number.class));
+      assertEquals(3, attachments.getAttachmentsByType(Object.class).size());
+
+      // the queried types must follow later changes
+      mutable.addAttachment("string", 2);
+      mutable.removeAttachment("builder");
+      assertTrue(attachments.getAttachmentsByType(CharSequence.class).isEmpty());
+      assertEquals(2, attachments.getAttachmentsByType(Number.class).size());
+      mutable.clear();
+      assertTrue(attachments.getAttachmentsByType(Number.class).isEmpty());
+   }
+   
    public void testSerialization() throws Exception
    {
       Attachments attachments = getAttachments();
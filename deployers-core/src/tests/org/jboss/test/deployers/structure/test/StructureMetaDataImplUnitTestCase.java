@@ -21,6 +21,8 @@
 */
 package org.jboss.test.deployers.structure.test;
 
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -58,4 +60,50 @@ public class StructureMetaDataImplUnitTestCase extends AbstractStructureMetaData
    {
       return new ContextInfoImpl(path);
    }
+
+   public void testManyContexts() throws Exception
+   {
+      // warm up
+      buildContexts(1000);
+      long start = System.nanoTime();
+      buildContexts(1000);
+      long small = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      StructureMetaDataImpl structure = buildContexts(10000);
+      long large = System.nanoTime() - start;
+      getLog().debug("1000 contexts: " + (small / 1000) + "us, 10000 contexts: " + (large / 1000) + "us");
+
+      List<ContextInfo> contexts = structure.getContexts();
+      assertEquals(10000, contexts.size());
+      for (int i = 0; i < contexts.size(); ++i)
+         assertEquals("path" + i, contexts.get(i).getPath());
+
+      for (int i = 0; i < 10000; i += 2)
+         structure.removeContext("path" + i);
+      contexts = structure.getContexts();
+      assertEquals(5000, contexts.size());
+      assertEquals("path1", contexts.get(0).getPath());
+      assertNull(structure.getContext("path0"));
+
+      StructureMetaDataImpl copy = serializeDeserialize(structure, StructureMetaDataImpl.class);
+      assertEquals(structure, copy);
+      assertEquals(contexts, copy.getContexts());
+      assertNotNull(copy.getContext("path9999"));
+   }
+
+   protected StructureMetaDataImpl buildContexts(int size)
+   {
+      StructureMetaDataImpl structure = createDefault();
+      for (int i = 0; i < size; ++i)
+      {
+         String path = "path" + i;
+         // the candidate visitor checks for the context before adding it
+         assertNull(structure.getContext(path));
+         structure.addContext(createContext(path));
+      }
+      for (int i = 0; i < size; ++i)
+         assertNotNull(structure.getContext("path" + i));
+      return structure;
+   }
 }
@@ -0,0 +1,649 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The annotation relevant parts of a class file.<p>
+ *
+ * Only the constant pool offsets, the class header and the
+ * RuntimeVisibleAnnotations and RuntimeVisibleParameterAnnotations
+ * attributes of the class and its members are read,
+ * everything else is skipped.
+ * When given the annotations of interest, a class whose constant pool
+ * does not mention any of them is rejected after reading its header.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class AnnotationClassFile
+{
+   /** The magic */
+   private static final int MAGIC = 0xCAFEBABE;
+
+   /** The interface access flag */
+   private static final int ACC_INTERFACE = 0x0200;
+
+   /** The attribute names */
+   private static final String ANNOTATIONS = "RuntimeVisibleAnnotations";
+   private static final String PARAMETER_ANNOTATIONS = "RuntimeVisibleParameterAnnotations";
+
+   /** The constant pool tags */
+   private static final int UTF8 = 1;
+   private static final int LONG = 5;
+   private static final int DOUBLE = 6;
+
+   /** No annotations */
+   private static final String[] NONE = new String[0];
+
+   /** The bytes */
+   private byte[] bytes;
+
+   /** The current position */
+   private int pos;
+
+   /** The offsets of the constant pool entries */
+   private int[] offsets;
+
+   /** The decoded utf8 entries */
+   private String[] strings;
+
+   /** The access flags */
+   private int access;
+
+   /** The class name */
+   private String className;
+
+   /** The super class name */
+   private String superClassName;
+
+   /** The interface names */
+   private String[] interfaces;
+
+   /** The class annotations */
+   private String[] annotations = NONE;
+
+   /** The annotated fields */
+   private List<Member> fields = Collections.emptyList();
+
+   /** The annotated methods and constructors */
+   private List<Member> methods = Collections.emptyList();
+
+   /** Was the class rejected by its constant pool */
+   private boolean rejected;
+
+   /**
+    * Read a class file.
+    *
+    * @param bytes the class file bytes
+    * @throws IOException for any error
+    */
+   AnnotationClassFile(byte[] bytes) throws IOException
+   {
+      this(bytes, null);
+   }
+
+   /**
+    * Read a class file, unless its constant pool
+    * has none of the annotation descriptors.
+    *
+    * @param bytes the class file bytes
+    * @param descriptors the encoded annotation descriptors, null to read every class
+    * @throws IOException for any error
+    * @see #toDescriptors(Set)
+    */
+   AnnotationClassFile(byte[] bytes, byte[][] descriptors) throws IOException
+   {
+      if (bytes == null)
+         throw new IllegalArgumentException("Null bytes");
+
+      this.bytes = bytes;
+      try
+      {
+         if (u4() != MAGIC)
+            throw new IOException("Not a class file");
+         pos += 4; // version
+         readConstantPool();
+         access = u2();
+         className = getClassName(u2());
+         int superClass = u2();
+         superClassName = superClass != 0 ? getClassName(superClass) : null;
+         interfaces = new String[u2()];
+         for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = getClassName(u2());
+         if (descriptors != null && hasUtf8(descriptors) == false)
+         {
+            rejected = true;
+            return;
+         }
+         fields = readMembers();
+         methods = readMembers();
+         annotations = readAttributes(null);
+      }
+      catch (ArrayIndexOutOfBoundsException e)
+      {
+         IOException ioe = new IOException("Truncated class file");
+         ioe.initCause(e);
+         throw ioe;
+      }
+   }
+
+   /**
+    * Encode annotation names as the descriptors
+    * the constant pool holds for them.
+    *
+    * @param annotationNames the annotation names
+    * @return the encoded descriptors
+    */
+   static byte[][] toDescriptors(Set<String> annotationNames)
+   {
+      byte[][] descriptors = new byte[annotationNames.size()][];
+      int i = 0;
+      for (String annotationName : annotationNames)
+      {
+         String descriptor = "L" + annotationName.replace('.', '/') + ";";
+         try
+         {
+            descriptors[i++] = descriptor.getBytes("UTF-8");
+         }
+         catch (UnsupportedEncodingException e)
+         {
+            throw new RuntimeException(e);
+         }
+      }
+      return descriptors;
+   }
+
+   /**
+    * Was the class rejected by its constant pool.
+    * Only the header of a rejected class is read,
+    * it has no annotations.
+    *
+    * @return true if rejected
+    */
+   boolean isRejected()
+   {
+      return rejected;
+   }
+
+   /**
+    * Get the class name.
+    *
+    * @return the class name
+    */
+   String getClassName()
+   {
+      return className;
+   }
+
+   /**
+    * Get the super class name.
+    *
+    * @return the super class name, null for java.lang.Object
+    */
+   String getSuperClassName()
+   {
+      return superClassName;
+   }
+
+   /**
+    * Get the interface names.
+    *
+    * @return the interface names
+    */
+   String[] getInterfaces()
+   {
+      return interfaces;
+   }
+
+   /**
+    * Is this an interface.
+    *
+    * @return true for an interface or annotation
+    */
+   boolean isInterface()
+   {
+      return (access & ACC_INTERFACE) != 0;
+   }
+
+   /**
+    * Get the class annotation type names.
+    *
+    * @return the annotation names
+    */
+   String[] getAnnotations()
+   {
+      return annotations;
+   }
+
+   /**
+    * Get the annotated fields.
+    *
+    * @return the fields
+    */
+   List<Member> getFields()
+   {
+      return fields;
+   }
+
+   /**
+    * Get the annotated methods and constructors.
+    *
+    * @return the methods
+    */
+   List<Member> getMethods()
+   {
+      return methods;
+   }
+
+   private void readConstantPool() throws IOException
+   {
+      int count = u2();
+      offsets = new int[count];
+      strings = new String[count];
+      for (int i = 1; i < count; i++)
+      {
+         offsets[i] = pos;
+         int tag = bytes[pos++];
+         switch (tag)
+         {
+            case UTF8:
+               pos += 2 + u2(pos);
+               break;
+            case 7: // class
+            case 8: // string
+            case 16: // method type
+            case 19: // module
+            case 20: // package
+               pos += 2;
+               break;
+            case 15: // method handle
+               pos += 3;
+               break;
+            case 3: // integer
+            case 4: // float
+            case 9: // field ref
+            case 10: // method ref
+            case 11: // interface method ref
+            case 12: // name and type
+            case 17: // dynamic
+            case 18: // invoke dynamic
+               pos += 4;
+               break;
+            case LONG:
+            case DOUBLE:
+               pos += 8;
+               i++;
+               break;
+            default:
+               throw new IOException("Unknown constant pool tag " + tag + " at " + i);
+         }
+      }
+   }
+
+   private List<Member> readMembers() throws IOException
+   {
+      List<Member> result = null;
+      int count = u2();
+      for (int i = 0; i < count; i++)
+      {
+         pos += 2; // access
+         int name = u2();
+         int descriptor = u2();
+         Member member = new Member(name, descriptor);
+         member.annotations = readAttributes(member);
+         if (member.annotations.length > 0 || member.parameterAnnotations != null)
+         {
+            if (result == null)
+               result = new ArrayList<Member>();
+            result.add(member);
+         }
+      }
+      if (result == null)
+         return Collections.emptyList();
+      return result;
+   }
+
+   private String[] readAttributes(Member member) throws IOException
+   {
+      String[] result = NONE;
+      int count = u2();
+      for (int i = 0; i < count; i++)
+      {
+         int name = u2();
+         int length = u4();
+         int end = pos + length;
+         if (isUtf8(name, ANNOTATIONS))
+         {
+            result = readAnnotations();
+         }
+         else if (member != null && isUtf8(name, PARAMETER_ANNOTATIONS))
+         {
+            String[][] parameters = new String[u1()][];
+            for (int j = 0; j < parameters.length; j++)
+               parameters[j] = readAnnotations();
+            member.parameterAnnotations = parameters;
+         }
+         pos = end;
+      }
+      return result;
+   }
+
+   private String[] readAnnotations() throws IOException
+   {
+      int count = u2();
+      if (count == 0)
+         return NONE;
+
+      String[] result = new String[count];
+      for (int i = 0; i < count; i++)
+         result[i] = readAnnotation();
+      return result;
+   }
+
+   private String readAnnotation() throws IOException
+   {
+      String type = getUtf8(u2());
+      int pairs = u2();
+      for (int i = 0; i < pairs; i++)
+      {
+         pos += 2; // name
+         skipElementValue();
+      }
+      return toClassName(type);
+   }
+
+   private void skipElementValue() throws IOException
+   {
+      int tag = u1();
+      switch (tag)
+      {
+         case 'B':
+         case 'C':
+         case 'D':
+         case 'F':
+         case 'I':
+         case 'J':
+         case 'S':
+         case 'Z':
+         case 's':
+         case 'c':
+            pos += 2;
+            break;
+         case 'e':
+            pos += 4;
+            break;
+         case '@':
+            readAnnotation();
+            break;
+         case '[':
+            int count = u2();
+            for (int i = 0; i < count; i++)
+               skipElementValue();
+            break;
+         default:
+            throw new IOException("Unknown element value tag " + (char) tag);
+      }
+   }
+
+   /**
+    * Does any utf8 entry equal one of the descriptors, compared without decoding.
+    *
+    * @param descriptors the encoded descriptors
+    * @return true if one is found
+    */
+   private boolean hasUtf8(byte[][] descriptors)
+   {
+      for (int index = 1; index < offsets.length; index++)
+      {
+         int offset = offsets[index];
+         // the second slot of a long or double has no offset
+         if (offset == 0 || bytes[offset] != UTF8)
+            continue;
+
+         int length = u2(offset + 1);
+         offset += 3;
+         for (byte[] descriptor : descriptors)
+         {
+            if (descriptor.length != length)
+               continue;
+
+            int i = 0;
+            while (i < length && bytes[offset + i] == descriptor[i])
+               i++;
+            if (i == length)
+               return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Does the utf8 entry equal the string, compared without decoding.
+    *
+    * @param index the constant pool index
+    * @param string the ascii string
+    * @return true when equal
+    */
+   private boolean isUtf8(int index, String string)
+   {
+      int offset = offsets[index];
+      int length = u2(offset + 1);
+      if (bytes[offset] != UTF8 || length != string.length())
+         return false;
+      offset += 3;
+      for (int i = 0; i < length; i++)
+      {
+         if (bytes[offset + i] != string.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+   String getUtf8(int index) throws IOException
+   {
+      String result = strings[index];
+      if (result == null)
+      {
+         int offset = offsets[index];
+         if (bytes[offset] != UTF8)
+            throw new IOException("Not a utf8 entry at " + index);
+         result = decode(offset + 3, u2(offset + 1));
+         strings[index] = result;
+      }
+      return result;
+   }
+
+   private String getClassName(int index) throws IOException
+   {
+      return getUtf8(u2(offsets[index] + 1)).replace('/', '.');
+   }
+
+   private String decode(int offset, int length) throws IOException
+   {
+      char[] chars = new char[length];
+      int count = 0;
+      int end = offset + length;
+      while (offset < end)
+      {
+         int c = bytes[offset++] & 0xFF;
+         if (c < 0x80)
+         {
+            chars[count++] = (char) c;
+         }
+         else if ((c & 0xE0) == 0xC0)
+         {
+            chars[count++] = (char) (((c & 0x1F) << 6) | (bytes[offset++] & 0x3F));
+         }
+         else if ((c & 0xF0) == 0xE0)
+         {
+            chars[count++] = (char) (((c & 0x0F) << 12) | ((bytes[offset++] & 0x3F) << 6) | (bytes[offset++] & 0x3F));
+         }
+         else
+         {
+            throw new UTFDataFormatException("Malformed utf8 at " + (offset - 1));
+         }
+      }
+      return new String(chars, 0, count);
+   }
+
+   private int u1()
+   {
+      return bytes[pos++] & 0xFF;
+   }
+
+   private int u2()
+   {
+      int result = u2(pos);
+      pos += 2;
+      return result;
+   }
+
+   private int u2(int offset)
+   {
+      return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+   }
+
+   private int u4()
+   {
+      int result = (u2(pos) << 16) | u2(pos + 2);
+      pos += 4;
+      return result;
+   }
+
+   /**
+    * Turn a field descriptor into a class name.
+    *
+    * @param descriptor the descriptor
+    * @return the class name
+    */
+   static String toClassName(String descriptor)
+   {
+      int dimensions = 0;
+      while (descriptor.charAt(dimensions) == '[')
+         dimensions++;
+
+      String name;
+      char c = descriptor.charAt(dimensions);
+      switch (c)
+      {
+         case 'B': name = "byte"; break;
+         case 'C': name = "char"; break;
+         case 'D': name = "double"; break;
+         case 'F': name = "float"; break;
+         case 'I': name = "int"; break;
+         case 'J': name = "long"; break;
+         case 'S': name = "short"; break;
+         case 'Z': name = "boolean"; break;
+         case 'V': name = "void"; break;
+         case 'L': name = descriptor.substring(dimensions + 1, descriptor.length() - 1).replace('/', '.'); break;
+         default: throw new IllegalArgumentException("Illegal descriptor: " + descriptor);
+      }
+
+      if (dimensions == 0)
+         return name;
+
+      StringBuilder builder = new StringBuilder(name);
+      for (int i = 0; i < dimensions; i++)
+         builder.append("[]");
+      return builder.toString();
+   }
+
+   /**
+    * An annotated field, method or constructor.
+    */
+   class Member
+   {
+      private int name;
+      private int descriptor;
+      private String[] annotations;
+      private String[][] parameterAnnotations;
+
+      private Member(int name, int descriptor)
+      {
+         this.name = name;
+         this.descriptor = descriptor;
+      }
+
+      /**
+       * Get the name.
+       *
+       * @return the name
+       * @throws IOException for any error
+       */
+      String getName() throws IOException
+      {
+         return getUtf8(name);
+      }
+
+      /**
+       * Get the parameter type names of a method descriptor,
+       * in the form javassist uses for signatures.
+       *
+       * @return the parameter types
+       * @throws IOException for any error
+       */
+      String[] getParameterTypes() throws IOException
+      {
+         String desc = getUtf8(descriptor);
+         List<String> result = new ArrayList<String>();
+         int i = 1;
+         while (desc.charAt(i) != ')')
+         {
+            int start = i;
+            while (desc.charAt(i) == '[')
+               i++;
+            if (desc.charAt(i) == 'L')
+               i = desc.indexOf(';', i);
+            i++;
+            result.add(toClassName(desc.substring(start, i)));
+         }
+         return result.toArray(new String[result.size()]);
+      }
+
+      /**
+       * Get the annotation type names.
+       *
+       * @return the annotation names
+       */
+      String[] getAnnotations()
+      {
+         return annotations;
+      }
+
+      /**
+       * Get the parameter annotation type names.
+       *
+       * @return the parameter annotation names or null if there are none
+       */
+      String[][] getParameterAnnotations()
+      {
+         return parameterAnnotations;
+      }
+   }
+}
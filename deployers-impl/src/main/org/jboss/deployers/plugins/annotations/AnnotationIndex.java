@@ -0,0 +1,661 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.jboss.logging.Logger;
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * AnnotationIndex.<p>
+ *
+ * Keeps the annotations found in a classpath root in a binary file in the index directory.
+ * An index is keyed by the root url and only used while the scanning settings
+ * and the fingerprint of the root are the same as when it was written.
+ * The fingerprint is the size and last modified of the root file,
+ * for exploded directories also of everything below them.
+ * Roots nested in an archive, e.g. a jar in a packed war, take the fingerprint of the outermost archive.
+ * Roots that are not local files are not indexed.<p>
+ *
+ * An index is read through a read only memory map and only used once it was read completely.
+ * It holds the annotations of the classes in the root, super classes and interfaces
+ * outside the root are only recorded by name and resolved again when the index is loaded,
+ * so changes to them need not take part in the fingerprint.<p>
+ *
+ * Anything that goes wrong reading or writing an index means
+ * the root is scanned as usual.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationIndex
+{
+   /** The log */
+   private static final Logger log = Logger.getLogger(AnnotationIndex.class);
+
+   /** The magic */
+   private static final int MAGIC = 0x4A424149;
+
+   /** The version of the index format */
+   private static final int VERSION = 3;
+
+   /** The index suffix */
+   private static final String SUFFIX = ".annotations";
+
+   /** No signature */
+   private static final byte NO_SIGNATURE = -1;
+
+   /** The element types */
+   private static final ElementType[] TYPES = ElementType.values();
+
+   /** The maximum number of content hashes kept */
+   private static final int MAX_CONTENT_HASHES = 1024;
+
+   /** The index directory */
+   private File directory;
+
+   /** The content hashes by root and fingerprint, least recently used first */
+   private Map<String, String> contentHashes = new LinkedHashMap<String, String>(16, 0.75f, true)
+   {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+      {
+         return size() > MAX_CONTENT_HASHES;
+      }
+   };
+
+   /**
+    * Create a new AnnotationIndex.
+    */
+   public AnnotationIndex()
+   {
+   }
+
+   /**
+    * Create a new AnnotationIndex.
+    *
+    * @param directory the index directory
+    */
+   public AnnotationIndex(File directory)
+   {
+      setDirectory(directory);
+   }
+
+   /**
+    * Get the directory.
+    *
+    * @return the directory.
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * Set the directory.
+    *
+    * @param directory the directory.
+    */
+   public void setDirectory(File directory)
+   {
+      if (directory == null)
+         throw new IllegalArgumentException("Null directory");
+      this.directory = directory;
+   }
+
+   /**
+    * Load the index of a root.
+    *
+    * @param root the root url
+    * @param fingerprint the current fingerprint of the root
+    * @param settings the scanning settings
+    * @param env the environment, resolves the annotation classes
+    * @param entries the collection the annotations of the root are added to
+    * @param supertypes the collection the super classes and interfaces outside the root are added to
+    * @return true if the index was loaded, false if the root needs to be scanned
+    */
+   boolean load(String root, long fingerprint, String settings, DefaultAnnotationEnvironment env, Collection<CommitElement> entries, Collection<String> supertypes)
+   {
+      try
+      {
+         File file = getFile(root);
+         if (file.exists() == false)
+            return false;
+
+         ByteBuffer buffer;
+         FileInputStream in = new FileInputStream(file);
+         try
+         {
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         }
+         finally
+         {
+            in.close();
+         }
+
+         if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || root.equals(readString(buffer)) == false)
+            return false;
+         if (settings.equals(readString(buffer)) == false || buffer.getLong() != fingerprint)
+         {
+            if (log.isTraceEnabled())
+               log.trace("Annotation index is out of date: " + root);
+            return false;
+         }
+
+         String[] strings = new String[buffer.getInt()];
+         for (int i = 0; i < strings.length; i++)
+            strings[i] = readString(buffer);
+
+         Map<String, Class<Annotation>> annotations = new HashMap<String, Class<Annotation>>();
+         int size = buffer.getInt();
+         List<CommitElement> loaded = new ArrayList<CommitElement>(size);
+         for (int i = 0; i < size; i++)
+         {
+            String annotationName = strings[buffer.getInt()];
+            Class<Annotation> annotation = annotations.get(annotationName);
+            if (annotation == null)
+            {
+               annotation = env.getAnnotationClass(annotationName);
+               annotations.put(annotationName, annotation);
+            }
+            ElementType type = TYPES[buffer.get()];
+            String className = strings[buffer.getInt()];
+            Signature signature = readSignature(buffer, strings);
+            loaded.add(new CommitElement(annotation, type, className, signature));
+         }
+         String[] external = new String[buffer.getInt()];
+         for (int i = 0; i < external.length; i++)
+            external[i] = strings[buffer.getInt()];
+
+         entries.addAll(loaded);
+         supertypes.addAll(Arrays.asList(external));
+
+         if (log.isTraceEnabled())
+            log.trace("Loaded " + size + " annotations from index for " + root);
+         return true;
+      }
+      catch (Throwable t)
+      {
+         log.debug("Ignoring annotation index for " + root + ": " + t);
+         return false;
+      }
+   }
+
+   /**
+    * Store the annotations of a root.
+    *
+    * @param root the root url
+    * @param fingerprint the fingerprint of the root when it was scanned
+    * @param settings the scanning settings
+    * @param entries the annotations of the classes in the root
+    * @param supertypes the super classes and interfaces outside the root
+    */
+   void store(String root, long fingerprint, String settings, Collection<CommitElement> entries, Collection<String> supertypes)
+   {
+      File temp = null;
+      try
+      {
+         File file = getFile(root);
+         directory.mkdirs();
+         temp = File.createTempFile("annotations", ".tmp", directory);
+
+         Map<String, Integer> strings = new HashMap<String, Integer>();
+         List<String> table = new ArrayList<String>();
+         for (CommitElement ce : entries)
+         {
+            intern(ce.getAnnotationType().getName(), strings, table);
+            intern(ce.getClassName(), strings, table);
+            Signature signature = ce.getSignature();
+            if (signature != null)
+            {
+               if (signature.getName() != null)
+                  intern(signature.getName(), strings, table);
+               String[] parameters = signature.getParameters();
+               if (parameters != null)
+               {
+                  for (String parameter : parameters)
+                     intern(parameter, strings, table);
+               }
+            }
+         }
+         for (String supertype : supertypes)
+            intern(supertype, strings, table);
+
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+         try
+         {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, root);
+            writeString(out, settings);
+            out.writeLong(fingerprint);
+            out.writeInt(table.size());
+            for (String string : table)
+               writeString(out, string);
+            out.writeInt(entries.size());
+            for (CommitElement ce : entries)
+            {
+               out.writeInt(strings.get(ce.getAnnotationType().getName()));
+               out.writeByte(ce.getType().ordinal());
+               out.writeInt(strings.get(ce.getClassName()));
+               writeSignature(out, ce.getSignature(), strings);
+            }
+            out.writeInt(supertypes.size());
+            for (String supertype : supertypes)
+               out.writeInt(strings.get(supertype));
+         }
+         finally
+         {
+            out.close();
+         }
+
+         if (file.exists())
+            file.delete();
+         if (temp.renameTo(file))
+            temp = null;
+      }
+      catch (Throwable t)
+      {
+         log.debug("Unable to store annotation index for " + root + ": " + t);
+      }
+      finally
+      {
+         if (temp != null)
+            temp.delete();
+      }
+   }
+
+   /**
+    * Get the fingerprint of a root.
+    *
+    * @param root the root url
+    * @return the fingerprint or null if the root cannot be indexed
+    */
+   protected Long getFingerprint(String root)
+   {
+      try
+      {
+         File file = getRootFile(new URL(root));
+         if (file == null)
+            return null;
+         if (file.exists())
+            return getFingerprint(file);
+
+         File archive = getArchive(file);
+         if (archive == null)
+            return null;
+         return 31 * getFingerprint(archive) + getEntryName(archive, file).hashCode();
+      }
+      catch (Throwable t)
+      {
+         if (log.isTraceEnabled())
+            log.trace("No fingerprint for " + root + ": " + t);
+         return null;
+      }
+   }
+
+   /**
+    * Get the hash of the contents of a root.
+    *
+    * Roots with the same contents have the same hash wherever they are,
+    * e.g. the same library in two wars.
+    * The hash is only computed again once the fingerprint of the root changes.
+    *
+    * @param root the root url
+    * @param fingerprint the current fingerprint of the root
+    * @return the hash or null if the contents cannot be read
+    */
+   protected String getContentHash(String root, long fingerprint)
+   {
+      String key = root + '|' + fingerprint;
+      synchronized (contentHashes)
+      {
+         String hash = contentHashes.get(key);
+         if (hash != null)
+            return hash;
+      }
+
+      try
+      {
+         File file = getRootFile(new URL(root));
+         if (file == null)
+            return null;
+
+         MessageDigest digest = MessageDigest.getInstance("MD5");
+         if (file.exists())
+         {
+            digestFile(file, digest);
+         }
+         else
+         {
+            File archive = getArchive(file);
+            if (archive == null)
+               return null;
+            InputStream in = new BufferedInputStream(new FileInputStream(archive));
+            try
+            {
+               if (digestEntry(new ZipInputStream(in), getEntryName(archive, file), digest) == false)
+                  return null;
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+
+         String hash = toHex(digest.digest());
+         synchronized (contentHashes)
+         {
+            contentHashes.put(key, hash);
+         }
+         return hash;
+      }
+      catch (Throwable t)
+      {
+         if (log.isTraceEnabled())
+            log.trace("No content hash for " + root + ": " + t);
+         return null;
+      }
+   }
+
+   /**
+    * Add the contents of a file, or everything below a directory, to a digest.
+    *
+    * @param file the file
+    * @param digest the digest
+    * @throws IOException for any error
+    */
+   protected void digestFile(File file, MessageDigest digest) throws IOException
+   {
+      if (file.isDirectory())
+      {
+         String[] children = file.list();
+         if (children != null)
+         {
+            Arrays.sort(children);
+            for (String child : children)
+            {
+               digest.update(child.getBytes("UTF-8"));
+               digestFile(new File(file, child), digest);
+            }
+         }
+      }
+      else
+      {
+         InputStream in = new FileInputStream(file);
+         try
+         {
+            digestStream(in, digest);
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+   }
+
+   /**
+    * Add the contents of an archive entry, or everything below an archive directory, to a digest.
+    *
+    * An entry in a nested archive is found by descending into the archive.
+    *
+    * @param in the archive
+    * @param path the entry path
+    * @param digest the digest
+    * @return true if the entry was found
+    * @throws IOException for any error
+    */
+   protected boolean digestEntry(ZipInputStream in, String path, MessageDigest digest) throws IOException
+   {
+      boolean found = false;
+      ZipEntry entry = in.getNextEntry();
+      while (entry != null)
+      {
+         String name = entry.getName();
+         if (entry.isDirectory() == false)
+         {
+            if (name.equals(path))
+            {
+               digestStream(in, digest);
+               return true;
+            }
+            if (path.startsWith(name + '/'))
+               return digestEntry(new ZipInputStream(in), path.substring(name.length() + 1), digest);
+            if (name.startsWith(path + '/'))
+            {
+               digest.update(name.substring(path.length() + 1).getBytes("UTF-8"));
+               digestStream(in, digest);
+               found = true;
+            }
+         }
+         entry = in.getNextEntry();
+      }
+      return found;
+   }
+
+   private static void digestStream(InputStream in, MessageDigest digest) throws IOException
+   {
+      byte[] buffer = new byte[8192];
+      int read = in.read(buffer);
+      while (read >= 0)
+      {
+         digest.update(buffer, 0, read);
+         read = in.read(buffer);
+      }
+   }
+
+   /**
+    * Get the archive a root that does not exist as a file is nested in.
+    *
+    * @param file the root file
+    * @return the closest existing parent if it is a plain file, otherwise null
+    */
+   private static File getArchive(File file)
+   {
+      File archive = file.getParentFile();
+      while (archive != null && archive.exists() == false)
+         archive = archive.getParentFile();
+      if (archive == null || archive.isFile() == false)
+         return null;
+      return archive;
+   }
+
+   private static String getEntryName(File archive, File file)
+   {
+      return file.getPath().substring(archive.getPath().length() + 1).replace(File.separatorChar, '/');
+   }
+
+   /**
+    * Get the fingerprint of a file.
+    *
+    * @param file the file
+    * @return the fingerprint
+    */
+   protected long getFingerprint(File file)
+   {
+      long result = file.length();
+      result = 31 * result + file.lastModified();
+      if (file.isDirectory())
+      {
+         String[] children = file.list();
+         if (children != null)
+         {
+            Arrays.sort(children);
+            for (String child : children)
+            {
+               result = 31 * result + child.hashCode();
+               result = 31 * result + getFingerprint(new File(file, child));
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Get the local file of a root.
+    *
+    * @param root the root url
+    * @return the file or null if the root is not a plain file or directory
+    * @throws Exception for any error
+    */
+   protected File getRootFile(URL root) throws Exception
+   {
+      String protocol = root.getProtocol();
+      String path;
+      if ("jar".equals(protocol))
+      {
+         String spec = root.getPath();
+         int index = spec.indexOf("!/");
+         if (index < 0 || index + 2 < spec.length())
+            return null;
+         URL inner = new URL(spec.substring(0, index));
+         if ("file".equals(inner.getProtocol()) == false)
+            return null;
+         path = inner.getPath();
+      }
+      else if ("file".equals(protocol) || "vfsfile".equals(protocol) || "vfszip".equals(protocol))
+      {
+         path = root.getPath();
+      }
+      else
+      {
+         return null;
+      }
+      return new File(URLDecoder.decode(path, "UTF-8"));
+   }
+
+   /**
+    * Get the index file for a root.
+    *
+    * @param root the root url
+    * @return the file
+    * @throws Exception for any error
+    */
+   protected File getFile(String root) throws Exception
+   {
+      if (directory == null)
+         throw new IllegalStateException("No directory");
+
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      byte[] bytes = digest.digest(root.getBytes("UTF-8"));
+      return new File(directory, toHex(bytes) + SUFFIX);
+   }
+
+   private static String toHex(byte[] bytes)
+   {
+      StringBuilder builder = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes)
+      {
+         builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+         builder.append(Character.forDigit(b & 0xF, 16));
+      }
+      return builder.toString();
+   }
+
+   private static void intern(String string, Map<String, Integer> strings, List<String> table)
+   {
+      if (strings.containsKey(string) == false)
+      {
+         strings.put(string, table.size());
+         table.add(string);
+      }
+   }
+
+   private static void writeString(DataOutputStream out, String string) throws IOException
+   {
+      byte[] bytes = string.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(ByteBuffer buffer) throws IOException
+   {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, "UTF-8");
+   }
+
+   private static void writeSignature(DataOutputStream out, Signature signature, Map<String, Integer> strings) throws IOException
+   {
+      if (signature == null)
+      {
+         out.writeByte(NO_SIGNATURE);
+         return;
+      }
+
+      SignatureKind kind = SignatureKind.getKind(signature);
+      out.writeByte(kind.ordinal());
+      String name = signature.getName();
+      out.writeInt(name != null ? strings.get(name) : -1);
+      String[] parameters = signature.getParameters();
+      if (parameters == null)
+      {
+         out.writeInt(0);
+      }
+      else
+      {
+         out.writeInt(parameters.length);
+         for (String parameter : parameters)
+            out.writeInt(strings.get(parameter));
+      }
+      out.writeInt(kind.getParam(signature));
+   }
+
+   private static Signature readSignature(ByteBuffer buffer, String[] strings)
+   {
+      byte kind = buffer.get();
+      if (kind == NO_SIGNATURE)
+         return null;
+
+      int name = buffer.getInt();
+      String[] parameters = new String[buffer.getInt()];
+      for (int i = 0; i < parameters.length; i++)
+         parameters[i] = strings[buffer.getInt()];
+      int param = buffer.getInt();
+      return SignatureKind.valueOf(kind).createSignature(name >= 0 ? strings[name] : null, parameters, param);
+   }
+}
@@ -0,0 +1,371 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.logging.Logger;
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * AnnotationRootCache.<p>
+ *
+ * Keeps the annotations found in a classpath root in memory,
+ * so a root shared by several deployments, e.g. a common library, is scanned only once.
+ * A cached root is keyed by the hash of its contents and the scanning settings,
+ * so identical libraries in different deployments, e.g. the same jar in two wars, share an entry.
+ * The contents are only hashed again once the fingerprint of the root changes,
+ * see AnnotationIndex.<p>
+ *
+ * Every deployment that scanned or reused a root references it,
+ * the root is evicted once it is released by the last of them.
+ * Annotations are kept by name and signatures as plain names,
+ * so the cache does not hold on to any deployment's classes.
+ * Only the annotations of the classes in the root are cached, super classes and interfaces
+ * outside the root are kept by name and resolved by every deployment that reuses the root.
+ * The cache is bounded by the number of annotations it holds,
+ * roots that do not fit are not cached.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationRootCache
+{
+   /** The log */
+   private static final Logger log = Logger.getLogger(AnnotationRootCache.class);
+
+   /** The fingerprints */
+   private AnnotationIndex fingerprints = new AnnotationIndex();
+
+   /** The maximum number of annotations */
+   private int maxSize;
+
+   /** The number of annotations */
+   private int size;
+
+   /** The number of roots reused */
+   private int hits;
+
+   /** The cached roots */
+   private Map<String, CachedRoot> roots = new HashMap<String, CachedRoot>();
+
+   /** The keys of the roots referenced by an owner */
+   private Map<Object, Set<String>> owners = new HashMap<Object, Set<String>>();
+
+   /**
+    * Create a new AnnotationRootCache.
+    */
+   public AnnotationRootCache()
+   {
+      this(100000);
+   }
+
+   /**
+    * Create a new AnnotationRootCache.
+    *
+    * @param maxSize the maximum number of annotations
+    */
+   public AnnotationRootCache(int maxSize)
+   {
+      setMaxSize(maxSize);
+   }
+
+   /**
+    * Get the maximum number of annotations.
+    *
+    * @return the maximum size
+    */
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   /**
+    * Set the maximum number of annotations.
+    *
+    * Roots already cached are not evicted.
+    *
+    * @param maxSize the maximum size
+    */
+   public void setMaxSize(int maxSize)
+   {
+      if (maxSize < 0)
+         throw new IllegalArgumentException("Illegal max size: " + maxSize);
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * Get the number of annotations cached.
+    *
+    * @return the size
+    */
+   public synchronized int size()
+   {
+      return size;
+   }
+
+   /**
+    * Get the number of roots cached.
+    *
+    * @return the number of roots
+    */
+   public synchronized int getRoots()
+   {
+      return roots.size();
+   }
+
+   /**
+    * Get the number of times a cached root was reused.
+    *
+    * @return the number of hits
+    */
+   public synchronized int getHits()
+   {
+      return hits;
+   }
+
+   /**
+    * Get the fingerprint of a root.
+    *
+    * @param root the root url
+    * @return the fingerprint or null if the root cannot be cached
+    */
+   protected Long getFingerprint(String root)
+   {
+      return fingerprints.getFingerprint(root);
+   }
+
+   /**
+    * Get the hash of the contents of a root.
+    *
+    * @param root the root url
+    * @param fingerprint the current fingerprint of the root
+    * @return the hash or null if the root cannot be cached
+    */
+   protected String getContentHash(String root, long fingerprint)
+   {
+      return fingerprints.getContentHash(root, fingerprint);
+   }
+
+   /**
+    * Load a cached root.
+    *
+    * The owner references the root from now on.
+    *
+    * @param owner the owner
+    * @param root the root url
+    * @param fingerprint the current fingerprint of the root
+    * @param settings the scanning settings
+    * @param env the environment, resolves the annotation classes
+    * @param entries the collection the annotations of the root are added to
+    * @param supertypes the collection the super classes and interfaces outside the root are added to
+    * @return true if the cached root was loaded, false if the root needs to be scanned
+    */
+   boolean load(Object owner, String root, long fingerprint, String settings, DefaultAnnotationEnvironment env, Collection<CommitElement> entries, Collection<String> supertypes)
+   {
+      String key = getKey(root, fingerprint, settings);
+      if (key == null)
+         return false;
+
+      CachedRoot cached;
+      synchronized (this)
+      {
+         cached = roots.get(key);
+         if (cached == null)
+            return false;
+         reference(owner, key, cached);
+      }
+
+      try
+      {
+         Map<String, Class<Annotation>> annotations = new HashMap<String, Class<Annotation>>();
+         List<CommitElement> loaded = new ArrayList<CommitElement>(cached.entries.length);
+         for (CachedElement element : cached.entries)
+         {
+            Class<Annotation> annotation = annotations.get(element.annotationName);
+            if (annotation == null)
+            {
+               annotation = env.getAnnotationClass(element.annotationName);
+               annotations.put(element.annotationName, annotation);
+            }
+            loaded.add(new CommitElement(annotation, element.type, element.className, element.signature));
+         }
+         entries.addAll(loaded);
+         supertypes.addAll(Arrays.asList(cached.supertypes));
+
+         synchronized (this)
+         {
+            hits++;
+         }
+         if (log.isTraceEnabled())
+            log.trace("Reused " + loaded.size() + " cached annotations for " + root);
+         return true;
+      }
+      catch (Throwable t)
+      {
+         log.debug("Ignoring cached annotations for " + root + ": " + t);
+         return false;
+      }
+   }
+
+   /**
+    * Cache the annotations of a root.
+    *
+    * The owner references the root from now on.
+    *
+    * @param owner the owner
+    * @param root the root url
+    * @param fingerprint the fingerprint of the root when it was scanned
+    * @param settings the scanning settings
+    * @param entries the annotations of the classes in the root
+    * @param supertypes the super classes and interfaces outside the root
+    */
+   void store(Object owner, String root, long fingerprint, String settings, Collection<CommitElement> entries, Collection<String> supertypes)
+   {
+      CachedElement[] elements = new CachedElement[entries.size()];
+      int i = 0;
+      for (CommitElement ce : entries)
+         elements[i++] = new CachedElement(ce);
+
+      String key = getKey(root, fingerprint, settings);
+      if (key == null)
+         return;
+
+      synchronized (this)
+      {
+         CachedRoot cached = roots.get(key);
+         if (cached == null)
+         {
+            if (size + elements.length > maxSize)
+            {
+               if (log.isTraceEnabled())
+                  log.trace("Not caching " + elements.length + " annotations for " + root + ", cache is full");
+               return;
+            }
+            cached = new CachedRoot(elements, supertypes.toArray(new String[supertypes.size()]));
+            roots.put(key, cached);
+            size += elements.length;
+         }
+         reference(owner, key, cached);
+      }
+   }
+
+   /**
+    * Release the roots referenced by an owner.
+    *
+    * Roots no longer referenced by anyone are evicted.
+    *
+    * @param owner the owner
+    */
+   public synchronized void release(Object owner)
+   {
+      if (owner == null)
+         throw new IllegalArgumentException("Null owner");
+
+      Set<String> keys = owners.remove(owner);
+      if (keys == null)
+         return;
+
+      for (String key : keys)
+      {
+         CachedRoot cached = roots.get(key);
+         if (cached != null && --cached.references == 0)
+         {
+            roots.remove(key);
+            size -= cached.entries.length;
+         }
+      }
+   }
+
+   /**
+    * Clear the cache.
+    */
+   public synchronized void clear()
+   {
+      roots.clear();
+      owners.clear();
+      size = 0;
+   }
+
+   private void reference(Object owner, String key, CachedRoot cached)
+   {
+      Set<String> keys = owners.get(owner);
+      if (keys == null)
+      {
+         keys = new HashSet<String>();
+         owners.put(owner, keys);
+      }
+      if (keys.add(key))
+         cached.references++;
+   }
+
+   private String getKey(String root, long fingerprint, String settings)
+   {
+      String hash = getContentHash(root, fingerprint);
+      if (hash == null)
+         return null;
+      return hash + '|' + settings;
+   }
+
+   /**
+    * A cached root.
+    */
+   private static class CachedRoot
+   {
+      private CachedElement[] entries;
+      private String[] supertypes;
+      private int references;
+
+      private CachedRoot(CachedElement[] entries, String[] supertypes)
+      {
+         this.entries = entries;
+         this.supertypes = supertypes;
+      }
+   }
+
+   /**
+    * An annotation of a cached root.
+    */
+   private static class CachedElement
+   {
+      private String annotationName;
+      private ElementType type;
+      private String className;
+      private Signature signature;
+
+      private CachedElement(CommitElement ce)
+      {
+         annotationName = ce.getAnnotationType().getName();
+         type = ce.getType();
+         className = ce.getClassName();
+         signature = SignatureKind.toPlain(ce.getSignature());
+      }
+   }
+}
@@ -0,0 +1,430 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.classloading.spi.visitor.ResourceFilter;
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.logging.Logger;
+
+/**
+ * Registry of the annotation scans.<p>
+ *
+ * Consumers register the annotations they are interested in and the resources they want scanned
+ * when they are created, before anything is deployed.
+ * The scanning deployers use the combined interests and do one scan per module and scan settings,
+ * every other deployer that needs the same module with the same settings gets the shared AnnotationScanResult.
+ * Structure deployers share their per root scans the same way,
+ * the most recent ones are kept together with the classloader their environment loads classes from
+ * and the fingerprint of the root they were taken from, a changed root replaces its previous scan.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationScanRegistry
+{
+   /** The log */
+   private static final Logger log = Logger.getLogger(AnnotationScanRegistry.class);
+
+   /** The interests by consumer */
+   private Map<Object, Interest> interests = new ConcurrentHashMap<Object, Interest>();
+
+   /** The module scans by module and settings */
+   private Map<ScanKey, AnnotationScanResult> results = new ConcurrentHashMap<ScanKey, AnnotationScanResult>();
+
+   /** The maximum number of structure scans kept */
+   private volatile int maxStructures = 32;
+
+   /** The structure scans by root, least recently used first */
+   private Map<Object, StructureScan> structures = new LinkedHashMap<Object, StructureScan>(16, 0.75f, true)
+   {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<Object, StructureScan> eldest)
+      {
+         return size() > maxStructures;
+      }
+   };
+
+   /**
+    * Register the interest of a consumer, replacing its previous one.
+    *
+    * @param consumer the consumer
+    * @param annotationNames the annotation names, null for all annotations
+    * @param filter the resources to scan, null for all classes
+    */
+   public void addInterest(Object consumer, Set<String> annotationNames, ResourceFilter filter)
+   {
+      addInterest(consumer, annotationNames, filter, null);
+   }
+
+   /**
+    * Register the interest of a consumer, replacing its previous one.
+    *
+    * @param consumer the consumer
+    * @param annotationNames the annotation names, null for all annotations
+    * @param filter the resources to scan, null for all classes
+    * @param recurseFilter the directories to recurse into, null for all of them
+    */
+   public void addInterest(Object consumer, Set<String> annotationNames, ResourceFilter filter, ResourceFilter recurseFilter)
+   {
+      if (consumer == null)
+         throw new IllegalArgumentException("Null consumer");
+
+      Set<String> names = null;
+      if (annotationNames != null && annotationNames.isEmpty() == false)
+         names = Collections.unmodifiableSet(new HashSet<String>(annotationNames));
+      interests.put(consumer, new Interest(names, filter, recurseFilter));
+   }
+
+   /**
+    * Remove the interest of a consumer.
+    *
+    * @param consumer the consumer
+    */
+   public void removeInterest(Object consumer)
+   {
+      if (consumer == null)
+         throw new IllegalArgumentException("Null consumer");
+
+      interests.remove(consumer);
+   }
+
+   /**
+    * Get the annotation names of all interests.
+    *
+    * @return the annotation names or null if some consumer wants all annotations
+    */
+   public Set<String> getAnnotationNames()
+   {
+      if (interests.isEmpty())
+         return null;
+
+      Set<String> result = new HashSet<String>();
+      for (Interest interest : interests.values())
+      {
+         if (interest.annotationNames == null)
+            return null;
+         result.addAll(interest.annotationNames);
+      }
+      return result;
+   }
+
+   /**
+    * Get the filter accepting the resources of all interests.
+    *
+    * @return the filter or null if some consumer wants all classes
+    */
+   public ResourceFilter getResourceFilter()
+   {
+      if (interests.isEmpty())
+         return null;
+
+      Set<ResourceFilter> filters = new HashSet<ResourceFilter>();
+      for (Interest interest : interests.values())
+      {
+         if (interest.filter == null)
+            return null;
+         filters.add(interest.filter);
+      }
+      return combine(filters);
+   }
+
+   /**
+    * Get the filter accepting the directories any interest recurses into.
+    *
+    * @return the filter or null if some consumer recurses into all directories
+    */
+   public ResourceFilter getRecurseFilter()
+   {
+      if (interests.isEmpty())
+         return null;
+
+      Set<ResourceFilter> filters = new HashSet<ResourceFilter>();
+      for (Interest interest : interests.values())
+      {
+         if (interest.recurseFilter == null)
+            return null;
+         filters.add(interest.recurseFilter);
+      }
+      return combine(filters);
+   }
+
+   private static ResourceFilter combine(Set<ResourceFilter> filters)
+   {
+      if (filters.size() == 1)
+         return filters.iterator().next();
+      return new AnyResourceFilter(filters.toArray(new ResourceFilter[filters.size()]));
+   }
+
+   /**
+    * Get the scan of a module.
+    *
+    * @param module the module
+    * @param settings the scan settings, e.g. whether annotations are forced or kept
+    * @return the scan result or null if the module was not scanned with these settings yet
+    */
+   public AnnotationScanResult getResult(Module module, Object settings)
+   {
+      if (module == null)
+         throw new IllegalArgumentException("Null module");
+
+      return results.get(new ScanKey(module, settings));
+   }
+
+   /**
+    * Attach the existing scan of the module to the unit.
+    *
+    * @param unit the deployment unit
+    * @param module the module
+    * @param settings the scan settings
+    * @return true if the module was already scanned with these settings
+    */
+   public boolean attachResult(DeploymentUnit unit, Module module, Object settings)
+   {
+      AnnotationScanResult result = getResult(module, settings);
+      if (result == null)
+         return false;
+
+      result.addConsumer();
+      if (log.isTraceEnabled())
+         log.trace("Reusing annotation scan of " + result.getOwner() + " for " + unit.getName() + ": " + result);
+
+      unit.addAttachment(AnnotationScanResult.class, result);
+      unit.addAttachment(AnnotationEnvironment.class, result.getEnv());
+      return true;
+   }
+
+   /**
+    * Remember the scan of a module and attach it to the unit.
+    *
+    * @param unit the deployment unit
+    * @param module the module
+    * @param settings the scan settings
+    * @param visitor the visitor that did the scan
+    * @return the scan result
+    */
+   public AnnotationScanResult addResult(DeploymentUnit unit, Module module, Object settings, GenericAnnotationResourceVisitor visitor)
+   {
+      if (module == null)
+         throw new IllegalArgumentException("Null module");
+
+      AnnotationScanResult result = new AnnotationScanResult(unit.getName(), visitor.getEnv(), visitor.getReads());
+      results.put(new ScanKey(module, settings), result);
+      if (log.isTraceEnabled())
+         log.trace("Scanned " + unit.getName() + ": " + result);
+
+      unit.addAttachment(AnnotationScanResult.class, result);
+      unit.addAttachment(AnnotationEnvironment.class, result.getEnv());
+      return result;
+   }
+
+   /**
+    * Forget the scan of a module, if the unit did it.
+    *
+    * @param unit the deployment unit
+    * @param module the module
+    * @param settings the scan settings
+    */
+   public void removeResult(DeploymentUnit unit, Module module, Object settings)
+   {
+      if (module == null)
+         return;
+
+      ScanKey key = new ScanKey(module, settings);
+      AnnotationScanResult result = results.get(key);
+      if (result != null && result.getOwner().equals(unit.getName()))
+         results.remove(key);
+   }
+
+   /**
+    * Get the maximum number of structure scans kept.
+    *
+    * @return the maximum number of structure scans
+    */
+   public int getMaxStructures()
+   {
+      return maxStructures;
+   }
+
+   /**
+    * Set the maximum number of structure scans kept.
+    *
+    * @param maxStructures the maximum number of structure scans
+    */
+   public void setMaxStructures(int maxStructures)
+   {
+      if (maxStructures < 0)
+         throw new IllegalArgumentException("Illegal max structures: " + maxStructures);
+      this.maxStructures = maxStructures;
+   }
+
+   /**
+    * Get the structure scan of a root.
+    *
+    * @param root the root
+    * @param fingerprint the current fingerprint of the root
+    * @return the annotation environment or null if the root was not scanned yet,
+    *         its scan was evicted or taken from a different fingerprint
+    */
+   public AnnotationEnvironment getStructureEnvironment(Object root, long fingerprint)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("Null root");
+
+      synchronized (structures)
+      {
+         StructureScan scan = structures.get(root);
+         if (scan == null)
+            return null;
+         if (scan.fingerprint != fingerprint)
+         {
+            // the root changed, don't keep the stale scan and its classloader
+            structures.remove(root);
+            return null;
+         }
+         return scan.env;
+      }
+   }
+
+   /**
+    * Remember the structure scan of a root.
+    *
+    * The environment only holds its classloader weakly,
+    * the scan keeps it until the scan is evicted.
+    *
+    * @param root the root
+    * @param fingerprint the fingerprint of the root when it was scanned
+    * @param env the annotation environment
+    * @param classLoader the classloader the environment loads the classes from
+    */
+   public void putStructureEnvironment(Object root, long fingerprint, AnnotationEnvironment env, ClassLoader classLoader)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("Null root");
+      if (env == null)
+         throw new IllegalArgumentException("Null env");
+
+      synchronized (structures)
+      {
+         structures.put(root, new StructureScan(fingerprint, env, classLoader));
+      }
+   }
+
+   /**
+    * The interest of a consumer.
+    */
+   private static class Interest
+   {
+      private Set<String> annotationNames;
+      private ResourceFilter filter;
+      private ResourceFilter recurseFilter;
+
+      private Interest(Set<String> annotationNames, ResourceFilter filter, ResourceFilter recurseFilter)
+      {
+         this.annotationNames = annotationNames;
+         this.filter = filter;
+         this.recurseFilter = recurseFilter;
+      }
+   }
+
+   /**
+    * The key of a module scan.
+    */
+   private static class ScanKey
+   {
+      private Module module;
+      private Object settings;
+
+      private ScanKey(Module module, Object settings)
+      {
+         this.module = module;
+         this.settings = settings;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this)
+            return true;
+         if (obj instanceof ScanKey == false)
+            return false;
+         ScanKey other = (ScanKey) obj;
+         if (module.equals(other.module) == false)
+            return false;
+         return settings == null ? other.settings == null : settings.equals(other.settings);
+      }
+
+      public int hashCode()
+      {
+         return 31 * module.hashCode() + (settings != null ? settings.hashCode() : 0);
+      }
+   }
+
+   /**
+    * A structure scan, with the root's fingerprint and the classloader of its environment.
+    */
+   private static class StructureScan
+   {
+      private long fingerprint;
+      private AnnotationEnvironment env;
+      @SuppressWarnings("unused")
+      private ClassLoader classLoader;
+
+      private StructureScan(long fingerprint, AnnotationEnvironment env, ClassLoader classLoader)
+      {
+         this.fingerprint = fingerprint;
+         this.env = env;
+         this.classLoader = classLoader;
+      }
+   }
+
+   /**
+    * Accepts the resources any of the filters accepts.
+    */
+   private static class AnyResourceFilter implements ResourceFilter
+   {
+      private ResourceFilter[] filters;
+
+      private AnyResourceFilter(ResourceFilter[] filters)
+      {
+         this.filters = filters;
+      }
+
+      public boolean accepts(ResourceContext resource)
+      {
+         for (ResourceFilter filter : filters)
+         {
+            if (filter.accepts(resource))
+               return true;
+         }
+         return false;
+      }
+   }
+}
@@ -0,0 +1,139 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+
+/**
+ * The result of one annotation scan of a module,
+ * shared by all the deployers that need it.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationScanResult
+{
+   /** The name of the unit that did the scan */
+   private String owner;
+
+   /** The annotation environment */
+   private AnnotationEnvironment env;
+
+   /** The bytecode reads by class name */
+   private Map<String, Integer> reads;
+
+   /** The number of deployers using the result */
+   private AtomicInteger consumers = new AtomicInteger(1);
+
+   public AnnotationScanResult(String owner, AnnotationEnvironment env, Map<String, Integer> reads)
+   {
+      if (owner == null)
+         throw new IllegalArgumentException("Null owner");
+      if (env == null)
+         throw new IllegalArgumentException("Null env");
+      if (reads == null)
+         throw new IllegalArgumentException("Null reads");
+
+      this.owner = owner;
+      this.env = env;
+      this.reads = Collections.unmodifiableMap(reads);
+   }
+
+   /**
+    * Get the name of the unit that did the scan.
+    *
+    * @return the owner
+    */
+   public String getOwner()
+   {
+      return owner;
+   }
+
+   /**
+    * Get the annotation environment.
+    *
+    * @return the annotation environment
+    */
+   public AnnotationEnvironment getEnv()
+   {
+      return env;
+   }
+
+   /**
+    * Get the number of times the bytecode of each class was read.
+    *
+    * @return the reads by class name
+    */
+   public Map<String, Integer> getReads()
+   {
+      return reads;
+   }
+
+   /**
+    * Get the number of classes read.
+    *
+    * @return the number of classes
+    */
+   public int getClassesRead()
+   {
+      return reads.size();
+   }
+
+   /**
+    * Get the total number of bytecode reads.
+    *
+    * @return the number of reads
+    */
+   public int getBytecodeReads()
+   {
+      int total = 0;
+      for (Integer count : reads.values())
+         total += count;
+      return total;
+   }
+
+   /**
+    * Get the number of deployers using this result.
+    *
+    * @return the number of consumers
+    */
+   public int getConsumers()
+   {
+      return consumers.get();
+   }
+
+   /**
+    * Another deployer uses this result.
+    */
+   void addConsumer()
+   {
+      consumers.incrementAndGet();
+   }
+
+   public String toString()
+   {
+      return "AnnotationScanResult[owner=" + owner + ", classes=" + getClassesRead() + ", reads=" + getBytecodeReads() + ", consumers=" + getConsumers() + "]";
+   }
+}
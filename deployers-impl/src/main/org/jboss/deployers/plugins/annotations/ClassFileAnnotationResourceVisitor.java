@@ -0,0 +1,276 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.logging.Logger;
+import org.jboss.metadata.spi.signature.ConstructorParametersSignature;
+import org.jboss.metadata.spi.signature.ConstructorSignature;
+import org.jboss.metadata.spi.signature.FieldSignature;
+import org.jboss.metadata.spi.signature.MethodParametersSignature;
+import org.jboss.metadata.spi.signature.MethodSignature;
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * Annotation visitor that reads the class files directly.<p>
+ *
+ * The constant pool and the RuntimeVisibleAnnotations and
+ * RuntimeVisibleParameterAnnotations attributes are parsed from the class file bytes,
+ * without building a javassist CtClass or annotation proxies.
+ * Super classes and interfaces are read from the classloader's resources.
+ * Annotations are read on demand from the Element, as the environment
+ * is only given the annotation types.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class ClassFileAnnotationResourceVisitor extends GenericAnnotationResourceVisitor
+{
+   private static final Logger log = Logger.getLogger(ClassFileAnnotationResourceVisitor.class);
+
+   /** The classloader */
+   private ClassLoader classLoader;
+
+   /** The loaded annotation classes, null for the ones that are not available */
+   private Map<String, Class<? extends Annotation>> annotationClasses = new HashMap<String, Class<? extends Annotation>>();
+
+   public ClassFileAnnotationResourceVisitor(ClassLoader classLoader)
+   {
+      this(new DefaultAnnotationEnvironment(classLoader));
+   }
+
+   public ClassFileAnnotationResourceVisitor(DefaultAnnotationEnvironment env)
+   {
+      super(env);
+      this.classLoader = env.getClassLoader();
+   }
+
+   protected void handleResource(ResourceContext resource, List<CommitElement> commit) throws Exception
+   {
+      TypeSummary summary = getTypeSummary(resource);
+      if (summary != null)
+      {
+         applyTypeSummary(summary, commit);
+         return;
+      }
+
+      InputStream stream = resource.getInputStream();
+      if (stream == null)
+         throw new IllegalArgumentException("Null resource input stream: " + resource);
+
+      AnnotationClassFile classFile = new AnnotationClassFile(readBytes(stream), getAnnotationDescriptors());
+      if (classFile.isRejected())
+         handleRejected(resource, classFile, commit);
+      else
+         handleClassFile(classFile, commit);
+   }
+
+   /**
+    * Handle class file for annotations.
+    *
+    * @param classFile the class file
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleClassFile(AnnotationClassFile classFile, List<CommitElement> commit) throws Exception
+   {
+      String className = classFile.getClassName();
+      TypeSummary summary = getTypeSummary(className);
+      if (summary == null && classFile.isRejected())
+      {
+         handleRejected(classFile, commit);
+         return;
+      }
+      if (summary == null)
+      {
+         summary = new TypeSummary();
+         if (isCheckInterfaces() == false && classFile.isInterface())
+         {
+            if (log.isTraceEnabled())
+               log.trace("Skipping interface: " + className);
+         }
+         else
+         {
+            if (log.isTraceEnabled())
+               log.trace("Scanning class " + className + " for annotations");
+
+            handleMembers(classFile, className, summary.getEntries());
+
+            if (isCheckInterfaces())
+            {
+               // interfaces
+               for (String intf : classFile.getInterfaces())
+                  summary.addSupertype(intf);
+            }
+
+            // super class
+            summary.addSupertype(classFile.getSuperClassName());
+         }
+         putTypeSummary(className, summary);
+      }
+      applyTypeSummary(summary, commit);
+   }
+
+   /**
+    * Handle the annotations of the class and its members.
+    *
+    * @param classFile the class file
+    * @param className the class name
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleMembers(AnnotationClassFile classFile, String className, List<CommitElement> commit) throws Exception
+   {
+      handleAnnotationNames(ElementType.TYPE, null, classFile.getAnnotations(), className, commit);
+
+      for (AnnotationClassFile.Member method : classFile.getMethods())
+      {
+         String name = method.getName();
+         if ("<clinit>".equals(name))
+            continue;
+
+         boolean constructor = "<init>".equals(name);
+         String[] parameters = method.getParameterTypes();
+         String[] annotations = method.getAnnotations();
+         if (annotations.length > 0)
+         {
+            if (constructor)
+               handleAnnotationNames(ElementType.CONSTRUCTOR, new ConstructorSignature(parameters), annotations, className, commit);
+            else
+               handleAnnotationNames(ElementType.METHOD, new MethodSignature(name, parameters), annotations, className, commit);
+         }
+
+         String[][] parameterAnnotations = method.getParameterAnnotations();
+         if (parameterAnnotations != null)
+         {
+            for (int index = 0; index < parameterAnnotations.length; index++)
+            {
+               if (parameterAnnotations[index].length == 0)
+                  continue;
+
+               Signature signature;
+               if (constructor)
+                  signature = new ConstructorParametersSignature(parameters, index);
+               else
+                  signature = new MethodParametersSignature(name, parameters, index);
+               handleAnnotationNames(ElementType.PARAMETER, signature, parameterAnnotations[index], className, commit);
+            }
+         }
+      }
+
+      for (AnnotationClassFile.Member field : classFile.getFields())
+         handleAnnotationNames(ElementType.FIELD, new FieldSignature(field.getName()), field.getAnnotations(), className, commit);
+   }
+
+   protected void handleSupertype(String className, List<CommitElement> commit) throws Exception
+   {
+      TypeSummary summary = getTypeSummary(className);
+      if (summary != null)
+         applyTypeSummary(summary, commit);
+      else
+         handleClassFile(readClassFile(className), commit);
+   }
+
+   /**
+    * Read the class file of a super class or interface.
+    *
+    * @param className the class name
+    * @return the class file
+    * @throws IOException for any error
+    */
+   protected AnnotationClassFile readClassFile(String className) throws IOException
+   {
+      InputStream stream = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+      if (stream == null)
+         throw new FileNotFoundException("No class file for " + className);
+
+      return new AnnotationClassFile(readBytes(stream), getAnnotationDescriptors());
+   }
+
+   /**
+    * Handle annotation names.
+    *
+    * @param type where we found the annotations
+    * @param signature the signature
+    * @param annotations the annotation type names
+    * @param className the className
+    * @param commit the commit list
+    * @throws ClassNotFoundException when annotations are forced and one is not available
+    */
+   protected void handleAnnotationNames(ElementType type, Signature signature, String[] annotations, String className, List<CommitElement> commit) throws ClassNotFoundException
+   {
+      for (String annotation : annotations)
+      {
+         Class<? extends Annotation> annClass = getAnnotationClass(annotation);
+         if (annClass != null)
+            commit.add(new CommitElement(annClass, type, className, signature));
+      }
+   }
+
+   /**
+    * Get the annotation class.
+    *
+    * @param annotation the annotation type name
+    * @return the annotation class or null if it is not available
+    * @throws ClassNotFoundException when annotations are forced and it is not available
+    */
+   protected Class<? extends Annotation> getAnnotationClass(String annotation) throws ClassNotFoundException
+   {
+      if (annotationClasses.containsKey(annotation))
+      {
+         Class<? extends Annotation> result = annotationClasses.get(annotation);
+         if (result == null && isForceAnnotations())
+            throw new ClassNotFoundException(annotation);
+         return result;
+      }
+
+      Class<? extends Annotation> result = null;
+      try
+      {
+         Class<?> clazz = Class.forName(annotation, false, classLoader);
+         if (clazz.isAnnotation())
+            result = clazz.asSubclass(Annotation.class);
+      }
+      catch (ClassNotFoundException e)
+      {
+         annotationClasses.put(annotation, null);
+         if (isForceAnnotations())
+            throw e;
+         return null;
+      }
+      catch (LinkageError e)
+      {
+         if (log.isTraceEnabled())
+            log.trace("Cannot load annotation " + annotation + ": " + e);
+      }
+      annotationClasses.put(annotation, result);
+      return result;
+   }
+}
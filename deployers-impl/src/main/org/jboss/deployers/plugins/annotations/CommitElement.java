@@ -37,13 +37,20 @@ import org.jboss.metadata.spi.signature.Signature;
 class CommitElement
 {
    private Annotation annotation;
+   private Class<? extends Annotation> annotationType;
    private ElementType type;
    private String className;
    private Signature signature;
 
    CommitElement(Annotation annotation, ElementType type, String className, Signature signature)
    {
+      this(annotation.annotationType(), type, className, signature);
       this.annotation = annotation;
+   }
+
+   CommitElement(Class<? extends Annotation> annotationType, ElementType type, String className, Signature signature)
+   {
+      this.annotationType = annotationType;
       this.type = type;
       this.className = className;
       this.signature = signature;
@@ -59,6 +66,16 @@ class CommitElement
       return annotation;
    }
 
+   /**
+    * Get the annotation type.
+    *
+    * @return the annotation type
+    */
+   public Class<? extends Annotation> getAnnotationType()
+   {
+      return annotationType;
+   }
+
    /**
     * Get element type.
     *
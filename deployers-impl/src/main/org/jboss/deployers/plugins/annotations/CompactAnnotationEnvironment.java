@@ -0,0 +1,421 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * Compact annotation environment.<p>
+ *
+ * Class names and parameter types are interned once and referenced by id.
+ * Every annotation and element type has a column of class name ids and signature offsets
+ * held in int arrays, signatures are encoded as ids in a single int array
+ * and only decoded when a query needs them.
+ * This keeps a hit at a few ints instead of a pair, signature and set entry.<p>
+ *
+ * Annotation instances are never kept, elements read them on demand.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class CompactAnnotationEnvironment extends DefaultAnnotationEnvironment
+{
+   /** The serial version UID */
+   private static final long serialVersionUID = 1L;
+
+   /** No signature */
+   private static final int NO_SIGNATURE = -1;
+
+   /** The element types */
+   private static final ElementType[] TYPES = ElementType.values();
+
+   /** The interned names */
+   private transient String[] names;
+
+   /** The number of names */
+   private transient int nameCount;
+
+   /** The name ids + 1 by hash */
+   private transient int[] nameTable;
+
+   /** The encoded signatures: kind, name id, parameter count, parameter ids, parameter index */
+   private transient int[] signatures;
+
+   /** The used length of the signatures */
+   private transient int signaturesLength;
+
+   /** The signature offsets + 1 by hash */
+   private transient int[] signatureTable;
+
+   /** The number of signatures */
+   private transient int signatureCount;
+
+   /** The columns per annotation, by element type */
+   private transient Map<Class<? extends Annotation>, Column[]> columns;
+
+   public CompactAnnotationEnvironment(ClassLoader classLoader)
+   {
+      super(classLoader);
+      names = new String[64];
+      nameTable = new int[128];
+      signatures = new int[256];
+      signatureTable = new int[64];
+      columns = new HashMap<Class<? extends Annotation>, Column[]>();
+   }
+
+   /**
+    * Get the columns.
+    *
+    * @return the columns
+    */
+   protected Map<Class<? extends Annotation>, Column[]> getColumns()
+   {
+      if (columns == null)
+         throw new IllegalArgumentException("Null columns, previously serialized?");
+
+      return columns;
+   }
+
+   void putPair(Class<? extends Annotation> annClass, ElementType type, ClassSignaturePair pair)
+   {
+      resetQueries();
+
+      Map<Class<? extends Annotation>, Column[]> columns = getColumns();
+      Column[] byType = columns.get(annClass);
+      if (byType == null)
+      {
+         byType = new Column[TYPES.length];
+         columns.put(annClass, byType);
+      }
+      Column column = byType[type.ordinal()];
+      if (column == null)
+      {
+         column = new Column();
+         byType[type.ordinal()] = column;
+      }
+      column.add(internName(pair.getClassName()), internSignature(pair.getSignature()));
+   }
+
+   void copyTo(DefaultAnnotationEnvironment target)
+   {
+      for (Map.Entry<Class<? extends Annotation>, Column[]> entry : getColumns().entrySet())
+      {
+         Column[] byType = entry.getValue();
+         for (int i = 0; i < byType.length; i++)
+         {
+            Column column = byType[i];
+            if (column == null)
+               continue;
+
+            for (int j = 0; j < column.size; j++)
+               target.putPair(entry.getKey(), TYPES[i], getPair(column, j));
+         }
+      }
+   }
+
+   protected Set<Class<? extends Annotation>> getAnnotationClasses()
+   {
+      return getColumns().keySet();
+   }
+
+   protected Set<ClassSignaturePair> getCSPairs(Class<? extends Annotation> annClass, ElementType type)
+   {
+      Column column = getColumn(annClass, type);
+      if (column == null)
+         return Collections.emptySet();
+
+      Set<ClassSignaturePair> pairs = new HashSet<ClassSignaturePair>(column.size * 2);
+      for (int i = 0; i < column.size; i++)
+         pairs.add(getPair(column, i));
+      return pairs;
+   }
+
+   public boolean hasClassAnnotatedWith(Class<? extends Annotation> annotation)
+   {
+      return getColumn(annotation, ElementType.TYPE) != null;
+   }
+
+   /**
+    * Get the number of annotation hits.
+    *
+    * @return the number of hits
+    */
+   public int size()
+   {
+      int size = 0;
+      for (Column[] byType : getColumns().values())
+      {
+         for (Column column : byType)
+         {
+            if (column != null)
+               size += column.size;
+         }
+      }
+      return size;
+   }
+
+   /**
+    * Get the bytes retained by the columns, the name and signature tables.<p>
+    *
+    * Counts 4 bytes per int and reference plus a 16 byte header per array and column,
+    * the interned strings and the annotation map are not included.
+    *
+    * @return the retained size in bytes
+    */
+   public long getRetainedSize()
+   {
+      long size = arraySize(names.length) + arraySize(nameTable.length)
+            + arraySize(signatures.length) + arraySize(signatureTable.length);
+      for (Column[] byType : getColumns().values())
+      {
+         size += arraySize(byType.length);
+         for (Column column : byType)
+         {
+            if (column != null)
+               size += 16 + arraySize(column.classIds.length) + arraySize(column.signatures.length) + arraySize(column.table.length);
+         }
+      }
+      return size;
+   }
+
+   private static long arraySize(int length)
+   {
+      return 16 + 4L * length;
+   }
+
+   private Column getColumn(Class<? extends Annotation> annClass, ElementType type)
+   {
+      Column[] byType = getColumns().get(annClass);
+      if (byType == null)
+         return null;
+      Column column = byType[type.ordinal()];
+      if (column == null || column.size == 0)
+         return null;
+      return column;
+   }
+
+   private ClassSignaturePair getPair(Column column, int index)
+   {
+      return new ClassSignaturePair(names[column.classIds[index]], decodeSignature(column.signatures[index]));
+   }
+
+   private int internName(String name)
+   {
+      int mask = nameTable.length - 1;
+      int slot = hash(name.hashCode()) & mask;
+      while (nameTable[slot] != 0)
+      {
+         int id = nameTable[slot] - 1;
+         if (names[id].equals(name))
+            return id;
+         slot = (slot + 1) & mask;
+      }
+
+      int id = nameCount++;
+      if (id == names.length)
+      {
+         String[] grown = new String[names.length * 2];
+         System.arraycopy(names, 0, grown, 0, id);
+         names = grown;
+      }
+      names[id] = name;
+      nameTable[slot] = id + 1;
+      if (nameCount * 2 > nameTable.length)
+         nameTable = rehashNames(nameTable.length * 2);
+      return id;
+   }
+
+   private int[] rehashNames(int length)
+   {
+      int[] table = new int[length];
+      int mask = length - 1;
+      for (int id = 0; id < nameCount; id++)
+      {
+         int slot = hash(names[id].hashCode()) & mask;
+         while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+         table[slot] = id + 1;
+      }
+      return table;
+   }
+
+   private int internSignature(Signature signature)
+   {
+      if (signature == null)
+         return NO_SIGNATURE;
+
+      SignatureKind kind = SignatureKind.getKind(signature);
+      String name = signature.getName();
+      String[] parameters = signature.getParameters();
+      int count = parameters != null ? parameters.length : 0;
+      int length = count + 4;
+      ensureSignatures(length);
+
+      // encode after the used part, it stays there if the signature is new
+      int offset = signaturesLength;
+      signatures[offset] = kind.ordinal();
+      signatures[offset + 1] = name != null ? internName(name) : -1;
+      signatures[offset + 2] = count;
+      for (int i = 0; i < count; i++)
+         signatures[offset + 3 + i] = internName(parameters[i]);
+      signatures[offset + 3 + count] = kind.getParam(signature);
+
+      int mask = signatureTable.length - 1;
+      int slot = hashSignature(offset) & mask;
+      while (signatureTable[slot] != 0)
+      {
+         int existing = signatureTable[slot] - 1;
+         if (equalSignatures(existing, offset))
+            return existing;
+         slot = (slot + 1) & mask;
+      }
+
+      signaturesLength += length;
+      signatureTable[slot] = offset + 1;
+      if (++signatureCount * 2 > signatureTable.length)
+         rehashSignatures(signatureTable.length * 2);
+      return offset;
+   }
+
+   private void ensureSignatures(int length)
+   {
+      if (signaturesLength + length > signatures.length)
+      {
+         int[] grown = new int[Math.max(signatures.length * 2, signaturesLength + length)];
+         System.arraycopy(signatures, 0, grown, 0, signaturesLength);
+         signatures = grown;
+      }
+   }
+
+   private int hashSignature(int offset)
+   {
+      int length = signatures[offset + 2] + 4;
+      int hash = 1;
+      for (int i = 0; i < length; i++)
+         hash = 31 * hash + signatures[offset + i];
+      return hash(hash);
+   }
+
+   private boolean equalSignatures(int offset1, int offset2)
+   {
+      int length = signatures[offset1 + 2] + 4;
+      if (signatures[offset2 + 2] + 4 != length)
+         return false;
+      for (int i = 0; i < length; i++)
+      {
+         if (signatures[offset1 + i] != signatures[offset2 + i])
+            return false;
+      }
+      return true;
+   }
+
+   private void rehashSignatures(int length)
+   {
+      int[] table = new int[length];
+      int mask = length - 1;
+      for (int offset = 0; offset < signaturesLength; offset += signatures[offset + 2] + 4)
+      {
+         int slot = hashSignature(offset) & mask;
+         while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+         table[slot] = offset + 1;
+      }
+      signatureTable = table;
+   }
+
+   private Signature decodeSignature(int offset)
+   {
+      if (offset == NO_SIGNATURE)
+         return null;
+
+      SignatureKind kind = SignatureKind.valueOf(signatures[offset]);
+      int name = signatures[offset + 1];
+      int count = signatures[offset + 2];
+      String[] parameters = new String[count];
+      for (int i = 0; i < count; i++)
+         parameters[i] = names[signatures[offset + 3 + i]];
+      return kind.createSignature(name >= 0 ? names[name] : null, parameters, signatures[offset + 3 + count]);
+   }
+
+   private static int hash(int hash)
+   {
+      hash ^= (hash >>> 20) ^ (hash >>> 12);
+      return hash ^ (hash >>> 7) ^ (hash >>> 4);
+   }
+
+   /**
+    * The class name ids and signature offsets of one annotation and element type.
+    */
+   protected static class Column
+   {
+      private int[] classIds = new int[4];
+      private int[] signatures = new int[4];
+      private int size;
+      private int[] table = new int[8];
+
+      private void add(int classId, int signature)
+      {
+         int mask = table.length - 1;
+         int slot = hash(31 * classId + signature) & mask;
+         while (table[slot] != 0)
+         {
+            int index = table[slot] - 1;
+            if (classIds[index] == classId && signatures[index] == signature)
+               return;
+            slot = (slot + 1) & mask;
+         }
+
+         if (size == classIds.length)
+         {
+            int[] grown = new int[size * 2];
+            System.arraycopy(classIds, 0, grown, 0, size);
+            classIds = grown;
+            grown = new int[size * 2];
+            System.arraycopy(signatures, 0, grown, 0, size);
+            signatures = grown;
+         }
+         classIds[size] = classId;
+         signatures[size] = signature;
+         table[slot] = ++size;
+
+         if (size * 2 > table.length)
+         {
+            table = new int[table.length * 2];
+            mask = table.length - 1;
+            for (int index = 0; index < size; index++)
+            {
+               slot = hash(31 * classIds[index] + signatures[index]) & mask;
+               while (table[slot] != 0)
+                  slot = (slot + 1) & mask;
+               table[slot] = index + 1;
+            }
+         }
+      }
+   }
+}
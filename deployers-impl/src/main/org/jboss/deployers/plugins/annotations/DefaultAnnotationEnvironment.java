@@ -33,9 +33,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.annotations.AnnotationNameEnvironment;
+import org.jboss.deployers.spi.annotations.AnnotationQuery;
 import org.jboss.deployers.spi.annotations.Element;
+import org.jboss.deployers.spi.annotations.NamedElement;
 import org.jboss.logging.Logger;
 import org.jboss.metadata.spi.signature.Signature;
 import org.jboss.util.collection.CollectionsFactory;
@@ -45,7 +49,7 @@ import org.jboss.util.collection.CollectionsFactory;
  *
  * @author <a href="mailto:ales.justin@jboss.com">Ales Justin</a>
  */
-public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implements AnnotationEnvironment, Serializable
+public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implements AnnotationEnvironment, AnnotationNameEnvironment, Serializable
 {
    /** The serial version UID */
    private static final long serialVersionUID = 1L;
@@ -55,6 +59,8 @@ public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implemen
    private transient Map<Class<? extends Annotation>, Map<ElementType, Set<ClassSignaturePair>>> env;
    /** Should we keep the annotation */
    private boolean keepAnnotations;
+   /** The cached name queries */
+   private transient Map<AnnotationQuery, Set<NamedElement>> queries;
 
    public DefaultAnnotationEnvironment(ClassLoader classLoader)
    {
@@ -95,11 +101,42 @@ public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implemen
     */
    void putAnnotation(Annotation annotation, ElementType type, String className, Signature signature)
    {
-      Class<? extends Annotation> annClass = annotation.annotationType();
+      putAnnotation(annotation.annotationType(), annotation, type, className, signature);
+   }
 
+   /**
+    * Put the annotation info.
+    *
+    * @param annClass the annotation class
+    * @param annotation the annotation, null if it should be read on demand
+    * @param type the annotation type
+    * @param className the class name
+    * @param signature the signature
+    */
+   void putAnnotation(Class<? extends Annotation> annClass, Annotation annotation, ElementType type, String className, Signature signature)
+   {
       if (log.isTraceEnabled())
          log.trace("Adding annotation @" + annClass.getSimpleName() + " for " + className + " at type " + type + ", signature: " + signature);
 
+      ClassSignaturePair pair;
+      if (keepAnnotations)
+         pair = new ClassSignaturePair(className, signature, annotation);
+      else
+         pair = new ClassSignaturePair(className, signature);
+      putPair(annClass, type, pair);
+   }
+
+   /**
+    * Put the class signature pair.
+    *
+    * @param annClass the annotation class
+    * @param type the annotation type
+    * @param pair the class signature pair
+    */
+   void putPair(Class<? extends Annotation> annClass, ElementType type, ClassSignaturePair pair)
+   {
+      resetQueries();
+
       Map<Class<? extends Annotation>, Map<ElementType, Set<ClassSignaturePair>>> env = getEnv();
 
       Map<ElementType, Set<ClassSignaturePair>> elements = env.get(annClass);
@@ -115,15 +152,46 @@ public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implemen
          classes = CollectionsFactory.createLazySet();
          elements.put(type, classes);
       }
-
-      ClassSignaturePair pair;
-      if (keepAnnotations)
-         pair = new ClassSignaturePair(className, signature, annotation);
-      else
-         pair = new ClassSignaturePair(className, signature);
       classes.add(pair);
    }
 
+   /**
+    * Add all the annotation info of another environment.
+    *
+    * @param other the other environment
+    */
+   void merge(DefaultAnnotationEnvironment other)
+   {
+      other.copyTo(this);
+   }
+
+   /**
+    * Put all the annotation info into another environment.
+    *
+    * @param target the target environment
+    */
+   void copyTo(DefaultAnnotationEnvironment target)
+   {
+      for (Map.Entry<Class<? extends Annotation>, Map<ElementType, Set<ClassSignaturePair>>> entry : getEnv().entrySet())
+      {
+         for (Map.Entry<ElementType, Set<ClassSignaturePair>> elements : entry.getValue().entrySet())
+         {
+            for (ClassSignaturePair pair : elements.getValue())
+               target.putPair(entry.getKey(), elements.getKey(), pair);
+         }
+      }
+   }
+
+   /**
+    * Get the annotation classes we hold info for.
+    *
+    * @return the annotation classes
+    */
+   protected Set<Class<? extends Annotation>> getAnnotationClasses()
+   {
+      return getEnv().keySet();
+   }
+
    /**
     * Get matching cs pairs.
     *
@@ -181,6 +249,102 @@ public class DefaultAnnotationEnvironment extends WeakClassLoaderHolder implemen
       return elements;
    }
 
+   /**
+    * Drop the cached name queries, the info changed.
+    */
+   void resetQueries()
+   {
+      if (queries != null && queries.isEmpty() == false)
+         queries.clear();
+   }
+
+   /**
+    * Find the elements matching the query.
+    *
+    * Only the annotation classes are inspected,
+    * the owner classes are never loaded.
+    *
+    * @param query the query
+    * @return the matching elements
+    */
+   protected Set<NamedElement> findNamedElements(AnnotationQuery query)
+   {
+      ElementType[] types = ElementType.values();
+      if (query.getElementType() != null)
+         types = new ElementType[]{query.getElementType()};
+
+      Set<NamedElement> elements = new HashSet<NamedElement>();
+      for (Class<? extends Annotation> annClass : getAnnotationClasses())
+      {
+         if (matches(query, annClass) == false)
+            continue;
+
+         String annotationName = annClass.getName();
+         for (ElementType type : types)
+         {
+            for (ClassSignaturePair pair : getCSPairs(annClass, type))
+            {
+               if (query.matchesOwner(pair.getClassName()))
+                  elements.add(new DefaultNamedElement(pair.getClassName(), annotationName, type, pair.getSignature()));
+            }
+         }
+      }
+      return elements;
+   }
+
+   /**
+    * Does the annotation class match the query.
+    *
+    * @param query the query
+    * @param annClass the annotation class
+    * @return true if the annotation matches
+    */
+   protected boolean matches(AnnotationQuery query, Class<? extends Annotation> annClass)
+   {
+      if (query.isMetaAnnotation() == false)
+         return query.getAnnotationName().equals(annClass.getName());
+
+      for (Annotation annotation : annClass.getAnnotations())
+      {
+         if (query.getAnnotationName().equals(annotation.annotationType().getName()))
+            return true;
+      }
+      return false;
+   }
+
+   public Set<NamedElement> getNamedElements(AnnotationQuery query)
+   {
+      if (query == null)
+         throw new IllegalArgumentException("Null query");
+
+      Map<AnnotationQuery, Set<NamedElement>> queries = this.queries;
+      if (queries == null)
+      {
+         queries = new ConcurrentHashMap<AnnotationQuery, Set<NamedElement>>();
+         this.queries = queries;
+      }
+
+      Set<NamedElement> elements = queries.get(query);
+      if (elements == null)
+      {
+         elements = Collections.unmodifiableSet(findNamedElements(query));
+         queries.put(query, elements);
+      }
+      return elements;
+   }
+
+   public Set<String> getClassNamesAnnotatedWith(String annotationName)
+   {
+      Set<NamedElement> elements = getNamedElements(AnnotationQuery.annotatedWith(annotationName, ElementType.TYPE));
+      if (elements.isEmpty())
+         return Collections.emptySet();
+
+      Set<String> classNames = new HashSet<String>();
+      for (NamedElement element : elements)
+         classNames.add(element.getOwnerClassName());
+      return classNames;
+   }
+
    public boolean hasClassAnnotatedWith(Class<? extends Annotation> annotation)
    {
       return getCSPairs(annotation, ElementType.TYPE).isEmpty() == false;
@@ -0,0 +1,110 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+
+import org.jboss.deployers.spi.annotations.NamedElement;
+import org.jboss.metadata.spi.signature.Signature;
+import org.jboss.util.JBossObject;
+import org.jboss.util.JBossStringBuilder;
+
+/**
+ * Default named element.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DefaultNamedElement extends JBossObject implements NamedElement, Serializable
+{
+   /** The serial version UID */
+   private static final long serialVersionUID = 1L;
+
+   private String className;
+   private String annotationName;
+   private ElementType elementType;
+   private Signature signature;
+
+   public DefaultNamedElement(String className, String annotationName, ElementType elementType, Signature signature)
+   {
+      if (className == null)
+         throw new IllegalArgumentException("Null class name");
+      if (annotationName == null)
+         throw new IllegalArgumentException("Null annotation name");
+      if (elementType == null)
+         throw new IllegalArgumentException("Null element type");
+
+      this.className = className;
+      this.annotationName = annotationName;
+      this.elementType = elementType;
+      this.signature = signature;
+   }
+
+   public String getOwnerClassName()
+   {
+      return className;
+   }
+
+   public String getAnnotationName()
+   {
+      return annotationName;
+   }
+
+   public ElementType getElementType()
+   {
+      return elementType;
+   }
+
+   public Signature getSignature()
+   {
+      return signature;
+   }
+
+   protected void toString(JBossStringBuilder buffer)
+   {
+      buffer.append("@").append(annotationName);
+      buffer.append(" on ").append(className);
+      buffer.append(" ").append(elementType);
+      if (signature != null)
+         buffer.append(" ").append(signature);
+   }
+
+   protected int getHashCode()
+   {
+      int hash = className.hashCode() + 3 * annotationName.hashCode() + 5 * elementType.hashCode();
+      if (signature != null)
+         hash += 7 * signature.hashCode();
+      return hash;
+   }
+
+   public boolean equals(Object obj)
+   {
+      if (obj instanceof DefaultNamedElement == false)
+         return false;
+
+      DefaultNamedElement other = (DefaultNamedElement)obj;
+      return className.equals(other.className)
+            && annotationName.equals(other.annotationName)
+            && elementType == other.elementType
+            && equals(signature, other.signature);
+   }
+}
@@ -21,6 +21,8 @@
 */
 package org.jboss.deployers.plugins.annotations;
 
+import java.util.Arrays;
+
 import org.jboss.classloading.spi.visitor.ResourceFilter;
 import org.jboss.classloading.spi.dependency.Module;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
@@ -31,6 +33,8 @@ import org.jboss.deployers.structure.spi.DeploymentUnit;
  * It first checks if there are some filters present
  * in deployment unit as attachment,
  * else falls back to deployers filters.
+ * With a scan registry the deployers filters are registered as its interest
+ * and the shared scan uses the filters of all the interests.
  *
  * @author <a href="mailto:ales.justin@jboss.com">Ales Justin</a>
  */
@@ -70,13 +74,31 @@ public class FilteredGenericAnnotationDeployer extends ScopedGenericAnnotationDe
     */
    protected void visitModule(DeploymentUnit unit, Module module, GenericAnnotationResourceVisitor visitor)
    {
-      ResourceFilter filter = getFilter(unit, ResourceFilter.class, "resource", resourceFilter);
+      AnnotationScanRegistry registry = getScanRegistry();
+      ResourceFilter filter = getFilter(unit, ResourceFilter.class, "resource", registry != null ? null : resourceFilter);
       if (filter == null)
          filter = visitor.getFilter();
-      ResourceFilter recurse = getFilter(unit, ResourceFilter.class, "recurse", recurseFilter);
+      ResourceFilter recurse = getFilter(unit, ResourceFilter.class, "recurse", registry != null ? registry.getRecurseFilter() : recurseFilter);
       module.visit(visitor, filter, recurse, getUrls(unit));
    }
 
+   protected ResourceFilter getInterestResourceFilter()
+   {
+      return resourceFilter;
+   }
+
+   protected ResourceFilter getInterestRecurseFilter()
+   {
+      return recurseFilter;
+   }
+
+   protected Object getScanSettings(DeploymentUnit unit)
+   {
+      ResourceFilter filter = getFilter(unit, ResourceFilter.class, "resource", null);
+      ResourceFilter recurse = getFilter(unit, ResourceFilter.class, "recurse", null);
+      return Arrays.asList(super.getScanSettings(unit), filter, recurse);
+   }
+
    /**
     * Set resource filter.
     *
@@ -22,11 +22,17 @@
 package org.jboss.deployers.plugins.annotations;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import javassist.ClassPath;
 import javassist.ClassPool;
 import javassist.LoaderClassPath;
 import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceFilter;
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
 import org.jboss.deployers.spi.deployer.DeploymentStages;
@@ -43,6 +49,14 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
    private boolean forceAnnotations;
    private boolean keepAnnotations;
    private boolean checkInterfaces;
+   private boolean useJavassist;
+   private boolean compactEnvironment;
+   private int parallelism;
+   private Executor executor;
+   private AnnotationIndex annotationIndex;
+   private AnnotationRootCache rootCache;
+   private AnnotationScanRegistry scanRegistry;
+   private Set<String> annotationNames;
 
    public GenericAnnotationDeployer()
    {
@@ -50,6 +64,8 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
       setStage(DeploymentStages.POST_CLASSLOADER);
       setOutput(AnnotationEnvironment.class);
       checkInterfaces = true;
+      useJavassist = true;
+      parallelism = 1;
    }
 
    /**
@@ -82,6 +98,190 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
       this.checkInterfaces = checkInterfaces;
    }
 
+   /**
+    * Should we use javassist to read the classes.
+    *
+    * Otherwise the annotations are read directly from the class files,
+    * see ClassFileAnnotationResourceVisitor.
+    *
+    * @param useJavassist the use javassist flag
+    */
+   public void setUseJavassist(boolean useJavassist)
+   {
+      this.useJavassist = useJavassist;
+   }
+
+   /**
+    * Should we keep the annotation info in a compact environment.
+    *
+    * It needs less heap for large modules,
+    * see CompactAnnotationEnvironment.
+    *
+    * @param compactEnvironment the compact environment flag
+    */
+   public void setCompactEnvironment(boolean compactEnvironment)
+   {
+      this.compactEnvironment = compactEnvironment;
+   }
+
+   /**
+    * Set the number of threads scanning the roots of a module.
+    *
+    * With more than one thread each classpath root is
+    * scanned by its own worker, the results are merged
+    * into the unit's annotation environment.
+    *
+    * @param parallelism the parallelism
+    */
+   public void setParallelism(int parallelism)
+   {
+      if (parallelism < 1)
+         throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+      this.parallelism = parallelism;
+   }
+
+   /**
+    * Set the executor of the parallel scans.
+    *
+    * At most parallelism tasks of a module are handed to it at a time,
+    * a task it rejects runs in the deploying thread.
+    *
+    * @param executor the executor, null means the shared default executor bounded by the number of processors
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.executor = executor;
+   }
+
+   /**
+    * Set the annotation index.
+    *
+    * When set, roots that did not change since they were
+    * last scanned are read from the index instead.
+    *
+    * @param annotationIndex the annotation index
+    */
+   public void setAnnotationIndex(AnnotationIndex annotationIndex)
+   {
+      this.annotationIndex = annotationIndex;
+   }
+
+   /**
+    * Set the root cache.
+    *
+    * When set, roots shared with other deployments, e.g. common libraries,
+    * are scanned once and reused while any of those deployments is deployed.
+    *
+    * @param rootCache the root cache
+    */
+   public void setRootCache(AnnotationRootCache rootCache)
+   {
+      this.rootCache = rootCache;
+   }
+
+   /**
+    * Set the annotations of interest.
+    *
+    * Classes that do not mention any of them in their constant pool
+    * are rejected without being parsed. With a scan registry
+    * the names are registered as this deployer's interest
+    * and the combined names of all interests are used.
+    *
+    * @param annotationNames the annotation names, null for all annotations
+    */
+   public void setAnnotationNames(Set<String> annotationNames)
+   {
+      this.annotationNames = annotationNames;
+   }
+
+   /**
+    * Set the scan registry.
+    *
+    * When set, a module is scanned once for all the deployers
+    * sharing the registry and the same scan settings,
+    * with the resource filter of the registered interests.
+    * The interest of this deployer is registered on create.
+    *
+    * @param scanRegistry the scan registry
+    */
+   public void setScanRegistry(AnnotationScanRegistry scanRegistry)
+   {
+      this.scanRegistry = scanRegistry;
+   }
+
+   /**
+    * Get the scan registry.
+    *
+    * @return the scan registry or null if scans are not shared
+    */
+   protected AnnotationScanRegistry getScanRegistry()
+   {
+      return scanRegistry;
+   }
+
+   /**
+    * Get the resources this deployer wants scanned.
+    *
+    * @return the resource filter, null for all classes
+    */
+   protected ResourceFilter getInterestResourceFilter()
+   {
+      return null;
+   }
+
+   /**
+    * Get the directories this deployer wants scanned.
+    *
+    * @return the recurse filter, null for all directories
+    */
+   protected ResourceFilter getInterestRecurseFilter()
+   {
+      return null;
+   }
+
+   /**
+    * Get the settings a shared scan of the unit was done with.
+    *
+    * Deployers only share a scan if their settings are equal.
+    *
+    * @param unit the deployment unit
+    * @return the scan settings
+    */
+   protected Object getScanSettings(DeploymentUnit unit)
+   {
+      return Arrays.asList(forceAnnotations, keepAnnotations, checkInterfaces, useJavassist, compactEnvironment, getClassPoolKey());
+   }
+
+   /**
+    * Get the key of the class pools used for the scans.
+    *
+    * @return the class pool key, null for a new class pool per scan
+    */
+   protected Object getClassPoolKey()
+   {
+      return null;
+   }
+
+   /**
+    * Create lifecycle.
+    *
+    * Registers the interest of this deployer with the scan registry.
+    */
+   public void create()
+   {
+      if (scanRegistry != null)
+         scanRegistry.addInterest(this, annotationNames, getInterestResourceFilter(), getInterestRecurseFilter());
+   }
+
+   /**
+    * Destroy lifecycle.
+    */
+   public void destroy()
+   {
+      if (scanRegistry != null)
+         scanRegistry.removeInterest(this);
+   }
+
    /**
     * Create GenericAnnotationResourceVisitor.
     *
@@ -89,19 +289,51 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
     * Or determin if we need to force/keep annotations.
     *
     * @param unit the deployment unit
-    * @param pool the class pool
+    * @param pool the class pool, null if javassist is not used
     * @param classLoader the classloader
     * @return new generic annotation visitor
     */
    protected GenericAnnotationResourceVisitor createGenericAnnotationResourceVisitor(DeploymentUnit unit, ClassPool pool, ClassLoader classLoader)
    {
-      GenericAnnotationResourceVisitor visitor = new GenericAnnotationResourceVisitor(pool, classLoader);
+      DefaultAnnotationEnvironment env = createAnnotationEnvironment(classLoader);
+      GenericAnnotationResourceVisitor visitor;
+      if (pool != null)
+         visitor = new GenericAnnotationResourceVisitor(pool, env);
+      else
+         visitor = new ClassFileAnnotationResourceVisitor(env);
       visitor.setForceAnnotations(forceAnnotations);
       visitor.setKeepAnnotations(keepAnnotations);
       visitor.setCheckInterfaces(checkInterfaces);
+      visitor.setAnnotationIndex(annotationIndex);
+      visitor.setRootCache(rootCache, unit);
+      if (scanRegistry != null)
+      {
+         ResourceFilter filter = scanRegistry.getResourceFilter();
+         if (filter != null)
+            visitor.setResourceFilter(filter);
+         visitor.setAnnotationNames(scanRegistry.getAnnotationNames());
+      }
+      else
+      {
+         visitor.setAnnotationNames(annotationNames);
+      }
       return visitor;
    }
 
+   /**
+    * Create the annotation environment the visitor fills.
+    *
+    * @param classLoader the classloader
+    * @return new annotation environment
+    */
+   protected DefaultAnnotationEnvironment createAnnotationEnvironment(ClassLoader classLoader)
+   {
+      if (compactEnvironment)
+         return new CompactAnnotationEnvironment(classLoader);
+      else
+         return new DefaultAnnotationEnvironment(classLoader);
+   }
+
    /**
     * Create class pool.
     *
@@ -142,14 +374,53 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
       return null;
    }
 
+   /**
+    * Scan the resources collected by the visitor in parallel.
+    *
+    * @param unit the deployment unit
+    * @param classLoader the classloader
+    * @param visitor the visitor that collected the resources
+    * @throws DeploymentException for any error
+    */
+   protected void scanInParallel(final DeploymentUnit unit, final ClassLoader classLoader, GenericAnnotationResourceVisitor visitor) throws DeploymentException
+   {
+      Callable<GenericAnnotationResourceVisitor> workers = new Callable<GenericAnnotationResourceVisitor>()
+      {
+         public GenericAnnotationResourceVisitor call() throws Exception
+         {
+            ClassPool pool = useJavassist ? createClassPool(classLoader) : null;
+            return createGenericAnnotationResourceVisitor(unit, pool, classLoader);
+         }
+      };
+
+      try
+      {
+         visitor.scanCollected(executor, parallelism, workers);
+      }
+      catch (Exception e)
+      {
+         throw DeploymentException.rethrowAsDeploymentException("Exception scanning " + unit.getName(), e);
+      }
+   }
+
    public void deploy(DeploymentUnit unit, Module module) throws DeploymentException
    {
+      Object settings = null;
+      if (scanRegistry != null)
+      {
+         settings = getScanSettings(unit);
+         if (scanRegistry.attachResult(unit, module, settings))
+            return;
+      }
+
       if (log.isTraceEnabled())
          log.trace("Creating AnnotationEnvironment for " + unit.getName() + ", module: " + module + ", force annotations: " + forceAnnotations);
 
       ClassLoader classLoader = unit.getClassLoader();
-      ClassPool pool = createClassPool(classLoader);
+      ClassPool pool = useJavassist ? createClassPool(classLoader) : null;
       GenericAnnotationResourceVisitor visitor = createGenericAnnotationResourceVisitor(unit, pool, classLoader);
+      if (parallelism > 1)
+         visitor.setCollectResources(true);
 
       // something in javassist uses TCL
       ClassLoader tcl = Thread.currentThread().getContextClassLoader();
@@ -157,12 +428,33 @@ public class GenericAnnotationDeployer extends AbstractSimpleRealDeployer<Module
       try
       {
          visitModule(unit, module, visitor);
+         if (parallelism > 1)
+            scanInParallel(unit, classLoader, visitor);
+         visitor.storeIndex();
       }
       finally
       {
          Thread.currentThread().setContextClassLoader(tcl);
       }
 
-      unit.addAttachment(AnnotationEnvironment.class, visitor.getEnv());
+      if (log.isTraceEnabled())
+      {
+         log.trace("Scanned " + visitor.getScanned() + " classes for " + unit.getName() + ", reused " + visitor.getReused());
+         for (Map.Entry<String, GenericAnnotationResourceVisitor.RootStatistics> entry : visitor.getRootStatistics().entrySet())
+            log.trace("Root " + entry.getKey() + ": " + entry.getValue());
+      }
+
+      if (scanRegistry != null)
+         scanRegistry.addResult(unit, module, settings, visitor);
+      else
+         unit.addAttachment(AnnotationEnvironment.class, visitor.getEnv());
+   }
+
+   public void undeploy(DeploymentUnit unit, Module module)
+   {
+      if (scanRegistry != null)
+         scanRegistry.removeResult(unit, module, getScanSettings(unit));
+      if (rootCache != null)
+         rootCache.release(unit);
    }
 }
@@ -21,12 +21,30 @@
 */
 package org.jboss.deployers.plugins.annotations;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javassist.ClassPool;
 import javassist.CtBehavior;
@@ -35,6 +53,7 @@ import javassist.CtConstructor;
 import javassist.CtMember;
 import javassist.CtMethod;
 import javassist.NotFoundException;
+import javassist.bytecode.ClassFile;
 import org.jboss.classloading.spi.visitor.ClassFilter;
 import org.jboss.classloading.spi.visitor.ResourceContext;
 import org.jboss.classloading.spi.visitor.ResourceFilter;
@@ -55,12 +74,28 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
 {
    private static final Logger log = Logger.getLogger(GenericAnnotationResourceVisitor.class);
 
+   /** The default executor of the parallel scans */
+   private static Executor defaultExecutor;
+
    private ResourceFilter resourceFilter = ClassFilter.INSTANCE;
    private ClassPool pool;
    private boolean forceAnnotations;
    private boolean checkInterfaces;
    private DefaultAnnotationEnvironment env;
    private CtClass objectCtClass;
+   private AnnotationIndex index;
+   private AnnotationRootCache rootCache;
+   private Object rootOwner;
+   private Map<String, IndexedRoot> roots;
+   private Map<String, List<ResourceContext>> collected;
+   private Map<String, TypeSummary> summaries = new HashMap<String, TypeSummary>();
+   private Map<String, Integer> workerReads;
+   private byte[][] annotationDescriptors;
+   private Set<String> annotationNameSet;
+   private String annotationNames;
+   private Map<String, RootStatistics> rootStatistics = new LinkedHashMap<String, RootStatistics>();
+   private int scanned;
+   private int reused;
 
    public GenericAnnotationResourceVisitor(ClassLoader classLoader)
    {
@@ -80,6 +115,34 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
       this.checkInterfaces = true;
    }
 
+   public GenericAnnotationResourceVisitor(ClassPool pool, DefaultAnnotationEnvironment env)
+   {
+      if (pool == null)
+         throw new IllegalArgumentException("Null pool");
+      if (env == null)
+         throw new IllegalArgumentException("Null env");
+
+      this.pool = pool;
+      this.env = env;
+      this.objectCtClass = pool.makeClass(Object.class.getName());
+      this.checkInterfaces = true;
+   }
+
+   /**
+    * Create a visitor that does not use javassist,
+    * subclasses need to override handleResource.
+    *
+    * @param env the environment to fill
+    */
+   protected GenericAnnotationResourceVisitor(DefaultAnnotationEnvironment env)
+   {
+      if (env == null)
+         throw new IllegalArgumentException("Null env");
+
+      this.env = env;
+      this.checkInterfaces = true;
+   }
+
    public ResourceFilter getFilter()
    {
       return resourceFilter;
@@ -87,50 +150,485 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
 
    public void visit(ResourceContext resource)
    {
+      if (collected != null)
+      {
+         collect(resource);
+         return;
+      }
+
       try
       {
-         InputStream stream = resource.getInputStream();
-         if (stream == null)
-            throw new IllegalArgumentException("Null resource input stream: " + resource);
+         IndexedRoot root = getIndexedRoot(resource);
+         if (root != null && root.loaded)
+            return;
 
-         try
+         if (annotationDescriptors != null)
+            getRootStatistics(resource).classes++;
+
+         List<CommitElement> commit = new ArrayList<CommitElement>();
+         handleResource(resource, commit);
+         commit(commit);
+         if (root != null)
+            root.classes.add(getClassName(resource));
+      }
+      catch (ClassNotFoundException e)
+      {
+         if (forceAnnotations)
+            throw new RuntimeException(e);
+
+         logThrowable(resource, e);
+      }
+      catch (Throwable t)
+      {
+         logThrowable(resource, t);
+      }
+   }
+
+   /**
+    * Collect the resource, grouped by its root.
+    *
+    * @param resource the resource
+    */
+   protected void collect(ResourceContext resource)
+   {
+      String root = getRoot(resource);
+      List<ResourceContext> resources = collected.get(root);
+      if (resources == null)
+      {
+         resources = new ArrayList<ResourceContext>();
+         collected.put(root, resources);
+      }
+      resources.add(resource);
+   }
+
+   /**
+    * Get the root of a resource.
+    *
+    * @param resource the resource
+    * @return the root url
+    */
+   protected static String getRoot(ResourceContext resource)
+   {
+      String url = resource.getUrl().toExternalForm();
+      String name = resource.getResourceName();
+      return url.endsWith(name) ? url.substring(0, url.length() - name.length()) : url;
+   }
+
+   /**
+    * Should the visited resources only be collected,
+    * to be scanned later with scanCollected.
+    *
+    * @param collect the collect flag
+    */
+   public void setCollectResources(boolean collect)
+   {
+      this.collected = collect ? new LinkedHashMap<String, List<ResourceContext>>() : null;
+   }
+
+   /**
+    * Scan the collected resources in parallel,
+    * on the shared default executor.
+    *
+    * @param parallelism the maximum number of threads
+    * @param workers the factory of the worker visitors
+    * @throws Exception for any error
+    */
+   public void scanCollected(int parallelism, Callable<GenericAnnotationResourceVisitor> workers) throws Exception
+   {
+      scanCollected(null, parallelism, workers);
+   }
+
+   /**
+    * Scan the collected resources in parallel.
+    *
+    * Each root is scanned by its own worker visitor,
+    * the environments of the workers are merged into this one in the order the roots were visited.
+    * At most parallelism tasks are handed to the executor, each of them scans roots until none are left.
+    * A task the executor rejects runs in the calling thread.
+    *
+    * @param executor the executor, null means the shared default executor
+    * @param parallelism the maximum number of threads
+    * @param workers the factory of the worker visitors
+    * @throws Exception for any error
+    */
+   public void scanCollected(Executor executor, int parallelism, Callable<GenericAnnotationResourceVisitor> workers) throws Exception
+   {
+      if (parallelism < 1)
+         throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+      if (workers == null)
+         throw new IllegalArgumentException("Null workers");
+      if (collected == null)
+         throw new IllegalStateException("Resources are not collected");
+
+      Map<String, List<ResourceContext>> roots = collected;
+      collected = null;
+      if (roots.isEmpty())
+         return;
+
+      if (executor == null)
+         executor = getDefaultExecutor();
+
+      final List<List<ResourceContext>> work = new ArrayList<List<ResourceContext>>(roots.values());
+      final List<GenericAnnotationResourceVisitor> visitors = new ArrayList<GenericAnnotationResourceVisitor>(work.size());
+      for (int i = 0; i < work.size(); i++)
+         visitors.add(workers.call());
+
+      final ClassLoader classLoader = env.getClassLoader();
+      final AtomicInteger next = new AtomicInteger();
+      Callable<Object> scanner = new Callable<Object>()
+      {
+         public Object call() throws Exception
          {
-            CtClass ctClass = pool.makeClass(stream);
+            // something in javassist uses TCL
+            Thread thread = Thread.currentThread();
+            ClassLoader tcl = thread.getContextClassLoader();
+            thread.setContextClassLoader(classLoader);
             try
             {
-               List<CommitElement> commit = new ArrayList<CommitElement>();
-               handleCtClass(ctClass, commit);
-               for (CommitElement ce : commit)
+               for (int i = next.getAndIncrement(); i < work.size(); i = next.getAndIncrement())
                {
-                  env.putAnnotation(ce.getAnnotation(), ce.getType(), ce.getClassName(), ce.getSignature());
+                  GenericAnnotationResourceVisitor worker = visitors.get(i);
+                  for (ResourceContext resource : work.get(i))
+                     worker.visit(resource);
+                  worker.storeIndex();
                }
+               return null;
             }
             finally
             {
-               ctClass.detach();
+               thread.setContextClassLoader(tcl);
             }
          }
-         finally
+      };
+
+      List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+      try
+      {
+         for (int i = Math.min(parallelism, work.size()); i > 0; i--)
          {
+            FutureTask<Object> task = new FutureTask<Object>(scanner);
+            tasks.add(task);
             try
             {
-               stream.close();
+               executor.execute(task);
             }
-            catch (IOException ignored)
+            catch (RejectedExecutionException e)
             {
+               task.run();
+            }
+         }
+
+         for (FutureTask<Object> task : tasks)
+         {
+            try
+            {
+               task.get();
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+               if (cause instanceof Exception)
+                  throw (Exception) cause;
+               if (cause instanceof Error)
+                  throw (Error) cause;
+               throw e;
             }
          }
       }
-      catch (ClassNotFoundException e)
+      finally
       {
-         if (forceAnnotations)
-            throw new RuntimeException(e);
+         // stop the other scanners of a failed scan
+         next.set(work.size());
+         for (FutureTask<Object> task : tasks)
+            task.cancel(true);
+      }
 
-         logThrowable(resource, e);
+      for (GenericAnnotationResourceVisitor worker : visitors)
+      {
+         env.merge(worker.env);
+         if (workerReads == null)
+            workerReads = new HashMap<String, Integer>();
+         for (String className : worker.summaries.keySet())
+            addRead(workerReads, className);
+         rootStatistics.putAll(worker.rootStatistics);
+         scanned += worker.scanned;
+         reused += worker.reused;
       }
-      catch (Throwable t)
+   }
+
+   /**
+    * Get the default executor of the parallel scans.
+    *
+    * It is shared by all visitors and bounded by the number of processors,
+    * its threads go away when they are idle.
+    *
+    * @return the default executor
+    */
+   protected static synchronized Executor getDefaultExecutor()
+   {
+      if (defaultExecutor == null)
       {
-         logThrowable(resource, t);
+         ThreadFactory factory = new ThreadFactory()
+         {
+            private AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable)
+            {
+               Thread thread = new Thread(runnable, "AnnotationScanner-" + count.incrementAndGet());
+               thread.setDaemon(true);
+               thread.setContextClassLoader(null);
+               return thread;
+            }
+         };
+         int threads = Runtime.getRuntime().availableProcessors();
+         defaultExecutor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory);
+      }
+      return defaultExecutor;
+   }
+
+   /**
+    * Handle the resource.
+    *
+    * @param resource the resource
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleResource(ResourceContext resource, List<CommitElement> commit) throws Exception
+   {
+      TypeSummary summary = getTypeSummary(resource);
+      if (summary != null)
+      {
+         applyTypeSummary(summary, commit);
+         return;
+      }
+
+      InputStream stream = resource.getInputStream();
+      if (stream == null)
+         throw new IllegalArgumentException("Null resource input stream: " + resource);
+
+      if (annotationDescriptors != null)
+      {
+         byte[] bytes = readBytes(stream);
+         AnnotationClassFile classFile = new AnnotationClassFile(bytes, annotationDescriptors);
+         if (classFile.isRejected())
+         {
+            handleRejected(resource, classFile, commit);
+            return;
+         }
+         stream = new ByteArrayInputStream(bytes);
+      }
+
+      try
+      {
+         CtClass ctClass = pool.makeClass(stream);
+         try
+         {
+            handleCtClass(ctClass, commit);
+         }
+         finally
+         {
+            ctClass.detach();
+         }
+      }
+      finally
+      {
+         try
+         {
+            stream.close();
+         }
+         catch (IOException ignored)
+         {
+         }
+      }
+   }
+
+   /**
+    * Get the summary of a class resource that was already
+    * scanned as the super class or interface of another class.
+    *
+    * @param resource the resource
+    * @return the summary or null if the class was not scanned yet
+    */
+   protected TypeSummary getTypeSummary(ResourceContext resource)
+   {
+      String className = getClassName(resource);
+      if (className == null)
+         return null;
+
+      return getTypeSummary(className);
+   }
+
+   /**
+    * Get the class name of a resource.
+    *
+    * @param resource the resource
+    * @return the class name or null if the resource is not a class
+    */
+   protected static String getClassName(ResourceContext resource)
+   {
+      String name = resource.getResourceName();
+      if (name.endsWith(".class") == false)
+         return null;
+
+      return name.substring(0, name.length() - 6).replace('/', '.');
+   }
+
+   /**
+    * Get the indexed root of a resource.
+    *
+    * The first time a root is seen it is looked up in the root cache and then in the index,
+    * resources of a loaded root are not scanned.
+    * A loaded root only holds the annotations of its own classes,
+    * its super classes and interfaces outside the root are resolved as usual.
+    *
+    * @param resource the resource
+    * @return the indexed root or null if there is neither index nor root cache or the root cannot be indexed
+    */
+   protected IndexedRoot getIndexedRoot(ResourceContext resource)
+   {
+      if (roots == null)
+         return null;
+
+      String url = resource.getUrl().toExternalForm();
+      String name = resource.getResourceName();
+      if (url.endsWith(name) == false)
+         return null;
+
+      String rootURL = url.substring(0, url.length() - name.length());
+      if (roots.containsKey(rootURL))
+         return roots.get(rootURL);
+
+      IndexedRoot root = null;
+      Long fingerprint = (index != null) ? index.getFingerprint(rootURL) : rootCache.getFingerprint(rootURL);
+      if (fingerprint != null)
+      {
+         root = new IndexedRoot(fingerprint);
+         String settings = getIndexSettings();
+         if (rootCache != null)
+            root.cached = rootCache.load(rootOwner, rootURL, fingerprint, settings, env, root.entries, root.supertypes);
+         if (root.cached == false && index != null)
+            root.indexed = index.load(rootURL, fingerprint, settings, env, root.entries, root.supertypes);
+         root.loaded = root.cached || root.indexed;
+      }
+      roots.put(rootURL, root);
+      if (root != null && root.loaded)
+         applyIndexedRoot(rootURL, root);
+      return root;
+   }
+
+   /**
+    * Apply a loaded root to the environment.
+    *
+    * @param rootURL the root url
+    * @param root the loaded root
+    */
+   protected void applyIndexedRoot(String rootURL, IndexedRoot root)
+   {
+      List<CommitElement> commit = new ArrayList<CommitElement>(root.entries);
+      for (String supertype : root.supertypes)
+      {
+         try
+         {
+            handleSupertype(supertype, commit);
+         }
+         catch (ClassNotFoundException e)
+         {
+            if (forceAnnotations)
+               throw new RuntimeException(e);
+
+            if (log.isTraceEnabled())
+               log.trace("Exception resolving " + supertype + " of " + rootURL, e);
+         }
+         catch (Throwable t)
+         {
+            if (log.isTraceEnabled())
+               log.trace("Exception resolving " + supertype + " of " + rootURL, t);
+         }
+      }
+      commit(commit);
+   }
+
+   /**
+    * Put the committed annotations into the environment.
+    *
+    * A class that mentions one of the annotations of interest is read completely,
+    * only the annotations of interest are put into the environment.
+    *
+    * @param commit the commit list
+    */
+   protected void commit(List<CommitElement> commit)
+   {
+      for (CommitElement ce : commit)
+      {
+         if (annotationNameSet == null || annotationNameSet.contains(ce.getAnnotationType().getName()))
+            env.putAnnotation(ce.getAnnotationType(), ce.getAnnotation(), ce.getType(), ce.getClassName(), ce.getSignature());
+      }
+   }
+
+   /**
+    * Get the settings that change the outcome of a scan.
+    *
+    * @return the settings
+    */
+   protected String getIndexSettings()
+   {
+      String settings = "force=" + forceAnnotations + ",interfaces=" + checkInterfaces;
+      if (annotationNames != null)
+         settings += ",annotations=" + annotationNames;
+      return settings;
+   }
+
+   /**
+    * Store the index of the roots that were scanned,
+    * and put them into the root cache.
+    *
+    * Only the annotations of the classes visited in a root are stored,
+    * the annotations of super classes and interfaces outside the root are not,
+    * they are only recorded by name.
+    *
+    * Should be called once the module was visited.
+    */
+   public void storeIndex()
+   {
+      if (roots == null)
+         return;
+
+      String settings = getIndexSettings();
+      for (Map.Entry<String, IndexedRoot> entry : roots.entrySet())
+      {
+         IndexedRoot root = entry.getValue();
+         if (root == null)
+            continue;
+         if (root.loaded == false)
+            collectEntries(root);
+         if (index != null && root.loaded == false)
+            index.store(entry.getKey(), root.fingerprint, settings, root.entries, root.supertypes);
+         if (rootCache != null && root.cached == false)
+            rootCache.store(rootOwner, entry.getKey(), root.fingerprint, settings, root.entries, root.supertypes);
+      }
+      roots.clear();
+   }
+
+   /**
+    * Collect the annotations of the classes visited in a scanned root,
+    * and their super classes and interfaces outside the root.
+    *
+    * @param root the scanned root
+    */
+   private void collectEntries(IndexedRoot root)
+   {
+      for (String className : root.classes)
+      {
+         TypeSummary summary = summaries.get(className);
+         if (summary == null)
+            continue;
+
+         root.entries.addAll(summary.entries);
+         for (String supertype : summary.supertypes)
+         {
+            if (root.classes.contains(supertype) == false)
+               root.supertypes.add(supertype);
+         }
       }
    }
 
@@ -146,50 +644,236 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
          log.trace("Exception reading resource: " + resource.getResourceName(), t);
    }
 
+   /**
+    * Handle a class resource rejected by its constant pool.
+    *
+    * @param resource the resource
+    * @param classFile the rejected class file
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleRejected(ResourceContext resource, AnnotationClassFile classFile, List<CommitElement> commit) throws Exception
+   {
+      getRootStatistics(resource).rejected++;
+      handleRejected(classFile, commit);
+   }
+
+   /**
+    * Handle a class rejected by its constant pool.
+    *
+    * It declares none of the annotations of interest,
+    * only its super class and interfaces can add some.
+    *
+    * @param classFile the rejected class file
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleRejected(AnnotationClassFile classFile, List<CommitElement> commit) throws Exception
+   {
+      String className = classFile.getClassName();
+      if (log.isTraceEnabled())
+         log.trace("Rejected class " + className + " by its constant pool");
+
+      TypeSummary summary = new TypeSummary();
+      if (checkInterfaces || classFile.isInterface() == false)
+      {
+         if (checkInterfaces)
+         {
+            for (String intf : classFile.getInterfaces())
+               summary.addSupertype(intf);
+         }
+         summary.addSupertype(classFile.getSuperClassName());
+      }
+      summaries.put(className, summary);
+      applyTypeSummary(summary, commit);
+   }
+
+   /**
+    * Get the statistics of the root of a resource.
+    *
+    * @param resource the resource
+    * @return the root statistics
+    */
+   protected RootStatistics getRootStatistics(ResourceContext resource)
+   {
+      String root = getRoot(resource);
+      RootStatistics statistics = rootStatistics.get(root);
+      if (statistics == null)
+      {
+         statistics = new RootStatistics();
+         rootStatistics.put(root, statistics);
+      }
+      return statistics;
+   }
+
+   /**
+    * Get the statistics of the scanned roots.
+    *
+    * They are only kept when the annotation names of interest are set.
+    *
+    * @return the statistics by root url
+    */
+   public Map<String, RootStatistics> getRootStatistics()
+   {
+      return rootStatistics;
+   }
+
    /**
     * Handle CtClass for annotations.
     *
+    * The annotations of each type are only scanned once,
+    * later uses of the type as super class or interface reuse them.
+    *
     * @param ctClass the ct class instance
     * @param commit the commit list
-    * @throws ClassNotFoundException for any annotations lookup problems
-    * @throws NotFoundException for any annotations lookup problems
+    * @throws Exception for any annotations lookup problems
     */
-   protected void handleCtClass(CtClass ctClass, List<CommitElement> commit) throws ClassNotFoundException, NotFoundException
+   protected void handleCtClass(CtClass ctClass, List<CommitElement> commit) throws Exception
    {
       if (ctClass == null || objectCtClass.equals(ctClass))
          return;
 
-      if (checkInterfaces == false && ctClass.isInterface())
+      String className = ctClass.getName();
+      TypeSummary summary = getTypeSummary(className);
+      if (summary == null)
       {
-         if (log.isTraceEnabled())
-            log.trace("Skipping interface: " + ctClass.getName());
-         return;
-      }
+         summary = new TypeSummary();
+         if (checkInterfaces == false && ctClass.isInterface())
+         {
+            if (log.isTraceEnabled())
+               log.trace("Skipping interface: " + className);
+         }
+         else
+         {
+            if (log.isTraceEnabled())
+               log.trace("Scanning class " + className + " for annotations");
 
-      String className = ctClass.getName();
-      if (log.isTraceEnabled())
-         log.trace("Scanning class " + className + " for annotations");
+            Object[] annotations = forceAnnotations ? ctClass.getAnnotations() : ctClass.getAvailableAnnotations();
+            handleAnnotations(ElementType.TYPE, (Signature)null, annotations, className, summary.entries);
 
-      Object[] annotations = forceAnnotations ? ctClass.getAnnotations() : ctClass.getAvailableAnnotations();
-      handleAnnotations(ElementType.TYPE, (Signature)null, annotations, className, commit);
+            handleCtMembers(ElementType.CONSTRUCTOR, ctClass.getDeclaredConstructors(), className, summary.entries);
+            handleCtMembers(ElementType.METHOD, ctClass.getDeclaredMethods(), className, summary.entries);
+            handleCtMembers(ElementType.FIELD, ctClass.getDeclaredFields(), className, summary.entries);
 
-      handleCtMembers(ElementType.CONSTRUCTOR, ctClass.getDeclaredConstructors(), className, commit);
-      handleCtMembers(ElementType.METHOD, ctClass.getDeclaredMethods(), className, commit);
-      handleCtMembers(ElementType.FIELD, ctClass.getDeclaredFields(), className, commit);
+            ClassFile classFile = ctClass.getClassFile2();
+            if (checkInterfaces)
+            {
+               // interfaces
+               String[] interfaces = classFile.getInterfaces();
+               if (interfaces != null && interfaces.length > 0)
+               {
+                  for (String intf : interfaces)
+                     summary.addSupertype(intf);
+               }
+            }
 
-      if (checkInterfaces)
-      {
-         // interfaces
-         CtClass[] interfaces = ctClass.getInterfaces();
-         if (interfaces != null && interfaces.length > 0)
-         {
-            for (CtClass intf : interfaces)
-               handleCtClass(intf, commit);
+            // super class
+            summary.addSupertype(classFile.getSuperclass());
          }
+         putTypeSummary(className, summary);
       }
+      applyTypeSummary(summary, commit);
+   }
+
+   /**
+    * Handle a super class or interface.
+    *
+    * @param className the class name
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void handleSupertype(String className, List<CommitElement> commit) throws Exception
+   {
+      TypeSummary summary = getTypeSummary(className);
+      if (summary != null)
+         applyTypeSummary(summary, commit);
+      else
+         handleCtClass(pool.get(className), commit);
+   }
+
+   /**
+    * Get the summary of a type that was already scanned.
+    *
+    * @param className the class name
+    * @return the summary or null if the type was not scanned yet
+    */
+   protected TypeSummary getTypeSummary(String className)
+   {
+      TypeSummary summary = summaries.get(className);
+      if (summary != null)
+         reused++;
+      return summary;
+   }
 
-      // super class
-      handleCtClass(ctClass.getSuperclass(), commit);
+   /**
+    * Remember the summary of a scanned type.
+    *
+    * @param className the class name
+    * @param summary the summary
+    */
+   protected void putTypeSummary(String className, TypeSummary summary)
+   {
+      summaries.put(className, summary);
+      scanned++;
+   }
+
+   /**
+    * Add the annotations of a type and its supertypes to the commit list.
+    *
+    * @param summary the type summary
+    * @param commit the commit list
+    * @throws Exception for any error
+    */
+   protected void applyTypeSummary(TypeSummary summary, List<CommitElement> commit) throws Exception
+   {
+      commit.addAll(summary.entries);
+      for (String supertype : summary.supertypes)
+         handleSupertype(supertype, commit);
+   }
+
+   /**
+    * Get the number of classes scanned.
+    *
+    * @return the number of scanned classes
+    */
+   public int getScanned()
+   {
+      return scanned;
+   }
+
+   /**
+    * Get the number of times the bytecode of each class was read.
+    *
+    * Each visitor reads a class once, classes needed by
+    * more than one parallel worker are read by each of them.
+    *
+    * @return the reads by class name
+    */
+   public Map<String, Integer> getReads()
+   {
+      Map<String, Integer> reads = new HashMap<String, Integer>();
+      if (workerReads != null)
+         reads.putAll(workerReads);
+      for (String className : summaries.keySet())
+         addRead(reads, className);
+      return reads;
+   }
+
+   private static void addRead(Map<String, Integer> reads, String className)
+   {
+      Integer count = reads.get(className);
+      reads.put(className, count != null ? count + 1 : 1);
+   }
+
+   /**
+    * Get the number of times a class was reused
+    * instead of being scanned again.
+    *
+    * @return the number of reused classes
+    */
+   public int getReused()
+   {
+      return reused;
    }
 
    /**
@@ -285,6 +969,71 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
       }
    }
 
+   /**
+    * Set the annotations of interest.
+    *
+    * Classes whose constant pool does not mention any of them
+    * are rejected before they are parsed any further,
+    * and the environment only holds these annotations.
+    *
+    * @param annotationNames the annotation names, null to scan every class
+    */
+   public void setAnnotationNames(Set<String> annotationNames)
+   {
+      if (annotationNames != null)
+      {
+         annotationDescriptors = AnnotationClassFile.toDescriptors(annotationNames);
+         annotationNameSet = new HashSet<String>(annotationNames);
+         this.annotationNames = new TreeSet<String>(annotationNames).toString();
+      }
+      else
+      {
+         annotationDescriptors = null;
+         annotationNameSet = null;
+         this.annotationNames = null;
+      }
+   }
+
+   /**
+    * Get the encoded descriptors of the annotations of interest.
+    *
+    * @return the descriptors or null if every class is scanned
+    */
+   protected byte[][] getAnnotationDescriptors()
+   {
+      return annotationDescriptors;
+   }
+
+   /**
+    * Read the bytes and close the stream.
+    *
+    * @param stream the stream
+    * @return the bytes
+    * @throws IOException for any error
+    */
+   protected static byte[] readBytes(InputStream stream) throws IOException
+   {
+      try
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+         byte[] buffer = new byte[4096];
+         int read;
+         while ((read = stream.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+         return out.toByteArray();
+      }
+      finally
+      {
+         try
+         {
+            stream.close();
+         }
+         catch (IOException ignored)
+         {
+         }
+      }
+   }
+
    /**
     * Set the resource filter.
     *
@@ -315,6 +1064,16 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
       env.setKeepAnnotations(keepAnnotations);
    }
 
+   /**
+    * Should we force all annotations to be available.
+    *
+    * @return the force annotations flag
+    */
+   protected boolean isForceAnnotations()
+   {
+      return forceAnnotations;
+   }
+
    /**
     * Should we check interfaces for annotations as well.
     *
@@ -325,6 +1084,51 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
       this.checkInterfaces = checkInterfaces;
    }
 
+   /**
+    * Should we check interfaces for annotations as well.
+    *
+    * @return the check interfaces flag
+    */
+   protected boolean isCheckInterfaces()
+   {
+      return checkInterfaces;
+   }
+
+   /**
+    * Set the annotation index.
+    *
+    * @param index the annotation index
+    */
+   public void setAnnotationIndex(AnnotationIndex index)
+   {
+      this.index = index;
+      initRoots();
+   }
+
+   /**
+    * Set the root cache.
+    *
+    * @param rootCache the root cache
+    * @param owner the owner of the roots this visitor scans or reuses, e.g. the deployment unit
+    */
+   public void setRootCache(AnnotationRootCache rootCache, Object owner)
+   {
+      if (rootCache != null && owner == null)
+         throw new IllegalArgumentException("Null owner");
+
+      this.rootCache = rootCache;
+      this.rootOwner = owner;
+      initRoots();
+   }
+
+   private void initRoots()
+   {
+      if (index == null && rootCache == null)
+         roots = null;
+      else if (roots == null)
+         roots = new HashMap<String, IndexedRoot>();
+   }
+
    /**
     * Get the built environment.
     *
@@ -334,4 +1138,88 @@ public class GenericAnnotationResourceVisitor implements ResourceVisitor
    {
       return env;
    }
+
+   /**
+    * The annotations a type declares itself,
+    * and its super class and interfaces.
+    */
+   protected static class TypeSummary
+   {
+      private List<CommitElement> entries = new ArrayList<CommitElement>();
+      private List<String> supertypes = new ArrayList<String>(2);
+
+      /**
+       * Get the annotations the type declares.
+       *
+       * @return the annotations
+       */
+      protected List<CommitElement> getEntries()
+      {
+         return entries;
+      }
+
+      /**
+       * Add a super class or interface, java.lang.Object is ignored.
+       *
+       * @param className the class name
+       */
+      protected void addSupertype(String className)
+      {
+         if (className != null && Object.class.getName().equals(className) == false)
+            supertypes.add(className);
+      }
+   }
+
+   /**
+    * The scan statistics of a root.
+    */
+   public static class RootStatistics
+   {
+      private int classes;
+      private int rejected;
+
+      /**
+       * Get the number of classes visited.
+       *
+       * @return the number of classes
+       */
+      public int getClasses()
+      {
+         return classes;
+      }
+
+      /**
+       * Get the number of classes rejected by their constant pool.
+       *
+       * @return the number of rejected classes
+       */
+      public int getRejected()
+      {
+         return rejected;
+      }
+
+      public String toString()
+      {
+         return "classes=" + classes + ", rejected=" + rejected;
+      }
+   }
+
+   /**
+    * The index state of a root.
+    */
+   protected static class IndexedRoot
+   {
+      private long fingerprint;
+      private boolean loaded;
+      private boolean cached;
+      private boolean indexed;
+      private Set<String> classes = new HashSet<String>();
+      private List<CommitElement> entries = new ArrayList<CommitElement>();
+      private Set<String> supertypes = new TreeSet<String>();
+
+      private IndexedRoot(long fingerprint)
+      {
+         this.fingerprint = fingerprint;
+      }
+   }
 }
\ No newline at end of file
@@ -52,6 +52,11 @@ public class ScopedGenericAnnotationDeployer extends GenericAnnotationDeployer
       this.repository = repository;
    }
 
+   protected Object getClassPoolKey()
+   {
+      return repository;
+   }
+
    protected ClassPool createClassPool(ClassLoader classLoader)
    {
       if (repository != null)
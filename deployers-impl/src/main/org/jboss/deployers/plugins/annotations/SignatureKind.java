@@ -0,0 +1,136 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.annotations;
+
+import org.jboss.metadata.spi.signature.ConstructorParametersSignature;
+import org.jboss.metadata.spi.signature.ConstructorSignature;
+import org.jboss.metadata.spi.signature.FieldSignature;
+import org.jboss.metadata.spi.signature.MethodParametersSignature;
+import org.jboss.metadata.spi.signature.MethodSignature;
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * The kinds of signatures an annotation environment holds,
+ * used to store signatures as plain names.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+enum SignatureKind
+{
+   CONSTRUCTOR,
+   METHOD,
+   FIELD,
+   CONSTRUCTOR_PARAMETERS,
+   METHOD_PARAMETERS;
+
+   /** The kinds */
+   private static final SignatureKind[] KINDS = values();
+
+   /**
+    * Get the kind of a signature.
+    *
+    * @param signature the signature
+    * @return the kind
+    */
+   static SignatureKind getKind(Signature signature)
+   {
+      if (signature instanceof ConstructorParametersSignature)
+         return CONSTRUCTOR_PARAMETERS;
+      else if (signature instanceof MethodParametersSignature)
+         return METHOD_PARAMETERS;
+      else if (signature instanceof ConstructorSignature)
+         return CONSTRUCTOR;
+      else if (signature instanceof MethodSignature)
+         return METHOD;
+      else if (signature instanceof FieldSignature)
+         return FIELD;
+      else
+         throw new IllegalArgumentException("Unknown signature: " + signature);
+   }
+
+   /**
+    * Get the kind from its ordinal.
+    *
+    * @param ordinal the ordinal
+    * @return the kind
+    */
+   static SignatureKind valueOf(int ordinal)
+   {
+      return KINDS[ordinal];
+   }
+
+   /**
+    * Get a signature that only holds names.
+    *
+    * @param signature the signature
+    * @return the plain signature or null if the signature is null
+    */
+   static Signature toPlain(Signature signature)
+   {
+      if (signature == null)
+         return null;
+
+      SignatureKind kind = getKind(signature);
+      return kind.createSignature(signature.getName(), signature.getParameters(), kind.getParam(signature));
+   }
+
+   /**
+    * Get the parameter index of a parameters signature.
+    *
+    * @param signature the signature
+    * @return the parameter index or -1 if it is not a parameters signature
+    */
+   int getParam(Signature signature)
+   {
+      if (this == CONSTRUCTOR_PARAMETERS)
+         return ((ConstructorParametersSignature) signature).getParam();
+      else if (this == METHOD_PARAMETERS)
+         return ((MethodParametersSignature) signature).getParam();
+      else
+         return -1;
+   }
+
+   /**
+    * Create a signature of this kind.
+    *
+    * @param name the name
+    * @param parameters the parameter types
+    * @param param the parameter index
+    * @return the signature
+    */
+   Signature createSignature(String name, String[] parameters, int param)
+   {
+      switch (this)
+      {
+         case CONSTRUCTOR:
+            return new ConstructorSignature(parameters);
+         case METHOD:
+            return new MethodSignature(name, parameters);
+         case FIELD:
+            return new FieldSignature(name);
+         case CONSTRUCTOR_PARAMETERS:
+            return new ConstructorParametersSignature(parameters, param);
+         default:
+            return new MethodParametersSignature(name, parameters, param);
+      }
+   }
+}
@@ -0,0 +1,271 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.deployers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The deployer times by deployer, stage and top level deployment.<p>
+ *
+ * Recording is a map lookup and an uncontended lock per deployer call.
+ * When a top level deployment is undeployed its times are added
+ * to the totals per deployer and stage and the deployment's entries are removed,
+ * so the number of entries is bounded by the deployments that are deployed.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerStatistics implements DeployerStatisticsMBean
+{
+   /** The slowest deployers first */
+   private static final Comparator<DeployerTimes> SLOWEST_FIRST = new Comparator<DeployerTimes>()
+   {
+      public int compare(DeployerTimes o1, DeployerTimes o2)
+      {
+         long t1 = o1.getDeploy().getTotal() + o1.getUndeploy().getTotal();
+         long t2 = o2.getDeploy().getTotal() + o2.getUndeploy().getTotal();
+         return t1 > t2 ? -1 : (t1 < t2 ? 1 : 0);
+      }
+   };
+
+   /** Whether we record */
+   private volatile boolean enabled = true;
+
+   /** The times */
+   private ConcurrentMap<Key, DeployerTimes> times = new ConcurrentHashMap<Key, DeployerTimes>();
+
+   /** The times of the removed deployments by deployer and stage */
+   private ConcurrentMap<Key, DeployerTimes> removed = new ConcurrentHashMap<Key, DeployerTimes>();
+
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   public void setEnabled(boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   public void clear()
+   {
+      times.clear();
+      removed.clear();
+   }
+
+   /**
+    * Remove the times of a top level deployment.<p>
+    *
+    * They are still part of the totals.
+    *
+    * @param deployment the top level deployment
+    */
+   public void removeDeployment(String deployment)
+   {
+      if (deployment == null)
+         throw new IllegalArgumentException("Null deployment");
+
+      for (Iterator<DeployerTimes> i = times.values().iterator(); i.hasNext();)
+      {
+         DeployerTimes t = i.next();
+         if (deployment.equals(t.getDeployment()))
+         {
+            i.remove();
+            getTimes(removed, new Key(t.getDeployer(), t.getStage(), null)).merge(t);
+         }
+      }
+   }
+
+   /**
+    * Record a deployer call.
+    *
+    * @param deployer the deployer
+    * @param stage the stage
+    * @param deployment the top level deployment
+    * @param deploy true for deploy, false for undeploy
+    * @param nanos the time taken in nanoseconds
+    */
+   public void record(String deployer, String stage, String deployment, boolean deploy, long nanos)
+   {
+      if (enabled == false)
+         return;
+
+      DeployerTimes result = getTimes(times, new Key(deployer, stage, deployment));
+      if (deploy)
+         result.getDeploy().record(nanos);
+      else
+         result.getUndeploy().record(nanos);
+   }
+
+   /**
+    * Get or create the times for a key.
+    *
+    * @param map the map
+    * @param key the key
+    * @return the times
+    */
+   private static DeployerTimes getTimes(ConcurrentMap<Key, DeployerTimes> map, Key key)
+   {
+      DeployerTimes result = map.get(key);
+      if (result == null)
+      {
+         result = new DeployerTimes(key.deployer, key.stage, key.deployment);
+         DeployerTimes previous = map.putIfAbsent(key, result);
+         if (previous != null)
+            result = previous;
+      }
+      return result;
+   }
+
+   /**
+    * Get the recorded times.<p>
+    *
+    * Without a deployment the totals of the removed deployments are included.
+    *
+    * @param deployer the deployer, null for all deployers
+    * @param stage the stage, null for all stages
+    * @param deployment the top level deployment, null for all deployments
+    * @return the matching times
+    */
+   public List<DeployerTimes> getTimes(String deployer, String stage, String deployment)
+   {
+      List<DeployerTimes> result = new ArrayList<DeployerTimes>();
+      List<DeployerTimes> candidates = new ArrayList<DeployerTimes>(times.values());
+      if (deployment == null)
+         candidates.addAll(removed.values());
+      for (DeployerTimes t : candidates)
+      {
+         if (deployer != null && deployer.equals(t.getDeployer()) == false)
+            continue;
+         if (stage != null && stage.equals(t.getStage()) == false)
+            continue;
+         if (deployment != null && deployment.equals(t.getDeployment()) == false)
+            continue;
+         result.add(t);
+      }
+      return result;
+   }
+
+   /**
+    * Get the times per deployer and stage added up over all deployments,
+    * including the removed ones.
+    *
+    * @return the times, slowest first
+    */
+   public List<DeployerTimes> getTotals()
+   {
+      Map<Key, DeployerTimes> totals = new LinkedHashMap<Key, DeployerTimes>();
+      List<DeployerTimes> all = new ArrayList<DeployerTimes>(times.values());
+      all.addAll(removed.values());
+      for (DeployerTimes t : all)
+      {
+         Key key = new Key(t.getDeployer(), t.getStage(), null);
+         DeployerTimes total = totals.get(key);
+         if (total == null)
+         {
+            total = new DeployerTimes(t.getDeployer(), t.getStage(), null);
+            totals.put(key, total);
+         }
+         total.merge(t);
+      }
+      List<DeployerTimes> result = new ArrayList<DeployerTimes>(totals.values());
+      Collections.sort(result, SLOWEST_FIRST);
+      return result;
+   }
+
+   public String listTimes()
+   {
+      return list(getTotals());
+   }
+
+   public String listTimes(String deployment)
+   {
+      if (deployment == null)
+         throw new IllegalArgumentException("Null deployment");
+      List<DeployerTimes> result = getTimes(null, null, deployment);
+      Collections.sort(result, SLOWEST_FIRST);
+      return list(result);
+   }
+
+   /**
+    * List the times.
+    *
+    * @param list the times
+    * @return one line per entry
+    */
+   protected String list(List<DeployerTimes> list)
+   {
+      StringBuilder builder = new StringBuilder();
+      for (DeployerTimes t : list)
+         builder.append(t).append('\n');
+      return builder.toString();
+   }
+
+   /**
+    * The key.
+    */
+   private static class Key
+   {
+      private String deployer;
+      private String stage;
+      private String deployment;
+      private int hash;
+
+      private Key(String deployer, String stage, String deployment)
+      {
+         this.deployer = deployer;
+         this.stage = stage;
+         this.deployment = deployment;
+         int h = deployer.hashCode();
+         h = 31 * h + stage.hashCode();
+         if (deployment != null)
+            h = 31 * h + deployment.hashCode();
+         this.hash = h;
+      }
+
+      public boolean equals(Object obj)
+      {
+         if (obj == this)
+            return true;
+         if (obj instanceof Key == false)
+            return false;
+         Key other = (Key) obj;
+         if (deployer.equals(other.deployer) == false || stage.equals(other.stage) == false)
+            return false;
+         if (deployment == null)
+            return other.deployment == null;
+         return deployment.equals(other.deployment);
+      }
+
+      public int hashCode()
+      {
+         return hash;
+      }
+   }
+}
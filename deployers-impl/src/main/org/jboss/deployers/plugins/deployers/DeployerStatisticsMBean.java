@@ -0,0 +1,66 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.deployers;
+
+/**
+ * The management view of the deployer statistics.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface DeployerStatisticsMBean
+{
+   /**
+    * Whether the times are recorded.
+    *
+    * @return true when enabled
+    */
+   boolean isEnabled();
+
+   /**
+    * Set whether the times are recorded.
+    *
+    * @param enabled true to record
+    */
+   void setEnabled(boolean enabled);
+
+   /**
+    * Forget all the recorded times.
+    */
+   void clear();
+
+   /**
+    * List the times per deployer and stage over all deployments,
+    * the slowest deployers first.
+    *
+    * @return the times
+    */
+   String listTimes();
+
+   /**
+    * List the times per deployer and stage for a top level deployment,
+    * the slowest deployers first.
+    *
+    * @param deployment the top level deployment name
+    * @return the times
+    */
+   String listTimes(String deployment);
+}
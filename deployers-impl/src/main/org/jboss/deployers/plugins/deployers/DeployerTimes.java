@@ -0,0 +1,136 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.deployers;
+
+/**
+ * The deploy and undeploy times of a deployer in a stage for a top level deployment.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerTimes
+{
+   /** The deployer */
+   private String deployer;
+
+   /** The stage */
+   private String stage;
+
+   /** The top level deployment, null for times over all deployments */
+   private String deployment;
+
+   /** The deploy times */
+   private TimeHistogram deploy = new TimeHistogram();
+
+   /** The undeploy times */
+   private TimeHistogram undeploy = new TimeHistogram();
+
+   /**
+    * Create a new DeployerTimes.
+    *
+    * @param deployer the deployer
+    * @param stage the stage
+    * @param deployment the top level deployment
+    */
+   public DeployerTimes(String deployer, String stage, String deployment)
+   {
+      if (deployer == null)
+         throw new IllegalArgumentException("Null deployer");
+      if (stage == null)
+         throw new IllegalArgumentException("Null stage");
+      this.deployer = deployer;
+      this.stage = stage;
+      this.deployment = deployment;
+   }
+
+   /**
+    * Get the deployer.
+    *
+    * @return the deployer
+    */
+   public String getDeployer()
+   {
+      return deployer;
+   }
+
+   /**
+    * Get the stage.
+    *
+    * @return the stage
+    */
+   public String getStage()
+   {
+      return stage;
+   }
+
+   /**
+    * Get the top level deployment.
+    *
+    * @return the deployment or null when these are the times over all deployments
+    */
+   public String getDeployment()
+   {
+      return deployment;
+   }
+
+   /**
+    * Get the deploy times.
+    *
+    * @return the deploy times
+    */
+   public TimeHistogram getDeploy()
+   {
+      return deploy;
+   }
+
+   /**
+    * Get the undeploy times.
+    *
+    * @return the undeploy times
+    */
+   public TimeHistogram getUndeploy()
+   {
+      return undeploy;
+   }
+
+   /**
+    * Add other times.
+    *
+    * @param other the other times
+    */
+   public void merge(DeployerTimes other)
+   {
+      deploy.merge(other.deploy);
+      undeploy.merge(other.undeploy);
+   }
+
+   public String toString()
+   {
+      StringBuilder builder = new StringBuilder();
+      builder.append(deployer).append('@').append(stage);
+      if (deployment != null)
+         builder.append('[').append(deployment).append(']');
+      builder.append(" deploy{").append(deploy).append('}');
+      if (undeploy.getCount() > 0)
+         builder.append(" undeploy{").append(undeploy).append('}');
+      return builder.toString();
+   }
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.deployer.Deployer;
 import org.jboss.deployers.spi.deployer.DeploymentStage;
+import org.jboss.deployers.spi.deployer.DeploymentTracer;
 import org.jboss.deployers.spi.deployer.managed.ManagedObjectCreator;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
 import org.jboss.logging.Logger;
@@ -54,6 +55,12 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
  
    /** The context classloader of the person registering the deployer */
    private ClassLoader classLoader;
+
+   /** The statistics */
+   private DeployerStatistics statistics;
+
+   /** The tracer */
+   private DeploymentTracer tracer;
    
    /**
     * Create a new DeployerWrapper.
@@ -91,6 +98,62 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
       this.managedObjectCreator = managedObjectCreator;
    }
 
+   /**
+    * Get the statistics.
+    * 
+    * @return the statistics or null if the times are not recorded
+    */
+   public DeployerStatistics getStatistics()
+   {
+      return statistics;
+   }
+
+   /**
+    * Set the statistics.
+    * 
+    * @param statistics the statistics, null not to record the times
+    */
+   public void setStatistics(DeployerStatistics statistics)
+   {
+      this.statistics = statistics;
+   }
+
+   /**
+    * Get the tracer.
+    * 
+    * @return the tracer or null
+    */
+   public DeploymentTracer getTracer()
+   {
+      return tracer;
+   }
+
+   /**
+    * Set the tracer.
+    * 
+    * @param tracer the tracer, null not to trace
+    */
+   public void setTracer(DeploymentTracer tracer)
+   {
+      this.tracer = tracer;
+   }
+
+   /**
+    * Record the time of a deployer call.
+    * 
+    * @param statistics the statistics
+    * @param unit the unit
+    * @param deploy true for deploy
+    * @param start the start time in nanoseconds
+    */
+   protected void record(DeployerStatistics statistics, DeploymentUnit unit, boolean deploy, long start)
+   {
+      long time = System.nanoTime() - start;
+      DeploymentStage stage = deployer.getStage();
+      String stageName = stage != null ? stage.getName() : "<unknown>";
+      statistics.record(deployer.toString(), stageName, unit.getTopLevel().getName(), deploy, time);
+   }
+
    public int getRelativeOrder()
    {
       return deployer.getRelativeOrder();
@@ -162,6 +225,12 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
       if (unit == null)
          throw new IllegalArgumentException("Null unit");
 
+      DeployerStatistics statistics = this.statistics;
+      boolean timed = statistics != null && statistics.isEnabled();
+      long start = timed ? System.nanoTime() : 0;
+      DeploymentTracer tracer = this.tracer;
+      if (tracer != null)
+         tracer.begin(DeploymentTracer.DEPLOY, deployer.toString(), unit.getName());
       ClassLoader previous = SecurityActions.setContextClassLoader(classLoader);
       try
       {
@@ -177,6 +246,10 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
       finally
       {
          SecurityActions.resetContextClassLoader(previous);
+         if (timed)
+            record(statistics, unit, true, start);
+         if (tracer != null)
+            tracer.end(DeploymentTracer.DEPLOY, deployer.toString(), unit.getName());
       }
    }
 
@@ -185,6 +258,12 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
       if (unit == null)
          throw new IllegalArgumentException("Null unit");
 
+      DeployerStatistics statistics = this.statistics;
+      boolean timed = statistics != null && statistics.isEnabled();
+      long start = timed ? System.nanoTime() : 0;
+      DeploymentTracer tracer = this.tracer;
+      if (tracer != null)
+         tracer.begin(DeploymentTracer.UNDEPLOY, deployer.toString(), unit.getName());
       ClassLoader previous = SecurityActions.setContextClassLoader(classLoader);
       try
       {
@@ -199,6 +278,10 @@ public class DeployerWrapper implements Deployer, ManagedObjectCreator
       finally
       {
          SecurityActions.resetContextClassLoader(previous);
+         if (timed)
+            record(statistics, unit, false, start);
+         if (tracer != null)
+            tracer.end(DeploymentTracer.UNDEPLOY, deployer.toString(), unit.getName());
       }
    }
 
@@ -32,6 +32,9 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.dependency.spi.Controller;
@@ -53,9 +56,11 @@ import org.jboss.deployers.spi.deployer.Deployer;
 import org.jboss.deployers.spi.deployer.Deployers;
 import org.jboss.deployers.spi.deployer.DeploymentStage;
 import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.deployers.spi.deployer.DeploymentTracer;
 import org.jboss.deployers.spi.deployer.managed.ManagedObjectCreator;
 import org.jboss.deployers.structure.spi.DeploymentContext;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.deployers.structure.spi.helpers.AttachmentPresence;
 import org.jboss.deployers.structure.spi.scope.ScopeBuilder;
 import org.jboss.kernel.spi.dependency.KernelController;
 import org.jboss.logging.Logger;
@@ -106,11 +111,36 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    private Map<String, List<Deployer>> deployersByStage = new HashMap<String, List<Deployer>>();
 
+   /**
+    * The deployer sorters by stage
+    */
+   private Map<String, DeployerSorter> sortersByStage = new HashMap<String, DeployerSorter>();
+
    /**
     * The scope builder
     */
    private ScopeBuilder scopeBuilder;
 
+   /**
+    * The deployer statistics
+    */
+   private DeployerStatistics statistics = new DeployerStatistics();
+
+   /**
+    * The tracer
+    */
+   private DeploymentTracer tracer;
+
+   /**
+    * The executor used to move independent deployments through a stage in parallel
+    */
+   private Executor executor;
+
+   /**
+    * The stages already run by the executor, waiting for the controller
+    */
+   private Map<ControllerContext, PreinstalledStage> preinstalled = new ConcurrentHashMap<ControllerContext, PreinstalledStage>();
+
    /**
     * Create a new DeployersImpl.
     *
@@ -217,6 +247,8 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       addDeploymentStage(stage);
 
       DeployerWrapper wrapper = new DeployerWrapper(deployer);
+      wrapper.setStatistics(statistics);
+      wrapper.setTracer(tracer);
 
       // Ignore duplicates
       if (deployers.contains(wrapper))
@@ -268,7 +300,10 @@ public class DeployersImpl implements Deployers, ControllerContextActions
 
       deployers.remove(deployer);
       if (deployers.isEmpty())
+      {
          deployersByStage.remove(stageName);
+         sortersByStage.remove(stageName);
+      }
 
       log.debug("Removed deployer " + deployer + " from stage " + stageName);
    }
@@ -359,6 +394,82 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       this.repository = repository;
    }
 
+   /**
+    * Get the deployer statistics.<p>
+    *
+    * This is the object to expose as an MBean.
+    *
+    * @return the statistics
+    */
+   public DeployerStatistics getDeployerStatistics()
+   {
+      return statistics;
+   }
+
+   /**
+    * Get the recorded deployer times.
+    *
+    * @param deployer   the deployer, null for all deployers
+    * @param stage      the stage, null for all stages
+    * @param deployment the top level deployment name, null for all deployments
+    * @return the matching times
+    */
+   public List<DeployerTimes> getDeployerTimes(String deployer, DeploymentStage stage, String deployment)
+   {
+      return statistics.getTimes(deployer, stage != null ? stage.getName() : null, deployment);
+   }
+
+   /**
+    * Get the tracer.
+    *
+    * @return the tracer or null
+    */
+   public DeploymentTracer getTracer()
+   {
+      return tracer;
+   }
+
+   /**
+    * Set the tracer.<p>
+    *
+    * The tracer sees every stage change of a deployment and every deployer call on a unit.
+    *
+    * @param tracer the tracer, null not to trace
+    */
+   public synchronized void setTracer(DeploymentTracer tracer)
+   {
+      this.tracer = tracer;
+      for (DeployerWrapper wrapper : deployers)
+         wrapper.setTracer(tracer);
+   }
+
+   /**
+    * Get the executor.
+    *
+    * @return the executor or null when deployments are processed serially
+    */
+   public Executor getExecutor()
+   {
+      return executor;
+   }
+
+   /**
+    * Set the executor.<p>
+    *
+    * When set, the deployers of a stage are run concurrently on this executor for
+    * consecutive deployments passed to {@link #process(List, List)} that do not depend on anything.
+    * The controller then moves the deployments to the stage serially, in their original order,
+    * as it holds its lock while changing state. A deployment with dependencies is changed
+    * serially at its position in the list, after the deployments before it.
+    * Every stage is still completed for all deployments before the next stage is started.
+    *
+    * @param executor the executor, null means serial processing
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.executor = executor;
+   }
+
    public void start()
    {
       // Bootstrap the repository
@@ -537,6 +648,8 @@ public class DeployersImpl implements Deployers, ControllerContextActions
                // but left here in case somebody isn't using that.
                removeClassLoader(context);
                cleanup(context);
+               if (context.isTopLevel())
+                  statistics.removeDeployment(context.getName());
                log.debug("Fully Undeployed " + context.getName());
             }
             catch (Throwable t)
@@ -580,33 +693,208 @@ public class DeployersImpl implements Deployers, ControllerContextActions
 
          // Go through the states in order
          ControllerStateModel states = controller.getStates();
+         ControllerState previous = null;
          for (ControllerState state : states)
          {
-            for (DeploymentContext context : deploy)
+            if (executor != null && previous != null && deploy.size() > 1)
+               changeInParallel(deploy, previous, state, states, trace);
+            else
             {
-               DeploymentControllerContext deploymentControllerContext = context.getTransientAttachments().getAttachment(ControllerContext.class.getName(), DeploymentControllerContext.class);
-               ControllerState current = deploymentControllerContext.getState();
-               if (ControllerState.ERROR.equals(current) == false && states.isBeforeState(current, state))
+               for (DeploymentContext context : deploy)
+                  changeState(context, state, states, trace);
+            }
+            previous = state;
+         }
+      }
+   }
+
+   /**
+    * Move a deployment to the given state if it is not already there
+    *
+    * @param context the deployment context
+    * @param state   the state
+    * @param states  the controller states
+    * @param trace   whether trace is enabled
+    */
+   protected void changeState(DeploymentContext context, ControllerState state, ControllerStateModel states, boolean trace)
+   {
+      DeploymentControllerContext deploymentControllerContext = context.getTransientAttachments().getAttachment(ControllerContext.class.getName(), DeploymentControllerContext.class);
+      ControllerState current = deploymentControllerContext.getState();
+      if (ControllerState.ERROR.equals(current) == false && states.isBeforeState(current, state))
+      {
+         checkShutdown();
+         try
+         {
+            controller.change(deploymentControllerContext, state);
+         }
+         catch (Throwable t)
+         {
+            context.setState(DeploymentState.ERROR);
+            context.setProblem(t);
+         }
+      }
+      else
+      {
+         if (trace)
+            log.trace("Not moving " + deploymentControllerContext + " to state " + state + " it is at " + current);
+      }
+   }
+
+   /**
+    * Move the deployments to the given state using the executor.<p>
+    *
+    * The list is split into runs of consecutive deployments without dependencies,
+    * see {@link #changeBatch(List, ControllerState, ControllerState, ControllerStateModel, boolean)}.
+    * Deployments with dependencies are changed serially at their position in the list.
+    *
+    * @param deploy   the deployments
+    * @param previous the state before the given state
+    * @param state    the state
+    * @param states   the controller states
+    * @param trace    whether trace is enabled
+    */
+   protected void changeInParallel(List<DeploymentContext> deploy, ControllerState previous, ControllerState state, ControllerStateModel states, boolean trace)
+   {
+      List<DeploymentContext> batch = new ArrayList<DeploymentContext>();
+      for (DeploymentContext context : deploy)
+      {
+         if (hasDependencies(context))
+         {
+            changeBatch(batch, previous, state, states, trace);
+            batch.clear();
+            changeState(context, state, states, trace);
+         }
+         else
+         {
+            batch.add(context);
+         }
+      }
+      changeBatch(batch, previous, state, states, trace);
+   }
+
+   /**
+    * Move a batch of independent deployments to the given state.<p>
+    *
+    * The deployers of the stage are run concurrently for the deployments
+    * that are at the previous state, then the controller changes the deployments
+    * in the batch order and picks up the results in {@link #install(ControllerContext, ControllerState, ControllerState)}.
+    *
+    * @param batch    the deployments
+    * @param previous the state before the given state
+    * @param state    the state
+    * @param states   the controller states
+    * @param trace    whether trace is enabled
+    */
+   protected void changeBatch(List<DeploymentContext> batch, ControllerState previous, ControllerState state, ControllerStateModel states, boolean trace)
+   {
+      if (batch.size() > 1)
+         preinstall(batch, previous, state, trace);
+
+      try
+      {
+         for (DeploymentContext context : batch)
+            changeState(context, state, states, trace);
+      }
+      finally
+      {
+         // The controller did not move these, undo the stage
+         for (DeploymentContext context : batch)
+         {
+            ControllerContext controllerContext = context.getTransientAttachments().getAttachment(ControllerContext.class);
+            PreinstalledStage stage = controllerContext != null ? preinstalled.remove(controllerContext) : null;
+            if (stage != null && stage.problem == null)
+            {
+               if (trace)
+                  log.trace("Not moved " + context.getName() + " to state " + state + ", undeploying the stage");
+               uninstall(controllerContext, state, previous);
+            }
+         }
+      }
+   }
+
+   /**
+    * Run the deployers of a stage concurrently and wait for them.
+    *
+    * @param batch    the deployments
+    * @param previous the state before the given state
+    * @param state    the state
+    * @param trace    whether trace is enabled
+    */
+   protected void preinstall(List<DeploymentContext> batch, ControllerState previous, final ControllerState state, boolean trace)
+   {
+      final CountDownLatch barrier = new CountDownLatch(batch.size());
+      for (final DeploymentContext context : batch)
+      {
+         final DeploymentControllerContext deploymentControllerContext = context.getTransientAttachments().getAttachment(ControllerContext.class.getName(), DeploymentControllerContext.class);
+         if (deploymentControllerContext == null || previous.equals(deploymentControllerContext.getState()) == false)
+         {
+            barrier.countDown();
+            continue;
+         }
+
+         checkShutdown();
+         Runnable task = new Runnable()
+         {
+            public void run()
+            {
+               Throwable problem = null;
+               try
                {
-                  checkShutdown();
-                  try
-                  {
-                     controller.change(deploymentControllerContext, state);
-                  }
-                  catch (Throwable t)
-                  {
-                     context.setState(DeploymentState.ERROR);
-                     context.setProblem(t);
-                  }
+                  doInstall(deploymentControllerContext, state);
                }
-               else
+               catch (Throwable t)
                {
-                  if (trace)
-                     log.trace("Not moving " + deploymentControllerContext + " to state " + state + " it is at " + current);
+                  problem = t;
+               }
+               finally
+               {
+                  preinstalled.put(deploymentControllerContext, new PreinstalledStage(state, problem));
+                  barrier.countDown();
                }
             }
+         };
+         try
+         {
+            executor.execute(task);
+         }
+         catch (RejectedExecutionException e)
+         {
+            if (trace)
+               log.trace("Executor rejected " + context.getName() + ", running stage " + state + " in the caller thread");
+            task.run();
+         }
+      }
+
+      boolean interrupted = false;
+      while (true)
+      {
+         try
+         {
+            barrier.await();
+            break;
+         }
+         catch (InterruptedException e)
+         {
+            interrupted = true;
          }
       }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   /**
+    * Whether the deployment has dependencies on other contexts
+    *
+    * @param context the deployment context
+    * @return true when the deployment depends on something
+    */
+   protected boolean hasDependencies(DeploymentContext context)
+   {
+      DependencyInfo dependencyInfo = context.getDependencyInfo();
+      if (dependencyInfo == null)
+         return false;
+      Set<DependencyItem> iDependOn = dependencyInfo.getIDependOn(null);
+      return iDependOn != null && iDependOn.isEmpty() == false;
    }
 
    /**
@@ -888,10 +1176,34 @@ public class DeployersImpl implements Deployers, ControllerContextActions
 
    public void install(ControllerContext context, ControllerState fromState, ControllerState toState) throws Throwable
    {
-      DeploymentControllerContext deploymentControllerContext = (DeploymentControllerContext)context;
+      PreinstalledStage stage = preinstalled.get(context);
+      if (stage != null && toState.equals(stage.state))
+      {
+         preinstalled.remove(context);
+         if (stage.problem != null)
+            throw stage.problem;
+         return;
+      }
+
+      doInstall((DeploymentControllerContext)context, toState);
+   }
+
+   /**
+    * Run the deployers of a stage
+    *
+    * @param deploymentControllerContext the deployment controller context
+    * @param toState the stage state
+    * @throws Throwable for any error
+    */
+   protected void doInstall(DeploymentControllerContext deploymentControllerContext, ControllerState toState) throws Throwable
+   {
+      ControllerContext context = deploymentControllerContext;
       String stageName = toState.getStateString();
 
       DeploymentContext deploymentContext = deploymentControllerContext.getDeploymentContext();
+      DeploymentTracer tracer = this.tracer;
+      if (tracer != null)
+         tracer.begin(DeploymentTracer.STAGE, stageName, deploymentContext.getName());
       try
       {
          List<Deployer> theDeployers = getDeployersList(stageName);
@@ -943,6 +1255,8 @@ public class DeployersImpl implements Deployers, ControllerContextActions
             log.debug("Fully Deployed " + context.getName());
             setState(deploymentContext, DeploymentState.DEPLOYED, null);
          }
+         if (tracer != null)
+            tracer.end(DeploymentTracer.STAGE, stageName, deploymentContext.getName());
       }
    }
 
@@ -955,11 +1269,14 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    protected void doInstallParentFirst(Deployer deployer, DeploymentContext context) throws Throwable
    {
+      if (isRelevantForSubtree(deployer, context) == false)
+         return;
+
       List<DeploymentContext> currentComponents = context.getComponents();
       // Take a copy of the components so we don't start looping on newly added components
       // in the component deployers
       List<DeploymentContext> components = null;
-      if (currentComponents != null && currentComponents.isEmpty() == false)
+      if (currentComponents != null && currentComponents.isEmpty() == false && isRelevantForComponents(deployer))
          components = new ArrayList<DeploymentContext>(currentComponents);
 
       DeploymentUnit unit = context.getDeploymentUnit();
@@ -979,7 +1296,8 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       else if (log.isTraceEnabled())
          log.trace("Deployer " + deployer + " not relevant for " + context.getName());
 
-      if (components != null)
+      // The deployment may have attached the input for the components
+      if (components != null && isRelevantForComponents(deployer, context))
       {
          try
          {
@@ -1011,7 +1329,7 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       }
 
       List<DeploymentContext> children = context.getChildren();
-      if (children != null)
+      if (children != null && isRelevantForChildren(deployer, context))
       {
          try
          {
@@ -1052,28 +1370,34 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    protected void doInstallParentLast(Deployer deployer, DeploymentContext context) throws Throwable
    {
+      if (isRelevantForSubtree(deployer, context) == false)
+         return;
+
       List<DeploymentContext> children = context.getChildren();
-      for (int i = 0; i < children.size(); ++i)
+      if (children != null && isRelevantForChildren(deployer, context))
       {
-         DeploymentContext child = children.get(i);
-         try
+         for (int i = 0; i < children.size(); ++i)
          {
-            doInstallParentLast(deployer, child);
-         }
-         catch (DeploymentException e)
-         {
-            // Unwind the previous children
-            for (int j = i - 1; j >= 0; --j)
+            DeploymentContext child = children.get(i);
+            try
             {
-               child = children.get(j);
-               doUninstallParentFirst(deployer, child, true, true);
+               doInstallParentLast(deployer, child);
+            }
+            catch (DeploymentException e)
+            {
+               // Unwind the previous children
+               for (int j = i - 1; j >= 0; --j)
+               {
+                  child = children.get(j);
+                  doUninstallParentFirst(deployer, child, true, true);
+               }
+               throw e;
             }
-            throw e;
          }
       }
 
       List<DeploymentContext> components = context.getComponents();
-      if (components != null)
+      if (components != null && isRelevantForComponents(deployer, context))
       {
          try
          {
@@ -1135,17 +1459,28 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       if (log.isTraceEnabled())
          log.trace("Deployers for " + stageName + " " + theDeployers);
 
-      if (theDeployers.isEmpty() == false)
+      DeploymentTracer tracer = this.tracer;
+      if (tracer != null)
+         tracer.begin(DeploymentTracer.STAGE, stageName, deploymentContext.getName());
+      try
       {
-         for (int i = theDeployers.size() - 1; i >= 0; --i)
+         if (theDeployers.isEmpty() == false)
          {
-            Deployer deployer = theDeployers.get(i);
-            if (deployer.isParentFirst())
-               doUninstallParentLast(deployer, deploymentContext, true, true);
-            else
-               doUninstallParentFirst(deployer, deploymentContext, true, true);
+            for (int i = theDeployers.size() - 1; i >= 0; --i)
+            {
+               Deployer deployer = theDeployers.get(i);
+               if (deployer.isParentFirst())
+                  doUninstallParentLast(deployer, deploymentContext, true, true);
+               else
+                  doUninstallParentFirst(deployer, deploymentContext, true, true);
+            }
          }
       }
+      finally
+      {
+         if (tracer != null)
+            tracer.end(DeploymentTracer.STAGE, stageName, deploymentContext.getName());
+      }
    }
 
    /**
@@ -1158,7 +1493,10 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    protected void doUninstallParentLast(Deployer deployer, DeploymentContext context, boolean doChildren, boolean doComponents)
    {
-      if (doChildren)
+      if (isRelevantForSubtree(deployer, context) == false)
+         return;
+
+      if (doChildren && isRelevantForChildren(deployer, context))
       {
          List<DeploymentContext> children = context.getChildren();
          if (children != null && children.isEmpty() == false)
@@ -1171,7 +1509,7 @@ public class DeployersImpl implements Deployers, ControllerContextActions
          }
       }
 
-      if (doComponents)
+      if (doComponents && isRelevantForComponents(deployer, context))
       {
          List<DeploymentContext> components = context.getComponents();
          if (components != null && components.isEmpty() == false)
@@ -1201,6 +1539,9 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    protected void doUninstallParentFirst(Deployer deployer, DeploymentContext context, boolean doContext, boolean doComponents)
    {
+      if (isRelevantForSubtree(deployer, context) == false)
+         return;
+
       if (doContext)
       {
          DeploymentUnit unit = context.getDeploymentUnit();
@@ -1210,7 +1551,7 @@ public class DeployersImpl implements Deployers, ControllerContextActions
             log.trace("Deployer " + deployer + " not relevant for " + context.getName());
       }
 
-      if (doComponents)
+      if (doComponents && isRelevantForComponents(deployer, context))
       {
          List<DeploymentContext> components = context.getComponents();
          if (components != null && components.isEmpty() == false)
@@ -1224,7 +1565,7 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       }
 
       List<DeploymentContext> children = context.getChildren();
-      if (children != null && children.isEmpty() == false)
+      if (children != null && children.isEmpty() == false && isRelevantForChildren(deployer, context))
       {
          for (int i = children.size() - 1; i >= 0; --i)
          {
@@ -1250,7 +1591,13 @@ public class DeployersImpl implements Deployers, ControllerContextActions
    }
 
    /**
-    * Test whether a deployer is relevant
+    * Test whether a deployer is relevant.<p>
+    *
+    * The input is probed on the unit, which also marks the context as deployed
+    * when the input is present. The unit remembers resolved names, including misses,
+    * until one of its attachment layers changes, so a repeated probe is a single map lookup.
+    * The subtrees where the input is not attached are not visited at all,
+    * see {@link #isRelevantForSubtree(Deployer, DeploymentContext)}.
     *
     * @param deployer    deployer
     * @param unit        the deployment unit
@@ -1282,6 +1629,104 @@ public class DeployersImpl implements Deployers, ControllerContextActions
       return true;
    }
 
+   /**
+    * Test whether a deployer can be relevant for a context or anything below it.<p>
+    *
+    * The contexts index the names attached to them and below them as attachments
+    * are added and removed, so a subtree where the deployer's input is not attached
+    * is skipped without probing its units.
+    *
+    * @param deployer the deployer
+    * @param context the context
+    * @return false if the deployer is not relevant for the context nor anything below it
+    */
+   protected boolean isRelevantForSubtree(Deployer deployer, DeploymentContext context)
+   {
+      String input = getInputName(deployer);
+      return input == null || AttachmentPresence.isVisible(context, input);
+   }
+
+   /**
+    * Test whether a deployer can be relevant for the children of a context.<p>
+    *
+    * When it cannot, the whole subtree of children is skipped.
+    *
+    * @param deployer the deployer
+    * @return false if the deployer is not relevant for any child
+    */
+   protected boolean isRelevantForChildren(Deployer deployer)
+   {
+      // Children are never top level
+      return deployer.isTopLevelOnly() == false;
+   }
+
+   /**
+    * Test whether a deployer can be relevant for the children of a context.<p>
+    *
+    * The children are skipped when the deployer's input
+    * is not attached to any of them, nor to anything below them.
+    *
+    * @param deployer the deployer
+    * @param context the context
+    * @return false if the deployer is not relevant for any child
+    */
+   protected boolean isRelevantForChildren(Deployer deployer, DeploymentContext context)
+   {
+      if (isRelevantForChildren(deployer) == false)
+         return false;
+      String input = getInputName(deployer);
+      return input == null || AttachmentPresence.isVisibleToChildren(context, input);
+   }
+
+   /**
+    * Test whether a deployer can be relevant for the components of a context.<p>
+    *
+    * When it cannot, the whole subtree of components is skipped.
+    *
+    * @param deployer the deployer
+    * @return false if the deployer is not relevant for any component
+    */
+   protected boolean isRelevantForComponents(Deployer deployer)
+   {
+      // Components are never top level and the components of components are components
+      return deployer.isTopLevelOnly() == false && deployer.isWantComponents();
+   }
+
+   /**
+    * Test whether a deployer can be relevant for the components of a context.<p>
+    *
+    * Components see the attachments of their parent, so the components are
+    * skipped when the deployer's input is attached neither to the context
+    * nor to any of the components, nor to anything below them.
+    *
+    * @param deployer the deployer
+    * @param context the context
+    * @return false if the deployer is not relevant for any component
+    */
+   protected boolean isRelevantForComponents(Deployer deployer, DeploymentContext context)
+   {
+      if (isRelevantForComponents(deployer) == false)
+         return false;
+      String input = getInputName(deployer);
+      return input == null || AttachmentPresence.isVisibleToComponents(context, input);
+   }
+
+   /**
+    * Get the name of the attachment a deployer needs
+    *
+    * @param deployer the deployer
+    * @return the input name or null when the deployer is relevant without it
+    */
+   private static String getInputName(Deployer deployer)
+   {
+      if (deployer.isAllInputs())
+         return null;
+      Class<?> input = deployer.getInput();
+      if (input == null)
+         return null;
+      return input.getName();
+   }
+
    /**
     * Insert the new Deployer.
     *
@@ -1291,7 +1736,14 @@ public class DeployersImpl implements Deployers, ControllerContextActions
     */
    protected List<Deployer> insert(List<Deployer> original, Deployer newDeployer)
    {
-      DeployerSorter sorter = DeployerSorterFactory.newSorter();
+      // Keep the sorter per stage, so stateful sorters can reuse what they already know
+      String stageName = newDeployer.getStage().getName();
+      DeployerSorter sorter = sortersByStage.get(stageName);
+      if (sorter == null)
+      {
+         sorter = DeployerSorterFactory.newSorter();
+         sortersByStage.put(stageName, sorter);
+      }
       return sorter.sortDeployers(original, newDeployer);
    }
 
@@ -1351,4 +1803,22 @@ public class DeployersImpl implements Deployers, ControllerContextActions
             cleanup(component);
       }
    }
+
+   /**
+    * The outcome of a stage run by the executor.
+    */
+   private static class PreinstalledStage
+   {
+      /** The stage state */
+      private ControllerState state;
+
+      /** The problem or null */
+      private Throwable problem;
+
+      private PreinstalledStage(ControllerState state, Throwable problem)
+      {
+         this.state = state;
+         this.problem = problem;
+      }
+   }
 }
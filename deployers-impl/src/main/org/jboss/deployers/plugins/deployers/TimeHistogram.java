@@ -0,0 +1,225 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.deployers;
+
+/**
+ * Latency histogram with power of two buckets.<p>
+ *
+ * Bucket i counts the times below 2^(i+10) nanoseconds that did not fit in the previous bucket,
+ * so the percentiles are accurate to a factor of two which is plenty to spot a slow deployer.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class TimeHistogram
+{
+   /** The number of buckets */
+   public static final int BUCKETS = 32;
+
+   /** The shift of the first bucket */
+   private static final int SHIFT = 10;
+
+   /** The number of recorded times */
+   private long count;
+
+   /** The total time */
+   private long total;
+
+   /** The minimum time */
+   private long min = Long.MAX_VALUE;
+
+   /** The maximum time */
+   private long max;
+
+   /** The buckets */
+   private int[] buckets = new int[BUCKETS];
+
+   /**
+    * Record a time.
+    *
+    * @param nanos the time in nanoseconds
+    */
+   public synchronized void record(long nanos)
+   {
+      if (nanos < 0)
+         nanos = 0;
+      ++count;
+      total += nanos;
+      if (nanos < min)
+         min = nanos;
+      if (nanos > max)
+         max = nanos;
+      ++buckets[getBucket(nanos)];
+   }
+
+   /**
+    * Add the times of another histogram.
+    *
+    * @param other the other histogram
+    */
+   public void merge(TimeHistogram other)
+   {
+      if (other == null)
+         throw new IllegalArgumentException("Null histogram");
+
+      long otherCount;
+      long otherTotal;
+      long otherMin;
+      long otherMax;
+      int[] otherBuckets;
+      synchronized (other)
+      {
+         otherCount = other.count;
+         otherTotal = other.total;
+         otherMin = other.min;
+         otherMax = other.max;
+         otherBuckets = other.buckets.clone();
+      }
+      synchronized (this)
+      {
+         count += otherCount;
+         total += otherTotal;
+         if (otherMin < min)
+            min = otherMin;
+         if (otherMax > max)
+            max = otherMax;
+         for (int i = 0; i < BUCKETS; ++i)
+            buckets[i] += otherBuckets[i];
+      }
+   }
+
+   /**
+    * Get the number of recorded times.
+    *
+    * @return the count
+    */
+   public synchronized long getCount()
+   {
+      return count;
+   }
+
+   /**
+    * Get the total time.
+    *
+    * @return the total in nanoseconds
+    */
+   public synchronized long getTotal()
+   {
+      return total;
+   }
+
+   /**
+    * Get the minimum time.
+    *
+    * @return the minimum in nanoseconds, 0 if nothing was recorded
+    */
+   public synchronized long getMin()
+   {
+      return count == 0 ? 0 : min;
+   }
+
+   /**
+    * Get the maximum time.
+    *
+    * @return the maximum in nanoseconds
+    */
+   public synchronized long getMax()
+   {
+      return max;
+   }
+
+   /**
+    * Get the average time.
+    *
+    * @return the average in nanoseconds
+    */
+   public synchronized long getAverage()
+   {
+      return count == 0 ? 0 : total / count;
+   }
+
+   /**
+    * Get the percentile.
+    *
+    * @param percentile the percentile between 0 and 100
+    * @return the upper bound of the percentile in nanoseconds
+    */
+   public synchronized long getPercentile(double percentile)
+   {
+      if (percentile < 0 || percentile > 100)
+         throw new IllegalArgumentException("Percentile should be between 0 and 100: " + percentile);
+      if (count == 0)
+         return 0;
+
+      long wanted = (long) Math.ceil(count * percentile / 100);
+      if (wanted == 0)
+         return getMin();
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i)
+      {
+         seen += buckets[i];
+         if (seen >= wanted)
+            return Math.max(Math.min(1L << (i + SHIFT), max), min);
+      }
+      return max;
+   }
+
+   /**
+    * Get the bucket counts.
+    *
+    * @return a copy of the buckets
+    */
+   public synchronized int[] getBuckets()
+   {
+      return buckets.clone();
+   }
+
+   /**
+    * Get the bucket for a time.
+    *
+    * @param nanos the time
+    * @return the bucket index
+    */
+   static int getBucket(long nanos)
+   {
+      int bits = 64 - Long.numberOfLeadingZeros(nanos);
+      int bucket = bits - SHIFT;
+      if (bucket < 0)
+         return 0;
+      if (bucket >= BUCKETS)
+         return BUCKETS - 1;
+      return bucket;
+   }
+
+   public synchronized String toString()
+   {
+      StringBuilder builder = new StringBuilder();
+      builder.append("count=").append(count);
+      builder.append(" total=").append(total / 1000000).append("ms");
+      builder.append(" min=").append(getMin() / 1000).append("us");
+      builder.append(" avg=").append(getAverage() / 1000).append("us");
+      builder.append(" p50=").append(getPercentile(50) / 1000).append("us");
+      builder.append(" p90=").append(getPercentile(90) / 1000).append("us");
+      builder.append(" p99=").append(getPercentile(99) / 1000).append("us");
+      builder.append(" max=").append(max / 1000).append("us");
+      return builder.toString();
+   }
+}
@@ -40,6 +40,7 @@ import org.jboss.deployers.spi.DeploymentState;
 import org.jboss.deployers.spi.deployer.Deployers;
 import org.jboss.deployers.spi.deployer.DeploymentStage;
 import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.deployers.spi.deployer.DeploymentTracer;
 import org.jboss.deployers.spi.deployer.managed.ManagedDeploymentCreator;
 import org.jboss.deployers.structure.spi.DeploymentContext;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
@@ -74,6 +75,9 @@ public class MainDeployerImpl implements MainDeployer, MainDeployerStructure
    /** The structural deployers */
    private StructuralDeployers structuralDeployers;
 
+   /** The tracer */
+   private DeploymentTracer tracer;
+
    /** The ManagedDeploymentCreator plugin */
    private ManagedDeploymentCreator mgtDeploymentCreator = null;
 
@@ -161,6 +165,28 @@ public class MainDeployerImpl implements MainDeployer, MainDeployerStructure
       structuralDeployers = deployers;
    }
 
+   /**
+    * Get the tracer.
+    *
+    * @return the tracer or null
+    */
+   public DeploymentTracer getTracer()
+   {
+      return tracer;
+   }
+
+   /**
+    * Set the tracer.<p>
+    *
+    * The tracer sees the structure determination of every deployment.
+    *
+    * @param tracer the tracer, null not to trace
+    */
+   public void setTracer(DeploymentTracer tracer)
+   {
+      this.tracer = tracer;
+   }
+
    public ManagedDeploymentCreator getMgtDeploymentCreator()
    {
       return mgtDeploymentCreator;
@@ -842,9 +868,20 @@ public class MainDeployerImpl implements MainDeployer, MainDeployerStructure
       StructuralDeployers structuralDeployers = getStructuralDeployers();
       if (structuralDeployers != null)
       {
-          DeploymentContext result = structuralDeployers.determineStructure(deployment);
-          if (result != null)
-             return result;
+         DeploymentTracer tracer = this.tracer;
+         if (tracer != null)
+            tracer.begin(DeploymentTracer.STRUCTURE, "determineStructure", deployment.getName());
+         try
+         {
+            DeploymentContext result = structuralDeployers.determineStructure(deployment);
+            if (result != null)
+               return result;
+         }
+         finally
+         {
+            if (tracer != null)
+               tracer.end(DeploymentTracer.STRUCTURE, "determineStructure", deployment.getName());
+         }
       }
       throw new DeploymentException("No structural deployers.");
    }
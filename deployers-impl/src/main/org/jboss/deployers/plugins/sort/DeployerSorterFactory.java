@@ -28,14 +28,39 @@ package org.jboss.deployers.plugins.sort;
  */
 public class DeployerSorterFactory
 {
+   /** The system property selecting the sorter type */
+   public static final String SORTER_TYPE = "org.jboss.deployers.plugins.sort.type";
+
+   /** The domino sorter type */
+   public static final String DOMINO = "domino";
+
+   /** The topological sorter type */
+   public static final String TOPOLOGICAL = "topological";
+
    /**
     * Create new DeployerSorter.
-    * Currently just plain domino sorting.
+    * Plain domino sorting unless the {@link #SORTER_TYPE} system property says otherwise.
     *
     * @return deployer sorter instance
     */
    public static DeployerSorter newSorter()
    {
-      return new DominoDeployerSorter();      
+      return newSorter(SecurityActions.getSystemProperty(SORTER_TYPE, DOMINO));
+   }
+
+   /**
+    * Create new DeployerSorter.
+    *
+    * @param type the sorter type
+    * @return deployer sorter instance
+    * @throws IllegalArgumentException for an unknown type
+    */
+   public static DeployerSorter newSorter(String type)
+   {
+      if (type == null || DOMINO.equals(type))
+         return new DominoDeployerSorter();
+      if (TOPOLOGICAL.equals(type))
+         return new TopologicalDeployerSorter();
+      throw new IllegalArgumentException("Unknown sorter type: " + type);
    }
 }
@@ -0,0 +1,509 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.sort;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.jboss.deployers.spi.deployer.Deployer;
+
+import static org.jboss.deployers.spi.Ordered.COMPARATOR;
+
+/**
+ * Deployer sorter keeping an input/output dependency graph.<p>
+ *
+ * The graph is kept between calls, so a new deployer is only matched against
+ * the deployers producing its inputs or consuming its outputs instead of every other deployer.
+ * The graph has the input/output relations {@link DominoOrdering} uses:
+ * outputs to inputs and pass-through deployers, a loop in it is reported.<p>
+ *
+ * The order is the one {@link DominoOrdering} produces for the same list:
+ * the relative order relates the deployers that both have it set and no input/output relation,
+ * the relations are closed transitively, the remaining pairs are compared in list order
+ * the way {@link DominoOrdering} compares their {@link DeployerDomino}s, flipping a comparison that closes a cycle,
+ * and the list is sorted by the result. The closure is taken by reachability over the acyclic relations
+ * and a comparison is only checked against the cycles through its own pair, instead of rescanning every triple.<p>
+ *
+ * Where the relative order contradicts the input/output relations, {@link DominoOrdering} reports a loop.
+ * This sorter keeps the input/output order instead and of the deployers that are ready
+ * takes the first by the same comparison next.
+ * If the original list is not the one this sorter produced last time, the graph is rebuilt.<p>
+ *
+ * Instances are stateful, use one per stage.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class TopologicalDeployerSorter implements DeployerSorter
+{
+   /** The nodes in the current order */
+   private List<Node> nodes = new ArrayList<Node>();
+
+   /** The producers by output */
+   private Map<String, Set<Node>> producers = new HashMap<String, Set<Node>>();
+
+   /** The consumers by input */
+   private Map<String, Set<Node>> consumers = new HashMap<String, Set<Node>>();
+
+   public synchronized List<Deployer> sortDeployers(List<Deployer> original, Deployer newDeployer)
+   {
+      if (isCurrent(original) == false)
+      {
+         reset();
+         for (Deployer deployer : original)
+            add(deployer);
+      }
+
+      Node node = add(newDeployer);
+      try
+      {
+         nodes = sort(original, newDeployer);
+      }
+      catch (IllegalStateException e)
+      {
+         remove(node);
+         throw e;
+      }
+
+      List<Deployer> result = new ArrayList<Deployer>(nodes.size());
+      for (Node n : nodes)
+         result.add(n.deployer);
+      return result;
+   }
+
+   /**
+    * Whether the original list is the one we produced last time.
+    *
+    * @param original the original list
+    * @return true if the graph matches the list
+    */
+   protected boolean isCurrent(List<Deployer> original)
+   {
+      if (original.size() != nodes.size())
+         return false;
+      for (int i = 0; i < nodes.size(); ++i)
+      {
+         if (original.get(i) != nodes.get(i).deployer)
+            return false;
+      }
+      return true;
+   }
+
+   /**
+    * Forget the graph.
+    */
+   protected void reset()
+   {
+      nodes = new ArrayList<Node>();
+      producers.clear();
+      consumers.clear();
+   }
+
+   /**
+    * Add the deployer to the graph.
+    *
+    * @param deployer the deployer
+    * @return the new node
+    */
+   protected Node add(Deployer deployer)
+   {
+      Node node = new Node(deployer);
+
+      Set<Node> successors = new LinkedHashSet<Node>();
+      for (String output : node.outputs)
+         collect(consumers, output, successors);
+      Set<Node> predecessors = new LinkedHashSet<Node>();
+      for (String input : node.inputs)
+         collect(producers, input, predecessors);
+
+      for (Node other : successors)
+      {
+         if (predecessors.contains(other))
+         {
+            // pass-through deployers, otherwise it is a loop we report when sorting
+            if (node.isPassThrough(other))
+            {
+               int relation = other.compareTo(node);
+               if (relation < 0)
+                  link(other, node);
+               else if (relation > 0)
+                  link(node, other);
+            }
+            else
+               link(node, other);
+         }
+         else
+            link(node, other);
+      }
+      for (Node other : predecessors)
+      {
+         if (successors.contains(other) == false)
+            link(other, node);
+         else if (node.isPassThrough(other) == false)
+            link(other, node);
+      }
+
+      for (String output : node.outputs)
+         register(producers, output, node);
+      for (String input : node.inputs)
+         register(consumers, input, node);
+      nodes.add(node);
+      return node;
+   }
+
+   /**
+    * Remove a node from the graph.
+    *
+    * @param node the node
+    */
+   protected void remove(Node node)
+   {
+      for (Node other : node.successors)
+         other.predecessors.remove(node);
+      for (Node other : node.predecessors)
+         other.successors.remove(node);
+      for (String output : node.outputs)
+         unregister(producers, output, node);
+      for (String input : node.inputs)
+         unregister(consumers, input, node);
+      nodes.remove(node);
+   }
+
+   /**
+    * Sort the graph.
+    *
+    * @param original the original deployers
+    * @param newDeployer the new deployer
+    * @return the sorted nodes
+    * @throws IllegalStateException for a loop
+    */
+   protected List<Node> sort(List<Deployer> original, Deployer newDeployer)
+   {
+      List<Node> inputOutputOrder = sortInputOutput(original, newDeployer);
+
+      int size = nodes.size();
+      for (int i = 0; i < size; ++i)
+         nodes.get(i).index = i;
+
+      // negative when the first comes before the second, as in DominoOrdering
+      final int[][] connections = new int[size][size];
+      for (Node node : nodes)
+      {
+         for (Node successor : node.successors)
+         {
+            connections[node.index][successor.index] = -1;
+            connections[successor.index][node.index] = 1;
+         }
+      }
+      for (int i = 0; i < size - 1; ++i)
+      {
+         int one = nodes.get(i).deployer.getRelativeOrder();
+         if (one == 0)
+            continue;
+         for (int j = i + 1; j < size; ++j)
+         {
+            int two = nodes.get(j).deployer.getRelativeOrder();
+            if (connections[i][j] == 0 && two != 0 && one != two)
+            {
+               connections[i][j] = one < two ? -1 : 1;
+               connections[j][i] = -connections[i][j];
+            }
+         }
+      }
+
+      if (close(connections) == false)
+         return inputOutputOrder;
+
+      // compare the unrelated pairs, a cycle stays once a flipped comparison closes one too
+      boolean consistent = true;
+      for (int i = 0; i < size - 1; ++i)
+      {
+         for (int j = i + 1; j < size; ++j)
+         {
+            if (connections[i][j] != 0)
+               continue;
+            int relation = Integer.signum(nodes.get(i).compareTo(nodes.get(j)));
+            if (relation != 0 && (consistent == false || closesCycle(connections, i, j, relation)))
+            {
+               relation = -relation;
+               if (consistent && closesCycle(connections, i, j, relation))
+                  consistent = false;
+            }
+            connections[i][j] = relation;
+            connections[j][i] = -relation;
+         }
+      }
+
+      List<Integer> indexes = new ArrayList<Integer>(size);
+      for (int i = 0; i < size; ++i)
+         indexes.add(i);
+      Collections.sort(indexes, new Comparator<Integer>()
+      {
+         public int compare(Integer i1, Integer i2)
+         {
+            return connections[i1][i2];
+         }
+      });
+
+      List<Node> result = new ArrayList<Node>(size);
+      for (Integer index : indexes)
+         result.add(nodes.get(index));
+      return result;
+   }
+
+   /**
+    * Close the relations transitively.
+    *
+    * @param connections the relations
+    * @return false if the relations have a cycle
+    */
+   private static boolean close(int[][] connections)
+   {
+      int size = connections.length;
+      int[] inDegree = new int[size];
+      for (int i = 0; i < size; ++i)
+      {
+         for (int j = 0; j < size; ++j)
+         {
+            if (connections[i][j] < 0)
+               inDegree[j]++;
+         }
+      }
+      int[] order = new int[size];
+      int count = 0;
+      for (int i = 0; i < size; ++i)
+      {
+         if (inDegree[i] == 0)
+            order[count++] = i;
+      }
+      for (int next = 0; next < count; ++next)
+      {
+         int i = order[next];
+         for (int j = 0; j < size; ++j)
+         {
+            if (connections[i][j] < 0 && --inDegree[j] == 0)
+               order[count++] = j;
+         }
+      }
+      if (count != size)
+         return false;
+
+      BitSet[] reachable = new BitSet[size];
+      for (int next = size - 1; next >= 0; --next)
+      {
+         int i = order[next];
+         BitSet reach = new BitSet(size);
+         for (int j = 0; j < size; ++j)
+         {
+            if (connections[i][j] < 0)
+            {
+               reach.set(j);
+               reach.or(reachable[j]);
+            }
+         }
+         reachable[i] = reach;
+         for (int k = reach.nextSetBit(0); k >= 0; k = reach.nextSetBit(k + 1))
+         {
+            connections[i][k] = -1;
+            connections[k][i] = 1;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Whether relating a pair closes a cycle with a third deployer.
+    *
+    * @param connections the relations
+    * @param i the first index
+    * @param j the second index
+    * @param relation the relation of the first to the second
+    * @return true if it closes a cycle
+    */
+   private static boolean closesCycle(int[][] connections, int i, int j, int relation)
+   {
+      int from = relation < 0 ? i : j;
+      int to = relation < 0 ? j : i;
+      for (int k = 0; k < connections.length; ++k)
+      {
+         if (k != from && k != to && connections[to][k] < 0 && connections[k][from] < 0)
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Topologically sort the input/output relations,
+    * of the deployers that are ready the first by the comparator is taken next.
+    *
+    * @param original the original deployers
+    * @param newDeployer the new deployer
+    * @return the sorted nodes
+    * @throws IllegalStateException for a loop
+    */
+   protected List<Node> sortInputOutput(List<Deployer> original, Deployer newDeployer)
+   {
+      Map<Node, Integer> inDegree = new IdentityHashMap<Node, Integer>(nodes.size());
+      PriorityQueue<Node> ready = new PriorityQueue<Node>();
+      for (Node n : nodes)
+      {
+         int degree = n.predecessors.size();
+         if (degree == 0)
+            ready.add(n);
+         else
+            inDegree.put(n, degree);
+      }
+
+      List<Node> result = new ArrayList<Node>(nodes.size());
+      while (ready.isEmpty() == false)
+      {
+         Node next = ready.poll();
+         result.add(next);
+         for (Node successor : next.successors)
+         {
+            int degree = inDegree.get(successor) - 1;
+            if (degree == 0)
+            {
+               inDegree.remove(successor);
+               ready.add(successor);
+            }
+            else
+               inDegree.put(successor, degree);
+         }
+      }
+
+      if (result.size() != nodes.size())
+      {
+         StringBuilder builder = new StringBuilder();
+         builder.append(String.format("Cannot add %1s it will cause a loop\n", newDeployer));
+         for (Deployer deployer : original)
+            builder.append(new DeployerDomino(deployer).getInfo());
+         builder.append(new DeployerDomino(newDeployer).getInfo());
+         throw new IllegalStateException(builder.toString());
+      }
+      return result;
+   }
+
+   private static void link(Node from, Node to)
+   {
+      from.successors.add(to);
+      to.predecessors.add(from);
+   }
+
+   private static void collect(Map<String, Set<Node>> map, String key, Collection<Node> result)
+   {
+      Set<Node> set = map.get(key);
+      if (set != null)
+         result.addAll(set);
+   }
+
+   private static void register(Map<String, Set<Node>> map, String key, Node node)
+   {
+      Set<Node> set = map.get(key);
+      if (set == null)
+      {
+         set = new HashSet<Node>();
+         map.put(key, set);
+      }
+      set.add(node);
+   }
+
+   private static void unregister(Map<String, Set<Node>> map, String key, Node node)
+   {
+      Set<Node> set = map.get(key);
+      if (set != null)
+      {
+         set.remove(node);
+         if (set.isEmpty())
+            map.remove(key);
+      }
+   }
+
+   /**
+    * A deployer in the graph.
+    */
+   protected static class Node implements Comparable<Node>
+   {
+      private Deployer deployer;
+      private DeployerDomino domino;
+      private Set<String> inputs;
+      private Set<String> outputs;
+      private Set<Node> successors = new HashSet<Node>();
+      private Set<Node> predecessors = new HashSet<Node>();
+      private int index;
+
+      Node(Deployer deployer)
+      {
+         if (deployer == null)
+            throw new IllegalArgumentException("Null deployer!");
+         this.deployer = deployer;
+         this.domino = new DeployerDomino(deployer);
+         this.inputs = deployer.getInputs();
+         this.outputs = deployer.getOutputs();
+      }
+
+      /**
+       * Whether both deployers have overlapping inputs and overlapping outputs.
+       *
+       * @param other the other node
+       * @return true for pass-through deployers
+       */
+      boolean isPassThrough(Node other)
+      {
+         return overlaps(inputs, other.inputs) && overlaps(outputs, other.outputs);
+      }
+
+      private static boolean overlaps(Set<String> one, Set<String> two)
+      {
+         if (one.isEmpty() == false)
+         {
+            for (String value : two)
+            {
+               if (one.contains(value))
+                  return true;
+            }
+         }
+         return false;
+      }
+
+      public int compareTo(Node other)
+      {
+         // the domino's name includes the inputs and outputs
+         return COMPARATOR.compare(domino, other.domino);
+      }
+
+      public String toString()
+      {
+         return deployer.toString();
+      }
+   }
+}
@@ -0,0 +1,379 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.plugins.tracing;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.deployers.spi.deployer.DeploymentTracer;
+
+/**
+ * Keeps the last events in a bounded ring buffer
+ * and writes them in the Chrome trace event JSON format.<p>
+ *
+ * The output can be loaded in chrome://tracing or any other trace event viewer.
+ * When the buffer wrapped some begin events may be missing, the viewers ignore the unmatched ends.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class RingBufferDeploymentTracer implements DeploymentTracer
+{
+   /** The default capacity */
+   public static final int DEFAULT_CAPACITY = 65536;
+
+   /** The events */
+   private volatile AtomicReferenceArray<Event> events;
+
+   /** The next sequence */
+   private AtomicLong sequence = new AtomicLong();
+
+   /** The time origin */
+   private volatile long origin = System.nanoTime();
+
+   /** Whether we record */
+   private volatile boolean enabled = true;
+
+   /**
+    * Create a new RingBufferDeploymentTracer.
+    */
+   public RingBufferDeploymentTracer()
+   {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Create a new RingBufferDeploymentTracer.
+    *
+    * @param capacity the maximum number of events kept
+    */
+   public RingBufferDeploymentTracer(int capacity)
+   {
+      if (capacity <= 0)
+         throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+      events = new AtomicReferenceArray<Event>(capacity);
+   }
+
+   /**
+    * Get the capacity.
+    *
+    * @return the maximum number of events kept
+    */
+   public int getCapacity()
+   {
+      return events.length();
+   }
+
+   /**
+    * Whether we record.
+    *
+    * @return true when enabled
+    */
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   /**
+    * Set whether we record.
+    *
+    * @param enabled true to record
+    */
+   public void setEnabled(boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   /**
+    * Forget all the events.
+    */
+   public synchronized void clear()
+   {
+      events = new AtomicReferenceArray<Event>(events.length());
+      sequence.set(0);
+      origin = System.nanoTime();
+   }
+
+   public void begin(String category, String name, String deployment)
+   {
+      record('B', category, name, deployment);
+   }
+
+   public void end(String category, String name, String deployment)
+   {
+      record('E', category, name, deployment);
+   }
+
+   /**
+    * Record an event.
+    *
+    * @param phase the phase
+    * @param category the category
+    * @param name the name
+    * @param deployment the deployment
+    */
+   protected void record(char phase, String category, String name, String deployment)
+   {
+      if (enabled == false)
+         return;
+
+      Thread thread = Thread.currentThread();
+      long time = System.nanoTime() - origin;
+      long seq = sequence.getAndIncrement();
+      AtomicReferenceArray<Event> current = events;
+      current.set((int) (seq % current.length()), new Event(seq, phase, category, name, deployment, thread.getId(), thread.getName(), time));
+   }
+
+   /**
+    * Get the recorded events, oldest first.
+    *
+    * @return the events
+    */
+   public List<Event> getEvents()
+   {
+      AtomicReferenceArray<Event> current = events;
+      long last = sequence.get();
+      int capacity = current.length();
+      long first = Math.max(0, last - capacity);
+      List<Event> result = new ArrayList<Event>((int) (last - first));
+      for (long seq = first; seq < last; ++seq)
+      {
+         Event event = current.get((int) (seq % capacity));
+         // skip the slots overwritten or not yet written while we were looking
+         if (event != null && event.getSequence() == seq)
+            result.add(event);
+      }
+      return result;
+   }
+
+   /**
+    * Write the events in the trace event JSON format.
+    *
+    * @param writer the writer
+    * @throws IOException for any error writing
+    */
+   public void writeTraceEvents(Writer writer) throws IOException
+   {
+      if (writer == null)
+         throw new IllegalArgumentException("Null writer");
+
+      List<Event> list = getEvents();
+      Map<Long, String> threads = new LinkedHashMap<Long, String>();
+      writer.write("{\"traceEvents\":[");
+      boolean first = true;
+      for (Event event : list)
+      {
+         if (first == false)
+            writer.write(',');
+         first = false;
+         writer.write("\n{\"name\":");
+         writeString(writer, event.getName());
+         writer.write(",\"cat\":");
+         writeString(writer, event.getCategory());
+         writer.write(",\"ph\":\"");
+         writer.write(event.getPhase());
+         writer.write("\",\"ts\":");
+         writer.write(Long.toString(event.getTime() / 1000));
+         writer.write(",\"pid\":1,\"tid\":");
+         writer.write(Long.toString(event.getThreadId()));
+         if (event.getDeployment() != null)
+         {
+            writer.write(",\"args\":{\"deployment\":");
+            writeString(writer, event.getDeployment());
+            writer.write('}');
+         }
+         writer.write('}');
+         threads.put(event.getThreadId(), event.getThreadName());
+      }
+      for (Map.Entry<Long, String> entry : threads.entrySet())
+      {
+         if (first == false)
+            writer.write(',');
+         first = false;
+         writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+         writer.write(entry.getKey().toString());
+         writer.write(",\"args\":{\"name\":");
+         writeString(writer, entry.getValue());
+         writer.write("}}");
+      }
+      writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+      writer.flush();
+   }
+
+   /**
+    * Get the events in the trace event JSON format.
+    *
+    * @return the JSON
+    */
+   public String listTraceEvents()
+   {
+      StringWriter writer = new StringWriter();
+      try
+      {
+         writeTraceEvents(writer);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException("Unexpected error writing to a string", e);
+      }
+      return writer.toString();
+   }
+
+   /**
+    * Write a JSON string.
+    *
+    * @param writer the writer
+    * @param value the value
+    * @throws IOException for any error
+    */
+   protected static void writeString(Writer writer, String value) throws IOException
+   {
+      if (value == null)
+      {
+         writer.write("null");
+         return;
+      }
+      writer.write('"');
+      for (int i = 0; i < value.length(); ++i)
+      {
+         char c = value.charAt(i);
+         switch (c)
+         {
+            case '"':
+               writer.write("\\\"");
+               break;
+            case '\\':
+               writer.write("\\\\");
+               break;
+            case '\n':
+               writer.write("\\n");
+               break;
+            case '\r':
+               writer.write("\\r");
+               break;
+            case '\t':
+               writer.write("\\t");
+               break;
+            default:
+               if (c < 0x20)
+               {
+                  String hex = Integer.toHexString(c);
+                  writer.write("\\u");
+                  for (int j = hex.length(); j < 4; ++j)
+                     writer.write('0');
+                  writer.write(hex);
+               }
+               else
+                  writer.write(c);
+         }
+      }
+      writer.write('"');
+   }
+
+   /**
+    * A recorded event.
+    */
+   public static class Event
+   {
+      private long sequence;
+      private char phase;
+      private String category;
+      private String name;
+      private String deployment;
+      private long threadId;
+      private String threadName;
+      private long time;
+
+      Event(long sequence, char phase, String category, String name, String deployment, long threadId, String threadName, long time)
+      {
+         this.sequence = sequence;
+         this.phase = phase;
+         this.category = category;
+         this.name = name;
+         this.deployment = deployment;
+         this.threadId = threadId;
+         this.threadName = threadName;
+         this.time = time;
+      }
+
+      public long getSequence()
+      {
+         return sequence;
+      }
+
+      /**
+       * Get the phase.
+       *
+       * @return B for begin, E for end
+       */
+      public char getPhase()
+      {
+         return phase;
+      }
+
+      public String getCategory()
+      {
+         return category;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public String getDeployment()
+      {
+         return deployment;
+      }
+
+      public long getThreadId()
+      {
+         return threadId;
+      }
+
+      public String getThreadName()
+      {
+         return threadName;
+      }
+
+      /**
+       * Get the time.
+       *
+       * @return the nanoseconds since the tracer was created or cleared
+       */
+      public long getTime()
+      {
+         return time;
+      }
+
+      public String toString()
+      {
+         return phase + " " + category + " " + name + " " + deployment + " tid=" + threadId + " t=" + time;
+      }
+   }
+}
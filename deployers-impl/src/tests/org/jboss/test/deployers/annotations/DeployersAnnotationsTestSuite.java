@@ -24,7 +24,14 @@ package org.jboss.test.deployers.annotations;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvClassFileTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvCompactTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvIndexTestCase;
 import org.jboss.test.deployers.annotations.test.AnnotationEnvKeepTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvParallelTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvRegistryTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvRejectTestCase;
+import org.jboss.test.deployers.annotations.test.AnnotationEnvRootCacheTestCase;
 import org.jboss.test.deployers.annotations.test.AnnotationEnvTestCase;
 
 /**
@@ -45,6 +52,13 @@ public class DeployersAnnotationsTestSuite extends TestSuite
 
       suite.addTest(AnnotationEnvTestCase.suite());
       suite.addTest(AnnotationEnvKeepTestCase.suite());
+      suite.addTest(AnnotationEnvIndexTestCase.suite());
+      suite.addTest(AnnotationEnvClassFileTestCase.suite());
+      suite.addTest(AnnotationEnvParallelTestCase.suite());
+      suite.addTest(AnnotationEnvCompactTestCase.suite());
+      suite.addTest(AnnotationEnvRegistryTestCase.suite());
+      suite.addTest(AnnotationEnvRejectTestCase.suite());
+      suite.addTest(AnnotationEnvRootCacheTestCase.suite());
 
       return suite;
    }
@@ -0,0 +1,192 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+import junit.framework.Test;
+import org.jboss.classloading.plugins.visitor.DefaultResourceContext;
+import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.deployers.plugins.annotations.ClassFileAnnotationResourceVisitor;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.annotations.Element;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.kernel.Kernel;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvClassFileTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvClassFileTestCase extends AnnotationEnvTestCase
+{
+   public AnnotationEnvClassFileTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvClassFileTestCase.class);
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setUseJavassist(false);
+      return deployer;
+   }
+
+   public void testCompareWithJavassist() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = new ArrayList<ResourceContext>();
+      addJar(resources, Kernel.class, classLoader);
+      addJar(resources, Module.class, classLoader);
+      addJar(resources, ClassPool.class, classLoader);
+      String holder = "org/jboss/test/deployers/annotations/support/AnnotationsHolder.class";
+      resources.add(new DefaultResourceContext(classLoader.getResource(holder), holder, classLoader));
+      getLog().debug("Scanning " + resources.size() + " classes");
+
+      // warm up
+      scanJavassist(resources, classLoader);
+      scanClassFiles(resources, classLoader);
+
+      long time = System.currentTimeMillis();
+      GenericAnnotationResourceVisitor javassist = scanJavassist(resources, classLoader);
+      long javassistTime = System.currentTimeMillis() - time;
+
+      time = System.currentTimeMillis();
+      GenericAnnotationResourceVisitor classFiles = scanClassFiles(resources, classLoader);
+      long classFilesTime = System.currentTimeMillis() - time;
+
+      getLog().debug("Javassist: " + javassistTime + "ms, scanned " + javassist.getScanned() + ", reused " + javassist.getReused());
+      getLog().debug("Class files: " + classFilesTime + "ms, scanned " + classFiles.getScanned() + ", reused " + classFiles.getReused());
+
+      assertSameOwners(javassist.getEnv(), classFiles.getEnv(), TestAnnotation.class);
+      assertSameOwners(javassist.getEnv(), classFiles.getEnv(), Deprecated.class);
+      assertTrue(javassist.getReused() > 0);
+      assertTrue(classFiles.getReused() > 0);
+   }
+
+   public void testSupertypesScannedOnce() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      GenericAnnotationResourceVisitor visitor = new ClassFileAnnotationResourceVisitor(classLoader);
+      String holder = "org/jboss/test/deployers/annotations/support/AnnotationsHolder.class";
+      ResourceContext resource = new DefaultResourceContext(classLoader.getResource(holder), holder, classLoader);
+
+      visitor.visit(resource);
+      int scanned = visitor.getScanned();
+      assertTrue(scanned > 0);
+      assertEquals(0, visitor.getReused());
+
+      visitor.visit(resource);
+      assertEquals(scanned, visitor.getScanned());
+      assertEquals(1, visitor.getReused());
+      assertSameOwners(scanClassFiles(Collections.singletonList(resource), classLoader).getEnv(), visitor.getEnv(), TestAnnotation.class);
+   }
+
+   protected GenericAnnotationResourceVisitor scanJavassist(List<ResourceContext> resources, ClassLoader classLoader)
+   {
+      ClassPool pool = new ClassPool();
+      pool.insertClassPath(new LoaderClassPath(classLoader));
+      GenericAnnotationResourceVisitor visitor = new GenericAnnotationResourceVisitor(pool, classLoader);
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      Thread.currentThread().setContextClassLoader(classLoader);
+      try
+      {
+         for (ResourceContext resource : resources)
+            visitor.visit(resource);
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(tcl);
+      }
+      return visitor;
+   }
+
+   protected GenericAnnotationResourceVisitor scanClassFiles(List<ResourceContext> resources, ClassLoader classLoader)
+   {
+      GenericAnnotationResourceVisitor visitor = new ClassFileAnnotationResourceVisitor(classLoader);
+      for (ResourceContext resource : resources)
+         visitor.visit(resource);
+      return visitor;
+   }
+
+   protected static <A extends Annotation> void assertSameOwners(AnnotationEnvironment expected, AnnotationEnvironment actual, Class<A> annotation)
+   {
+      assertEquals(getOwners(expected.classIsAnnotatedWith(annotation)), getOwners(actual.classIsAnnotatedWith(annotation)));
+      assertEquals(getOwners(expected.classHasConstructorAnnotatedWith(annotation)), getOwners(actual.classHasConstructorAnnotatedWith(annotation)));
+      assertEquals(getOwners(expected.classHasMethodAnnotatedWith(annotation)), getOwners(actual.classHasMethodAnnotatedWith(annotation)));
+      assertEquals(getOwners(expected.classHasFieldAnnotatedWith(annotation)), getOwners(actual.classHasFieldAnnotatedWith(annotation)));
+      assertEquals(getOwners(expected.classHasParameterAnnotatedWith(annotation)), getOwners(actual.classHasParameterAnnotatedWith(annotation)));
+   }
+
+   protected static Set<String> getOwners(Set<? extends Element<?, ?>> elements)
+   {
+      Set<String> result = new HashSet<String>();
+      for (Element<?, ?> element : elements)
+         result.add(element.getOwnerClassName());
+      return result;
+   }
+
+   protected static void addJar(List<ResourceContext> resources, Class<?> clazz, ClassLoader classLoader) throws Exception
+   {
+      URL location = clazz.getProtectionDomain().getCodeSource().getLocation();
+      File file = new File(location.toURI());
+      if (file.isFile() == false)
+         return;
+
+      JarFile jar = new JarFile(file);
+      try
+      {
+         Enumeration<JarEntry> entries = jar.entries();
+         while (entries.hasMoreElements())
+         {
+            String name = entries.nextElement().getName();
+            if (name.endsWith(".class"))
+               resources.add(new DefaultResourceContext(new URL("jar:" + location + "!/" + name), name, classLoader));
+         }
+      }
+      finally
+      {
+         jar.close();
+      }
+   }
+}
@@ -0,0 +1,215 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.annotation.ElementType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+import junit.framework.Test;
+import org.jboss.classloading.plugins.visitor.DefaultResourceContext;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.deployers.plugins.annotations.ClassFileAnnotationResourceVisitor;
+import org.jboss.deployers.plugins.annotations.ClassSignaturePair;
+import org.jboss.deployers.plugins.annotations.CompactAnnotationEnvironment;
+import org.jboss.deployers.plugins.annotations.DefaultAnnotationEnvironment;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvCompactTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvCompactTestCase extends AnnotationEnvTestCase
+{
+   public AnnotationEnvCompactTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvCompactTestCase.class);
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setCompactEnvironment(true);
+      return deployer;
+   }
+
+   public void testHeapFootprint() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = generateClasses(2000, 10, classLoader);
+
+      PairCountingEnvironment defaultEnv = new PairCountingEnvironment(classLoader);
+      scan(resources, defaultEnv);
+      CompactAnnotationEnvironment compactEnv = new CompactAnnotationEnvironment(classLoader);
+      scan(resources, compactEnv);
+
+      assertEquals(2000 * 21, compactEnv.size());
+      assertEquals(compactEnv.size(), defaultEnv.getPairCount());
+      assertSameOwners(defaultEnv, compactEnv, TestAnnotation.class);
+
+      // a lower bound for the default env: per hit a pair (header and 3 references)
+      // and its set entry (header, hash and 3 references), per signature a header and 2 references
+      long defaultSize = defaultEnv.getPairCount() * (20L + 24L) + defaultEnv.getSignatureCount() * 16L;
+      long compactSize = compactEnv.getRetainedSize();
+      getLog().info("Default env: at least " + defaultSize + " bytes, compact env: " + compactSize + " bytes, " + compactEnv.size() + " hits");
+      assertTrue("Compact env " + compactSize + " should be smaller than " + defaultSize, compactSize < defaultSize);
+   }
+
+   protected AnnotationEnvironment scan(List<ResourceContext> resources, DefaultAnnotationEnvironment env)
+   {
+      GenericAnnotationResourceVisitor visitor = new ClassFileAnnotationResourceVisitor(env);
+      for (ResourceContext resource : resources)
+         visitor.visit(resource);
+      return visitor.getEnv();
+   }
+
+   /**
+    * Generate classes annotated at class, field and method level.
+    *
+    * @param classes the number of classes
+    * @param members the number of annotated fields and methods per class
+    * @param classLoader the classloader
+    * @return the class resources
+    * @throws Exception for any error
+    */
+   protected static List<ResourceContext> generateClasses(int classes, int members, ClassLoader classLoader) throws Exception
+   {
+      final Map<String, byte[]> bytes = new HashMap<String, byte[]>();
+      URLStreamHandler handler = new URLStreamHandler()
+      {
+         protected URLConnection openConnection(URL url) throws IOException
+         {
+            final byte[] content = bytes.get(url.getPath().substring(1));
+            return new URLConnection(url)
+            {
+               public void connect()
+               {
+               }
+
+               public InputStream getInputStream()
+               {
+                  return new ByteArrayInputStream(content);
+               }
+            };
+         }
+      };
+
+      ClassPool pool = new ClassPool(true);
+      List<ResourceContext> resources = new ArrayList<ResourceContext>();
+      for (int i = 0; i < classes; i++)
+      {
+         CtClass ctClass = pool.makeClass("org.jboss.test.deployers.annotations.generated.Generated" + i);
+         ConstPool constPool = ctClass.getClassFile().getConstPool();
+         ctClass.getClassFile().addAttribute(createAnnotationsAttribute(constPool));
+         for (int j = 0; j < members; j++)
+         {
+            CtField field = new CtField(CtClass.intType, "field" + j, ctClass);
+            field.getFieldInfo().addAttribute(createAnnotationsAttribute(constPool));
+            ctClass.addField(field);
+
+            CtMethod method = CtNewMethod.make("public void method" + j + "(java.lang.String s) {}", ctClass);
+            method.getMethodInfo().addAttribute(createAnnotationsAttribute(constPool));
+            ctClass.addMethod(method);
+         }
+
+         String name = ctClass.getName().replace('.', '/') + ".class";
+         bytes.put(name, ctClass.toBytecode());
+         ctClass.detach();
+         resources.add(new DefaultResourceContext(new URL("generated", null, -1, "/" + name, handler), name, classLoader));
+      }
+      return resources;
+   }
+
+   private static AnnotationsAttribute createAnnotationsAttribute(ConstPool constPool)
+   {
+      AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+      attribute.addAnnotation(new Annotation(TestAnnotation.class.getName(), constPool));
+      return attribute;
+   }
+
+   /**
+    * Counts the pairs and signatures the default environment holds.
+    */
+   private static class PairCountingEnvironment extends DefaultAnnotationEnvironment
+   {
+      private static final long serialVersionUID = 1L;
+
+      public PairCountingEnvironment(ClassLoader classLoader)
+      {
+         super(classLoader);
+      }
+
+      public int getPairCount()
+      {
+         int count = 0;
+         for (Class<? extends java.lang.annotation.Annotation> annClass : getAnnotationClasses())
+         {
+            for (ElementType type : ElementType.values())
+               count += getCSPairs(annClass, type).size();
+         }
+         return count;
+      }
+
+      public int getSignatureCount()
+      {
+         int count = 0;
+         for (Class<? extends java.lang.annotation.Annotation> annClass : getAnnotationClasses())
+         {
+            for (ElementType type : ElementType.values())
+            {
+               for (ClassSignaturePair pair : getCSPairs(annClass, type))
+               {
+                  if (pair.getSignature() != null)
+                     count++;
+               }
+            }
+         }
+         return count;
+      }
+   }
+}
@@ -0,0 +1,183 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Set;
+
+import junit.framework.Test;
+import org.jboss.classloader.plugins.ClassLoaderUtils;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.classloading.spi.visitor.ResourceFilter;
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.annotations.AnnotationIndex;
+import org.jboss.deployers.plugins.annotations.FilteredGenericAnnotationDeployer;
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.annotations.Element;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.test.deployers.annotations.support.AnnotationsHolder;
+import org.jboss.test.deployers.annotations.support.InheritingHolder;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvIndexTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvIndexTestCase extends AnnotationEnvTestCase
+{
+   private File directory;
+
+   public AnnotationEnvIndexTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvIndexTestCase.class);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      directory = File.createTempFile("annotation", "index");
+      directory.delete();
+      directory.mkdirs();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+            file.delete();
+      }
+      directory.delete();
+      super.tearDown();
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      FilteredGenericAnnotationDeployer deployer = new FilteredGenericAnnotationDeployer();
+      deployer.setAnnotationIndex(new AnnotationIndex(directory));
+      return deployer;
+   }
+
+   public void testIndexReused() throws Exception
+   {
+      testDirectClassUsage();
+
+      File[] files = directory.listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+      // an index that is read is not written again
+      assertTrue(files[0].setLastModified(1000));
+
+      testDirectClassUsage();
+      testSimpleClassUsage();
+      assertEquals(1000, files[0].lastModified());
+   }
+
+   public void testOutOfDateIndex() throws Exception
+   {
+      testDirectClassUsage();
+
+      File[] files = directory.listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+
+      // a broken index means the root is scanned again
+      byte[] garbage = new byte[] {1, 2, 3};
+      FileOutputStream out = new FileOutputStream(files[0]);
+      try
+      {
+         out.write(garbage);
+      }
+      finally
+      {
+         out.close();
+      }
+
+      testDirectClassUsage();
+      assertTrue(files[0].length() > garbage.length);
+   }
+
+   public void testSupertypeOutsideIndex() throws Exception
+   {
+      assertInheritedAnnotation();
+
+      File[] files = directory.listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+      assertTrue(files[0].setLastModified(1000));
+
+      // the super class was not visited, it is resolved again
+      assertInheritedAnnotation();
+      assertEquals(1000, files[0].lastModified());
+   }
+
+   @SuppressWarnings("unchecked")
+   protected void assertInheritedAnnotation() throws Exception
+   {
+      DeployerClient deployer = getMainDeployer();
+
+      Deployment deployment = createSimpleDeployment("a");
+      addClassLoadingMetaData(
+            deployment,
+            deployment.getName(),
+            null,
+            ClassLoaderUtils.classNameToPath(InheritingHolder.class.getName()),
+            ClassLoaderUtils.classNameToPath(AnnotationsHolder.class.getName()),
+            ClassLoaderUtils.classNameToPath(TestAnnotation.class.getName())
+      );
+      MutableAttachments attachments = (MutableAttachments) deployment.getPredeterminedManagedObjects();
+      attachments.addAttachment(ResourceFilter.class.getName() + ".resource", new ResourceFilter()
+      {
+         public boolean accepts(ResourceContext resource)
+         {
+            return resource.getResourceName().equals(ClassLoaderUtils.classNameToPath(InheritingHolder.class.getName()));
+         }
+      });
+
+      DeploymentUnit unit = assertDeploy(deployer, deployment);
+      try
+      {
+         Class<TestAnnotation> taClass = (Class<TestAnnotation>) unit.getClassLoader().loadClass(TestAnnotation.class.getName());
+         AnnotationEnvironment env = getAnnotationEnvironment(unit);
+         Set<Element<TestAnnotation, Class<?>>> classes = env.classIsAnnotatedWith(taClass);
+         assertEquals(1, classes.size());
+         assertEquals(AnnotationsHolder.class.getName(), classes.iterator().next().getOwnerClassName());
+      }
+      finally
+      {
+         assertUndeploy(deployer, deployment);
+      }
+   }
+}
@@ -0,0 +1,169 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import junit.framework.Test;
+import org.jboss.classloading.plugins.visitor.DefaultResourceContext;
+import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.deployers.plugins.annotations.ClassFileAnnotationResourceVisitor;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.kernel.Kernel;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvParallelTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvParallelTestCase extends AnnotationEnvTestCase
+{
+   public AnnotationEnvParallelTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvParallelTestCase.class);
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setParallelism(4);
+      return deployer;
+   }
+
+   public void testParallelMatchesSerial() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = createResources(classLoader);
+
+      long time = System.currentTimeMillis();
+      GenericAnnotationResourceVisitor serial = scanSerial(resources, classLoader);
+      long serialTime = System.currentTimeMillis() - time;
+
+      time = System.currentTimeMillis();
+      GenericAnnotationResourceVisitor parallel = scanParallel(resources, classLoader, null, 4);
+      long parallelTime = System.currentTimeMillis() - time;
+
+      getLog().debug("Scanned " + resources.size() + " classes, serial: " + serialTime + "ms, parallel: " + parallelTime + "ms");
+
+      AnnotationEnvClassFileTestCase.assertSameOwners(serial.getEnv(), parallel.getEnv(), TestAnnotation.class);
+      AnnotationEnvClassFileTestCase.assertSameOwners(serial.getEnv(), parallel.getEnv(), Deprecated.class);
+   }
+
+   public void testInjectedExecutor() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = createResources(classLoader);
+      GenericAnnotationResourceVisitor serial = scanSerial(resources, classLoader);
+
+      final ExecutorService pool = Executors.newFixedThreadPool(4);
+      try
+      {
+         final AtomicInteger executed = new AtomicInteger();
+         Executor executor = new Executor()
+         {
+            public void execute(Runnable command)
+            {
+               executed.incrementAndGet();
+               pool.execute(command);
+            }
+         };
+         GenericAnnotationResourceVisitor parallel = scanParallel(resources, classLoader, executor, 2);
+         // four roots, no more tasks than the parallelism
+         assertEquals(2, executed.get());
+         AnnotationEnvClassFileTestCase.assertSameOwners(serial.getEnv(), parallel.getEnv(), TestAnnotation.class);
+      }
+      finally
+      {
+         pool.shutdownNow();
+      }
+   }
+
+   public void testRejectingExecutor() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = createResources(classLoader);
+      GenericAnnotationResourceVisitor serial = scanSerial(resources, classLoader);
+
+      Executor executor = new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            throw new RejectedExecutionException("Saturated");
+         }
+      };
+      GenericAnnotationResourceVisitor parallel = scanParallel(resources, classLoader, executor, 4);
+      AnnotationEnvClassFileTestCase.assertSameOwners(serial.getEnv(), parallel.getEnv(), TestAnnotation.class);
+      AnnotationEnvClassFileTestCase.assertSameOwners(serial.getEnv(), parallel.getEnv(), Deprecated.class);
+   }
+
+   protected static List<ResourceContext> createResources(ClassLoader classLoader) throws Exception
+   {
+      List<ResourceContext> resources = new ArrayList<ResourceContext>();
+      AnnotationEnvClassFileTestCase.addJar(resources, Kernel.class, classLoader);
+      AnnotationEnvClassFileTestCase.addJar(resources, Module.class, classLoader);
+      AnnotationEnvClassFileTestCase.addJar(resources, ClassPool.class, classLoader);
+      String holder = "org/jboss/test/deployers/annotations/support/AnnotationsHolder.class";
+      resources.add(new DefaultResourceContext(classLoader.getResource(holder), holder, classLoader));
+      return resources;
+   }
+
+   protected static GenericAnnotationResourceVisitor scanSerial(List<ResourceContext> resources, ClassLoader classLoader)
+   {
+      GenericAnnotationResourceVisitor serial = new ClassFileAnnotationResourceVisitor(classLoader);
+      for (ResourceContext resource : resources)
+         serial.visit(resource);
+      return serial;
+   }
+
+   protected static GenericAnnotationResourceVisitor scanParallel(List<ResourceContext> resources, final ClassLoader classLoader, Executor executor, int parallelism) throws Exception
+   {
+      GenericAnnotationResourceVisitor parallel = new ClassFileAnnotationResourceVisitor(classLoader);
+      parallel.setCollectResources(true);
+      for (ResourceContext resource : resources)
+         parallel.visit(resource);
+      parallel.scanCollected(executor, parallelism, new Callable<GenericAnnotationResourceVisitor>()
+      {
+         public GenericAnnotationResourceVisitor call() throws Exception
+         {
+            return new ClassFileAnnotationResourceVisitor(classLoader);
+         }
+      });
+      return parallel;
+   }
+}
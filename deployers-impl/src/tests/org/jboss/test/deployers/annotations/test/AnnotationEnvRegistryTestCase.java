@@ -0,0 +1,218 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.Test;
+import org.jboss.classloader.plugins.ClassLoaderUtils;
+import org.jboss.classloading.plugins.visitor.DefaultResourceContext;
+import org.jboss.classloading.spi.visitor.ClassFilter;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.classloading.spi.visitor.ResourceFilter;
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.annotations.AnnotationScanRegistry;
+import org.jboss.deployers.plugins.annotations.AnnotationScanResult;
+import org.jboss.deployers.plugins.annotations.DefaultAnnotationEnvironment;
+import org.jboss.deployers.plugins.annotations.FilteredGenericAnnotationDeployer;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.test.deployers.annotations.support.AnnotationsHolder;
+
+/**
+ * AnnotationEnvRegistryTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvRegistryTestCase extends AnnotationEnvTestCase
+{
+   private AnnotationScanRegistry registry;
+
+   public AnnotationEnvRegistryTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvRegistryTestCase.class);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      registry = new AnnotationScanRegistry();
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setScanRegistry(registry);
+      deployer.create();
+      return deployer;
+   }
+
+   protected Deployment createHolderDeployment(String name)
+   {
+      Deployment deployment = createSimpleDeployment(name);
+      addClassLoadingMetaData(
+            deployment,
+            deployment.getName(),
+            null,
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.AnnotationsHolder"),
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.TestAnnotation")
+      );
+      return deployment;
+   }
+
+   public void testSingleScanPerModule() throws Exception
+   {
+      DeployerClient deployer = getMainDeployer(createGenericAnnotationDeployer());
+
+      Deployment deployment = createHolderDeployment("a");
+      DeploymentUnit unit = assertDeploy(deployer, deployment);
+      try
+      {
+         AnnotationScanResult result = unit.getAttachment(AnnotationScanResult.class);
+         assertNotNull(result);
+         assertEquals(2, result.getConsumers());
+         assertSame(result.getEnv(), getAnnotationEnvironment(unit));
+
+         Map<String, Integer> reads = result.getReads();
+         assertEquals(Integer.valueOf(1), reads.get(AnnotationsHolder.class.getName()));
+         assertEquals(result.getClassesRead(), result.getBytecodeReads());
+      }
+      finally
+      {
+         assertUndeploy(deployer, deployment);
+      }
+   }
+
+   public void testInterests() throws Exception
+   {
+      assertNull(registry.getAnnotationNames());
+      assertNull(registry.getResourceFilter());
+
+      ResourceFilter none = new ResourceFilter()
+      {
+         public boolean accepts(ResourceContext resource)
+         {
+            return false;
+         }
+      };
+      registry.addInterest("a", Collections.singleton("org.acme.A"), none);
+      assertEquals(Collections.singleton("org.acme.A"), registry.getAnnotationNames());
+      assertSame(none, registry.getResourceFilter());
+
+      registry.addInterest("b", Collections.singleton("org.acme.B"), ClassFilter.INSTANCE);
+      assertEquals(2, registry.getAnnotationNames().size());
+      ResourceFilter filter = registry.getResourceFilter();
+      ClassLoader classLoader = getClass().getClassLoader();
+      String holder = "org/jboss/test/deployers/annotations/support/AnnotationsHolder.class";
+      assertTrue(filter.accepts(new DefaultResourceContext(classLoader.getResource(holder), holder, classLoader)));
+
+      registry.addInterest("c", null, null);
+      assertNull(registry.getAnnotationNames());
+      assertNull(registry.getResourceFilter());
+
+      registry.removeInterest("c");
+      assertEquals(2, registry.getAnnotationNames().size());
+      assertNull(registry.getRecurseFilter());
+
+      registry.addInterest("a", Collections.singleton("org.acme.A"), none, none);
+      assertNull(registry.getRecurseFilter());
+      registry.addInterest("b", Collections.singleton("org.acme.B"), ClassFilter.INSTANCE, none);
+      assertSame(none, registry.getRecurseFilter());
+   }
+
+   public void testSeparateScanPerSettings() throws Exception
+   {
+      GenericAnnotationDeployer keeping = new GenericAnnotationDeployer();
+      keeping.setKeepAnnotations(true);
+      keeping.setScanRegistry(registry);
+      keeping.create();
+      DeployerClient deployer = getMainDeployer(keeping);
+
+      Deployment deployment = createHolderDeployment("a");
+      DeploymentUnit unit = assertDeploy(deployer, deployment);
+      try
+      {
+         AnnotationScanResult result = unit.getAttachment(AnnotationScanResult.class);
+         assertNotNull(result);
+         assertEquals(1, result.getConsumers());
+         assertEquals(Integer.valueOf(1), result.getReads().get(AnnotationsHolder.class.getName()));
+      }
+      finally
+      {
+         assertUndeploy(deployer, deployment);
+      }
+   }
+
+   public void testFilteredInterest() throws Exception
+   {
+      ResourceFilter none = new ResourceFilter()
+      {
+         public boolean accepts(ResourceContext resource)
+         {
+            return false;
+         }
+      };
+      FilteredGenericAnnotationDeployer deployer = new FilteredGenericAnnotationDeployer();
+      deployer.setResourceFilter(ClassFilter.INSTANCE);
+      deployer.setRecurseFilter(none);
+      deployer.setScanRegistry(registry);
+      deployer.create();
+      assertSame(ClassFilter.INSTANCE, registry.getResourceFilter());
+      assertSame(none, registry.getRecurseFilter());
+
+      deployer.destroy();
+      assertNull(registry.getResourceFilter());
+      assertNull(registry.getRecurseFilter());
+   }
+
+   public void testStructureEnvironments() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      registry.setMaxStructures(1);
+      registry.putStructureEnvironment("a", 1, new DefaultAnnotationEnvironment(classLoader), classLoader);
+      assertNotNull(registry.getStructureEnvironment("a", 1));
+
+      registry.putStructureEnvironment("b", 1, new DefaultAnnotationEnvironment(classLoader), classLoader);
+      assertNull(registry.getStructureEnvironment("a", 1));
+      assertNotNull(registry.getStructureEnvironment("b", 1));
+   }
+
+   public void testChangedStructureRoot() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      registry.putStructureEnvironment("a", 1, new DefaultAnnotationEnvironment(classLoader), classLoader);
+      assertNull(registry.getStructureEnvironment("a", 2));
+      // the stale scan is dropped
+      assertNull(registry.getStructureEnvironment("a", 1));
+
+      registry.putStructureEnvironment("a", 2, new DefaultAnnotationEnvironment(classLoader), classLoader);
+      assertNotNull(registry.getStructureEnvironment("a", 2));
+   }
+}
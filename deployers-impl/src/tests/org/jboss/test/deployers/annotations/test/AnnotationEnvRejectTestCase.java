@@ -0,0 +1,160 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+import junit.framework.Test;
+import org.jboss.classloader.plugins.ClassLoaderUtils;
+import org.jboss.classloading.plugins.visitor.DefaultResourceContext;
+import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceContext;
+import org.jboss.deployers.plugins.annotations.ClassFileAnnotationResourceVisitor;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.kernel.Kernel;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvRejectTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvRejectTestCase extends AnnotationEnvTestCase
+{
+   private static final Set<String> NAMES = Collections.singleton(TestAnnotation.class.getName());
+
+   public AnnotationEnvRejectTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvRejectTestCase.class);
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setAnnotationNames(NAMES);
+      return deployer;
+   }
+
+   public void testRejectedByConstantPool() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      List<ResourceContext> resources = new ArrayList<ResourceContext>();
+      AnnotationEnvClassFileTestCase.addJar(resources, Kernel.class, classLoader);
+      AnnotationEnvClassFileTestCase.addJar(resources, Module.class, classLoader);
+      String holder = "org/jboss/test/deployers/annotations/support/AnnotationsHolder.class";
+      resources.add(new DefaultResourceContext(classLoader.getResource(holder), holder, classLoader));
+
+      GenericAnnotationResourceVisitor all = new ClassFileAnnotationResourceVisitor(classLoader);
+      GenericAnnotationResourceVisitor classFiles = new ClassFileAnnotationResourceVisitor(classLoader);
+      classFiles.setAnnotationNames(NAMES);
+      ClassPool pool = new ClassPool();
+      pool.insertClassPath(new LoaderClassPath(classLoader));
+      GenericAnnotationResourceVisitor javassist = new GenericAnnotationResourceVisitor(pool, classLoader);
+      javassist.setAnnotationNames(NAMES);
+
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      Thread.currentThread().setContextClassLoader(classLoader);
+      try
+      {
+         for (ResourceContext resource : resources)
+         {
+            all.visit(resource);
+            classFiles.visit(resource);
+            javassist.visit(resource);
+         }
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(tcl);
+      }
+
+      AnnotationEnvClassFileTestCase.assertSameOwners(all.getEnv(), classFiles.getEnv(), TestAnnotation.class);
+      AnnotationEnvClassFileTestCase.assertSameOwners(all.getEnv(), javassist.getEnv(), TestAnnotation.class);
+      assertTrue(all.getRootStatistics().isEmpty());
+
+      for (GenericAnnotationResourceVisitor visitor : new GenericAnnotationResourceVisitor[]{classFiles, javassist})
+      {
+         int classes = 0;
+         int rejected = 0;
+         for (GenericAnnotationResourceVisitor.RootStatistics statistics : visitor.getRootStatistics().values())
+         {
+            assertTrue(statistics.getRejected() <= statistics.getClasses());
+            classes += statistics.getClasses();
+            rejected += statistics.getRejected();
+         }
+         getLog().debug("Rejected " + rejected + " of " + classes + " classes: " + visitor.getRootStatistics());
+         assertEquals(resources.size(), classes);
+         assertTrue(rejected > 0);
+         assertTrue(rejected < classes);
+         assertTrue(visitor.getScanned() < all.getScanned());
+      }
+   }
+
+   public void testOnlyInterestingAnnotations() throws Exception
+   {
+      ClassLoader classLoader = getClass().getClassLoader();
+      String annotation = ClassLoaderUtils.classNameToPath(TestAnnotation.class.getName());
+      ResourceContext resource = new DefaultResourceContext(classLoader.getResource(annotation), annotation, classLoader);
+
+      GenericAnnotationResourceVisitor all = new ClassFileAnnotationResourceVisitor(classLoader);
+      GenericAnnotationResourceVisitor classFiles = new ClassFileAnnotationResourceVisitor(classLoader);
+      classFiles.setAnnotationNames(Collections.singleton(Retention.class.getName()));
+      ClassPool pool = new ClassPool();
+      pool.insertClassPath(new LoaderClassPath(classLoader));
+      GenericAnnotationResourceVisitor javassist = new GenericAnnotationResourceVisitor(pool, classLoader);
+      javassist.setAnnotationNames(Collections.singleton(Retention.class.getName()));
+
+      ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+      Thread.currentThread().setContextClassLoader(classLoader);
+      try
+      {
+         all.visit(resource);
+         classFiles.visit(resource);
+         javassist.visit(resource);
+      }
+      finally
+      {
+         Thread.currentThread().setContextClassLoader(tcl);
+      }
+
+      assertTrue(all.getEnv().hasClassAnnotatedWith(Target.class));
+      for (GenericAnnotationResourceVisitor visitor : new GenericAnnotationResourceVisitor[]{classFiles, javassist})
+      {
+         assertTrue(visitor.getEnv().hasClassAnnotatedWith(Retention.class));
+         assertFalse(visitor.getEnv().hasClassAnnotatedWith(Target.class));
+      }
+   }
+}
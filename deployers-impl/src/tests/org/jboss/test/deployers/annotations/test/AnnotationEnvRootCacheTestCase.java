@@ -0,0 +1,250 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.annotations.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Test;
+import org.jboss.classloader.plugins.ClassLoaderUtils;
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.annotations.AnnotationIndex;
+import org.jboss.deployers.plugins.annotations.AnnotationRootCache;
+import org.jboss.deployers.plugins.annotations.GenericAnnotationDeployer;
+import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.annotations.Element;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.test.deployers.annotations.support.AnnotationsHolder;
+import org.jboss.test.deployers.annotations.support.TestAnnotation;
+
+/**
+ * AnnotationEnvRootCacheTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationEnvRootCacheTestCase extends AnnotationEnvTestCase
+{
+   private AnnotationRootCache rootCache;
+
+   public AnnotationEnvRootCacheTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(AnnotationEnvRootCacheTestCase.class);
+   }
+
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      rootCache = new AnnotationRootCache();
+   }
+
+   protected void tearDown() throws Exception
+   {
+      // every deployment released its roots
+      assertEquals(0, rootCache.getRoots());
+      assertEquals(0, rootCache.size());
+      super.tearDown();
+   }
+
+   protected Deployer createGenericAnnotationDeployer()
+   {
+      GenericAnnotationDeployer deployer = new GenericAnnotationDeployer();
+      deployer.setRootCache(rootCache);
+      return deployer;
+   }
+
+   protected Deployment createHolderDeployment(String name)
+   {
+      Deployment deployment = createSimpleDeployment(name);
+      addClassLoadingMetaData(
+            deployment,
+            deployment.getName(),
+            null,
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.AnnotationsHolder"),
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.TestAnnotation")
+      );
+      return deployment;
+   }
+
+   @SuppressWarnings("unchecked")
+   public void testRootSharedByDeployments() throws Exception
+   {
+      DeployerClient deployer = getMainDeployer();
+
+      Deployment a = createHolderDeployment("a");
+      assertDeploy(deployer, a);
+      try
+      {
+         assertEquals(1, rootCache.getRoots());
+         int size = rootCache.size();
+         assertTrue(size > 0);
+         assertEquals(0, rootCache.getHits());
+
+         Deployment b = createHolderDeployment("b");
+         DeploymentUnit unit = assertDeploy(deployer, b);
+         try
+         {
+            assertEquals(1, rootCache.getHits());
+            assertEquals(1, rootCache.getRoots());
+            assertEquals(size, rootCache.size());
+
+            ClassLoader cl = unit.getClassLoader();
+            Class<TestAnnotation> taClass = (Class<TestAnnotation>)cl.loadClass(TestAnnotation.class.getName());
+            AnnotationEnvironment env = getAnnotationEnvironment(unit);
+            Set<Element<TestAnnotation, Class<?>>> classes = env.classIsAnnotatedWith(taClass);
+            assertEquals(1, classes.size());
+            assertEquals(AnnotationsHolder.class.getName(), classes.iterator().next().getOwnerClassName());
+            assertEquals("class", getValue(classes.iterator().next().getAnnotation()));
+            assertEquals(1, env.classHasMethodAnnotatedWith(taClass).size());
+            assertEquals(2, env.classHasParameterAnnotatedWith(taClass).size());
+         }
+         finally
+         {
+            assertUndeploy(deployer, b);
+         }
+
+         // still referenced by a
+         assertEquals(1, rootCache.getRoots());
+      }
+      finally
+      {
+         assertUndeploy(deployer, a);
+      }
+   }
+
+   public void testFullCache() throws Exception
+   {
+      rootCache.setMaxSize(0);
+
+      testDirectClassUsage();
+      testDirectClassUsage();
+      assertEquals(0, rootCache.getHits());
+   }
+
+   public void testContentHash() throws Exception
+   {
+      File directory = File.createTempFile("roots", "test");
+      directory.delete();
+      directory.mkdirs();
+      try
+      {
+         String holder = ClassLoaderUtils.classNameToPath(AnnotationsHolder.class.getName());
+         byte[] jar = zip(holder, readHolder(holder));
+         File first = new File(directory, "first.jar");
+         write(first, jar);
+         File second = new File(directory, "second.jar");
+         write(second, jar);
+         File war = new File(directory, "app.war");
+         write(war, zip("WEB-INF/lib/first.jar", jar));
+
+         TestAnnotationIndex index = new TestAnnotationIndex();
+         String firstRoot = first.toURI().toURL().toExternalForm();
+         String secondRoot = second.toURI().toURL().toExternalForm();
+         String nestedRoot = new File(war, "WEB-INF/lib/first.jar").toURI().toURL().toExternalForm() + "/";
+
+         String hash = index.getContentHash(firstRoot);
+         assertNotNull(hash);
+         assertEquals(hash, index.getContentHash(secondRoot));
+         assertEquals(hash, index.getContentHash(nestedRoot));
+
+         String missingRoot = new File(war, "WEB-INF/lib/missing.jar").toURI().toURL().toExternalForm() + "/";
+         assertNull(index.getContentHash(missingRoot));
+      }
+      finally
+      {
+         File[] files = directory.listFiles();
+         if (files != null)
+         {
+            for (File file : files)
+               file.delete();
+         }
+         directory.delete();
+      }
+   }
+
+   protected byte[] readHolder(String holder) throws Exception
+   {
+      InputStream in = getClass().getClassLoader().getResourceAsStream(holder);
+      try
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         byte[] buffer = new byte[1024];
+         int read = in.read(buffer);
+         while (read >= 0)
+         {
+            out.write(buffer, 0, read);
+            read = in.read(buffer);
+         }
+         return out.toByteArray();
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   protected static byte[] zip(String name, byte[] bytes) throws Exception
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ZipOutputStream zip = new ZipOutputStream(out);
+      zip.putNextEntry(new ZipEntry(name));
+      zip.write(bytes);
+      zip.closeEntry();
+      zip.close();
+      return out.toByteArray();
+   }
+
+   protected static void write(File file, byte[] bytes) throws Exception
+   {
+      OutputStream out = new FileOutputStream(file);
+      try
+      {
+         out.write(bytes);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private static class TestAnnotationIndex extends AnnotationIndex
+   {
+      public String getContentHash(String root)
+      {
+         Long fingerprint = getFingerprint(root);
+         assertNotNull("No fingerprint for " + root, fingerprint);
+         return getContentHash(root, fingerprint);
+      }
+   }
+}
@@ -22,6 +22,8 @@
 package org.jboss.test.deployers.annotations.test;
 
 import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -33,7 +35,10 @@ import org.jboss.classloader.plugins.ClassLoaderUtils;
 import org.jboss.deployers.client.spi.DeployerClient;
 import org.jboss.deployers.client.spi.Deployment;
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
+import org.jboss.deployers.spi.annotations.AnnotationNameEnvironment;
+import org.jboss.deployers.spi.annotations.AnnotationQuery;
 import org.jboss.deployers.spi.annotations.Element;
+import org.jboss.deployers.spi.annotations.NamedElement;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
 import org.jboss.test.deployers.annotations.support.AnnotationsHolder;
 import org.jboss.test.deployers.annotations.support.TestAnnotation;
@@ -207,4 +212,60 @@ public class AnnotationEnvTestCase extends AnnotationsTest
          assertUndeploy(deployer, deployment);
       }
    }
+
+   public void testNameQueries() throws Exception
+   {
+      DeployerClient deployer = getMainDeployer();
+
+      Deployment deployment = createSimpleDeployment("a");
+      addClassLoadingMetaData(
+            deployment,
+            deployment.getName(),
+            null,
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.AnnotationsHolder"),
+            ClassLoaderUtils.classNameToPath("org.jboss.test.deployers.annotations.support.TestAnnotation")
+      );
+
+      DeploymentUnit unit = assertDeploy(deployer, deployment);
+      try
+      {
+         String annotationName = "org.jboss.test.deployers.annotations.support.TestAnnotation";
+         String holderName = "org.jboss.test.deployers.annotations.support.AnnotationsHolder";
+
+         AnnotationEnvironment env = getAnnotationEnvironment(unit);
+         AnnotationNameEnvironment names = assertInstanceOf(env, AnnotationNameEnvironment.class);
+
+         Set<String> classNames = names.getClassNamesAnnotatedWith(annotationName);
+         assertEquals(1, classNames.size());
+         assertEquals(holderName, classNames.iterator().next());
+
+         AnnotationQuery query = AnnotationQuery.annotatedWith(annotationName, null);
+         Set<NamedElement> elements = names.getNamedElements(query);
+         assertEquals(6, elements.size());
+         for (NamedElement element : elements)
+         {
+            assertEquals(holderName, element.getOwnerClassName());
+            assertEquals(annotationName, element.getAnnotationName());
+            assertEquals(element.getElementType() == ElementType.TYPE, element.getSignature() == null);
+         }
+         assertSame(elements, names.getNamedElements(AnnotationQuery.annotatedWith(annotationName, null)));
+
+         assertEquals(1, names.getNamedElements(AnnotationQuery.annotatedWith(annotationName, ElementType.METHOD)).size());
+         assertEquals(2, names.getNamedElements(AnnotationQuery.annotatedWith(annotationName, ElementType.PARAMETER)).size());
+         assertEquals(6, names.getNamedElements(query.inPackage("org.jboss.test.deployers.annotations.support", false)).size());
+         assertEmpty(names.getNamedElements(query.inPackage("org.jboss.test.deployers", false)));
+         assertEquals(6, names.getNamedElements(query.inPackage("org.jboss.test.deployers", true)).size());
+
+         Set<NamedElement> meta = names.getNamedElements(AnnotationQuery.metaAnnotatedWith(Retention.class.getName(), ElementType.TYPE));
+         assertEquals(1, meta.size());
+         assertEquals(holderName, meta.iterator().next().getOwnerClassName());
+         assertEmpty(names.getNamedElements(AnnotationQuery.annotatedWith(Retention.class.getName(), null)));
+
+         assertNotLoaded(unit, holderName);
+      }
+      finally
+      {
+         assertUndeploy(deployer, deployment);
+      }
+   }
 }
@@ -30,9 +30,14 @@ import org.jboss.test.deployers.deployer.test.DeployerClassLoaderUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployerContextClassLoaderUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployerFlowUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployerOrderingUnitTestCase;
+import org.jboss.test.deployers.deployer.test.DeployerParallelUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployerProtocolUnitTestCase;
+import org.jboss.test.deployers.deployer.test.DeployerRelevanceUnitTestCase;
+import org.jboss.test.deployers.deployer.test.DeployerSorterUnitTestCase;
+import org.jboss.test.deployers.deployer.test.DeployerStatisticsUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployerWidthFirstUnitTestCase;
 import org.jboss.test.deployers.deployer.test.DeployersImplUnitTestCase;
+import org.jboss.test.deployers.deployer.test.DeploymentTracerUnitTestCase;
 import org.jboss.test.deployers.deployer.test.HeuristicAllOrNothingUnitTestCase;
 import org.jboss.test.deployers.deployer.test.HeuristicRussionDollUnitTestCase;
 import org.jboss.test.deployers.deployer.test.MultipleComponentTypeUnitTestCase;
@@ -65,6 +70,11 @@ public class DeployersDeployerTestSuite extends TestSuite
       suite.addTest(HeuristicAllOrNothingUnitTestCase.suite());
       suite.addTest(HeuristicRussionDollUnitTestCase.suite());
       suite.addTest(DeployerContextClassLoaderUnitTestCase.suite());
+      suite.addTest(DeployerParallelUnitTestCase.suite());
+      suite.addTest(DeployerSorterUnitTestCase.suite());
+      suite.addTest(DeployerStatisticsUnitTestCase.suite());
+      suite.addTest(DeploymentTracerUnitTestCase.suite());
+      suite.addTest(DeployerRelevanceUnitTestCase.suite());
 
       return suite;
    }
@@ -0,0 +1,126 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dependency.spi.DependencyItem;
+import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.spi.deployer.DeploymentStage;
+import org.jboss.deployers.spi.deployer.helpers.AbstractRealDeployer;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+
+/**
+ * TestParallelDeployer.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class TestParallelDeployer extends AbstractRealDeployer
+{
+   private List<String> deployed = Collections.synchronizedList(new ArrayList<String>());
+   private List<String> undeployed = Collections.synchronizedList(new ArrayList<String>());
+   private List<Integer> seenBefore = Collections.synchronizedList(new ArrayList<Integer>());
+
+   private TestParallelDeployer previous;
+
+   private CountDownLatch rendezvous;
+   private volatile boolean overlapped;
+
+   public TestParallelDeployer(DeploymentStage stage, TestParallelDeployer previous)
+   {
+      setStage(stage);
+      setTopLevelOnly(true);
+      this.previous = previous;
+   }
+
+   public List<String> getDeployed()
+   {
+      return deployed;
+   }
+
+   public List<String> getUndeployed()
+   {
+      return undeployed;
+   }
+
+   public List<Integer> getSeenBefore()
+   {
+      return seenBefore;
+   }
+
+   /**
+    * Make the deployments wait for each other in internalDeploy.
+    *
+    * @param parties the number of deployments that need to be in internalDeploy together
+    */
+   public void setRendezvous(int parties)
+   {
+      rendezvous = new CountDownLatch(parties);
+   }
+
+   public boolean isOverlapped()
+   {
+      return overlapped;
+   }
+
+   public void internalDeploy(DeploymentUnit unit) throws DeploymentException
+   {
+      if (previous != null)
+         seenBefore.add(previous.getDeployed().size());
+      try
+      {
+         if (rendezvous != null)
+         {
+            // only returns true if the other deployments got here while we wait
+            rendezvous.countDown();
+            if (rendezvous.await(5, TimeUnit.SECONDS))
+               overlapped = true;
+         }
+         else
+         {
+            // give the other workers a chance to overlap
+            Thread.sleep(10);
+         }
+      }
+      catch (InterruptedException ignored)
+      {
+      }
+      deployed.add(unit.getName());
+      TestDependencyMetaData dependencies = unit.getAttachment(TestDependencyMetaData.class);
+      if (dependencies != null)
+      {
+         for (DependencyItem item : dependencies.iDependOn)
+            unit.addIDependOn(item);
+      }
+      if (this.equals(unit.getAttachment("fail")))
+         throw new DeploymentException("Asked to fail");
+   }
+
+   public void internalUndeploy(DeploymentUnit unit)
+   {
+      undeployed.add(unit.getName());
+   }
+}
@@ -0,0 +1,191 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.client.spi.IncompleteDeploymentException;
+import org.jboss.deployers.plugins.deployers.DeployersImpl;
+import org.jboss.deployers.plugins.main.MainDeployerImpl;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.test.deployers.AbstractDeployerTest;
+import org.jboss.test.deployers.deployer.support.TestDependencyMetaData;
+import org.jboss.test.deployers.deployer.support.TestParallelDeployer;
+
+/**
+ * DeployerParallelUnitTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerParallelUnitTestCase extends AbstractDeployerTest
+{
+   private static final int SIZE = 10;
+
+   private ExecutorService executor;
+
+   public static Test suite()
+   {
+      return new TestSuite(DeployerParallelUnitTestCase.class);
+   }
+
+   public DeployerParallelUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      executor = Executors.newFixedThreadPool(4);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+      super.tearDown();
+   }
+
+   protected DeployerClient createParallelMainDeployer(TestParallelDeployer... deployers)
+   {
+      DeployerClient main = createMainDeployer(deployers);
+      DeployersImpl deployersImpl = (DeployersImpl) ((MainDeployerImpl) main).getDeployers();
+      deployersImpl.setExecutor(executor);
+      return main;
+   }
+
+   public void testStageBarrier() throws Exception
+   {
+      TestParallelDeployer describe = new TestParallelDeployer(DeploymentStages.DESCRIBE, null);
+      TestParallelDeployer real = new TestParallelDeployer(DeploymentStages.REAL, describe);
+      DeployerClient main = createParallelMainDeployer(describe, real);
+
+      Deployment[] deployments = new Deployment[SIZE];
+      for (int i = 0; i < SIZE; ++i)
+      {
+         deployments[i] = createSimpleDeployment("parallel" + i);
+         main.addDeployment(deployments[i]);
+      }
+      main.process();
+      main.checkComplete();
+
+      assertEquals(SIZE, describe.getDeployed().size());
+      assertEquals(SIZE, real.getDeployed().size());
+      // every deployment had finished DESCRIBE before any entered REAL
+      for (Integer seen : real.getSeenBefore())
+         assertEquals(SIZE, seen.intValue());
+
+      for (Deployment deployment : deployments)
+         main.removeDeployment(deployment);
+      main.process();
+
+      assertEquals(SIZE, describe.getUndeployed().size());
+      assertEquals(SIZE, real.getUndeployed().size());
+   }
+
+   public void testConcurrentStage() throws Exception
+   {
+      TestParallelDeployer describe = new TestParallelDeployer(DeploymentStages.DESCRIBE, null);
+      describe.setRendezvous(2);
+      DeployerClient main = createParallelMainDeployer(describe);
+
+      Deployment first = createSimpleDeployment("first");
+      Deployment second = createSimpleDeployment("second");
+      main.addDeployment(first);
+      main.addDeployment(second);
+      main.process();
+      main.checkComplete();
+
+      // serially the first deployment would have timed out waiting for the second
+      assertTrue("Deployers did not run concurrently", describe.isOverlapped());
+      assertEquals(2, describe.getDeployed().size());
+   }
+
+   public void testDependentKeepsPosition() throws Exception
+   {
+      TestParallelDeployer describe = new TestParallelDeployer(DeploymentStages.DESCRIBE, null);
+      TestParallelDeployer classloader = new TestParallelDeployer(DeploymentStages.CLASSLOADER, describe);
+      DeployerClient main = createParallelMainDeployer(describe, classloader);
+
+      Deployment a = createSimpleDeployment("A");
+      Deployment b = createSimpleDeployment("B");
+      TestDependencyMetaData depB = new TestDependencyMetaData("B");
+      depB.addDependencyItem("A", DeploymentStages.CLASSLOADER, DeploymentStages.DESCRIBE);
+      MutableAttachments attachments = (MutableAttachments) b.getPredeterminedManagedObjects();
+      attachments.addAttachment(TestDependencyMetaData.class, depB);
+      Deployment c = createSimpleDeployment("C");
+      main.addDeployment(a);
+      main.addDeployment(b);
+      main.addDeployment(c);
+      main.process();
+      main.checkComplete();
+
+      List<String> expected = new ArrayList<String>();
+      expected.add("A");
+      expected.add("B");
+      expected.add("C");
+      assertEquals(expected, classloader.getDeployed());
+   }
+
+   public void testFailureIsolated() throws Exception
+   {
+      TestParallelDeployer describe = new TestParallelDeployer(DeploymentStages.DESCRIBE, null);
+      TestParallelDeployer real = new TestParallelDeployer(DeploymentStages.REAL, describe);
+      DeployerClient main = createParallelMainDeployer(describe, real);
+
+      Deployment good1 = createSimpleDeployment("good1");
+      Deployment bad = createSimpleDeployment("bad");
+      MutableAttachments attachments = (MutableAttachments) bad.getPredeterminedManagedObjects();
+      attachments.addAttachment("fail", describe);
+      Deployment good2 = createSimpleDeployment("good2");
+      main.addDeployment(good1);
+      main.addDeployment(bad);
+      main.addDeployment(good2);
+      main.process();
+
+      try
+      {
+         main.checkComplete();
+         fail("Should not be here");
+      }
+      catch (Exception e)
+      {
+         checkThrowable(IncompleteDeploymentException.class, e);
+      }
+
+      assertTrue(real.getDeployed().contains("good1"));
+      assertTrue(real.getDeployed().contains("good2"));
+      assertTrue(describe.getDeployed().contains("bad"));
+      // the failed deployment never reached the next stage
+      assertFalse(real.getDeployed().contains("bad"));
+   }
+}
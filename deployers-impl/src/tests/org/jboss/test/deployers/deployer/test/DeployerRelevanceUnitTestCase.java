@@ -0,0 +1,177 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.dependency.spi.Controller;
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.deployers.DeployersImpl;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.deployers.spi.deployer.Deployers;
+import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.deployers.spi.structure.ContextInfo;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.test.deployers.AbstractDeployerTest;
+import org.jboss.test.deployers.deployer.support.TestDeployment1;
+import org.jboss.test.deployers.deployer.support.TestDeploymentDeployer1;
+import org.jboss.test.deployers.deployer.support.TestMetaData1;
+import org.jboss.test.deployers.deployer.support.TestSimpleDeployer;
+
+/**
+ * DeployerRelevanceUnitTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerRelevanceUnitTestCase extends AbstractDeployerTest
+{
+   private Map<String, Integer> checks = new HashMap<String, Integer>();
+
+   public static Test suite()
+   {
+      return new TestSuite(DeployerRelevanceUnitTestCase.class);
+   }
+
+   public DeployerRelevanceUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   @Override
+   protected Deployers createDeployers()
+   {
+      Controller controller = getController();
+      return new DeployersImpl(controller)
+      {
+         @Override
+         protected boolean isRelevant(Deployer deployer, DeploymentUnit unit, boolean isTopLevel, boolean isComponent)
+         {
+            String key = deployer + "/" + unit.getName();
+            Integer count = checks.get(key);
+            checks.put(key, count == null ? 1 : count + 1);
+            return super.isRelevant(deployer, unit, isTopLevel, isComponent);
+         }
+      };
+   }
+
+   protected int getChecks(Deployer deployer)
+   {
+      int result = 0;
+      String prefix = deployer + "/";
+      for (Map.Entry<String, Integer> entry : checks.entrySet())
+      {
+         if (entry.getKey().startsWith(prefix))
+            result += entry.getValue();
+      }
+      return result;
+   }
+
+   public void testSubtreesSkipped() throws Exception
+   {
+      TestDeploymentDeployer1 componentDeployer = new TestDeploymentDeployer1();
+      TestSimpleDeployer topLevel = new TestSimpleDeployer(DeploymentStages.INSTALLED);
+      topLevel.setTopLevelOnly(true);
+      TestSimpleDeployer noComponents = new TestSimpleDeployer(DeploymentStages.INSTALLED);
+      TestSimpleDeployer withComponents = new TestSimpleDeployer(DeploymentStages.INSTALLED);
+      withComponents.setWantComponents(true);
+      DeployerClient main = createMainDeployer(componentDeployer, topLevel, noComponents, withComponents);
+
+      Deployment deployment = createSimpleDeployment("top");
+      addChild(deployment, "child");
+      MutableAttachments attachments = (MutableAttachments) deployment.getPredeterminedManagedObjects();
+      TestDeployment1 deployment1 = new TestDeployment1();
+      deployment1.addBean(new TestMetaData1("Bean1"));
+      deployment1.addBean(new TestMetaData1("Bean2"));
+      attachments.addAttachment(TestDeployment1.class, deployment1);
+
+      main.addDeployment(deployment);
+      main.process();
+      main.checkComplete();
+
+      // top
+      assertEquals(1, topLevel.getDeployedUnits().size());
+      assertEquals(1, getChecks(topLevel));
+      // top and child
+      assertEquals(2, noComponents.getDeployedUnits().size());
+      assertEquals(2, getChecks(noComponents));
+      // top, child and the two components
+      assertEquals(4, withComponents.getDeployedUnits().size());
+      assertEquals(4, getChecks(withComponents));
+
+      checks.clear();
+      main.removeDeployment(deployment);
+      main.process();
+
+      assertEquals(1, topLevel.getUndeployedUnits().size());
+      assertEquals(1, getChecks(topLevel));
+      assertEquals(2, noComponents.getUndeployedUnits().size());
+      assertEquals(2, getChecks(noComponents));
+      assertEquals(4, withComponents.getUndeployedUnits().size());
+   }
+
+   public void testSubtreesWithoutInputSkipped() throws Exception
+   {
+      TestDeploymentDeployer1 componentDeployer = new TestDeploymentDeployer1();
+      TestSimpleDeployer deploymentInput = new TestSimpleDeployer(DeploymentStages.INSTALLED);
+      deploymentInput.setInput(TestDeployment1.class);
+      TestSimpleDeployer componentInput = new TestSimpleDeployer(DeploymentStages.INSTALLED);
+      componentInput.setInput(TestMetaData1.class);
+      componentInput.setWantComponents(true);
+      DeployerClient main = createMainDeployer(componentDeployer, deploymentInput, componentInput);
+
+      Deployment deployment = createSimpleDeployment("top");
+      addChild(deployment, "child1");
+      ContextInfo child2 = addChild(deployment, "child2");
+      TestDeployment1 deployment1 = new TestDeployment1();
+      deployment1.addBean(new TestMetaData1("Bean1"));
+      deployment1.addBean(new TestMetaData1("Bean2"));
+      MutableAttachments attachments = (MutableAttachments) child2.getPredeterminedManagedObjects();
+      attachments.addAttachment(TestDeployment1.class, deployment1);
+
+      main.addDeployment(deployment);
+      main.process();
+      main.checkComplete();
+
+      // top and child2, child1 is skipped
+      assertEquals(Collections.singleton("child2"), deploymentInput.getDeployedUnits());
+      assertEquals(2, getChecks(deploymentInput));
+      // top, child2 and the two components of child2
+      assertEquals(2, componentInput.getDeployedUnits().size());
+      assertEquals(4, getChecks(componentInput));
+
+      checks.clear();
+      main.removeDeployment(deployment);
+      main.process();
+
+      assertEquals(Collections.singleton("child2"), deploymentInput.getUndeployedUnits());
+      assertEquals(2, getChecks(deploymentInput));
+      assertEquals(2, componentInput.getUndeployedUnits().size());
+      assertEquals(4, getChecks(componentInput));
+   }
+}
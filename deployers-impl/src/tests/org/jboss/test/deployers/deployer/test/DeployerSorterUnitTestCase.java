@@ -0,0 +1,291 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.plugins.sort.DeployerSorter;
+import org.jboss.deployers.plugins.sort.DeployerSorterFactory;
+import org.jboss.deployers.plugins.sort.DominoDeployerSorter;
+import org.jboss.deployers.plugins.sort.TopologicalDeployerSorter;
+import org.jboss.deployers.spi.deployer.Deployer;
+import org.jboss.test.BaseTestCase;
+import org.jboss.test.deployers.deployer.support.TestFlowDeployer;
+
+/**
+ * DeployerSorterUnitTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerSorterUnitTestCase extends BaseTestCase
+{
+   public static Test suite()
+   {
+      return new TestSuite(DeployerSorterUnitTestCase.class);
+   }
+
+   public DeployerSorterUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected static TestFlowDeployer createDeployer(String name, String input, String output, int order)
+   {
+      TestFlowDeployer deployer = new TestFlowDeployer(name);
+      if (input != null)
+         deployer.setInputs(input);
+      if (output != null)
+         deployer.setOutputs(output);
+      deployer.setRelativeOrder(order);
+      return deployer;
+   }
+
+   protected static List<Deployer> insertAll(DeployerSorter sorter, Deployer... deployers)
+   {
+      List<Deployer> result = Collections.emptyList();
+      for (Deployer deployer : deployers)
+         result = sorter.sortDeployers(result, deployer);
+      return result;
+   }
+
+   protected void assertSameOrder(Deployer... deployers)
+   {
+      List<Deployer> domino = insertAll(new DominoDeployerSorter(), deployers);
+      List<Deployer> topological = insertAll(new TopologicalDeployerSorter(), deployers);
+      assertEquals(domino, topological);
+   }
+
+   protected static List<Deployer> insertAllOrNull(DeployerSorter sorter, Deployer... deployers)
+   {
+      try
+      {
+         return insertAll(sorter, deployers);
+      }
+      catch (IllegalStateException e)
+      {
+         return null;
+      }
+   }
+
+   protected static void assertInputOutputOrder(List<Deployer> sorted)
+   {
+      for (int i = 0; i < sorted.size(); ++i)
+      {
+         Deployer before = sorted.get(i);
+         for (int j = i + 1; j < sorted.size(); ++j)
+         {
+            Deployer after = sorted.get(j);
+            // pass-through deployers are ordered by the comparator
+            if (overlaps(after.getOutputs(), before.getInputs()) && overlaps(before.getOutputs(), after.getInputs()) == false)
+               fail(after + " produces an input of " + before + " but comes after it: " + sorted);
+         }
+      }
+   }
+
+   private static boolean overlaps(Set<String> one, Set<String> two)
+   {
+      for (String value : one)
+      {
+         if (two.contains(value))
+            return true;
+      }
+      return false;
+   }
+
+   public void testFactory() throws Exception
+   {
+      assertInstanceOf(DeployerSorterFactory.newSorter(DeployerSorterFactory.DOMINO), DominoDeployerSorter.class);
+      assertInstanceOf(DeployerSorterFactory.newSorter(DeployerSorterFactory.TOPOLOGICAL), TopologicalDeployerSorter.class);
+      try
+      {
+         DeployerSorterFactory.newSorter("unknown");
+         fail("Should not be here");
+      }
+      catch (Throwable t)
+      {
+         checkThrowable(IllegalArgumentException.class, t);
+      }
+   }
+
+   public void testInputOutputWrongOrder() throws Exception
+   {
+      Deployer d1 = createDeployer("1", null, "a", 0);
+      Deployer d2 = createDeployer("2", "a", "b", 0);
+      Deployer d3 = createDeployer("3", "b", "c", 0);
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), d3, d2, d1);
+      assertEquals(3, sorted.size());
+      assertSame(d1, sorted.get(0));
+      assertSame(d2, sorted.get(1));
+      assertSame(d3, sorted.get(2));
+      assertSameOrder(d3, d2, d1);
+   }
+
+   public void testRelativeOrder() throws Exception
+   {
+      Deployer d1 = createDeployer("A", null, null, 3);
+      Deployer d2 = createDeployer("B", null, null, 1);
+      Deployer d3 = createDeployer("C", null, null, 2);
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), d1, d2, d3);
+      assertSame(d2, sorted.get(0));
+      assertSame(d3, sorted.get(1));
+      assertSame(d1, sorted.get(2));
+      assertSameOrder(d1, d2, d3);
+   }
+
+   public void testTransitiveRelativeOrder() throws Exception
+   {
+      Deployer a = createDeployer("A", null, "X", 10);
+      Deployer b = createDeployer("B", "X", null, 5);
+      Deployer c = createDeployer("C", null, null, 7);
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), a, b, c);
+      assertEquals(3, sorted.size());
+      // B has to follow A, the relative order only decides among the ready deployers
+      assertSame(c, sorted.get(0));
+      assertSame(a, sorted.get(1));
+      assertSame(b, sorted.get(2));
+      // the domino sorter takes the contradicting relative order as a loop
+      assertNull(insertAllOrNull(new DominoDeployerSorter(), a, b, c));
+   }
+
+   public void testRelativeOrderWithoutLink() throws Exception
+   {
+      Deployer d28 = createDeployer("D28", null, "s4", -2);
+      Deployer d57 = createDeployer("D57", null, "s5", -1);
+      Deployer d58 = createDeployer("D58", null, "s0", 0);
+      Deployer d39 = createDeployer("D39", "s0", "s1", -2);
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), d28, d57, d58, d39);
+      // D57 follows D39 by the relative order, although D39 is only ready after D58
+      assertEquals(Arrays.asList(d28, d58, d39, d57), sorted);
+      assertSameOrder(d28, d57, d58, d39);
+   }
+
+   public void testRandomAgainstDomino() throws Exception
+   {
+      Random random = new Random(42);
+      for (int run = 0; run < 500; ++run)
+      {
+         int size = 2 + random.nextInt(10);
+         Deployer[] deployers = new Deployer[size];
+         for (int i = 0; i < size; ++i)
+         {
+            String input = null;
+            // mostly an earlier output, sometimes any output which can make a loop
+            if (i > 0 && random.nextInt(3) > 0)
+               input = "s" + random.nextInt(random.nextInt(10) == 0 ? size : i);
+            String output = random.nextInt(3) > 0 ? "s" + i : null;
+            int order = random.nextBoolean() ? random.nextInt(5) - 2 : 0;
+            deployers[i] = createDeployer("D" + random.nextInt(100) + "_" + i, input, output, order);
+         }
+         Collections.shuffle(Arrays.asList(deployers), random);
+
+         List<Deployer> domino = insertAllOrNull(new DominoDeployerSorter(), deployers);
+         List<Deployer> topological = insertAllOrNull(new TopologicalDeployerSorter(), deployers);
+         if (topological == null)
+         {
+            assertNull("Only the topological sorter found a loop: " + Arrays.asList(deployers), domino);
+            continue;
+         }
+         assertEquals(size, topological.size());
+         assertTrue(topological.containsAll(Arrays.asList(deployers)));
+         assertInputOutputOrder(topological);
+         if (domino != null)
+            assertEquals(domino, topological);
+      }
+   }
+
+   public void testPassThrough() throws Exception
+   {
+      Deployer d1 = createDeployer("1", null, "a", 0);
+      Deployer d2 = createDeployer("3", "a", "a", 0);
+      Deployer d3 = createDeployer("2", "a", "a", 0);
+      Deployer d4 = createDeployer("4", "a", null, 0);
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), d4, d2, d3, d1);
+      assertSame(d1, sorted.get(0));
+      assertSame(d3, sorted.get(1));
+      assertSame(d2, sorted.get(2));
+      assertSame(d4, sorted.get(3));
+      assertSameOrder(d4, d2, d3, d1);
+   }
+
+   public void testLoop() throws Exception
+   {
+      Deployer d1 = createDeployer("1", "a", "b", 0);
+      Deployer d2 = createDeployer("2", "b", "c", 0);
+      Deployer d3 = createDeployer("3", "c", "a", 0);
+      DeployerSorter sorter = new TopologicalDeployerSorter();
+      List<Deployer> sorted = insertAll(sorter, d1, d2);
+      try
+      {
+         sorter.sortDeployers(sorted, d3);
+         fail("Should not be here");
+      }
+      catch (Throwable t)
+      {
+         checkThrowable(IllegalStateException.class, t);
+      }
+      // the failed insert is forgotten
+      Deployer d4 = createDeployer("4", "c", null, 0);
+      sorted = sorter.sortDeployers(sorted, d4);
+      assertEquals(3, sorted.size());
+      assertSame(d4, sorted.get(2));
+   }
+
+   public void testRemoveAndAdd() throws Exception
+   {
+      Deployer d1 = createDeployer("1", null, "a", 0);
+      Deployer d2 = createDeployer("2", "a", "b", 0);
+      Deployer d3 = createDeployer("3", "b", null, 0);
+      DeployerSorter sorter = new TopologicalDeployerSorter();
+      List<Deployer> sorted = insertAll(sorter, d3, d2, d1);
+      // removed behind the sorter's back
+      sorted.remove(d2);
+      Deployer d4 = createDeployer("4", "a", "b", 0);
+      sorted = sorter.sortDeployers(sorted, d4);
+      assertEquals(3, sorted.size());
+      assertSame(d1, sorted.get(0));
+      assertSame(d4, sorted.get(1));
+      assertSame(d3, sorted.get(2));
+   }
+
+   public void testLongChain() throws Exception
+   {
+      int size = 300;
+      List<Deployer> chain = new ArrayList<Deployer>(size);
+      for (int i = 0; i < size; ++i)
+         chain.add(createDeployer("D" + i, "s" + i, "s" + (i + 1), 0));
+      List<Deployer> shuffled = new ArrayList<Deployer>(chain);
+      Collections.shuffle(shuffled, new Random(size));
+
+      long start = System.currentTimeMillis();
+      List<Deployer> sorted = insertAll(new TopologicalDeployerSorter(), shuffled.toArray(new Deployer[size]));
+      getLog().debug("Sorted " + size + " deployers in " + (System.currentTimeMillis() - start) + "ms");
+      assertEquals(chain, sorted);
+   }
+}
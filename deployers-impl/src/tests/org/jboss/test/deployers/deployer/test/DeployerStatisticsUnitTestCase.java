@@ -0,0 +1,168 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.test;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.deployers.DeployerStatistics;
+import org.jboss.deployers.plugins.deployers.DeployerTimes;
+import org.jboss.deployers.plugins.deployers.DeployersImpl;
+import org.jboss.deployers.plugins.deployers.TimeHistogram;
+import org.jboss.deployers.plugins.main.MainDeployerImpl;
+import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.test.deployers.AbstractDeployerTest;
+import org.jboss.test.deployers.deployer.support.TestSimpleDeployer;
+
+/**
+ * DeployerStatisticsUnitTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeployerStatisticsUnitTestCase extends AbstractDeployerTest
+{
+   public static Test suite()
+   {
+      return new TestSuite(DeployerStatisticsUnitTestCase.class);
+   }
+
+   public DeployerStatisticsUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected DeployersImpl getDeployersImpl(DeployerClient main)
+   {
+      return (DeployersImpl) ((MainDeployerImpl) main).getDeployers();
+   }
+
+   public void testDeployerTimes() throws Exception
+   {
+      TestSimpleDeployer deployer = new TestSimpleDeployer("timed");
+      DeployerClient main = createMainDeployer(deployer);
+      DeployersImpl deployers = getDeployersImpl(main);
+
+      Deployment deployment = createSimpleDeployment("A");
+      addChild(deployment, "A1");
+      main.deploy(deployment);
+
+      List<DeployerTimes> times = deployers.getDeployerTimes("timed", DeploymentStages.REAL, "A");
+      assertEquals(1, times.size());
+      DeployerTimes t = times.get(0);
+      assertEquals("timed", t.getDeployer());
+      assertEquals(DeploymentStages.REAL.getName(), t.getStage());
+      assertEquals("A", t.getDeployment());
+      assertEquals(2, t.getDeploy().getCount());
+      assertEquals(0, t.getUndeploy().getCount());
+      assertTrue(t.getDeploy().getMin() <= t.getDeploy().getMax());
+
+      DeployerStatistics statistics = deployers.getDeployerStatistics();
+      assertTrue(statistics.listTimes("A").contains("[A]"));
+      assertEmpty(deployers.getDeployerTimes("timed", DeploymentStages.REAL, "B"));
+
+      main.undeploy(deployment);
+      assertEquals(2, t.getUndeploy().getCount());
+
+      // the undeployed deployment is only part of the totals
+      assertEmpty(deployers.getDeployerTimes(null, null, "A"));
+      assertEquals("", statistics.listTimes("A"));
+      assertTrue(statistics.listTimes().contains("timed@" + DeploymentStages.REAL.getName()));
+      List<DeployerTimes> totals = statistics.getTotals();
+      assertEquals(1, totals.size());
+      assertEquals(2, totals.get(0).getDeploy().getCount());
+      assertEquals(2, totals.get(0).getUndeploy().getCount());
+
+      statistics.clear();
+      assertEmpty(deployers.getDeployerTimes(null, null, null));
+   }
+
+   public void testDisabled() throws Exception
+   {
+      TestSimpleDeployer deployer = new TestSimpleDeployer("notimes");
+      DeployerClient main = createMainDeployer(deployer);
+      DeployersImpl deployers = getDeployersImpl(main);
+      deployers.getDeployerStatistics().setEnabled(false);
+
+      Deployment deployment = createSimpleDeployment("B");
+      main.deploy(deployment);
+      assertEquals(1, deployer.getDeployedUnits().size());
+      assertEmpty(deployers.getDeployerTimes(null, null, null));
+   }
+
+   public void testTotals() throws Exception
+   {
+      DeployerStatistics statistics = new DeployerStatistics();
+      statistics.record("d", "s", "A", true, 1000);
+      statistics.record("d", "s", "B", true, 3000);
+      statistics.record("e", "s", "A", true, 10);
+      List<DeployerTimes> totals = statistics.getTotals();
+      assertEquals(2, totals.size());
+      DeployerTimes slowest = totals.get(0);
+      assertEquals("d", slowest.getDeployer());
+      assertNull(slowest.getDeployment());
+      assertEquals(2, slowest.getDeploy().getCount());
+      assertEquals(4000, slowest.getDeploy().getTotal());
+      assertEquals(1000, slowest.getDeploy().getMin());
+      assertEquals(3000, slowest.getDeploy().getMax());
+   }
+
+   public void testRemoveDeployment() throws Exception
+   {
+      DeployerStatistics statistics = new DeployerStatistics();
+      for (int i = 0; i < 100; ++i)
+      {
+         String deployment = "D" + i;
+         statistics.record("d", "s", deployment, true, 1000);
+         statistics.record("d", "s", deployment, false, 500);
+         statistics.removeDeployment(deployment);
+      }
+      statistics.record("d", "s", "live", true, 1000);
+
+      assertEquals(1, statistics.getTimes(null, null, "live").size());
+      // one entry for the live deployment and one total for the removed ones
+      assertEquals(2, statistics.getTimes(null, null, null).size());
+      List<DeployerTimes> totals = statistics.getTotals();
+      assertEquals(1, totals.size());
+      assertEquals(101, totals.get(0).getDeploy().getCount());
+      assertEquals(100, totals.get(0).getUndeploy().getCount());
+   }
+
+   public void testHistogram() throws Exception
+   {
+      TimeHistogram histogram = new TimeHistogram();
+      assertEquals(0, histogram.getPercentile(50));
+      for (int i = 1; i <= 100; ++i)
+         histogram.record(i * 1000000L);
+      assertEquals(100, histogram.getCount());
+      assertEquals(1000000L, histogram.getMin());
+      assertEquals(100000000L, histogram.getMax());
+      assertEquals(50500000L, histogram.getAverage());
+      long p50 = histogram.getPercentile(50);
+      // power of two buckets are within a factor of two
+      assertTrue("p50=" + p50, p50 >= 50000000L && p50 <= 100000000L);
+      assertEquals(histogram.getMax(), histogram.getPercentile(100));
+   }
+}
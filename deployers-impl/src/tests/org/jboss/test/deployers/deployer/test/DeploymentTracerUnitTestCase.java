@@ -0,0 +1,144 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.deployer.test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.client.spi.DeployerClient;
+import org.jboss.deployers.client.spi.Deployment;
+import org.jboss.deployers.plugins.deployers.DeployersImpl;
+import org.jboss.deployers.plugins.main.MainDeployerImpl;
+import org.jboss.deployers.plugins.tracing.RingBufferDeploymentTracer;
+import org.jboss.deployers.spi.deployer.DeploymentStages;
+import org.jboss.deployers.spi.deployer.DeploymentTracer;
+import org.jboss.test.deployers.AbstractDeployerTest;
+import org.jboss.test.deployers.deployer.support.TestSimpleDeployer;
+
+/**
+ * DeploymentTracerUnitTestCase.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DeploymentTracerUnitTestCase extends AbstractDeployerTest
+{
+   public static Test suite()
+   {
+      return new TestSuite(DeploymentTracerUnitTestCase.class);
+   }
+
+   public DeploymentTracerUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   protected DeployerClient createTracedMainDeployer(DeploymentTracer tracer, TestSimpleDeployer deployer)
+   {
+      DeployerClient main = createMainDeployer(deployer);
+      MainDeployerImpl mainDeployer = (MainDeployerImpl) main;
+      mainDeployer.setTracer(tracer);
+      ((DeployersImpl) mainDeployer.getDeployers()).setTracer(tracer);
+      return main;
+   }
+
+   public void testEvents() throws Exception
+   {
+      RingBufferDeploymentTracer tracer = new RingBufferDeploymentTracer();
+      TestSimpleDeployer deployer = new TestSimpleDeployer("traced");
+      DeployerClient main = createTracedMainDeployer(tracer, deployer);
+
+      Deployment deployment = createSimpleDeployment("A");
+      addChild(deployment, "A1");
+      main.deploy(deployment);
+
+      List<RingBufferDeploymentTracer.Event> events = tracer.getEvents();
+      assertFalse(events.isEmpty());
+
+      RingBufferDeploymentTracer.Event first = events.get(0);
+      assertEquals(DeploymentTracer.STRUCTURE, first.getCategory());
+      assertEquals('B', first.getPhase());
+      assertEquals("A", first.getDeployment());
+      assertEquals(Thread.currentThread().getId(), first.getThreadId());
+
+      int begins = 0;
+      int ends = 0;
+      Set<String> stages = new HashSet<String>();
+      Set<String> units = new HashSet<String>();
+      for (RingBufferDeploymentTracer.Event event : events)
+      {
+         if (event.getPhase() == 'B')
+            ++begins;
+         else
+            ++ends;
+         if (DeploymentTracer.STAGE.equals(event.getCategory()))
+            stages.add(event.getName());
+         if (DeploymentTracer.DEPLOY.equals(event.getCategory()))
+         {
+            assertEquals("traced", event.getName());
+            units.add(event.getDeployment());
+         }
+      }
+      assertEquals(begins, ends);
+      assertTrue(stages.contains(DeploymentStages.REAL.getName()));
+      assertTrue(stages.contains(DeploymentStages.INSTALLED.getName()));
+      assertTrue(units.contains("A"));
+      assertTrue(units.contains("A/A1"));
+
+      String json = tracer.listTraceEvents();
+      assertTrue(json, json.startsWith("{\"traceEvents\":["));
+      assertTrue(json, json.contains("\"cat\":\"deploy\""));
+      assertTrue(json, json.contains("\"thread_name\""));
+
+      tracer.clear();
+      main.undeploy(deployment);
+      boolean undeployed = false;
+      for (RingBufferDeploymentTracer.Event event : tracer.getEvents())
+      {
+         if (DeploymentTracer.UNDEPLOY.equals(event.getCategory()))
+            undeployed = true;
+      }
+      assertTrue(undeployed);
+   }
+
+   public void testBounded() throws Exception
+   {
+      RingBufferDeploymentTracer tracer = new RingBufferDeploymentTracer(4);
+      for (int i = 0; i < 10; ++i)
+         tracer.begin("test", "name" + i, null);
+      List<RingBufferDeploymentTracer.Event> events = tracer.getEvents();
+      assertEquals(4, events.size());
+      assertEquals("name6", events.get(0).getName());
+      assertEquals("name9", events.get(3).getName());
+   }
+
+   public void testEscaping() throws Exception
+   {
+      RingBufferDeploymentTracer tracer = new RingBufferDeploymentTracer(4);
+      tracer.begin("test", "a\"b\\c\n", "d");
+      String json = tracer.listTraceEvents();
+      assertTrue(json, json.contains("\"a\\\"b\\\\c\\n\""));
+   }
+}
@@ -0,0 +1,55 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.annotations;
+
+import java.util.Set;
+
+/**
+ * Annotation environment queries that only return names.
+ *
+ * None of these methods load the annotated classes,
+ * so they can be used by deployers that only need to know
+ * which classes to look at later.
+ *
+ * Implementations should cache the results per query.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface AnnotationNameEnvironment
+{
+   /**
+    * Get the names of all classes annotated with annotation param.
+    * This only applies to annotations for ElementType.TYPE level.
+    *
+    * @param annotationName the annotation name we're querying for
+    * @return set of matching class names
+    */
+   Set<String> getClassNamesAnnotatedWith(String annotationName);
+
+   /**
+    * Get all annotation hits matching the query.
+    *
+    * @param query the query
+    * @return set of matching elements
+    */
+   Set<NamedElement> getNamedElements(AnnotationQuery query);
+}
@@ -0,0 +1,206 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.annotations;
+
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+
+/**
+ * Query over an AnnotationNameEnvironment.
+ *
+ * The query is immutable, so it can be used as a cache key.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AnnotationQuery implements Serializable
+{
+   /** The serial version UID */
+   private static final long serialVersionUID = 1L;
+
+   /** The annotation name */
+   private String annotationName;
+
+   /** Is the annotation name a meta annotation */
+   private boolean metaAnnotation;
+
+   /** The element type, null for all */
+   private ElementType elementType;
+
+   /** The package name, null for all */
+   private String packageName;
+
+   /** Do we include subpackages */
+   private boolean subpackages;
+
+   private AnnotationQuery(String annotationName, boolean metaAnnotation, ElementType elementType, String packageName, boolean subpackages)
+   {
+      if (annotationName == null)
+         throw new IllegalArgumentException("Null annotation name");
+
+      this.annotationName = annotationName;
+      this.metaAnnotation = metaAnnotation;
+      this.elementType = elementType;
+      this.packageName = packageName;
+      this.subpackages = subpackages;
+   }
+
+   /**
+    * Query the hits of an annotation.
+    *
+    * @param annotationName the annotation name
+    * @param elementType the element type, null for all
+    * @return new query
+    */
+   public static AnnotationQuery annotatedWith(String annotationName, ElementType elementType)
+   {
+      return new AnnotationQuery(annotationName, false, elementType, null, false);
+   }
+
+   /**
+    * Query the hits of annotations that are annotated with the meta annotation,
+    * e.g. all classes with an annotation that is marked as a stereotype.
+    *
+    * @param metaAnnotationName the meta annotation name
+    * @param elementType the element type, null for all
+    * @return new query
+    */
+   public static AnnotationQuery metaAnnotatedWith(String metaAnnotationName, ElementType elementType)
+   {
+      return new AnnotationQuery(metaAnnotationName, true, elementType, null, false);
+   }
+
+   /**
+    * Restrict the query to owner classes in a package.
+    *
+    * @param packageName the package name
+    * @param subpackages do we include subpackages
+    * @return new query
+    */
+   public AnnotationQuery inPackage(String packageName, boolean subpackages)
+   {
+      if (packageName == null)
+         throw new IllegalArgumentException("Null package name");
+
+      return new AnnotationQuery(annotationName, metaAnnotation, elementType, packageName, subpackages);
+   }
+
+   /**
+    * Get the annotation name.
+    *
+    * @return the annotation name
+    */
+   public String getAnnotationName()
+   {
+      return annotationName;
+   }
+
+   /**
+    * Is the annotation name a meta annotation.
+    *
+    * @return true if we match annotations annotated with the annotation name
+    */
+   public boolean isMetaAnnotation()
+   {
+      return metaAnnotation;
+   }
+
+   /**
+    * Get the element type.
+    *
+    * @return the element type, null for all
+    */
+   public ElementType getElementType()
+   {
+      return elementType;
+   }
+
+   /**
+    * Get the package name.
+    *
+    * @return the package name, null for all
+    */
+   public String getPackageName()
+   {
+      return packageName;
+   }
+
+   /**
+    * Do we include subpackages.
+    *
+    * @return the subpackages flag
+    */
+   public boolean isSubpackages()
+   {
+      return subpackages;
+   }
+
+   /**
+    * Does the owner class match the package restriction.
+    *
+    * @param className the owner class name
+    * @return true if the class is in the queried package
+    */
+   public boolean matchesOwner(String className)
+   {
+      if (packageName == null)
+         return true;
+
+      int length = packageName.length();
+      if (className.length() <= length || className.startsWith(packageName) == false || className.charAt(length) != '.')
+         return false;
+
+      return subpackages || className.indexOf('.', length + 1) < 0;
+   }
+
+   public boolean equals(Object obj)
+   {
+      if (obj instanceof AnnotationQuery == false)
+         return false;
+
+      AnnotationQuery other = (AnnotationQuery) obj;
+      return annotationName.equals(other.annotationName)
+            && metaAnnotation == other.metaAnnotation
+            && elementType == other.elementType
+            && (packageName == null ? other.packageName == null : packageName.equals(other.packageName))
+            && subpackages == other.subpackages;
+   }
+
+   public int hashCode()
+   {
+      int hash = annotationName.hashCode();
+      if (elementType != null)
+         hash = 31 * hash + elementType.hashCode();
+      if (packageName != null)
+         hash = 31 * hash + packageName.hashCode();
+      return metaAnnotation ? hash + 1 : hash;
+   }
+
+   public String toString()
+   {
+      StringBuilder builder = new StringBuilder();
+      builder.append(metaAnnotation ? "@@" : "@").append(annotationName);
+      builder.append(" on ").append(elementType != null ? elementType : "any element");
+      if (packageName != null)
+         builder.append(" in ").append(packageName).append(subpackages ? ".*" : "");
+      return builder.toString();
+   }
+}
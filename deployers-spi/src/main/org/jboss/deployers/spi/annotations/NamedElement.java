@@ -0,0 +1,64 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.annotations;
+
+import java.lang.annotation.ElementType;
+
+import org.jboss.metadata.spi.signature.Signature;
+
+/**
+ * Annotation hit described by names only.
+ *
+ * Unlike Element it never loads the owner class.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface NamedElement
+{
+   /**
+    * Get the owner class name.
+    *
+    * @return the owner classname
+    */
+   String getOwnerClassName();
+
+   /**
+    * Get the annotation class name.
+    *
+    * @return the annotation classname
+    */
+   String getAnnotationName();
+
+   /**
+    * Get the element type that holds the annotation.
+    *
+    * @return the element type
+    */
+   ElementType getElementType();
+
+   /**
+    * Get the signature of the annotated member.
+    *
+    * @return the signature, null for ElementType.TYPE
+    */
+   Signature getSignature();
+}
@@ -0,0 +1,64 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.spi.deployer;
+
+/**
+ * Receives begin and end events of the deployment work.<p>
+ *
+ * The events are reported on the thread that does the work,
+ * so an implementation can pick up the thread itself.
+ * Implementations should be cheap and must not throw exceptions.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface DeploymentTracer
+{
+   /** The category of the structure determination */
+   String STRUCTURE = "structure";
+
+   /** The category of a deployment moving to a stage */
+   String STAGE = "stage";
+
+   /** The category of a deployer deploying a unit */
+   String DEPLOY = "deploy";
+
+   /** The category of a deployer undeploying a unit */
+   String UNDEPLOY = "undeploy";
+
+   /**
+    * The work begins.
+    *
+    * @param category the category
+    * @param name the name of the work, e.g. the stage or the deployer
+    * @param deployment the deployment or unit name
+    */
+   void begin(String category, String name, String deployment);
+
+   /**
+    * The work ends.
+    *
+    * @param category the category
+    * @param name the name of the work, e.g. the stage or the deployer
+    * @param deployment the deployment or unit name
+    */
+   void end(String category, String name, String deployment);
+}
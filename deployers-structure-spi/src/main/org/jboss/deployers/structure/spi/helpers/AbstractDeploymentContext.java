@@ -40,6 +40,7 @@ import org.jboss.dependency.spi.DependencyInfo;
 import org.jboss.deployers.client.spi.Deployment;
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.DeploymentState;
+import org.jboss.deployers.spi.attachments.Attachments;
 import org.jboss.deployers.spi.attachments.helpers.ManagedObjectsWithTransientAttachmentsImpl;
 import org.jboss.deployers.structure.spi.ClassLoaderFactory;
 import org.jboss.deployers.structure.spi.DeploymentContext;
@@ -132,6 +133,9 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
    /** The mutable scope */
    private ScopeKey mutableScope;
 
+   /** The names attached to this context and the contexts below it */
+   private transient AttachmentPresence attachmentPresence = new AttachmentPresence(getPredeterminedManagedObjects(), getTransientManagedObjects(), getTransientAttachments());
+
    /**
     * Get the scope builder for a deployment context
     * 
@@ -585,7 +589,8 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
          throw new IllegalArgumentException("Null child");
       if (children == null)
          children = new TreeSet<DeploymentContext>(comparator);
-      children.add(child);
+      if (children.add(child))
+         attachmentPresence.addContext(child, false);
    }
 
    public boolean removeChild(DeploymentContext child)
@@ -594,7 +599,10 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
          throw new IllegalArgumentException("Null child");
       if (children == null)
          return false;
-      return children.remove(child);
+      boolean result = children.remove(child);
+      if (result)
+         attachmentPresence.removeContext(child, false);
+      return result;
    }
 
    public boolean isComponent()
@@ -613,6 +621,7 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
          throw new IllegalArgumentException("Null component");
       deployed();
       components.add(component);
+      attachmentPresence.addContext(component, true);
       log.debug("Added component " + component.getName() + " to " + getName());
    }
 
@@ -627,7 +636,10 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
       boolean result = components.remove(component);
       component.cleanup();
       if (result)
+      {
+         attachmentPresence.removeContext(component, true);
          log.debug("Removed component " + component.getName() + " from " + getName());
+      }
       return result;
    }
 
@@ -770,6 +782,26 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
    public void cleanup()
    {
       cleanupRepository(this);
+      // The predetermined managed objects can outlive us, e.g. those of the deployment
+      attachmentPresence.releaseLayer(getPredeterminedManagedObjects());
+   }
+
+   @Override
+   public void setPredeterminedManagedObjects(Attachments predetermined)
+   {
+      Attachments previous = getPredeterminedManagedObjects();
+      super.setPredeterminedManagedObjects(predetermined);
+      attachmentPresence.replaceLayer(previous, predetermined);
+   }
+
+   /**
+    * Get the names attached to this context and the contexts below it
+    * 
+    * @return the attachment presence
+    */
+   AttachmentPresence getAttachmentPresence()
+   {
+      return attachmentPresence;
    }
    
    @Override
@@ -796,7 +828,9 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
    @SuppressWarnings("unchecked")
    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
    {
+      Attachments previous = getPredeterminedManagedObjects();
       super.readExternal(in);
+      attachmentPresence.replaceLayer(previous, getPredeterminedManagedObjects());
       name = in.readUTF();
       simpleName = in.readUTF();
       relativePath = in.readUTF();
@@ -808,6 +842,13 @@ public class AbstractDeploymentContext extends ManagedObjectsWithTransientAttach
       deploymentTypes = (Set) in.readObject();
       children = (SortedSet) in.readObject();
       components = (List) in.readObject();
+      if (children != null)
+      {
+         for (DeploymentContext child : children)
+            attachmentPresence.addContext(child, false);
+      }
+      for (DeploymentContext component : components)
+         attachmentPresence.addContext(component, true);
    }
 
    /**
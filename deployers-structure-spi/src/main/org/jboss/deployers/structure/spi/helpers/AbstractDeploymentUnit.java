@@ -31,12 +31,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jboss.dependency.spi.DependencyInfo;
 import org.jboss.dependency.spi.DependencyItem;
 import org.jboss.deployers.client.spi.main.MainDeployer;
 import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.spi.attachments.Attachments;
 import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AbstractAttachments;
 import org.jboss.deployers.spi.attachments.helpers.AbstractMutableAttachments;
 import org.jboss.deployers.structure.spi.ClassLoaderFactory;
 import org.jboss.deployers.structure.spi.DeploymentContext;
@@ -65,6 +69,9 @@ public class AbstractDeploymentUnit extends AbstractMutableAttachments implement
    /** The deployment context */
    private DeploymentContext deploymentContext;
 
+   /** The resolved attachments, valid while no layer is replaced or modified */
+   private transient volatile AttachmentLayers layers;
+
    /**
     * For serialization
     */
@@ -289,23 +296,31 @@ public class AbstractDeploymentUnit extends AbstractMutableAttachments implement
    }
 
    public <T> Set<? extends T> getAllMetaData(Class<T> type)
+   {
+      Set<T> result = new HashSet<T>(getAttachmentsByType(type).values());
+      if (hasAttachments())
+         deploymentContext.deployed();
+      return result;
+   }
+
+   @Override
+   public <T> Map<String, T> getAttachmentsByType(Class<T> type)
    {
       if (type == null)
          throw new IllegalArgumentException("Null type");
-      
-      Set<T> result = new HashSet<T>();
-      Map<String, Object> attachments = getAttachments();
-      for (Object object : attachments.values())
+
+      Attachments[] layers = getLayers(getDeploymentContext());
+      Map<String, T> result = new HashMap<String, T>();
+      for (int i = 0; i < layers.length; ++i)
       {
-         if (type.isInstance(object))
+         for (Map.Entry<String, T> entry : getAttachmentsByType(layers[i], type).entrySet())
          {
-            T t = type.cast(object);
-            result.add(t);
+            String name = entry.getKey();
+            if (result.containsKey(name) == false && isShadowed(layers, i, name) == false)
+               result.put(name, entry.getValue());
          }
       }
-      if (result.isEmpty() == false)
-         deploymentContext.deployed();
-      return result;
+      return Collections.unmodifiableMap(result);
    }
 
    public MutableAttachments getTransientManagedObjects()
@@ -347,54 +362,148 @@ public class AbstractDeploymentUnit extends AbstractMutableAttachments implement
 
    public Object getAttachment(String name)
    {
+      if (name == null)
+         throw new IllegalArgumentException("Null name");
+
       DeploymentContext deploymentContext = getDeploymentContext();
-      DeploymentContext parent = deploymentContext.getParent();
-      if (deploymentContext.isComponent() == false)
-         parent = null;
-      Object result = deploymentContext.getPredeterminedManagedObjects().getAttachment(name);
-      if (result != null)
-      {
-         deploymentContext.deployed();
-         return result;
-      }
-      if (parent != null)
+      AttachmentLayers cache = layers;
+      if (cache == null || cache.isCurrent(deploymentContext) == false)
       {
-         result = parent.getPredeterminedManagedObjects().getAttachment(name);
-         if (result != null)
-         {
-            deploymentContext.deployed();
-            return result;
-         }
+         cache = new AttachmentLayers(deploymentContext);
+         layers = cache;
       }
-      result = deploymentContext.getTransientManagedObjects().getAttachment(name);
+
+      Object result = cache.getAttachment(name);
       if (result != null)
-      {
          deploymentContext.deployed();
-         return result;
-      }
+      return result;
+   }
+
+   /**
+    * Get the parent whose layers a context sees
+    * 
+    * @param deploymentContext the deployment context
+    * @return the parent of a component or null
+    */
+   private static DeploymentContext getLayerParent(DeploymentContext deploymentContext)
+   {
+      if (deploymentContext.isComponent() == false)
+         return null;
+      return deploymentContext.getParent();
+   }
+
+   /**
+    * Get an attachment layer, in lookup order
+    * predetermined, transient managed objects and transient attachments,
+    * each followed by the parent's for components.
+    * 
+    * @param deploymentContext the deployment context
+    * @param parent the parent from {@link #getLayerParent(DeploymentContext)}
+    * @param index the layer index
+    * @return the layer
+    */
+   private static Attachments getLayer(DeploymentContext deploymentContext, DeploymentContext parent, int index)
+   {
+      DeploymentContext owner = deploymentContext;
       if (parent != null)
       {
-         result = parent.getTransientManagedObjects().getAttachment(name);
-         if (result != null)
-         {
-            deploymentContext.deployed();
-            return result;
-         }
+         if (index % 2 != 0)
+            owner = parent;
+         index = index / 2;
       }
-      result = deploymentContext.getTransientAttachments().getAttachment(name);
-      if (result != null)
+      if (index == 0)
+         return owner.getPredeterminedManagedObjects();
+      else if (index == 1)
+         return owner.getTransientManagedObjects();
+      else
+         return owner.getTransientAttachments();
+   }
+
+   /**
+    * Get the attachment layers in lookup order
+    * 
+    * @param deploymentContext the deployment context
+    * @return the layers
+    */
+   private static Attachments[] getLayers(DeploymentContext deploymentContext)
+   {
+      DeploymentContext parent = getLayerParent(deploymentContext);
+      Attachments[] result = new Attachments[parent != null ? 6 : 3];
+      for (int i = 0; i < result.length; ++i)
+         result[i] = getLayer(deploymentContext, parent, i);
+      return result;
+   }
+
+   /**
+    * Get the modification version of a layer
+    * 
+    * @param layer the layer
+    * @return the version or -1 when the layer doesn't track its modifications
+    */
+   private static long getVersion(Attachments layer)
+   {
+      if (layer instanceof AbstractAttachments)
+         return ((AbstractAttachments) layer).getVersion();
+      return -1;
+   }
+
+   /**
+    * Is the name attached in a layer before the given one
+    * 
+    * @param layers the layers
+    * @param index the layer index
+    * @param name the name
+    * @return true when a previous layer has the name
+    */
+   private static boolean isShadowed(Attachments[] layers, int index, String name)
+   {
+      for (int i = 0; i < index; ++i)
       {
-         deploymentContext.deployed();
-         return result;
+         if (layers[i].isAttachmentPresent(name))
+            return true;
       }
-      if (parent != null)
+      return false;
+   }
+
+   /**
+    * Get the attachments of a layer that are instances of a type
+    *
+    * @param <T> the type
+    * @param layer the layer
+    * @param type the type
+    * @return the attachments of that type by name
+    */
+   private static <T> Map<String, T> getAttachmentsByType(Attachments layer, Class<T> type)
+   {
+      if (layer instanceof AbstractAttachments)
+         return ((AbstractAttachments) layer).getAttachmentsByType(type);
+
+      Map<String, T> result = new HashMap<String, T>();
+      for (Map.Entry<String, Object> entry : layer.getAttachments().entrySet())
+      {
+         Object attachment = entry.getValue();
+         if (type.isInstance(attachment))
+            result.put(entry.getKey(), type.cast(attachment));
+      }
+      return result;
+   }
+
+   /**
+    * Probe the layers in order
+    * 
+    * @param layers the layers
+    * @param from the first layer to probe
+    * @param to the layer after the last one to probe
+    * @param name the name
+    * @return the first attachment found or null
+    */
+   private static Object getAttachment(Attachments[] layers, int from, int to, String name)
+   {
+      for (int i = from; i < to; ++i)
       {
-         result = parent.getTransientAttachments().getAttachment(name);
+         Object result = layers[i].getAttachment(name);
          if (result != null)
-         {
-            deploymentContext.deployed();
             return result;
-         }
       }
       return null;
    }
@@ -507,4 +616,108 @@ public class AbstractDeploymentUnit extends AbstractMutableAttachments implement
    {
       return String.valueOf(deploymentContext);
    }
+
+   /**
+    * The attachments resolved against a snapshot of the layers' modification versions.<p>
+    * 
+    * Leading layers that don't track their modifications, e.g. a read only
+    * predetermined layer, are probed on every lookup. When such a layer follows
+    * a tracked one nothing is remembered, the layers are simply probed.
+    */
+   private static final class AttachmentLayers
+   {
+      /** Marker for a name not present in any layer */
+      private static final Object NOT_PRESENT = new Object();
+
+      /** The layers */
+      private final Attachments[] layers;
+
+      /** The parent the layers were taken from */
+      private final DeploymentContext parent;
+
+      /** The modification versions of the layers */
+      private final long[] versions;
+
+      /** The number of leading layers probed on every lookup */
+      private final int live;
+
+      /** The resolved attachments by name, null when nothing can be remembered */
+      private final ConcurrentMap<String, Object> resolved;
+
+      /**
+       * Create the cache for the layers of a context
+       * 
+       * @param deploymentContext the deployment context
+       */
+      AttachmentLayers(DeploymentContext deploymentContext)
+      {
+         parent = getLayerParent(deploymentContext);
+         layers = getLayers(deploymentContext);
+         versions = new long[layers.length];
+         int live = 0;
+         boolean tracked = true;
+         for (int i = 0; i < layers.length; ++i)
+         {
+            versions[i] = getVersion(layers[i]);
+            if (versions[i] < 0)
+            {
+               if (live == i)
+                  ++live;
+               else
+                  tracked = false;
+            }
+         }
+         this.live = live;
+         if (tracked)
+            resolved = new ConcurrentHashMap<String, Object>();
+         else
+            resolved = null;
+      }
+
+      /**
+       * Are these still the context's layers and has none of them changed
+       * 
+       * @param deploymentContext the deployment context
+       * @return true when the resolved attachments are still valid
+       */
+      boolean isCurrent(DeploymentContext deploymentContext)
+      {
+         if (getLayerParent(deploymentContext) != parent)
+            return false;
+         for (int i = 0; i < layers.length; ++i)
+         {
+            Attachments layer = layers[i];
+            if (getLayer(deploymentContext, parent, i) != layer)
+               return false;
+            if (i >= live && versions[i] >= 0 && getVersion(layer) != versions[i])
+               return false;
+         }
+         return true;
+      }
+
+      /**
+       * Get an attachment
+       * 
+       * @param name the name
+       * @return the attachment or null if not present
+       */
+      Object getAttachment(String name)
+      {
+         Object result = AbstractDeploymentUnit.getAttachment(layers, 0, live, name);
+         if (result != null)
+            return result;
+         if (resolved == null)
+            return AbstractDeploymentUnit.getAttachment(layers, live, layers.length, name);
+
+         result = resolved.get(name);
+         if (result == null)
+         {
+            result = AbstractDeploymentUnit.getAttachment(layers, live, layers.length, name);
+            resolved.put(name, result != null ? result : NOT_PRESENT);
+         }
+         if (result == NOT_PRESENT)
+            return null;
+         return result;
+      }
+   }
 }
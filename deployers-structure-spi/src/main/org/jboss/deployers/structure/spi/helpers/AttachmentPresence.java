@@ -0,0 +1,511 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.structure.spi.helpers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.deployers.spi.attachments.Attachments;
+import org.jboss.deployers.spi.attachments.helpers.AbstractAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AttachmentsListener;
+import org.jboss.deployers.structure.spi.DeploymentContext;
+
+/**
+ * The names attached to a deployment context and the contexts below it.<p>
+ *
+ * A context listens to its own attachment layers and counts, separately
+ * for its children and its components, the contexts below it that have
+ * a name attached. The counts follow the attachments as they are added
+ * and removed, so a deployer can skip the subtrees where its input
+ * is not attached anywhere.<p>
+ *
+ * Layers that don't notify their changes and contexts without an index
+ * can't be skipped, they count as having every name attached.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AttachmentPresence implements AttachmentsListener
+{
+   /** The name counted for layers and contexts that are not indexed, attachment names are never null */
+   private static final String UNINDEXED = null;
+
+   /** The layers notifying their changes */
+   private List<Attachments> layers = new ArrayList<Attachments>(3);
+
+   /** The number of layers that don't notify their changes */
+   private int unindexed;
+
+   /** The names attached to the layers */
+   private Set<String> names = new HashSet<String>();
+
+   /** The number of contexts with a name attached in the subtrees of the children */
+   private Map<String, Integer> children;
+
+   /** The number of contexts with a name attached in the subtrees of the components */
+   private Map<String, Integer> components;
+
+   /** The presence we are counted in */
+   private AttachmentPresence parent;
+
+   /** Whether we are counted as a component of the parent */
+   private boolean component;
+
+   /**
+    * Test whether a name can be seen by a context or the contexts below it
+    *
+    * @param context the context
+    * @param name the name
+    * @return false when neither the context nor anything below it sees the name
+    * @throws IllegalArgumentException for a null context or name
+    */
+   public static boolean isVisible(DeploymentContext context, String name)
+   {
+      if (context == null)
+         throw new IllegalArgumentException("Null context");
+      if (name == null)
+         throw new IllegalArgumentException("Null name");
+      AttachmentPresence presence = getAttachmentPresence(context);
+      if (presence == null)
+         return true;
+      if (context.isComponent())
+      {
+         // A component also sees the attachments of its parent
+         if (context.getPredeterminedManagedObjects().isAttachmentPresent(name))
+            return true;
+         AttachmentPresence parent = getAttachmentPresence(context.getParent());
+         if (parent == null || parent.isAttached(name))
+            return true;
+      }
+      synchronized (presence)
+      {
+         return presence.isAttached(name) || isCounted(presence.children, name) || isCounted(presence.components, name);
+      }
+   }
+
+   /**
+    * Test whether a name can be attached below the children of a context
+    *
+    * @param context the context
+    * @param name the name
+    * @return false when no child, nor anything below them, has the name attached
+    * @throws IllegalArgumentException for a null context or name
+    */
+   public static boolean isVisibleToChildren(DeploymentContext context, String name)
+   {
+      if (context == null)
+         throw new IllegalArgumentException("Null context");
+      if (name == null)
+         throw new IllegalArgumentException("Null name");
+      AttachmentPresence presence = getAttachmentPresence(context);
+      if (presence == null)
+         return true;
+      synchronized (presence)
+      {
+         return isCounted(presence.children, name);
+      }
+   }
+
+   /**
+    * Test whether a name can be seen by the components of a context.<p>
+    *
+    * Components also see the attachments of their parent.
+    *
+    * @param context the context
+    * @param name the name
+    * @return false when neither the context nor its components, nor anything below them, has the name attached
+    * @throws IllegalArgumentException for a null context or name
+    */
+   public static boolean isVisibleToComponents(DeploymentContext context, String name)
+   {
+      if (context == null)
+         throw new IllegalArgumentException("Null context");
+      if (name == null)
+         throw new IllegalArgumentException("Null name");
+      AttachmentPresence presence = getAttachmentPresence(context);
+      if (presence == null)
+         return true;
+      // The predetermined managed objects of a component are its parent's, which doesn't index them for us
+      if (context.isComponent() && context.getPredeterminedManagedObjects().isAttachmentPresent(name))
+         return true;
+      synchronized (presence)
+      {
+         return presence.isAttached(name) || isCounted(presence.components, name);
+      }
+   }
+
+   /**
+    * Get the presence of a context
+    *
+    * @param context the context
+    * @return the presence or null when the context is not indexed
+    */
+   static AttachmentPresence getAttachmentPresence(DeploymentContext context)
+   {
+      if (context instanceof AbstractDeploymentContext)
+         return ((AbstractDeploymentContext) context).getAttachmentPresence();
+      if (context instanceof ComponentDeploymentContext)
+         return ((ComponentDeploymentContext) context).getAttachmentPresence();
+      return null;
+   }
+
+   /**
+    * Is a name counted
+    *
+    * @param counts the counts
+    * @param name the name
+    * @return true when the name or the unindexed contexts are counted
+    */
+   private static boolean isCounted(Map<String, Integer> counts, String name)
+   {
+      return counts != null && (counts.containsKey(name) || counts.containsKey(UNINDEXED));
+   }
+
+   /**
+    * Create a new AttachmentPresence.
+    *
+    * @param layers the attachment layers of the context
+    */
+   public AttachmentPresence(Attachments... layers)
+   {
+      for (Attachments layer : layers)
+         addLayer(layer);
+   }
+
+   /**
+    * Replace an attachment layer
+    *
+    * @param previous the previous layer
+    * @param layer the new layer
+    */
+   public void replaceLayer(Attachments previous, Attachments layer)
+   {
+      if (previous == layer)
+         return;
+      addLayer(layer);
+      removeLayer(previous);
+   }
+
+   /**
+    * Stop listening to a layer that is shared beyond the life of the context.<p>
+    *
+    * The layer is counted as not indexed from now on.
+    *
+    * @param layer the layer
+    */
+   public void releaseLayer(Attachments layer)
+   {
+      Map<String, Integer> delta;
+      synchronized (this)
+      {
+         if (layers.remove(layer) == false)
+            return;
+         ((AbstractAttachments) layer).removeAttachmentsListener(this);
+         ++unindexed;
+         Set<String> changed = new HashSet<String>(layer.getAttachments().keySet());
+         changed.add(UNINDEXED);
+         delta = refresh(changed);
+      }
+      propagate(delta);
+   }
+
+   /**
+    * Count a child or component context
+    *
+    * @param context the context
+    * @param isComponent whether it is a component
+    */
+   public void addContext(DeploymentContext context, boolean isComponent)
+   {
+      AttachmentPresence presence = getAttachmentPresence(context);
+      if (presence == null)
+      {
+         propagate(this, isComponent, Collections.singletonMap(UNINDEXED, 1));
+         return;
+      }
+
+      Map<String, Integer> delta;
+      synchronized (presence)
+      {
+         if (presence.parent != null)
+            throw new IllegalStateException("Already counted: " + context.getName());
+         delta = presence.getCounts(1);
+         presence.parent = this;
+         presence.component = isComponent;
+      }
+      propagate(this, isComponent, delta);
+   }
+
+   /**
+    * Stop counting a child or component context
+    *
+    * @param context the context
+    * @param isComponent whether it is a component
+    */
+   public void removeContext(DeploymentContext context, boolean isComponent)
+   {
+      AttachmentPresence presence = getAttachmentPresence(context);
+      if (presence == null)
+      {
+         propagate(this, isComponent, Collections.singletonMap(UNINDEXED, -1));
+         return;
+      }
+
+      Map<String, Integer> delta;
+      synchronized (presence)
+      {
+         if (presence.parent != this)
+            return;
+         delta = presence.getCounts(-1);
+         presence.parent = null;
+      }
+      propagate(this, isComponent, delta);
+   }
+
+   /**
+    * Is a name attached to the context
+    *
+    * @param name the name
+    * @return true when attached or when a layer is not indexed
+    */
+   private synchronized boolean isAttached(String name)
+   {
+      return unindexed > 0 || names.contains(name);
+   }
+
+   public void attachmentChanged(Attachments attachments, String name)
+   {
+      Map<String, Integer> delta;
+      synchronized (this)
+      {
+         delta = refresh(Collections.singleton(name));
+      }
+      propagate(delta);
+   }
+
+   /**
+    * Add a layer
+    *
+    * @param layer the layer
+    */
+   private void addLayer(Attachments layer)
+   {
+      if (layer == null)
+         throw new IllegalArgumentException("Null layer");
+
+      // Listen first, so a change is either notified or seen below
+      boolean notifying = layer instanceof AbstractAttachments && ((AbstractAttachments) layer).addAttachmentsListener(this);
+      Map<String, Integer> delta;
+      synchronized (this)
+      {
+         Collection<String> changed;
+         if (notifying)
+         {
+            layers.add(layer);
+            changed = layer.getAttachments().keySet();
+         }
+         else
+         {
+            ++unindexed;
+            changed = Collections.singleton(UNINDEXED);
+         }
+         delta = refresh(changed);
+      }
+      propagate(delta);
+   }
+
+   /**
+    * Remove a layer
+    *
+    * @param layer the layer
+    */
+   private void removeLayer(Attachments layer)
+   {
+      Map<String, Integer> delta;
+      synchronized (this)
+      {
+         Collection<String> changed;
+         if (layers.remove(layer))
+         {
+            ((AbstractAttachments) layer).removeAttachmentsListener(this);
+            changed = layer.getAttachments().keySet();
+         }
+         else
+         {
+            --unindexed;
+            changed = Collections.singleton(UNINDEXED);
+         }
+         delta = refresh(changed);
+      }
+      propagate(delta);
+   }
+
+   /**
+    * Bring the names in line with the layers, must hold the lock.
+    *
+    * @param changed the names that may have changed
+    * @return the changes to count in the parent
+    */
+   private Map<String, Integer> refresh(Collection<String> changed)
+   {
+      Map<String, Integer> delta = null;
+      for (String name : changed)
+      {
+         boolean present;
+         if (name == UNINDEXED)
+            present = unindexed > 0;
+         else
+            present = isLayerAttached(name);
+         if (present == names.contains(name))
+            continue;
+
+         if (present)
+            names.add(name);
+         else
+            names.remove(name);
+         if (delta == null)
+            delta = new HashMap<String, Integer>();
+         delta.put(name, present ? 1 : -1);
+      }
+      if (delta == null)
+         return Collections.emptyMap();
+      return delta;
+   }
+
+   /**
+    * Is a name attached to a layer, must hold the lock.
+    *
+    * @param name the name
+    * @return true when attached
+    */
+   private boolean isLayerAttached(String name)
+   {
+      for (Attachments layer : layers)
+      {
+         if (layer.isAttachmentPresent(name))
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Get the counts of this subtree, must hold the lock.
+    *
+    * @param sign 1 to add the counts, -1 to remove them
+    * @return the counts
+    */
+   private Map<String, Integer> getCounts(int sign)
+   {
+      Map<String, Integer> result = new HashMap<String, Integer>();
+      for (String name : names)
+         result.put(name, sign);
+      add(result, children, sign);
+      add(result, components, sign);
+      return result;
+   }
+
+   /**
+    * Count our own changes in the parent
+    *
+    * @param delta the changes
+    */
+   private void propagate(Map<String, Integer> delta)
+   {
+      if (delta.isEmpty())
+         return;
+      AttachmentPresence next;
+      boolean isComponent;
+      synchronized (this)
+      {
+         next = parent;
+         isComponent = component;
+      }
+      if (next != null)
+         propagate(next, isComponent, delta);
+   }
+
+   /**
+    * Count the changes of a subtree in a presence and its parents.<p>
+    *
+    * Only one lock is held at a time, a context that is counted in a parent
+    * meanwhile has the changes in its counts already.
+    *
+    * @param presence the presence
+    * @param isComponent whether the changes are in the subtree of a component
+    * @param delta the changes
+    */
+   private static void propagate(AttachmentPresence presence, boolean isComponent, Map<String, Integer> delta)
+   {
+      while (presence != null && delta.isEmpty() == false)
+      {
+         AttachmentPresence next;
+         boolean nextComponent;
+         synchronized (presence)
+         {
+            if (isComponent)
+            {
+               if (presence.components == null)
+                  presence.components = new HashMap<String, Integer>();
+               add(presence.components, delta, 1);
+            }
+            else
+            {
+               if (presence.children == null)
+                  presence.children = new HashMap<String, Integer>();
+               add(presence.children, delta, 1);
+            }
+            next = presence.parent;
+            nextComponent = presence.component;
+         }
+         presence = next;
+         isComponent = nextComponent;
+      }
+   }
+
+   /**
+    * Add counts
+    *
+    * @param counts the counts to add to
+    * @param delta the counts to add
+    * @param sign 1 to add the counts, -1 to subtract them
+    */
+   private static void add(Map<String, Integer> counts, Map<String, Integer> delta, int sign)
+   {
+      if (delta == null)
+         return;
+      for (Map.Entry<String, Integer> entry : delta.entrySet())
+      {
+         String name = entry.getKey();
+         Integer count = counts.get(name);
+         int result = (count != null ? count : 0) + sign * entry.getValue();
+         if (result == 0)
+            counts.remove(name);
+         else
+            counts.put(name, result);
+      }
+   }
+}
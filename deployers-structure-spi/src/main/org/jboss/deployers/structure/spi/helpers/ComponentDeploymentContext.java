@@ -81,6 +81,9 @@ public class ComponentDeploymentContext implements DeploymentContext
    
    /** The managed objects */
    private transient MutableAttachments transientManagedObjects = AttachmentsFactory.createMutableAttachments();
+
+   /** The names attached to this component and its components */
+   private transient AttachmentPresence attachmentPresence = new AttachmentPresence(transientManagedObjects, transientAttachments);
    
    /** The scope */
    private ScopeKey scope;
@@ -321,6 +324,8 @@ public class ComponentDeploymentContext implements DeploymentContext
       if (component == null)
          throw new IllegalArgumentException("Null component");
       components.add(component);
+      if (attachmentPresence != null)
+         attachmentPresence.addContext(component, true);
    }
 
    public boolean removeComponent(DeploymentContext component)
@@ -329,9 +334,21 @@ public class ComponentDeploymentContext implements DeploymentContext
          throw new IllegalArgumentException("Null component");
       boolean result = components.remove(component);
       component.cleanup();
+      if (result && attachmentPresence != null)
+         attachmentPresence.removeContext(component, true);
       return result;
    }
 
+   /**
+    * Get the names attached to this component and its components
+    * 
+    * @return the attachment presence, null after deserialization
+    */
+   AttachmentPresence getAttachmentPresence()
+   {
+      return attachmentPresence;
+   }
+
    public ClassLoader getResourceClassLoader()
    {
       return parent.getResourceClassLoader();
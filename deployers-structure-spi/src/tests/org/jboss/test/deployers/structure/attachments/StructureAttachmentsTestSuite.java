@@ -29,10 +29,12 @@ import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentCon
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentContextTransientAttachmentsUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentContextTransientManagedObjectsUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitAttachmentHierarchyUnitTestCase;
+import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitAttachmentLookupUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitAttachmentsUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitPredeterminedManagedObjectsUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitTransientAttachmentsUnitTestCase;
 import org.jboss.test.deployers.structure.attachments.test.AbstractDeploymentUnitTransientManagedObjectsUnitTestCase;
+import org.jboss.test.deployers.structure.attachments.test.AttachmentPresenceUnitTestCase;
 
 /**
  * StructureAttachmentsTestSuite.
@@ -59,6 +61,8 @@ public class StructureAttachmentsTestSuite extends TestSuite
       suite.addTest(AbstractDeploymentUnitTransientAttachmentsUnitTestCase.suite());
       suite.addTest(AbstractDeploymentUnitAttachmentsUnitTestCase.suite());
       suite.addTest(AbstractDeploymentUnitAttachmentHierarchyUnitTestCase.suite());
+      suite.addTest(AbstractDeploymentUnitAttachmentLookupUnitTestCase.suite());
+      suite.addTest(AttachmentPresenceUnitTestCase.suite());
 
       return suite;
    }
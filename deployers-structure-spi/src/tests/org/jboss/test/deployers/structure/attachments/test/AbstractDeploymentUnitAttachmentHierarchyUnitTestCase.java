@@ -22,6 +22,7 @@
 package org.jboss.test.deployers.structure.attachments.test;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import junit.framework.Test;
@@ -154,4 +155,17 @@ public class AbstractDeploymentUnitAttachmentHierarchyUnitTestCase extends BaseT
       Map<String, String> expected = Collections.singletonMap(String.class.getName(), "tA");
       assertEquals(expected, unit.getAttachments());
    }
+   
+   public void testShadowedByType()
+   {
+      predeterminedManagedObjects.addAttachment("Name", 1);
+      transientManagedObjects.addAttachment("Name", "tMO");
+      transientAttachments.addAttachment("Other", "tA");
+      assertEquals(Collections.singleton("tA"), unit.getAllMetaData(String.class));
+      assertEquals(Collections.singleton(1), unit.getAllMetaData(Integer.class));
+      Map<String, Object> expected = new HashMap<String, Object>();
+      expected.put("Name", 1);
+      expected.put("Other", "tA");
+      assertEquals(expected, ((AbstractDeploymentUnit) unit).getAttachmentsByType(Object.class));
+   }
 }
@@ -0,0 +1,178 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.structure.attachments.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.spi.attachments.AttachmentsFactory;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AbstractAttachments;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.deployers.structure.spi.helpers.AbstractDeploymentContext;
+import org.jboss.deployers.structure.spi.helpers.AbstractDeploymentUnit;
+import org.jboss.test.BaseTestCase;
+
+/**
+ * Resolved attachment lookups must follow changes in every layer.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AbstractDeploymentUnitAttachmentLookupUnitTestCase extends BaseTestCase
+{
+   public static Test suite()
+   {
+      return new TestSuite(AbstractDeploymentUnitAttachmentLookupUnitTestCase.class);
+   }
+   
+   private AbstractDeploymentContext context;
+
+   private DeploymentUnit unit;
+
+   private MutableAttachments predeterminedManagedObjects;
+   
+   private MutableAttachments transientManagedObjects;
+
+   private MutableAttachments transientAttachments;
+   
+   public AbstractDeploymentUnitAttachmentLookupUnitTestCase(String name)
+   {
+      super(name);
+      context = new AbstractDeploymentContext("attachments", "");
+      unit = new AbstractDeploymentUnit(context);
+      context.setDeploymentUnit(unit);
+      predeterminedManagedObjects = (MutableAttachments) context.getPredeterminedManagedObjects();
+      transientManagedObjects = context.getTransientManagedObjects();
+      transientAttachments = context.getTransientAttachments();
+   }
+
+   public void testMissThenAdd()
+   {
+      assertNull(unit.getAttachment("Name"));
+      assertFalse(unit.isAttachmentPresent("Name"));
+      transientAttachments.addAttachment("Name", "tA");
+      assertEquals("tA", unit.getAttachment("Name"));
+      assertTrue(unit.isAttachmentPresent("Name"));
+   }
+
+   public void testHigherLayerAddedAfterLookup()
+   {
+      transientAttachments.addAttachment("Name", "tA");
+      assertEquals("tA", unit.getAttachment("Name"));
+      transientManagedObjects.addAttachment("Name", "tMO");
+      assertEquals("tMO", unit.getAttachment("Name"));
+      predeterminedManagedObjects.addAttachment("Name", "pMO");
+      assertEquals("pMO", unit.getAttachment("Name"));
+   }
+
+   public void testRemoveAfterLookup()
+   {
+      transientManagedObjects.addAttachment("Name", "tMO");
+      transientAttachments.addAttachment("Name", "tA");
+      assertEquals("tMO", unit.getAttachment("Name"));
+      transientManagedObjects.removeAttachment("Name");
+      assertEquals("tA", unit.getAttachment("Name"));
+      unit.removeAttachment("Name");
+      assertNull(unit.getAttachment("Name"));
+   }
+
+   public void testReplacedPredetermined()
+   {
+      assertNull(unit.getAttachment("Name"));
+      MutableAttachments replacement = AttachmentsFactory.createMutableAttachments();
+      replacement.addAttachment("Name", "pMO");
+      context.setPredeterminedManagedObjects(replacement);
+      assertEquals("pMO", unit.getAttachment("Name"));
+   }
+
+   public void testClearChangeCount()
+   {
+      transientAttachments.addAttachment("Name", "tA");
+      assertEquals("tA", unit.getAttachment("Name"));
+      unit.clearChangeCount();
+      transientAttachments.addAttachment("Name", "changed");
+      assertEquals("changed", unit.getAttachment("Name"));
+   }
+
+   public void testParentClearChangeCount()
+   {
+      DeploymentUnit component = unit.addComponent("component");
+      transientAttachments.addAttachment("Name", "parent");
+      assertEquals("parent", component.getAttachment("Name"));
+      // same number of changes after the parent's count is cleared
+      unit.clearChangeCount();
+      transientAttachments.addAttachment("Name", "changed");
+      assertEquals("changed", component.getAttachment("Name"));
+   }
+
+   public void testUntrackedPredetermined()
+   {
+      final Map<String, Object> map = new HashMap<String, Object>();
+      context.setPredeterminedManagedObjects(new AbstractAttachments()
+      {
+         private static final long serialVersionUID = 1L;
+
+         public Map<String, Object> getAttachments()
+         {
+            return map;
+         }
+
+         public Object getAttachment(String name)
+         {
+            return map.get(name);
+         }
+
+         public boolean isAttachmentPresent(String name)
+         {
+            return map.containsKey(name);
+         }
+
+         public boolean hasAttachments()
+         {
+            return map.isEmpty() == false;
+         }
+      });
+      transientAttachments.addAttachment("Name", "tA");
+      assertEquals("tA", unit.getAttachment("Name"));
+      map.put("Name", "pMO");
+      assertEquals("pMO", unit.getAttachment("Name"));
+      map.remove("Name");
+      assertEquals("tA", unit.getAttachment("Name"));
+      transientManagedObjects.addAttachment("Name", "tMO");
+      assertEquals("tMO", unit.getAttachment("Name"));
+   }
+
+   public void testComponentSeesParentChanges()
+   {
+      DeploymentUnit component = unit.addComponent("component");
+      assertNull(component.getAttachment("Name"));
+      transientAttachments.addAttachment("Name", "parent");
+      assertEquals("parent", component.getAttachment("Name"));
+      component.addAttachment("Name", "component");
+      assertEquals("component", component.getAttachment("Name"));
+      transientManagedObjects.addAttachment("Name", "parentMO");
+      assertEquals("parentMO", component.getAttachment("Name"));
+   }
+}
@@ -0,0 +1,206 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.structure.attachments.test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.jboss.deployers.plugins.attachments.AttachmentsImpl;
+import org.jboss.deployers.spi.attachments.Attachments;
+import org.jboss.deployers.spi.attachments.AttachmentsFactory;
+import org.jboss.deployers.spi.attachments.MutableAttachments;
+import org.jboss.deployers.spi.attachments.helpers.AttachmentsListener;
+import org.jboss.deployers.structure.spi.DeploymentContext;
+import org.jboss.deployers.structure.spi.helpers.AbstractDeploymentContext;
+import org.jboss.deployers.structure.spi.helpers.AttachmentPresence;
+import org.jboss.deployers.structure.spi.helpers.ComponentDeploymentContext;
+import org.jboss.test.BaseTestCase;
+
+/**
+ * AttachmentPresenceUnitTestCase.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class AttachmentPresenceUnitTestCase extends BaseTestCase
+{
+   public static Test suite()
+   {
+      return new TestSuite(AttachmentPresenceUnitTestCase.class);
+   }
+
+   private AbstractDeploymentContext top;
+
+   private AbstractDeploymentContext child;
+
+   private ComponentDeploymentContext component;
+
+   public AttachmentPresenceUnitTestCase(String name)
+   {
+      super(name);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      top = new AbstractDeploymentContext("top", "");
+      child = new AbstractDeploymentContext("child", "child");
+      top.addChild(child);
+      child.setParent(top);
+      component = new ComponentDeploymentContext("component", child);
+      child.addComponent(component);
+   }
+
+   public void testNothingAttached() throws Exception
+   {
+      assertNotVisible("Name", top, child, component);
+   }
+
+   public void testAttachedToComponent() throws Exception
+   {
+      component.getTransientAttachments().addAttachment("Name", "component");
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+      assertFalse(AttachmentPresence.isVisibleToComponents(top, "Name"));
+      assertFalse(AttachmentPresence.isVisibleToChildren(child, "Name"));
+      assertTrue(AttachmentPresence.isVisibleToComponents(child, "Name"));
+
+      component.getTransientAttachments().removeAttachment("Name");
+      assertNotVisible("Name", top, child, component);
+   }
+
+   public void testAttachedToParentOfComponent() throws Exception
+   {
+      child.getTransientManagedObjects().addAttachment("Name", "child");
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+      assertFalse(AttachmentPresence.isVisibleToChildren(child, "Name"));
+      assertTrue(AttachmentPresence.isVisibleToComponents(child, "Name"));
+      assertFalse(AttachmentPresence.isVisibleToComponents(component, "Name"));
+   }
+
+   public void testAttachedToSeveralLayers() throws Exception
+   {
+      child.getTransientManagedObjects().addAttachment("Name", "tMO");
+      child.getTransientAttachments().addAttachment("Name", "tA");
+      child.getTransientManagedObjects().removeAttachment("Name");
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+      child.getTransientAttachments().removeAttachment("Name");
+      assertFalse(AttachmentPresence.isVisibleToChildren(top, "Name"));
+   }
+
+   public void testPredeterminedOfComponent() throws Exception
+   {
+      MutableAttachments predetermined = (MutableAttachments) child.getPredeterminedManagedObjects();
+      predetermined.addAttachment("Name", "pMO");
+      assertTrue(AttachmentPresence.isVisibleToComponents(child, "Name"));
+      // The component's predetermined managed objects are the child's
+      assertTrue(AttachmentPresence.isVisibleToComponents(component, "Name"));
+   }
+
+   public void testPredeterminedReplaced() throws Exception
+   {
+      MutableAttachments predetermined = AttachmentsFactory.createMutableAttachments();
+      predetermined.addAttachment("Name", "pMO");
+      child.setPredeterminedManagedObjects(predetermined);
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+
+      child.setPredeterminedManagedObjects(AttachmentsFactory.createMutableAttachments());
+      assertFalse(AttachmentPresence.isVisibleToChildren(top, "Name"));
+
+      // The replaced attachments are no longer followed
+      predetermined.addAttachment("Other", "pMO");
+      assertFalse(AttachmentPresence.isVisibleToChildren(top, "Other"));
+   }
+
+   public void testAttachedBeforeAdded() throws Exception
+   {
+      AbstractDeploymentContext other = new AbstractDeploymentContext("other", "other");
+      other.getTransientAttachments().addAttachment("Name", "other");
+      top.addChild(other);
+      other.setParent(top);
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+
+      top.removeChild(other);
+      assertFalse(AttachmentPresence.isVisibleToChildren(top, "Name"));
+   }
+
+   public void testRemovedComponent() throws Exception
+   {
+      component.getTransientAttachments().addAttachment("Name", "component");
+      child.removeComponent(component);
+      assertNotVisible("Name", top, child);
+   }
+
+   public void testCleared() throws Exception
+   {
+      component.getTransientAttachments().addAttachment("Name", "component");
+      component.getTransientAttachments().clear();
+      assertNotVisible("Name", top, child, component);
+
+      Map<String, Object> map = Collections.<String, Object>singletonMap("Name", "component");
+      component.getTransientAttachments().setAttachments(map);
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+   }
+
+   public void testNotIndexed() throws Exception
+   {
+      Attachments predetermined = new NotIndexedAttachments();
+      child.setPredeterminedManagedObjects(predetermined);
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+      assertTrue(AttachmentPresence.isVisibleToComponents(child, "Name"));
+      assertFalse(AttachmentPresence.isVisibleToChildren(child, "Name"));
+
+      child.setPredeterminedManagedObjects(AttachmentsFactory.createMutableAttachments());
+      assertNotVisible("Name", top, child);
+   }
+
+   public void testCleanup() throws Exception
+   {
+      MutableAttachments predetermined = AttachmentsFactory.createMutableAttachments();
+      child.setPredeterminedManagedObjects(predetermined);
+      child.cleanup();
+      // No longer followed, so it might have anything
+      assertTrue(AttachmentPresence.isVisibleToChildren(top, "Name"));
+   }
+
+   protected void assertNotVisible(String name, DeploymentContext... contexts)
+   {
+      for (DeploymentContext context : contexts)
+      {
+         assertFalse(context.getName(), AttachmentPresence.isVisibleToChildren(context, name));
+         assertFalse(context.getName(), AttachmentPresence.isVisibleToComponents(context, name));
+      }
+   }
+
+   private static class NotIndexedAttachments extends AttachmentsImpl
+   {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public boolean addAttachmentsListener(AttachmentsListener listener)
+      {
+         return false;
+      }
+   }
+}
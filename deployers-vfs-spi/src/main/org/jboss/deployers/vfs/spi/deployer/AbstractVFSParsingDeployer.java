@@ -23,12 +23,28 @@ package org.jboss.deployers.vfs.spi.deployer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectStreamClass;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.deployer.helpers.AbstractParsingDeployerWithOutput;
@@ -49,9 +65,24 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
    /** The alt mappings key */
    private static final String ALT_MAPPINGS_MAP_KEY = "AltMappingsMap";
 
+   /** The default executor of the parallel parses */
+   private static Executor defaultExecutor;
+
+   /** The bytecode hashes by class */
+   private static final Map<Class<?>, String> classHashes = Collections.synchronizedMap(new WeakHashMap<Class<?>, String>());
+
    /** The allow multiple fiels flag */
    private boolean allowMultipleFiles;
 
+   /** The metadata cache */
+   private MetaDataCache metaDataCache;
+
+   /** The maximum number of files parsed at the same time */
+   private int parallelism = 1;
+
+   /** The executor of the parallel parses */
+   private Executor executor;
+
    /**
     * Create a new AbstractVFSParsingDeployer.
     * 
@@ -253,7 +284,7 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
     */
    protected T parseAndInit(VFSDeploymentUnit unit, VirtualFile file, T root) throws Exception
    {
-      T result = parse(unit, file, root);
+      T result = parseAndCache(unit, file, root);
       if (result != null)
          init(unit, result, file);
       return result;
@@ -318,14 +349,32 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
     * @return null or merged single result
     * @throws Exception for any error
     */
-   protected T handleMultipleFiles(VFSDeploymentUnit unit, T root, List<VirtualFile> files) throws Exception
+   protected T handleMultipleFiles(final VFSDeploymentUnit unit, T root, List<VirtualFile> files) throws Exception
    {
       if (allowsMultipleFiles(files) == false)
          throw new IllegalArgumentException("Multiple matching files not allowed: " + files);
 
-      for (VirtualFile file : files)
+      List<Future<T>> parsed = null;
+      if (isParseInParallel(files, root))
+      {
+         List<Callable<T>> tasks = new ArrayList<Callable<T>>(files.size());
+         for (final VirtualFile file : files)
+         {
+            tasks.add(new Callable<T>()
+            {
+               public T call() throws Exception
+               {
+                  return parseAndCache(unit, file, null);
+               }
+            });
+         }
+         parsed = invokeAll(tasks);
+      }
+
+      for (int i = 0; i < files.size(); i++)
       {
-         T result = parse(unit, file, root);
+         VirtualFile file = files.get(i);
+         T result = parsed != null ? getResult(parsed.get(i)) : parseAndCache(unit, file, root);
          if (result != null)
          {
             init(unit, result, file);
@@ -336,6 +385,159 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
       return null;
    }
 
+   /**
+    * Should the files be parsed in parallel.
+    *
+    * Only files parsed without a pre-existing root are,
+    * parsing into the same root is not thread safe.
+    *
+    * @param files the files
+    * @param root possibly null pre-existing root
+    * @return true to parse in parallel
+    */
+   protected boolean isParseInParallel(List<VirtualFile> files, Object root)
+   {
+      return parallelism > 1 && files.size() > 1 && root == null;
+   }
+
+   /**
+    * Run the parse tasks on the executor and wait for all of them.
+    *
+    * At most parallelism runners are handed to the executor,
+    * each of them runs tasks until none are left.
+    * A runner the executor rejects runs in the calling thread.
+    * The tasks run with the context classloader of the caller.
+    *
+    * @param <U> the result type
+    * @param tasks the parse tasks
+    * @return the completed results, in the order of the tasks
+    * @throws InterruptedException if interrupted while waiting
+    */
+   protected <U> List<Future<U>> invokeAll(List<Callable<U>> tasks) throws InterruptedException
+   {
+      final List<FutureTask<U>> futures = new ArrayList<FutureTask<U>>(tasks.size());
+      for (Callable<U> task : tasks)
+         futures.add(new FutureTask<U>(task));
+
+      final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      final AtomicInteger next = new AtomicInteger();
+      Runnable runner = new Runnable()
+      {
+         public void run()
+         {
+            Thread thread = Thread.currentThread();
+            ClassLoader tcl = thread.getContextClassLoader();
+            thread.setContextClassLoader(classLoader);
+            try
+            {
+               for (int i = next.getAndIncrement(); i < futures.size(); i = next.getAndIncrement())
+                  futures.get(i).run();
+            }
+            finally
+            {
+               thread.setContextClassLoader(tcl);
+            }
+         }
+      };
+
+      Executor executor = getExecutor();
+      if (executor == null)
+         executor = getDefaultExecutor();
+      for (int i = Math.min(parallelism, futures.size()); i > 0; i--)
+      {
+         try
+         {
+            executor.execute(runner);
+         }
+         catch (RejectedExecutionException e)
+         {
+            runner.run();
+         }
+      }
+
+      try
+      {
+         for (FutureTask<U> future : futures)
+         {
+            try
+            {
+               future.get();
+            }
+            catch (ExecutionException ignored)
+            {
+               // handed to the caller with the result
+            }
+            catch (CancellationException ignored)
+            {
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         next.set(futures.size());
+         for (FutureTask<U> future : futures)
+            future.cancel(true);
+         throw e;
+      }
+      return new ArrayList<Future<U>>(futures);
+   }
+
+   /**
+    * Get the default executor of the parallel parses.
+    *
+    * It is shared by all parsing deployers and bounded by the number of processors,
+    * its threads go away when they are idle.
+    *
+    * @return the default executor
+    */
+   protected static synchronized Executor getDefaultExecutor()
+   {
+      if (defaultExecutor == null)
+      {
+         ThreadFactory factory = new ThreadFactory()
+         {
+            private AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable)
+            {
+               Thread thread = new Thread(runnable, "MetaDataParser-" + count.incrementAndGet());
+               thread.setDaemon(true);
+               thread.setContextClassLoader(null);
+               return thread;
+            }
+         };
+         int threads = Runtime.getRuntime().availableProcessors();
+         defaultExecutor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), factory);
+      }
+      return defaultExecutor;
+   }
+
+   /**
+    * Get the result of a parse task,
+    * a failed parse throws what the parse threw.
+    *
+    * @param <U> the result type
+    * @param future the completed task
+    * @return the result
+    * @throws Exception for any error
+    */
+   protected static <U> U getResult(Future<U> future) throws Exception
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception)
+            throw (Exception) cause;
+         if (cause instanceof Error)
+            throw (Error) cause;
+         throw e;
+      }
+   }
+
    /**
     * Check if we allow multiple files.
     *
@@ -351,6 +553,164 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
       return allowMultipleFiles;
    }
 
+   /**
+    * Parse the file, or take the metadata from the metadata cache.
+    *
+    * Only files parsed without a root are cached.
+    *
+    * @param unit the deployment unit
+    * @param file the file
+    * @param root possibly null pre-existing root
+    * @return parsed result
+    * @throws Exception for any error
+    */
+   protected T parseAndCache(VFSDeploymentUnit unit, VirtualFile file, T root) throws Exception
+   {
+      if (metaDataCache == null || root != null)
+         return parse(unit, file, root);
+
+      Class<?> type = getMetaDataType(unit, file);
+      Object cached = getCachedMetaData(file, type);
+      if (cached != null)
+         return getOutput().cast(cached);
+
+      T result = parse(unit, file, root);
+      if (result != null)
+         putCachedMetaData(file, type, result);
+      return result;
+   }
+
+   /**
+    * Get the type of the metadata parsed from a file,
+    * the metadata cache keeps the metadata by this type.
+    *
+    * @param unit the deployment unit
+    * @param file the file
+    * @return the output by default
+    */
+   protected Class<?> getMetaDataType(VFSDeploymentUnit unit, VirtualFile file)
+   {
+      return getOutput();
+   }
+
+   /**
+    * Get the cached metadata of a file.
+    *
+    * @param file the file
+    * @param type the metadata type
+    * @return the metadata or null if there is no metadata cache or the file is not cached
+    */
+   protected Object getCachedMetaData(VirtualFile file, Class<?> type)
+   {
+      if (metaDataCache == null)
+         return null;
+
+      Object result = metaDataCache.getMetaData(file, type, getMetaDataCacheVersion(type), type.getClassLoader());
+      if (result != null && log.isTraceEnabled())
+         log.trace("Using cached metadata for " + file.getName());
+      return result;
+   }
+
+   /**
+    * Put the metadata of a file into the metadata cache.
+    *
+    * @param file the file
+    * @param type the metadata type
+    * @param metaData the metadata
+    */
+   protected void putCachedMetaData(VirtualFile file, Class<?> type, Object metaData)
+   {
+      if (metaDataCache != null)
+         metaDataCache.putMetaData(file, type, getMetaDataCacheVersion(type), metaData);
+   }
+
+   /**
+    * Get the version of this deployer and a metadata type.
+    *
+    * Cached metadata is only used while the version is the same.
+    * The version consists of the class names, implementation versions of their packages,
+    * a hash of the bytecode of the classes and their super classes,
+    * and the serialVersionUID of the metadata type.
+    * The bytecode hash catches rebuilt snapshots that have no implementation version.
+    *
+    * @param type the metadata type
+    * @return the version
+    */
+   protected String getMetaDataCacheVersion(Class<?> type)
+   {
+      StringBuilder builder = new StringBuilder();
+      appendVersion(builder, getClass());
+      builder.append(',');
+      appendVersion(builder, type);
+      ObjectStreamClass streamClass = ObjectStreamClass.lookup(type);
+      if (streamClass != null)
+         builder.append('#').append(streamClass.getSerialVersionUID());
+      return builder.toString();
+   }
+
+   private static void appendVersion(StringBuilder builder, Class<?> clazz)
+   {
+      builder.append(clazz.getName());
+      Package pckg = clazz.getPackage();
+      if (pckg != null && pckg.getImplementationVersion() != null)
+         builder.append('@').append(pckg.getImplementationVersion());
+      builder.append('/').append(getClassHash(clazz));
+   }
+
+   /**
+    * Get the hash of the bytecode of a class and its super classes.
+    *
+    * When the bytecode cannot be read the hash is only valid until the class is reloaded.
+    *
+    * @param clazz the class
+    * @return the hash
+    */
+   protected static String getClassHash(Class<?> clazz)
+   {
+      String hash = classHashes.get(clazz);
+      if (hash != null)
+         return hash;
+
+      try
+      {
+         MessageDigest digest = MessageDigest.getInstance("MD5");
+         byte[] buffer = new byte[4096];
+         for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass())
+         {
+            ClassLoader classLoader = current.getClassLoader();
+            if (classLoader == null)
+               continue;
+            InputStream in = classLoader.getResourceAsStream(current.getName().replace('.', '/') + ".class");
+            if (in == null)
+               throw new IOException("No bytecode for " + current.getName());
+            try
+            {
+               int read;
+               while ((read = in.read(buffer)) != -1)
+                  digest.update(buffer, 0, read);
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+         byte[] bytes = digest.digest();
+         StringBuilder builder = new StringBuilder(bytes.length * 2);
+         for (byte b : bytes)
+         {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+         }
+         hash = builder.toString();
+      }
+      catch (Exception e)
+      {
+         hash = "@" + Integer.toHexString(System.identityHashCode(clazz));
+      }
+      classHashes.put(clazz, hash);
+      return hash;
+   }
+
    /**
     * Parse a deployment
     * 
@@ -383,4 +743,76 @@ public abstract class AbstractVFSParsingDeployer<T> extends AbstractParsingDeplo
    {
       this.allowMultipleFiles = allowMultipleFiles;
    }
+
+   /**
+    * Get the parallelism.
+    *
+    * @return the maximum number of files parsed at the same time
+    */
+   public int getParallelism()
+   {
+      return parallelism;
+   }
+
+   /**
+    * Set the parallelism.
+    *
+    * With more than one, multiple matching files are parsed at the same time,
+    * and handled in the order they were matched once all of them are parsed.
+    * The parse methods have to be thread safe.
+    *
+    * @param parallelism the maximum number of files parsed at the same time
+    */
+   public void setParallelism(int parallelism)
+   {
+      if (parallelism < 1)
+         throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+      this.parallelism = parallelism;
+   }
+
+   /**
+    * Get the executor of the parallel parses.
+    *
+    * @return the executor or null for the shared default executor
+    */
+   public Executor getExecutor()
+   {
+      return executor;
+   }
+
+   /**
+    * Set the executor of the parallel parses.
+    *
+    * At most parallelism runners of a deployment are handed to it at a time,
+    * a runner it rejects runs in the deploying thread.
+    *
+    * @param executor the executor, null means the shared default executor bounded by the number of processors
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.executor = executor;
+   }
+
+   /**
+    * Get the metadata cache.
+    *
+    * @return the metadata cache
+    */
+   public MetaDataCache getMetaDataCache()
+   {
+      return metaDataCache;
+   }
+
+   /**
+    * Set the metadata cache.
+    *
+    * When set, the metadata of a file that was parsed before
+    * is taken from the cache instead of parsing the file again.
+    *
+    * @param metaDataCache the metadata cache
+    */
+   public void setMetaDataCache(MetaDataCache metaDataCache)
+   {
+      this.metaDataCache = metaDataCache;
+   }
 }
@@ -0,0 +1,323 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.spi.deployer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.logging.Logger;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * FileMetaDataCache.<p>
+ *
+ * Keeps the metadata parsed from a file in a file in the cache directory.
+ * An entry is keyed by the content of the parsed file and the metadata type,
+ * so the same descriptor in another deployment, or in the next boot, is not parsed again.
+ * An entry is only used while the version of the parsing deployer and the metadata type
+ * are the same as when it was written.
+ * Documents that pull in other files, e.g. through XInclude, should not be cached,
+ * a change of the included file is not noticed.<p>
+ *
+ * The content of a file is hashed once per miss, the entry is remembered
+ * until the metadata parsed from the file is put into the cache.<p>
+ *
+ * The metadata is written with the MetaDataSerializer, Java serialization by default.
+ * Anything that goes wrong reading or writing an entry means
+ * the file is parsed as usual.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FileMetaDataCache implements MetaDataCache
+{
+   /** The log */
+   private static final Logger log = Logger.getLogger(FileMetaDataCache.class);
+
+   /** The version of the entry format */
+   private static final int VERSION = 1;
+
+   /** The entry suffix */
+   private static final String SUFFIX = ".metadata";
+
+   /** The maximum number of misses remembered */
+   private static final int MAX_MISSES = 256;
+
+   /** The cache directory */
+   private File directory;
+
+   /** The serializer */
+   private MetaDataSerializer serializer = new JavaMetaDataSerializer();
+
+   /** The entries of the misses waiting for their metadata, least recently used first */
+   private Map<String, File> misses = new LinkedHashMap<String, File>(16, 0.75f, true)
+   {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, File> eldest)
+      {
+         return size() > MAX_MISSES;
+      }
+   };
+
+   /**
+    * Create a new FileMetaDataCache.
+    */
+   public FileMetaDataCache()
+   {
+   }
+
+   /**
+    * Create a new FileMetaDataCache.
+    *
+    * @param directory the cache directory
+    */
+   public FileMetaDataCache(File directory)
+   {
+      setDirectory(directory);
+   }
+
+   /**
+    * Get the directory.
+    *
+    * @return the directory.
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * Set the directory.
+    *
+    * @param directory the directory.
+    */
+   public void setDirectory(File directory)
+   {
+      if (directory == null)
+         throw new IllegalArgumentException("Null directory");
+      this.directory = directory;
+   }
+
+   /**
+    * Get the serializer.
+    *
+    * @return the serializer.
+    */
+   public MetaDataSerializer getSerializer()
+   {
+      return serializer;
+   }
+
+   /**
+    * Set the serializer.
+    *
+    * @param serializer the serializer.
+    */
+   public void setSerializer(MetaDataSerializer serializer)
+   {
+      if (serializer == null)
+         throw new IllegalArgumentException("Null serializer");
+      this.serializer = serializer;
+   }
+
+   public Object getMetaData(VirtualFile file, Class<?> type, String version, ClassLoader classLoader)
+   {
+      if (file == null)
+         throw new IllegalArgumentException("Null file");
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      if (version == null)
+         throw new IllegalArgumentException("Null version");
+
+      try
+      {
+         File entry = getFile(file, type);
+         if (entry.exists() == false)
+         {
+            remember(file, type, entry);
+            return null;
+         }
+
+         DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+         try
+         {
+            if (in.readInt() != VERSION || type.getName().equals(in.readUTF()) == false)
+               return null;
+            if (version.equals(in.readUTF()) == false)
+            {
+               if (log.isTraceEnabled())
+                  log.trace("Cached metadata is out of date: " + file.getName());
+               remember(file, type, entry);
+               return null;
+            }
+            Object metaData = serializer.readMetaData(in, classLoader);
+            return type.cast(metaData);
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      catch (Throwable t)
+      {
+         log.debug("Ignoring cached metadata for " + file.getName() + ": " + t);
+         return null;
+      }
+   }
+
+   public void putMetaData(VirtualFile file, Class<?> type, String version, Object metaData)
+   {
+      if (file == null)
+         throw new IllegalArgumentException("Null file");
+      if (type == null)
+         throw new IllegalArgumentException("Null type");
+      if (version == null)
+         throw new IllegalArgumentException("Null version");
+      if (metaData == null)
+         throw new IllegalArgumentException("Null metadata");
+
+      File temp = null;
+      try
+      {
+         File entry;
+         synchronized (misses)
+         {
+            entry = misses.remove(getMissKey(file, type));
+         }
+         if (entry == null)
+            entry = getFile(file, type);
+         directory.mkdirs();
+         temp = File.createTempFile("metadata", ".tmp", directory);
+
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+         try
+         {
+            out.writeInt(VERSION);
+            out.writeUTF(type.getName());
+            out.writeUTF(version);
+            serializer.writeMetaData(out, metaData);
+         }
+         finally
+         {
+            out.close();
+         }
+
+         if (entry.exists())
+            entry.delete();
+         if (temp.renameTo(entry))
+            temp = null;
+      }
+      catch (Throwable t)
+      {
+         log.debug("Unable to cache metadata for " + file.getName() + ": " + t);
+      }
+      finally
+      {
+         if (temp != null)
+            temp.delete();
+      }
+   }
+
+   /**
+    * Remember the entry of a miss, so putting the metadata need not hash the file again.
+    *
+    * @param file the parsed file
+    * @param type the metadata type
+    * @param entry the entry
+    * @throws Exception for any error
+    */
+   private void remember(VirtualFile file, Class<?> type, File entry) throws Exception
+   {
+      String key = getMissKey(file, type);
+      synchronized (misses)
+      {
+         misses.put(key, entry);
+      }
+   }
+
+   /**
+    * Get the key of a miss.
+    *
+    * It changes with the file, so an entry is not used for content that changed in between.
+    *
+    * @param file the parsed file
+    * @param type the metadata type
+    * @return the key
+    * @throws Exception for any error
+    */
+   private static String getMissKey(VirtualFile file, Class<?> type) throws Exception
+   {
+      return file.toURI() + "|" + file.getLastModified() + "|" + file.getSize() + "|" + type.getName();
+   }
+
+   /**
+    * Get the cache file for the content of a file.
+    *
+    * @param file the parsed file
+    * @param type the metadata type
+    * @return the file
+    * @throws Exception for any error
+    */
+   protected File getFile(VirtualFile file, Class<?> type) throws Exception
+   {
+      if (directory == null)
+         throw new IllegalStateException("No directory");
+
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      digest.update(type.getName().getBytes("UTF-8"));
+      digest.update((byte) 0);
+      InputStream in = SecurityActions.openStream(file);
+      if (in == null)
+         throw new IOException("Null file stream: " + file);
+      try
+      {
+         byte[] buffer = new byte[4096];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+            digest.update(buffer, 0, read);
+      }
+      finally
+      {
+         in.close();
+      }
+
+      byte[] bytes = digest.digest();
+      StringBuilder builder = new StringBuilder(bytes.length * 2 + SUFFIX.length());
+      for (byte b : bytes)
+      {
+         builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+         builder.append(Character.forDigit(b & 0xF, 16));
+      }
+      builder.append(SUFFIX);
+      return new File(directory, builder.toString());
+   }
+}
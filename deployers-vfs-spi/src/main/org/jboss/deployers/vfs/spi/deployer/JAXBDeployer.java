@@ -21,11 +21,26 @@
 */
 package org.jboss.deployers.vfs.spi.deployer;
 
+import java.beans.Introspector;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.virtual.VirtualFile;
@@ -41,10 +56,28 @@ import org.xml.sax.InputSource;
 public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
 {
    /** The JAXBContext */ 
-   private JAXBContext context;
+   private volatile JAXBContext context;
+
+   /** The JAXBContext being created in the background */
+   private volatile Future<JAXBContext> contextFuture;
+
+   /** Whether to create the JAXBContext in the background */
+   private boolean createContextInBackground;
 
    /** The properties */
    private Map<String, Object> properties;
+
+   /** The pooled unmarshallers */
+   private volatile BlockingQueue<PooledUnmarshaller> unmarshallers;
+
+   /** Whether to unmarshal only the output element */
+   private boolean partialUnmarshal;
+
+   /** The output element name */
+   private QName elementName;
+
+   /** The stream reader factory */
+   private XMLInputFactory inputFactory;
    
    /**
     * Create a new JAXBDeployer.
@@ -55,6 +88,7 @@ public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
    public JAXBDeployer(Class<T> output)
    {
       super(output);
+      setUnmarshallerPoolSize(Runtime.getRuntime().availableProcessors());
    }
 
    /**
@@ -77,6 +111,155 @@ public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
       this.properties = properties;
    }
 
+   /**
+    * Get the createContextInBackground.
+    *
+    * @return the createContextInBackground.
+    */
+   public boolean isCreateContextInBackground()
+   {
+      return createContextInBackground;
+   }
+
+   /**
+    * Set the createContextInBackground.
+    *
+    * When true create returns while the JAXBContext is being built
+    * on the executor, the first parse waits for it.
+    * The context is built in the calling thread if the executor rejects it.
+    *
+    * @param createContextInBackground the createContextInBackground.
+    */
+   public void setCreateContextInBackground(boolean createContextInBackground)
+   {
+      this.createContextInBackground = createContextInBackground;
+   }
+
+   /**
+    * Get the maximum number of pooled unmarshallers.
+    *
+    * @return the maximum number of pooled unmarshallers
+    */
+   public int getUnmarshallerPoolSize()
+   {
+      BlockingQueue<PooledUnmarshaller> pool = unmarshallers;
+      return pool != null ? pool.size() + pool.remainingCapacity() : 0;
+   }
+
+   /**
+    * Set the maximum number of pooled unmarshallers.
+    *
+    * @param poolSize the maximum number of pooled unmarshallers, 0 to create one for every parse
+    */
+   public void setUnmarshallerPoolSize(int poolSize)
+   {
+      if (poolSize < 0)
+         throw new IllegalArgumentException("Illegal pool size: " + poolSize);
+      unmarshallers = poolSize > 0 ? new ArrayBlockingQueue<PooledUnmarshaller>(poolSize) : null;
+   }
+
+   /**
+    * Get the partialUnmarshal.
+    *
+    * @return the partialUnmarshal.
+    */
+   public boolean isPartialUnmarshal()
+   {
+      return partialUnmarshal;
+   }
+
+   /**
+    * Set the partialUnmarshal.
+    *
+    * When true the file is read with a stream reader and
+    * only the first output element is unmarshalled,
+    * see getElementName. Needs to be set before create.
+    *
+    * @param partialUnmarshal the partialUnmarshal.
+    */
+   public void setPartialUnmarshal(boolean partialUnmarshal)
+   {
+      this.partialUnmarshal = partialUnmarshal;
+   }
+
+   /**
+    * Get the output element name.
+    *
+    * Unless set it is taken from the output's XmlRootElement.
+    *
+    * @return the element name
+    * @throws IllegalStateException if the element name is not set and cannot be determined
+    */
+   public QName getElementName()
+   {
+      if (elementName != null)
+         return elementName;
+
+      Class<T> output = getOutput();
+      XmlRootElement rootElement = output.getAnnotation(XmlRootElement.class);
+      if (rootElement == null)
+         throw new IllegalStateException("No element name set and no @XmlRootElement on " + output.getName());
+
+      String name = rootElement.name();
+      if ("##default".equals(name))
+         name = Introspector.decapitalize(output.getSimpleName());
+      String namespace = rootElement.namespace();
+      if ("##default".equals(namespace))
+      {
+         Package pkg = output.getPackage();
+         XmlSchema schema = pkg != null ? pkg.getAnnotation(XmlSchema.class) : null;
+         namespace = schema != null ? schema.namespace() : "";
+      }
+      return new QName(namespace, name);
+   }
+
+   /**
+    * Set the output element name.
+    *
+    * @param elementName the element name
+    */
+   public void setElementName(QName elementName)
+   {
+      this.elementName = elementName;
+   }
+
+   /**
+    * Get the JAXBContext.
+    *
+    * Waits for the context if it is being created in the background.
+    *
+    * @return the context
+    * @throws Exception for any error creating the context
+    * @throws IllegalStateException if the create method has not been invoked
+    */
+   protected JAXBContext getContext() throws Exception
+   {
+      JAXBContext result = context;
+      if (result != null)
+         return result;
+
+      Future<JAXBContext> future = contextFuture;
+      if (future == null)
+         throw new IllegalStateException("JAXBContext has not been constructed");
+      result = getResult(future);
+      context = result;
+      return result;
+   }
+
+   /**
+    * Create the JAXBContext.
+    *
+    * @return the context
+    * @throws Exception for any error
+    */
+   protected JAXBContext createContext() throws Exception
+   {
+      if (properties != null)
+         return JAXBContext.newInstance(new Class[] { getOutput() }, properties);
+      else
+         return JAXBContext.newInstance(getOutput());
+   }
+
    /**
     * Create lifecycle
     * 
@@ -84,10 +267,50 @@ public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
     */
    public void create() throws Exception
    {
-      if (properties != null)
-         context = JAXBContext.newInstance(new Class[] { getOutput() }, properties);
+      clearUnmarshallers();
+      if (partialUnmarshal)
+         inputFactory = XMLInputFactory.newInstance();
+
+      if (createContextInBackground)
+      {
+         final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+         FutureTask<JAXBContext> future = new FutureTask<JAXBContext>(new Callable<JAXBContext>()
+         {
+            public JAXBContext call() throws Exception
+            {
+               Thread thread = Thread.currentThread();
+               ClassLoader tcl = thread.getContextClassLoader();
+               thread.setContextClassLoader(classLoader);
+               try
+               {
+                  return createContext();
+               }
+               finally
+               {
+                  thread.setContextClassLoader(tcl);
+               }
+            }
+         });
+         context = null;
+         contextFuture = future;
+
+         Executor executor = getExecutor();
+         if (executor == null)
+            executor = getDefaultExecutor();
+         try
+         {
+            executor.execute(future);
+         }
+         catch (RejectedExecutionException e)
+         {
+            future.run();
+         }
+      }
       else
-         context = JAXBContext.newInstance(getOutput());
+      {
+         context = createContext();
+         contextFuture = null;
+      }
    }
 
    /**
@@ -95,20 +318,82 @@ public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
     */
    public void destroy()
    {
+      Future<JAXBContext> future = contextFuture;
+      if (future != null)
+         future.cancel(true);
+      contextFuture = null;
       context = null;
+      inputFactory = null;
+      clearUnmarshallers();
    }
-   
+
+   /**
+    * Get an unmarshaller of a context, a pooled one if available.
+    *
+    * Pooled unmarshallers of another context are dropped.
+    *
+    * @param context the context
+    * @return the unmarshaller
+    * @throws Exception for any error
+    */
+   protected Unmarshaller getUnmarshaller(JAXBContext context) throws Exception
+   {
+      BlockingQueue<PooledUnmarshaller> pool = unmarshallers;
+      if (pool != null)
+      {
+         PooledUnmarshaller pooled;
+         while ((pooled = pool.poll()) != null)
+         {
+            if (pooled.context == context)
+               return pooled.unmarshaller;
+         }
+      }
+      return context.createUnmarshaller();
+   }
+
+   /**
+    * Return an unmarshaller to the pool.
+    *
+    * Only unmarshallers that completed their parse should be returned,
+    * an unmarshaller of a context that was replaced in the meantime is dropped.
+    *
+    * @param context the context the unmarshaller was created by
+    * @param unmarshaller the unmarshaller
+    */
+   protected void releaseUnmarshaller(JAXBContext context, Unmarshaller unmarshaller)
+   {
+      BlockingQueue<PooledUnmarshaller> pool = unmarshallers;
+      if (pool != null && context == this.context)
+         pool.offer(new PooledUnmarshaller(context, unmarshaller));
+   }
+
+   /**
+    * Drop the pooled unmarshallers, they belong to the previous context.
+    */
+   private void clearUnmarshallers()
+   {
+      BlockingQueue<PooledUnmarshaller> pool = unmarshallers;
+      if (pool != null)
+         pool.clear();
+   }
+
    @Override
    protected T parse(VFSDeploymentUnit unit, VirtualFile file, T root) throws Exception
    {
-      Unmarshaller unmarshaller = context.createUnmarshaller();
+      if (partialUnmarshal)
+         return doPartialParse(unit, file);
+
+      JAXBContext context = getContext();
+      Unmarshaller unmarshaller = getUnmarshaller(context);
       InputStream is = openStreamAndValidate(file);
       try
       {
          InputSource source = new InputSource(is);
          source.setSystemId(file.toURI().toString());
          Object o = unmarshaller.unmarshal(source);
-         return getOutput().cast(o);
+         T result = getOutput().cast(o);
+         releaseUnmarshaller(context, unmarshaller);
+         return result;
       }
       finally
       {
@@ -121,4 +406,69 @@ public abstract class JAXBDeployer<T> extends AbstractVFSParsingDeployer<T>
          }
       }
    }
+
+   /**
+    * Unmarshal only the first output element of the file.
+    *
+    * @param unit the deployment unit
+    * @param file the metadata file
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   protected T doPartialParse(VFSDeploymentUnit unit, VirtualFile file) throws Exception
+   {
+      if (inputFactory == null)
+         throw new IllegalStateException("Stream reader factory has not been constructed");
+
+      QName name = getElementName();
+      JAXBContext context = getContext();
+      Unmarshaller unmarshaller = getUnmarshaller(context);
+      InputStream is = openStreamAndValidate(file);
+      try
+      {
+         XMLStreamReader reader = inputFactory.createXMLStreamReader(file.toURI().toString(), is);
+         try
+         {
+            while (reader.hasNext())
+            {
+               if (reader.next() == XMLStreamConstants.START_ELEMENT && name.equals(reader.getName()))
+               {
+                  T result = unmarshaller.unmarshal(reader, getOutput()).getValue();
+                  releaseUnmarshaller(context, unmarshaller);
+                  return result;
+               }
+            }
+            throw new UnmarshalException("No element " + name + " in " + file.getPathName());
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      finally
+      {
+         try
+         {
+            is.close();
+         }
+         catch (Exception ignored)
+         {
+         }
+      }
+   }
+
+   /**
+    * An unmarshaller in the pool, with the context it was created by.
+    */
+   private static class PooledUnmarshaller
+   {
+      private JAXBContext context;
+      private Unmarshaller unmarshaller;
+
+      private PooledUnmarshaller(JAXBContext context, Unmarshaller unmarshaller)
+      {
+         this.context = context;
+         this.unmarshaller = unmarshaller;
+      }
+   }
 }
@@ -21,10 +21,17 @@
 */
 package org.jboss.deployers.vfs.spi.deployer;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.util.xml.JBossEntityResolver;
@@ -38,6 +45,7 @@ import org.xml.sax.InputSource;
  * 
  * @see #parse(VFSDeploymentUnit, VirtualFile, Object)
  * @see #doParse(VFSDeploymentUnit, VirtualFile)
+ * @see #doStreamParse(VFSDeploymentUnit, VirtualFile)
  * 
  * @param <T> the expected type 
  * @author <a href="adrian@jboss.com">Adrian Brock</a>
@@ -55,6 +63,27 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
    
    /** The document builder factory */
    private DocumentBuilderFactory documentBuilderFactory;
+
+   /** Whether to reuse a document builder per thread */
+   private boolean reuseDocumentBuilders = true;
+
+   /** The document builders of each thread */
+   private volatile ThreadLocal<DocumentBuilder> documentBuilders;
+
+   /** The entity resolvers of each thread */
+   private ThreadLocal<JBossEntityResolver> entityResolvers = new ThreadLocal<JBossEntityResolver>()
+   {
+      protected JBossEntityResolver initialValue()
+      {
+         return new JBossEntityResolver();
+      }
+   };
+
+   /** Whether to hand subclasses a stream reader instead of a document */
+   private boolean useStreaming;
+
+   /** The stream reader factory */
+   private XMLInputFactory inputFactory;
    
    /**
     * Create a new JAXPDeployer.
@@ -107,6 +136,55 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
       this.validateDTDs = validateDTDs;
    }
 
+   /**
+    * Get the reuseDocumentBuilders.
+    *
+    * @return the reuseDocumentBuilders.
+    */
+   public boolean isReuseDocumentBuilders()
+   {
+      return reuseDocumentBuilders;
+   }
+
+   /**
+    * Set the reuseDocumentBuilders.
+    *
+    * When true each thread keeps its document builder and
+    * entity resolver, the builder is reset before every parse.
+    *
+    * @param reuseDocumentBuilders the reuseDocumentBuilders.
+    */
+   public void setReuseDocumentBuilders(boolean reuseDocumentBuilders)
+   {
+      this.reuseDocumentBuilders = reuseDocumentBuilders;
+   }
+
+   /**
+    * Get the useStreaming.
+    *
+    * @return the useStreaming.
+    */
+   public boolean isUseStreaming()
+   {
+      return useStreaming;
+   }
+
+   /**
+    * Set the useStreaming.
+    *
+    * When true the metadata file is not materialized as a document,
+    * it is handed to parse(VFSDeploymentUnit, VirtualFile, XMLStreamReader) instead,
+    * create fails if the deployer does not override it.
+    * An existing Document attachment is still parsed as a document.
+    * Needs to be set before create.
+    *
+    * @param useStreaming the useStreaming.
+    */
+   public void setUseStreaming(boolean useStreaming)
+   {
+      this.useStreaming = useStreaming;
+   }
+
    /**
     * Get the documentBuilderFactory.
     * 
@@ -120,6 +198,143 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
       return documentBuilderFactory;
    }
 
+   /**
+    * Get a document builder.
+    *
+    * The builder of the current thread is reset and reused
+    * if document builders are reused.
+    *
+    * @return the document builder
+    * @throws Exception for any error
+    */
+   protected DocumentBuilder getDocumentBuilder() throws Exception
+   {
+      DocumentBuilderFactory factory = getDocumentBuilderFactory();
+      ThreadLocal<DocumentBuilder> builders = documentBuilders;
+      if (reuseDocumentBuilders == false || builders == null)
+         return factory.newDocumentBuilder();
+
+      DocumentBuilder builder = builders.get();
+      if (builder == null)
+      {
+         builder = factory.newDocumentBuilder();
+         builders.set(builder);
+      }
+      else
+      {
+         builder.reset();
+      }
+      return builder;
+   }
+
+   /**
+    * Get an entity resolver.
+    *
+    * @return the entity resolver of the current thread if document builders are reused
+    */
+   protected JBossEntityResolver getEntityResolver()
+   {
+      if (reuseDocumentBuilders)
+         return entityResolvers.get();
+      else
+         return new JBossEntityResolver();
+   }
+
+   /**
+    * Get the stream reader factory.
+    *
+    * @return the stream reader factory
+    * @throws IllegalStateException if streaming is not used or the create method has not been invoked
+    */
+   protected XMLInputFactory getXMLInputFactory()
+   {
+      if (inputFactory == null)
+         throw new IllegalStateException("Stream reader factory has not been constructed");
+      return inputFactory;
+   }
+
+   /**
+    * Create the stream reader factory.
+    *
+    * @return the stream reader factory
+    */
+   protected XMLInputFactory createXMLInputFactory()
+   {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, useNamespaceAwareParser);
+      if (validateDTDs)
+         factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.TRUE);
+      factory.setXMLResolver(new XMLResolver()
+      {
+         public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) throws XMLStreamException
+         {
+            try
+            {
+               InputSource source = getEntityResolver().resolveEntity(publicID, systemID);
+               return source != null ? openInputSource(source, systemID) : null;
+            }
+            catch (XMLStreamException e)
+            {
+               throw e;
+            }
+            catch (Exception e)
+            {
+               throw new XMLStreamException("Unable to resolve entity: " + systemID, e);
+            }
+         }
+      });
+      return factory;
+   }
+
+   /**
+    * Open the stream of a resolved entity.
+    *
+    * A character stream is read and encoded as UTF-8,
+    * an entity only resolved to another system id is opened from there.
+    *
+    * @param source the resolved entity
+    * @param systemID the system id that was resolved
+    * @return the stream or null if the entity was not resolved to anything else
+    * @throws Exception for any error
+    */
+   protected static InputStream openInputSource(InputSource source, String systemID) throws Exception
+   {
+      if (source.getByteStream() != null)
+         return source.getByteStream();
+
+      Reader reader = source.getCharacterStream();
+      if (reader != null)
+      {
+         StringBuilder builder = new StringBuilder();
+         try
+         {
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+               builder.append(buffer, 0, read);
+         }
+         finally
+         {
+            reader.close();
+         }
+         String text = builder.toString();
+         // the characters are no longer in the encoding the declaration names
+         if (text.startsWith("<?xml"))
+         {
+            int end = text.indexOf("?>");
+            if (end > 0)
+               text = text.substring(0, end).replaceFirst("encoding\\s*=\\s*(\"[^\"]*\"|'[^']*')", "encoding=\"UTF-8\"") + text.substring(end);
+         }
+         return new ByteArrayInputStream(text.getBytes("UTF-8"));
+      }
+
+      String systemId = source.getSystemId();
+      if (systemId != null && systemId.equals(systemID) == false)
+         return new URL(systemId).openStream();
+
+      return null;
+   }
+
    /**
     * Create lifecycle
     * 
@@ -130,6 +345,37 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
       documentBuilderFactory = DocumentBuilderFactory.newInstance();
       documentBuilderFactory.setNamespaceAware(useNamespaceAwareParser);
       documentBuilderFactory.setValidating(validateDTDs);
+      documentBuilders = new ThreadLocal<DocumentBuilder>();
+      if (useStreaming)
+      {
+         if (isOverridden(JAXPDeployer.class, "parse", VFSDeploymentUnit.class, VirtualFile.class, XMLStreamReader.class) == false)
+            throw new IllegalStateException(getClass().getName() + " uses streaming but does not override parse(VFSDeploymentUnit, VirtualFile, XMLStreamReader)");
+         inputFactory = createXMLInputFactory();
+      }
+   }
+
+   /**
+    * Does this deployer override a method declared by a superclass.
+    *
+    * @param declaringClass the superclass declaring the method
+    * @param name the method name
+    * @param parameterTypes the parameter types
+    * @return true if a subclass of the declaring class declares the method
+    */
+   protected boolean isOverridden(Class<?> declaringClass, String name, Class<?>... parameterTypes)
+   {
+      for (Class<?> clazz = getClass(); clazz != null && clazz != declaringClass; clazz = clazz.getSuperclass())
+      {
+         try
+         {
+            clazz.getDeclaredMethod(name, parameterTypes);
+            return true;
+         }
+         catch (NoSuchMethodException ignored)
+         {
+         }
+      }
+      return false;
    }
 
    /**
@@ -138,6 +384,8 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
    public void destroy()
    {
       documentBuilderFactory = null;
+      documentBuilders = null;
+      inputFactory = null;
    }
 
    protected UnmarshallerFactory<Boolean> createUnmarshallerFactory()
@@ -147,6 +395,9 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
          public void setFeature(String featureName, Boolean flag) throws Exception
          {
             getDocumentBuilderFactory().setFeature(featureName, flag);
+            // builders created with the previous features
+            if (documentBuilders != null)
+               documentBuilders = new ThreadLocal<DocumentBuilder>();
          }
       };
    }
@@ -163,6 +414,10 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
       Document document = unit.getAttachment(Document.class);
       if( document == null )
       {
+         // Stream the metadata file to the subclass
+         if (useStreaming)
+            return doStreamParse(unit, file);
+
          // Next parse the metadata file
          document = doParse(unit, file);
       }
@@ -186,13 +441,13 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
 
       log.debug("Parsing: " + file.getName());
       
-      DocumentBuilder parser = getDocumentBuilderFactory().newDocumentBuilder();
+      DocumentBuilder parser = getDocumentBuilder();
       InputStream is = openStreamAndValidate(file);
       try
       {
          InputSource source = new InputSource(is);
          source.setSystemId(file.toURI().toString());
-         parser.setEntityResolver(new JBossEntityResolver());
+         parser.setEntityResolver(getEntityResolver());
          return parser.parse(source);
       }
       finally
@@ -207,6 +462,62 @@ public abstract class JAXPDeployer<T> extends UnmarshallerFactoryDeployer<T, Boo
       }
    }
 
+   /**
+    * Do the streaming parse
+    *
+    * @param unit the deployment unit
+    * @param file the metadata file
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   protected T doStreamParse(VFSDeploymentUnit unit, VirtualFile file) throws Exception
+   {
+      if (file == null)
+         throw new IllegalArgumentException("Null file");
+
+      log.debug("Stream parsing: " + file.getName());
+
+      InputStream is = openStreamAndValidate(file);
+      try
+      {
+         XMLStreamReader reader = getXMLInputFactory().createXMLStreamReader(file.toURI().toString(), is);
+         try
+         {
+            return parse(unit, file, reader);
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      finally
+      {
+         try
+         {
+            is.close();
+         }
+         catch (Exception ignored)
+         {
+         }
+      }
+   }
+
+   /**
+    * Parse a deployment from a stream reader.
+    *
+    * Subclasses that set useStreaming need to override it.
+    *
+    * @param unit the deployment unit
+    * @param file the metadata file
+    * @param reader the stream reader, positioned at the start of the document
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   protected T parse(VFSDeploymentUnit unit, VirtualFile file, XMLStreamReader reader) throws Exception
+   {
+      throw new UnsupportedOperationException(getClass().getName() + " does not support streaming");
+   }
+
    /**
     * Parse a deployment
     * 
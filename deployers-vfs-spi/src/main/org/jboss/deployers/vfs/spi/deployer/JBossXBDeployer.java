@@ -21,6 +21,8 @@
 */
 package org.jboss.deployers.vfs.spi.deployer;
 
+import java.util.Set;
+
 /**
  * JBoss XB deployer.
  *
@@ -32,6 +34,9 @@ public abstract class JBossXBDeployer<T> extends UnmarshallerFactoryDeployer<T,
    /** The helper */
    private JBossXBDeployerHelper<T> helper;
 
+   /** The namespaces whose schema bindings are resolved at start */
+   private Set<String> preloadNamespaces;
+
    /**
     * Create a new SchemaResolverDeployer.
     *
@@ -54,6 +59,12 @@ public abstract class JBossXBDeployer<T> extends UnmarshallerFactoryDeployer<T,
       return helper;
    }
 
+   public void start() throws Exception
+   {
+      super.start();
+      helper.preloadSchemaBindings(getPreloadNamespaces());
+   }
+
    protected UnmarshallerFactory<Boolean> createUnmarshallerFactory()
    {
       return getHelper();
@@ -103,4 +114,45 @@ public abstract class JBossXBDeployer<T> extends UnmarshallerFactoryDeployer<T,
    {
       helper.setUseValidation(useValidation);
    }
+
+   /**
+    * Get the unmarshaller pool size.
+    *
+    * @return the maximum number of pooled unmarshallers
+    */
+   public int getUnmarshallerPoolSize()
+   {
+      return helper.getUnmarshallerPoolSize();
+   }
+
+   /**
+    * Set the unmarshaller pool size.
+    *
+    * @param unmarshallerPoolSize the maximum number of pooled unmarshallers, 0 to disable pooling
+    */
+   public void setUnmarshallerPoolSize(int unmarshallerPoolSize)
+   {
+      helper.setUnmarshallerPoolSize(unmarshallerPoolSize);
+   }
+
+   /**
+    * Get the namespaces whose schema bindings are resolved at start.
+    *
+    * @return the namespaces
+    */
+   public Set<String> getPreloadNamespaces()
+   {
+      return preloadNamespaces;
+   }
+
+   /**
+    * Set the namespaces whose schema bindings are resolved at start,
+    * instead of by the first parse of a document using them.
+    *
+    * @param preloadNamespaces the namespaces
+    */
+   public void setPreloadNamespaces(Set<String> preloadNamespaces)
+   {
+      this.preloadNamespaces = preloadNamespaces;
+   }
 }
\ No newline at end of file
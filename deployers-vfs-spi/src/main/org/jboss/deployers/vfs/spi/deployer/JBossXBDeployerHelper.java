@@ -23,6 +23,14 @@ package org.jboss.deployers.vfs.spi.deployer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.logging.Logger;
@@ -32,12 +40,22 @@ import org.jboss.xb.binding.ObjectModelFactory;
 import org.jboss.xb.binding.Unmarshaller;
 import org.jboss.xb.binding.UnmarshallerFactory;
 import org.jboss.xb.binding.sunday.unmarshalling.DefaultSchemaResolver;
+import org.jboss.xb.binding.sunday.unmarshalling.SchemaBinding;
+import org.jboss.xb.binding.sunday.unmarshalling.SchemaBindingResolver;
 import org.jboss.xb.binding.sunday.unmarshalling.SingletonSchemaResolverFactory;
+import org.w3c.dom.ls.LSInput;
 import org.xml.sax.InputSource;
 
 /**
  * JBossXB deployer helper.
  *
+ * Unmarshallers are pooled per helper, an unmarshaller that failed to parse is not reused.
+ * The schema bindings of the namespaces bound through addClassBinding are cached
+ * by namespace and schema location and shared by all helpers,
+ * a cached binding is dropped when the class binding of its namespace changes.
+ * Every other namespace, e.g. one whose schema location, schema initializer or class binding
+ * was registered directly with the singleton resolver, is resolved by that resolver on every parse.
+ *
  * @param <T> the expected type
  * @author <a href="ales.justin@jboss.com">Ales Justin</a>
  */
@@ -52,6 +70,15 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
    /** The singleton schema resolver */
    private static DefaultSchemaResolver resolver = (DefaultSchemaResolver)SingletonSchemaResolverFactory.getInstance().getSchemaBindingResolver();
 
+   /** The namespaces bound through addClassBinding */
+   private static final Set<String> classBindings = new CopyOnWriteArraySet<String>();
+
+   /** The resolved schema bindings by namespace and schema location */
+   private static final ConcurrentMap<String, Map<String, SchemaBinding>> bindings = new ConcurrentHashMap<String, Map<String, SchemaBinding>>();
+
+   /** The resolver caching the schema bindings */
+   private static final CachingSchemaResolver cachingResolver = new CachingSchemaResolver();
+
    /** The output */
    private Class<T> output;
 
@@ -61,6 +88,9 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
    /** Whether to validate */
    private boolean useValidation = true;
 
+   /** The pooled unmarshallers */
+   private volatile BlockingQueue<Unmarshaller> unmarshallers;
+
    /**
     * Create a new SchemaResolverDeployer.
     *
@@ -72,11 +102,39 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
       if (output == null)
          throw new IllegalArgumentException("Null output.");
       this.output = output;
+      setUnmarshallerPoolSize(Runtime.getRuntime().availableProcessors());
    }
 
    public void setFeature(String featureName, Boolean flag) throws Exception
    {
       factory.setFeature(featureName, flag);
+      // pooled unmarshallers were created with the old features
+      BlockingQueue<Unmarshaller> pool = unmarshallers;
+      if (pool != null)
+         pool.clear();
+   }
+
+   /**
+    * Get the unmarshaller pool size.
+    *
+    * @return the maximum number of pooled unmarshallers
+    */
+   public int getUnmarshallerPoolSize()
+   {
+      BlockingQueue<Unmarshaller> pool = unmarshallers;
+      return pool != null ? pool.size() + pool.remainingCapacity() : 0;
+   }
+
+   /**
+    * Set the unmarshaller pool size.
+    *
+    * @param poolSize the maximum number of pooled unmarshallers, 0 to create one for every parse
+    */
+   public void setUnmarshallerPoolSize(int poolSize)
+   {
+      if (poolSize < 0)
+         throw new IllegalArgumentException("Illegal pool size: " + poolSize);
+      unmarshallers = poolSize > 0 ? new ArrayBlockingQueue<Unmarshaller>(poolSize) : null;
    }
 
    /**
@@ -128,6 +186,8 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
    public static void addClassBinding(String namespace, Class<?> metadata)
    {
       resolver.addClassBinding(namespace, metadata);
+      classBindings.add(namespace);
+      bindings.remove(namespace);
    }
 
    /**
@@ -137,7 +197,67 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
     */
    public static void removeClassBinding(String namespace)
    {
+      classBindings.remove(namespace);
       resolver.removeClassBinding(namespace);
+      bindings.remove(namespace);
+   }
+
+   /**
+    * Resolve the schema binding of a namespace.
+    *
+    * @param namespace the namespace
+    * @return the schema binding, cached from now on if the namespace was bound through addClassBinding,
+    *         or null if the namespace cannot be resolved
+    */
+   public static SchemaBinding resolveSchemaBinding(String namespace)
+   {
+      if (namespace == null)
+         throw new IllegalArgumentException("Null namespace");
+
+      return cachingResolver.resolve(namespace, null, null);
+   }
+
+   /**
+    * Is the schema binding of a namespace cached.
+    *
+    * @param namespace the namespace
+    * @return true if the binding is cached
+    */
+   public static boolean isSchemaBindingResolved(String namespace)
+   {
+      if (namespace == null)
+         throw new IllegalArgumentException("Null namespace");
+
+      return bindings.containsKey(namespace);
+   }
+
+   /**
+    * Resolve the schema bindings of namespaces up front,
+    * so the first parse of their documents does not have to.
+    *
+    * A namespace that cannot be resolved is logged and skipped.
+    *
+    * @param namespaces the namespaces
+    */
+   public void preloadSchemaBindings(Collection<String> namespaces)
+   {
+      if (namespaces == null)
+         return;
+
+      for (String namespace : namespaces)
+      {
+         try
+         {
+            if (resolveSchemaBinding(namespace) == null)
+               log.warn("No schema binding for namespace: " + namespace);
+            else
+               log.debug("Preloaded schema binding for namespace: " + namespace);
+         }
+         catch (Throwable t)
+         {
+            log.warn("Unable to preload schema binding for namespace: " + namespace + ", " + t);
+         }
+      }
    }
 
    /**
@@ -187,16 +307,15 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
          throw new IllegalArgumentException("Null file");
 
       log.debug("Parsing file: "+file+" for type: " + expectedType);
-      Unmarshaller unmarshaller = factory.newUnmarshaller();
-      unmarshaller.setSchemaValidation(isUseSchemaValidation());
-      unmarshaller.setValidation(isUseValidation());
+      Unmarshaller unmarshaller = getUnmarshaller();
       InputStream is = openStreamAndValidate(file);
       Object parsed;
       try
       {
          InputSource source = new InputSource(is);
          source.setSystemId(file.toURI().toString());
-         parsed = unmarshaller.unmarshal(source, resolver);
+         parsed = unmarshaller.unmarshal(source, cachingResolver);
+         releaseUnmarshaller(unmarshaller);
       }
       finally
       {
@@ -247,9 +366,7 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
 
       log.debug("Parsing file: "+file+" for deploymentType: " + expectedType);
 
-      Unmarshaller unmarshaller = factory.newUnmarshaller();
-      unmarshaller.setSchemaValidation(isUseSchemaValidation());
-      unmarshaller.setValidation(isUseValidation());
+      Unmarshaller unmarshaller = getUnmarshaller();
       InputStream is = openStreamAndValidate(file);
       Object parsed;
       try
@@ -257,6 +374,7 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
          InputSource source = new InputSource(is);
          source.setSystemId(file.toURI().toString());
          parsed = unmarshaller.unmarshal(source, omf, root);
+         releaseUnmarshaller(unmarshaller);
       }
       finally
       {
@@ -275,6 +393,35 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
       return expectedType.cast(parsed);
    }
 
+   /**
+    * Get an unmarshaller from the pool, or a new one if the pool is empty.
+    *
+    * @return the unmarshaller
+    * @throws Exception for any error
+    */
+   protected Unmarshaller getUnmarshaller() throws Exception
+   {
+      BlockingQueue<Unmarshaller> pool = unmarshallers;
+      Unmarshaller unmarshaller = pool != null ? pool.poll() : null;
+      if (unmarshaller == null)
+         unmarshaller = factory.newUnmarshaller();
+      unmarshaller.setSchemaValidation(isUseSchemaValidation());
+      unmarshaller.setValidation(isUseValidation());
+      return unmarshaller;
+   }
+
+   /**
+    * Return an unmarshaller that parsed successfully to the pool.
+    *
+    * @param unmarshaller the unmarshaller
+    */
+   protected void releaseUnmarshaller(Unmarshaller unmarshaller)
+   {
+      BlockingQueue<Unmarshaller> pool = unmarshallers;
+      if (pool != null)
+         pool.offer(unmarshaller);
+   }
+
    /**
     * Open stream and validate if not null.
     *
@@ -293,4 +440,52 @@ public class JBossXBDeployerHelper<T> implements org.jboss.deployers.vfs.spi.dep
 
       return inputStream;
    }
+
+   /**
+    * Caches the schema bindings the singleton resolver resolves
+    * for the namespaces bound through addClassBinding.
+    */
+   private static class CachingSchemaResolver implements SchemaBindingResolver
+   {
+      public String getBaseURI()
+      {
+         return resolver.getBaseURI();
+      }
+
+      public void setBaseURI(String baseURI)
+      {
+         resolver.setBaseURI(baseURI);
+      }
+
+      public SchemaBinding resolve(String nsUri, String baseURI, String schemaLocation)
+      {
+         if (nsUri == null || classBindings.contains(nsUri) == false)
+            return resolver.resolve(nsUri, baseURI, schemaLocation);
+
+         String location = schemaLocation != null ? schemaLocation : "";
+         Map<String, SchemaBinding> locations = bindings.get(nsUri);
+         SchemaBinding binding = locations != null ? locations.get(location) : null;
+         if (binding == null)
+         {
+            binding = resolver.resolve(nsUri, baseURI, schemaLocation);
+            if (binding != null)
+            {
+               if (locations == null)
+               {
+                  locations = new ConcurrentHashMap<String, SchemaBinding>();
+                  Map<String, SchemaBinding> previous = bindings.putIfAbsent(nsUri, locations);
+                  if (previous != null)
+                     locations = previous;
+               }
+               locations.put(location, binding);
+            }
+         }
+         return binding;
+      }
+
+      public LSInput resolveAsLSInput(String nsUri, String baseUri, String schemaLocation)
+      {
+         return resolver.resolveAsLSInput(nsUri, baseUri, schemaLocation);
+      }
+   }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.spi.deployer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+
+/**
+ * Java serialization of the metadata,
+ * the metadata has to be serializable.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class JavaMetaDataSerializer implements MetaDataSerializer
+{
+   public void writeMetaData(OutputStream out, Object metaData) throws Exception
+   {
+      ObjectOutputStream oos = new ObjectOutputStream(out);
+      oos.writeObject(metaData);
+      oos.flush();
+   }
+
+   public Object readMetaData(InputStream in, ClassLoader classLoader) throws Exception
+   {
+      return new MetaDataInputStream(in, classLoader).readObject();
+   }
+
+   /**
+    * Resolves classes with the given classloader first.
+    */
+   private static class MetaDataInputStream extends ObjectInputStream
+   {
+      private ClassLoader classLoader;
+
+      public MetaDataInputStream(InputStream in, ClassLoader classLoader) throws IOException
+      {
+         super(in);
+         this.classLoader = classLoader;
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+         if (classLoader != null)
+         {
+            try
+            {
+               return Class.forName(desc.getName(), false, classLoader);
+            }
+            catch (ClassNotFoundException ignored)
+            {
+            }
+         }
+         return super.resolveClass(desc);
+      }
+   }
+}
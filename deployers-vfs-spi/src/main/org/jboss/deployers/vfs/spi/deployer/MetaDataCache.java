@@ -0,0 +1,56 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.spi.deployer;
+
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * MetaDataCache.<p>
+ *
+ * Remembers the metadata parsed from a file,
+ * so an unchanged file doesn't have to be parsed again.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface MetaDataCache
+{
+   /**
+    * Get the cached metadata
+    *
+    * @param file the metadata file
+    * @param type the metadata type
+    * @param version the version of the parsing deployer and the metadata type
+    * @param classLoader the classloader to load the metadata classes with, can be null
+    * @return the metadata or null when not cached or no longer valid
+    */
+   Object getMetaData(VirtualFile file, Class<?> type, String version, ClassLoader classLoader);
+
+   /**
+    * Cache the metadata
+    *
+    * @param file the metadata file
+    * @param type the metadata type
+    * @param version the version of the parsing deployer and the metadata type
+    * @param metaData the parsed metadata
+    */
+   void putMetaData(VirtualFile file, Class<?> type, String version, Object metaData);
+}
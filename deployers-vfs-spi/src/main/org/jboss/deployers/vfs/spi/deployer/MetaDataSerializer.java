@@ -0,0 +1,52 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.spi.deployer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes and reads the metadata kept by a metadata cache.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface MetaDataSerializer
+{
+   /**
+    * Write the metadata.
+    *
+    * @param out the output stream
+    * @param metaData the metadata
+    * @throws Exception for any error
+    */
+   void writeMetaData(OutputStream out, Object metaData) throws Exception;
+
+   /**
+    * Read the metadata.
+    *
+    * @param in the input stream
+    * @param classLoader the classloader to load the metadata classes with, can be null
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   Object readMetaData(InputStream in, ClassLoader classLoader) throws Exception;
+}
@@ -22,6 +22,7 @@
 package org.jboss.deployers.vfs.spi.deployer;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * MultipleJBossXBDeployer.
@@ -37,6 +38,9 @@ public abstract class MultipleJBossXBDeployer<T> extends MultipleVFSParsingDeplo
    /** The features */
    private Map<String, Boolean> features;
 
+   /** The namespaces whose schema bindings are resolved at start */
+   private Set<String> preloadNamespaces;
+
    public MultipleJBossXBDeployer(Class<T> output, Map<String, Class<?>> mappings)
    {
       this(output, mappings, null, null);
@@ -65,6 +69,7 @@ public abstract class MultipleJBossXBDeployer<T> extends MultipleVFSParsingDeplo
          for(Map.Entry<String,Boolean> entry : features.entrySet())
             helper.setFeature(entry.getKey(), entry.getValue());
       }
+      helper.preloadSchemaBindings(getPreloadNamespaces());
    }
 
    /**
@@ -107,6 +112,47 @@ public abstract class MultipleJBossXBDeployer<T> extends MultipleVFSParsingDeplo
       helper.setUseValidation(useValidation);
    }
 
+   /**
+    * Get the unmarshaller pool size.
+    *
+    * @return the maximum number of pooled unmarshallers
+    */
+   public int getUnmarshallerPoolSize()
+   {
+      return helper.getUnmarshallerPoolSize();
+   }
+
+   /**
+    * Set the unmarshaller pool size.
+    *
+    * @param unmarshallerPoolSize the maximum number of pooled unmarshallers, 0 to disable pooling
+    */
+   public void setUnmarshallerPoolSize(int unmarshallerPoolSize)
+   {
+      helper.setUnmarshallerPoolSize(unmarshallerPoolSize);
+   }
+
+   /**
+    * Get the namespaces whose schema bindings are resolved at start.
+    *
+    * @return the namespaces
+    */
+   public Set<String> getPreloadNamespaces()
+   {
+      return preloadNamespaces;
+   }
+
+   /**
+    * Set the namespaces whose schema bindings are resolved at start,
+    * instead of by the first parse of a document using them.
+    *
+    * @param preloadNamespaces the namespaces
+    */
+   public void setPreloadNamespaces(Set<String> preloadNamespaces)
+   {
+      this.preloadNamespaces = preloadNamespaces;
+   }
+
    /**
     * Get unmarshaller features.
     *
@@ -26,6 +26,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.deployers.structure.spi.DeploymentUnit;
@@ -121,14 +123,62 @@ public abstract class MultipleVFSParsingDeployer<T> extends AbstractVFSParsingDe
 
    @SuppressWarnings("unchecked")
    protected T parse(VFSDeploymentUnit unit, VirtualFile file, T root) throws Exception
+   {
+      Class<?> expectedType = matchExpectedType(unit, file, root);
+      return (T)parse(expectedType, file, root);
+   }
+
+   /**
+    * Match file to mapping metadata class that is a valid output.
+    *
+    * @param unit the deployment unit
+    * @param file the file
+    * @param root possibly null pre-existing root
+    * @return matching metadata class
+    * @throws IllegalArgumentException if the class is not assignable to the output or the root is not an instance of it
+    */
+   protected Class<?> matchExpectedType(VFSDeploymentUnit unit, VirtualFile file, T root)
    {
       Class<?> expectedType = matchFileToClass(unit, file);
       if (getOutput().isAssignableFrom(expectedType) == false)
          throw new IllegalArgumentException("Matched " + expectedType + " which is not assignable to output " + getOutput());
       if (root != null && expectedType.isInstance(root) == false)
          throw new IllegalArgumentException("Illegal root type: " + root + ", expecting " + expectedType);
+      return expectedType;
+   }
 
-      return (T)parse(expectedType, file, root);
+   /**
+    * The type of a single file is checked against the output,
+    * the same way parse does, before the cached metadata is used.
+    */
+   protected Class<?> getMetaDataType(VFSDeploymentUnit unit, VirtualFile file)
+   {
+      return matchExpectedType(unit, file, null);
+   }
+
+   /**
+    * Parse file to produce expected class metadata,
+    * or take the metadata from the metadata cache.
+    *
+    * @param expectedType the expected class
+    * @param file the file to parse
+    * @param root the previous root
+    * @return new metadata instance
+    * @throws Exception for any error
+    */
+   protected Object parseAndCache(Class<?> expectedType, VirtualFile file, Object root) throws Exception
+   {
+      if (getMetaDataCache() == null || root != null)
+         return parse(expectedType, file, root);
+
+      Object result = getCachedMetaData(file, expectedType);
+      if (result == null)
+      {
+         result = parse(expectedType, file, root);
+         if (result != null)
+            putCachedMetaData(file, expectedType, result);
+      }
+      return result;
    }
 
    /**
@@ -146,11 +196,29 @@ public abstract class MultipleVFSParsingDeployer<T> extends AbstractVFSParsingDe
     */
    protected abstract <U> U parse(Class<U> expectedType, VirtualFile file, Object root) throws Exception;
 
-   protected T mergeFiles(VFSDeploymentUnit unit, T root, List<VirtualFile> files, Set<String> missingFiles) throws Exception
+   protected T mergeFiles(final VFSDeploymentUnit unit, T root, List<VirtualFile> files, Set<String> missingFiles) throws Exception
    {
+      List<Future<Object>> parsed = null;
+      if (isParseInParallel(files, root))
+      {
+         List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(files.size());
+         for (final VirtualFile file : files)
+         {
+            tasks.add(new Callable<Object>()
+            {
+               public Object call() throws Exception
+               {
+                  return parseAndCache(matchFileToClass(unit, file), file, null);
+               }
+            });
+         }
+         parsed = invokeAll(tasks);
+      }
+
       Map<Class<?> , List<Object>> metadata = new HashMap<Class<?>, List<Object>>();
-      for (VirtualFile file : files)
+      for (int i = 0; i < files.size(); i++)
       {
+         VirtualFile file = files.get(i);
          Class<?> clazz = matchFileToClass(unit, file);
          List<Object> instances = metadata.get(clazz);
          if (instances == null)
@@ -158,7 +226,7 @@ public abstract class MultipleVFSParsingDeployer<T> extends AbstractVFSParsingDe
             instances = new ArrayList<Object>();
             metadata.put(clazz, instances);
          }
-         Object instance = parse(clazz, file, root);
+         Object instance = parsed != null ? getResult(parsed.get(i)) : parseAndCache(clazz, file, root);
          instances.add(instance);
       }
       return mergeMetaData(unit, root, metadata, missingFiles);
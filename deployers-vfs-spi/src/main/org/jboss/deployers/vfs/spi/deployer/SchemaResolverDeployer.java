@@ -21,6 +21,8 @@
 */
 package org.jboss.deployers.vfs.spi.deployer;
 
+import java.util.Collections;
+
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.virtual.VirtualFile;
 import org.jboss.xb.annotations.JBossXmlConstants;
@@ -42,6 +44,9 @@ public class SchemaResolverDeployer<T> extends JBossXBDeployer<T>
    /** The namespace */
    private String namespace;
 
+   /** Whether we resolve the schema binding at start */
+   private boolean preloadSchemaBinding;
+
    /**
     * Create a new SchemaResolverDeployer.
     * 
@@ -73,6 +78,29 @@ public class SchemaResolverDeployer<T> extends JBossXBDeployer<T>
       this.registerWithJBossXB = registerWithJBossXB;
    }
 
+   /**
+    * Get the preloadSchemaBinding.
+    *
+    * @return the preloadSchemaBinding
+    */
+   public boolean isPreloadSchemaBinding()
+   {
+      return preloadSchemaBinding;
+   }
+
+   /**
+    * Set the preloadSchemaBinding.
+    *
+    * When set, the schema binding of the output's namespace
+    * is resolved at start instead of by the first parse.
+    *
+    * @param preloadSchemaBinding the preloadSchemaBinding
+    */
+   public void setPreloadSchemaBinding(boolean preloadSchemaBinding)
+   {
+      this.preloadSchemaBinding = preloadSchemaBinding;
+   }
+
    /**
     * Get the namespace, if it was set.
     *
@@ -101,6 +129,22 @@ public class SchemaResolverDeployer<T> extends JBossXBDeployer<T>
       }
    }
 
+   /**
+    * Preload the schema binding of the output's namespace.
+    *
+    * @throws Exception for any error
+    */
+   public void start() throws Exception
+   {
+      super.start();
+      if (isPreloadSchemaBinding())
+      {
+         String ns = namespace != null ? namespace : JBossXBDeployerHelper.findNamespace(getOutput());
+         if (ns != null && JBossXmlConstants.DEFAULT.equals(ns) == false)
+            getHelper().preloadSchemaBindings(Collections.singleton(ns));
+      }
+   }
+
    /**
     * Remove registered schema
     */
@@ -21,14 +21,20 @@
 */
 package org.jboss.deployers.vfs.spi.deployer;
 
+import java.io.IOException;
 import java.io.InputStream;
 
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamSource;
 
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
@@ -36,6 +42,12 @@ import org.jboss.util.xml.DOMWriter;
 import org.jboss.util.xml.JBossErrorHandler;
 import org.jboss.virtual.VirtualFile;
 import org.w3c.dom.Document;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 /**
  * SchemaResolverDeployer.
@@ -52,6 +64,15 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
    /** The templates */
    private Templates templates;
 
+   /** Whether to stream the transformation */
+   private boolean streamTransform;
+
+   /** The transformer factory */
+   private SAXTransformerFactory transformerFactory;
+
+   /** The sax parser factory */
+   private SAXParserFactory saxParserFactory;
+
    /**
     * Create a new XSLDeployer.
     * 
@@ -83,6 +104,32 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
       this.xslPath = xslPath;
    }
 
+   /**
+    * Get the streamTransform.
+    *
+    * @return the streamTransform.
+    */
+   public boolean isStreamTransform()
+   {
+      return streamTransform;
+   }
+
+   /**
+    * Set the streamTransform.
+    *
+    * When true the metadata file is transformed as SAX events,
+    * without building the source or the transformed document,
+    * see parse(VFSDeploymentUnit, VirtualFile, SAXSource),
+    * create fails if the deployer does not override it.
+    * Needs to be set before create.
+    *
+    * @param streamTransform the streamTransform.
+    */
+   public void setStreamTransform(boolean streamTransform)
+   {
+      this.streamTransform = streamTransform;
+   }
+
    /**
     * Get the templates.
     * 
@@ -106,7 +153,19 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
       super.create();
 
       TransformerFactory tf = TransformerFactory.newInstance();
-      
+      if (streamTransform)
+      {
+         if (isOverridden(XSLDeployer.class, "parse", VFSDeploymentUnit.class, VirtualFile.class, SAXSource.class) == false)
+            throw new IllegalStateException(getClass().getName() + " uses streamTransform but does not override parse(VFSDeploymentUnit, VirtualFile, SAXSource)");
+         if (tf.getFeature(SAXTransformerFactory.FEATURE) == false)
+            throw new IllegalStateException("Transformer factory does not support SAX: " + tf);
+         transformerFactory = (SAXTransformerFactory) tf;
+
+         saxParserFactory = SAXParserFactory.newInstance();
+         saxParserFactory.setNamespaceAware(isUseNamespaceAwareParser());
+         saxParserFactory.setValidating(isValidateDTDs());
+      }
+
       InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(xslPath);
       try
       {
@@ -134,6 +193,8 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
    {
       super.destroy();
       templates = null;
+      transformerFactory = null;
+      saxParserFactory = null;
    }
    
    @Override
@@ -142,6 +203,9 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
       if (file == null)
          throw new IllegalArgumentException("Null file");
 
+      if (streamTransform)
+         return doTransform(unit, file);
+
       Document document = doParse(unit, file);
 
       Transformer trans = getTemplates().newTransformer();
@@ -154,12 +218,74 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
       trans.transform(s, r);
       
       document = (Document) r.getNode();
-      String docStr = DOMWriter.printNode(document, true);
-      log.debug("Transformed " + file.getPathName() + " into " + docStr);
-      
+      if (log.isDebugEnabled())
+      {
+         String docStr = DOMWriter.printNode(document, true);
+         log.debug("Transformed " + file.getPathName() + " into " + docStr);
+      }
+
       return parse(unit, file, document);
    }
 
+   /**
+    * Do the streaming transformation
+    *
+    * @param unit the deployment unit
+    * @param file the metadata file
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   protected T doTransform(VFSDeploymentUnit unit, VirtualFile file) throws Exception
+   {
+      if (file == null)
+         throw new IllegalArgumentException("Null file");
+
+      log.debug("Transforming: " + file.getName());
+
+      if (saxParserFactory == null)
+         throw new IllegalStateException("SAX parser factory has not been constructed");
+      XMLReader reader = saxParserFactory.newSAXParser().getXMLReader();
+      reader.setEntityResolver(getEntityResolver());
+
+      InputStream is = openStreamAndValidate(file);
+      try
+      {
+         InputSource input = new InputSource(is);
+         input.setSystemId(file.toURI().toString());
+         SAXSource source = new SAXSource(new TransformingFilter(reader, file), input);
+         return parse(unit, file, source);
+      }
+      finally
+      {
+         try
+         {
+            is.close();
+         }
+         catch (Exception ignored)
+         {
+         }
+      }
+   }
+
+   /**
+    * Parse a deployment from the transformed events.
+    *
+    * The source's reader produces the transformed events,
+    * e.g. it can be passed to an unmarshaller that accepts a SAXSource
+    * or be given a content handler and parse the source's input.
+    * Subclasses that set streamTransform need to override it.
+    *
+    * @param unit the deployment unit
+    * @param file the metadata file
+    * @param source the transformed source
+    * @return the metadata
+    * @throws Exception for any error
+    */
+   protected T parse(VFSDeploymentUnit unit, VirtualFile file, SAXSource source) throws Exception
+   {
+      throw new UnsupportedOperationException(getClass().getName() + " does not support streaming transformation");
+   }
+
    /**
     * Set parameters for the transformation
     * 
@@ -170,4 +296,60 @@ public abstract class XSLDeployer<T> extends JAXPDeployer<T>
    {
       // nothing by default
    }
+
+   /**
+    * Runs the parsed events through a transformer handler
+    * into the content handler set on this filter.
+    */
+   private class TransformingFilter extends XMLFilterImpl
+   {
+      /** The metadata file */
+      private VirtualFile file;
+
+      public TransformingFilter(XMLReader parent, VirtualFile file)
+      {
+         super(parent);
+         this.file = file;
+      }
+
+      @Override
+      public void parse(InputSource input) throws SAXException, IOException
+      {
+         ContentHandler handler = getContentHandler();
+         if (handler == null)
+            throw new IllegalStateException("Null content handler");
+
+         TransformerHandler transformerHandler;
+         try
+         {
+            transformerHandler = transformerFactory.newTransformerHandler(getTemplates());
+            Transformer trans = transformerHandler.getTransformer();
+            trans.setErrorListener(new JBossErrorHandler(file.getPathName(), null));
+            setParameters(trans);
+         }
+         catch (Exception e)
+         {
+            throw new SAXException("Unable to create transformer for " + file.getPathName(), e);
+         }
+
+         SAXResult result = new SAXResult(handler);
+         if (handler instanceof LexicalHandler)
+            result.setLexicalHandler((LexicalHandler) handler);
+         transformerHandler.setResult(result);
+         transformerHandler.setSystemId(input.getSystemId());
+
+         XMLReader parent = getParent();
+         parent.setContentHandler(transformerHandler);
+         parent.setDTDHandler(transformerHandler);
+         try
+         {
+            parent.setProperty("http://xml.org/sax/properties/lexical-handler", transformerHandler);
+         }
+         catch (SAXException ignored)
+         {
+            // comments are not passed through
+         }
+         parent.parse(input);
+      }
+   }
 }
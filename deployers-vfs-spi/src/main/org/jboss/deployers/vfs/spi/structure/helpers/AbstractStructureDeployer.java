@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
@@ -172,6 +173,55 @@ public abstract class AbstractStructureDeployer implements StructureDeployer
       candidateAnnotations.add(annotationClass);
    }
 
+   /**
+    * Get the signature of the configuration that affects the determined structure.<p>
+    * 
+    * A cached structure is only reused while the signature is unchanged.
+    * 
+    * @return the signature
+    */
+   public String getConfigurationSignature()
+   {
+      StringBuilder builder = new StringBuilder();
+      toConfigurationString(builder);
+      return builder.toString();
+   }
+
+   /**
+    * Append the configuration that affects the determined structure.<p>
+    * 
+    * Subclasses with further configuration should append it after calling super.
+    * Configured objects without a stable string form, e.g. filters,
+    * are identified by their class.
+    * 
+    * @param builder the builder
+    */
+   protected void toConfigurationString(StringBuilder builder)
+   {
+      builder.append("contextInfoOrder=").append(contextInfoOrder);
+      builder.append(" supportsCandidateAnnotations=").append(supportsCandidateAnnotations);
+      builder.append(" candidateAnnotations=");
+      if (candidateAnnotations != null)
+      {
+         Set<String> names = new TreeSet<String>();
+         for (Class<? extends Annotation> annotation : candidateAnnotations)
+            names.add(annotation.getName());
+         builder.append(names);
+      }
+      builder.append(" candidateStructureVisitorFactory=").append(getClassName(candidateStructureVisitorFactory));
+   }
+
+   /**
+    * Get the class name of a configured object
+    * 
+    * @param object the object
+    * @return the class name or null for a null object
+    */
+   protected static String getClassName(Object object)
+   {
+      return object != null ? object.getClass().getName() : null;
+   }
+
    // This should be an abstract method JBDEPLOY-66
    public boolean determineStructure(StructureContext context) throws DeploymentException
    {
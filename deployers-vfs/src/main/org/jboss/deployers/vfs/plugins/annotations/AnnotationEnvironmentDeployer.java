@@ -23,12 +23,24 @@ package org.jboss.deployers.vfs.plugins.annotations;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import javassist.ClassPath;
 import javassist.ClassPool;
 import javassist.LoaderClassPath;
 import org.jboss.classloading.spi.dependency.Module;
+import org.jboss.classloading.spi.visitor.ResourceFilter;
+import org.jboss.deployers.plugins.annotations.AnnotationIndex;
+import org.jboss.deployers.plugins.annotations.AnnotationRootCache;
+import org.jboss.deployers.plugins.annotations.AnnotationScanRegistry;
+import org.jboss.deployers.plugins.annotations.ClassFileAnnotationResourceVisitor;
+import org.jboss.deployers.plugins.annotations.CompactAnnotationEnvironment;
+import org.jboss.deployers.plugins.annotations.DefaultAnnotationEnvironment;
 import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
 import org.jboss.deployers.spi.DeploymentException;
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
@@ -48,6 +60,14 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
    private boolean forceAnnotations;
    private boolean keepAnnotations;
    private boolean checkInterfaces;
+   private boolean useJavassist;
+   private boolean compactEnvironment;
+   private int parallelism;
+   private Executor executor;
+   private AnnotationIndex annotationIndex;
+   private AnnotationRootCache rootCache;
+   private AnnotationScanRegistry scanRegistry;
+   private Set<String> annotationNames;
 
    public AnnotationEnvironmentDeployer()
    {
@@ -55,6 +75,8 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
       setStage(DeploymentStages.POST_CLASSLOADER);
       setOutput(AnnotationEnvironment.class);
       checkInterfaces = true;
+      useJavassist = true;
+      parallelism = 1;
    }
 
    /**
@@ -87,6 +109,149 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
       this.checkInterfaces = checkInterfaces;
    }
 
+   /**
+    * Should we use javassist to read the classes.
+    *
+    * Otherwise the annotations are read directly from the class files,
+    * see ClassFileAnnotationResourceVisitor.
+    *
+    * @param useJavassist the use javassist flag
+    */
+   public void setUseJavassist(boolean useJavassist)
+   {
+      this.useJavassist = useJavassist;
+   }
+
+   /**
+    * Should we keep the annotation info in a compact environment.
+    *
+    * It needs less heap for large modules,
+    * see CompactAnnotationEnvironment.
+    *
+    * @param compactEnvironment the compact environment flag
+    */
+   public void setCompactEnvironment(boolean compactEnvironment)
+   {
+      this.compactEnvironment = compactEnvironment;
+   }
+
+   /**
+    * Set the number of threads scanning the roots of a module.
+    *
+    * With more than one thread each classpath root is
+    * scanned by its own worker, the results are merged
+    * into the unit's annotation environment.
+    *
+    * @param parallelism the parallelism
+    */
+   public void setParallelism(int parallelism)
+   {
+      if (parallelism < 1)
+         throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+      this.parallelism = parallelism;
+   }
+
+   /**
+    * Set the executor of the parallel scans.
+    *
+    * At most parallelism tasks of a module are handed to it at a time,
+    * a task it rejects runs in the deploying thread.
+    *
+    * @param executor the executor, null means the shared default executor bounded by the number of processors
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.executor = executor;
+   }
+
+   /**
+    * Set the annotation index.
+    *
+    * When set, roots that did not change since they were
+    * last scanned are read from the index instead.
+    *
+    * @param annotationIndex the annotation index
+    */
+   public void setAnnotationIndex(AnnotationIndex annotationIndex)
+   {
+      this.annotationIndex = annotationIndex;
+   }
+
+   /**
+    * Set the root cache.
+    *
+    * When set, roots shared with other deployments, e.g. common libraries,
+    * are scanned once and reused while any of those deployments is deployed.
+    *
+    * @param rootCache the root cache
+    */
+   public void setRootCache(AnnotationRootCache rootCache)
+   {
+      this.rootCache = rootCache;
+   }
+
+   /**
+    * Set the annotations of interest.
+    *
+    * Classes that do not mention any of them in their constant pool
+    * are rejected without being parsed. With a scan registry
+    * the names are registered as this deployer's interest
+    * and the combined names of all interests are used.
+    *
+    * @param annotationNames the annotation names, null for all annotations
+    */
+   public void setAnnotationNames(Set<String> annotationNames)
+   {
+      this.annotationNames = annotationNames;
+   }
+
+   /**
+    * Set the scan registry.
+    *
+    * When set, a module is scanned once for all the deployers
+    * sharing the registry and the same scan settings,
+    * with the resource filter of the registered interests.
+    * The interest of this deployer is registered on create.
+    *
+    * @param scanRegistry the scan registry
+    */
+   public void setScanRegistry(AnnotationScanRegistry scanRegistry)
+   {
+      this.scanRegistry = scanRegistry;
+   }
+
+   /**
+    * Get the settings a shared scan was done with.
+    *
+    * Deployers only share a scan if their settings are equal.
+    *
+    * @return the scan settings
+    */
+   protected Object getScanSettings()
+   {
+      return Arrays.asList(forceAnnotations, keepAnnotations, checkInterfaces, useJavassist, compactEnvironment);
+   }
+
+   /**
+    * Create lifecycle.
+    *
+    * Registers the interest of this deployer with the scan registry.
+    */
+   public void create()
+   {
+      if (scanRegistry != null)
+         scanRegistry.addInterest(this, annotationNames, null, null);
+   }
+
+   /**
+    * Destroy lifecycle.
+    */
+   public void destroy()
+   {
+      if (scanRegistry != null)
+         scanRegistry.removeInterest(this);
+   }
+
    /**
     * Create GenericAnnotationResourceVisitor.
     *
@@ -94,19 +259,51 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
     * Or determin if we need to force/keep annotations.
     *
     * @param unit the deployment unit
-    * @param pool the class pool
+    * @param pool the class pool, null if javassist is not used
     * @param classLoader the classloader
     * @return new generic annotation visitor
     */
    protected GenericAnnotationResourceVisitor createGenericAnnotationResourceVisitor(DeploymentUnit unit, ClassPool pool, ClassLoader classLoader)
    {
-      GenericAnnotationResourceVisitor visitor = new GenericAnnotationResourceVisitor(pool, classLoader);
+      DefaultAnnotationEnvironment env = createAnnotationEnvironment(classLoader);
+      GenericAnnotationResourceVisitor visitor;
+      if (pool != null)
+         visitor = new GenericAnnotationResourceVisitor(pool, env);
+      else
+         visitor = new ClassFileAnnotationResourceVisitor(env);
       visitor.setForceAnnotations(forceAnnotations);
       visitor.setKeepAnnotations(keepAnnotations);
       visitor.setCheckInterfaces(checkInterfaces);
+      visitor.setAnnotationIndex(annotationIndex);
+      visitor.setRootCache(rootCache, unit);
+      if (scanRegistry != null)
+      {
+         ResourceFilter filter = scanRegistry.getResourceFilter();
+         if (filter != null)
+            visitor.setResourceFilter(filter);
+         visitor.setAnnotationNames(scanRegistry.getAnnotationNames());
+      }
+      else
+      {
+         visitor.setAnnotationNames(annotationNames);
+      }
       return visitor;
    }
 
+   /**
+    * Create the annotation environment the visitor fills.
+    *
+    * @param classLoader the classloader
+    * @return new annotation environment
+    */
+   protected DefaultAnnotationEnvironment createAnnotationEnvironment(ClassLoader classLoader)
+   {
+      if (compactEnvironment)
+         return new CompactAnnotationEnvironment(classLoader);
+      else
+         return new DefaultAnnotationEnvironment(classLoader);
+   }
+
    /**
     * Create class pool.
     *
@@ -178,26 +375,73 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
       return new URL[0];
    }
 
-   public void deploy(VFSDeploymentUnit unit, Module module) throws DeploymentException
+   /**
+    * Scan the resources collected by the visitor in parallel.
+    *
+    * @param unit the deployment unit
+    * @param classLoader the classloader
+    * @param visitor the visitor that collected the resources
+    * @throws DeploymentException for any error
+    */
+   protected void scanInParallel(final DeploymentUnit unit, final ClassLoader classLoader, GenericAnnotationResourceVisitor visitor) throws DeploymentException
    {
-      if (module == null)
+      Callable<GenericAnnotationResourceVisitor> workers = new Callable<GenericAnnotationResourceVisitor>()
       {
-         VFSDeploymentUnit parent = unit.getParent();
-         while(parent != null && module == null)
+         public GenericAnnotationResourceVisitor call() throws Exception
          {
-            module = parent.getAttachment(Module.class);
-            parent = parent.getParent();
+            ClassPool pool = useJavassist ? createClassPool(classLoader) : null;
+            return createGenericAnnotationResourceVisitor(unit, pool, classLoader);
          }
+      };
+
+      try
+      {
+         visitor.scanCollected(executor, parallelism, workers);
+      }
+      catch (Exception e)
+      {
+         throw DeploymentException.rethrowAsDeploymentException("Exception scanning " + unit.getName(), e);
+      }
+   }
+
+   /**
+    * Get the module of the closest parent that has one.
+    *
+    * @param unit the deployment unit
+    * @return the module or null if no parent has one
+    */
+   private static Module getParentModule(VFSDeploymentUnit unit)
+   {
+      Module module = null;
+      VFSDeploymentUnit parent = unit.getParent();
+      while(parent != null && module == null)
+      {
+         module = parent.getAttachment(Module.class);
+         parent = parent.getParent();
+      }
+      return module;
+   }
+
+   public void deploy(VFSDeploymentUnit unit, Module module) throws DeploymentException
+   {
+      if (module == null)
+      {
+         module = getParentModule(unit);
          if (module == null)
             throw new IllegalArgumentException("No module in deployment unit's hierarchy: " + unit.getName());
       }
 
+      if (scanRegistry != null && scanRegistry.attachResult(unit, module, getScanSettings()))
+         return;
+
       if (log.isTraceEnabled())
          log.trace("Creating AnnotationEnvironment for " + unit.getName() + ", module: " + module + ", force annotations: " + forceAnnotations);
 
       ClassLoader classLoader = unit.getClassLoader();
-      ClassPool pool = createClassPool(classLoader);
+      ClassPool pool = useJavassist ? createClassPool(classLoader) : null;
       GenericAnnotationResourceVisitor visitor = createGenericAnnotationResourceVisitor(unit, pool, classLoader);
+      if (parallelism > 1)
+         visitor.setCollectResources(true);
 
       // something in javassist uses TCL
       ClassLoader tcl = Thread.currentThread().getContextClassLoader();
@@ -205,12 +449,33 @@ public class AnnotationEnvironmentDeployer extends AbstractOptionalVFSRealDeploy
       try
       {
          visitModule(unit, module, visitor);
+         if (parallelism > 1)
+            scanInParallel(unit, classLoader, visitor);
+         visitor.storeIndex();
       }
       finally
       {
          Thread.currentThread().setContextClassLoader(tcl);
       }
 
-      unit.addAttachment(AnnotationEnvironment.class, visitor.getEnv());
+      if (log.isTraceEnabled())
+      {
+         log.trace("Scanned " + visitor.getScanned() + " classes for " + unit.getName() + ", reused " + visitor.getReused());
+         for (Map.Entry<String, GenericAnnotationResourceVisitor.RootStatistics> entry : visitor.getRootStatistics().entrySet())
+            log.trace("Root " + entry.getKey() + ": " + entry.getValue());
+      }
+
+      if (scanRegistry != null)
+         scanRegistry.addResult(unit, module, getScanSettings(), visitor);
+      else
+         unit.addAttachment(AnnotationEnvironment.class, visitor.getEnv());
+   }
+
+   public void undeploy(VFSDeploymentUnit unit, Module module)
+   {
+      if (scanRegistry != null)
+         scanRegistry.removeResult(unit, module != null ? module : getParentModule(unit), getScanSettings());
+      if (rootCache != null)
+         rootCache.release(unit);
    }
 }
@@ -21,9 +21,14 @@
 */
 package org.jboss.deployers.vfs.plugins.structure;
 
+import java.lang.annotation.Annotation;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.jboss.classloader.spi.filter.ClassFilter;
 import org.jboss.classloading.plugins.vfs.VFSResourceVisitor;
 import org.jboss.classloading.spi.visitor.ResourceFilter;
+import org.jboss.deployers.plugins.annotations.AnnotationScanRegistry;
 import org.jboss.deployers.plugins.annotations.GenericAnnotationResourceVisitor;
 import org.jboss.deployers.spi.annotations.AnnotationEnvironment;
 import org.jboss.deployers.structure.spi.DeploymentResourceLoader;
@@ -42,17 +47,115 @@ public abstract class AbstractVFSStructureDeployer extends AbstractStructureDepl
    private ClassFilter excluded;
    private ResourceFilter filter;
    private ResourceFilter recurseFilter;
+   private AnnotationScanRegistry scanRegistry;
+
+   /**
+    * Create lifecycle.
+    *
+    * Registers the interest of this deployer with the scan registry.
+    */
+   public void create()
+   {
+      if (scanRegistry != null)
+         scanRegistry.addInterest(this, getCandidateAnnotationNames(), filter, recurseFilter);
+   }
+
+   /**
+    * Destroy lifecycle.
+    */
+   public void destroy()
+   {
+      if (scanRegistry != null)
+         scanRegistry.removeInterest(this);
+   }
 
    protected AnnotationEnvironment createAnnotationEnvironment(VirtualFile root)
    {
+      ResourceFilter filter = this.filter;
+      ResourceFilter recurseFilter = this.recurseFilter;
+      long fingerprint = 0;
+      if (scanRegistry != null)
+      {
+         fingerprint = getFingerprint(root);
+         AnnotationEnvironment env = scanRegistry.getStructureEnvironment(root, fingerprint);
+         if (env != null)
+            return env;
+
+         filter = scanRegistry.getResourceFilter();
+         recurseFilter = scanRegistry.getRecurseFilter();
+      }
+
       DeploymentResourceLoader loader = new VFSDeploymentResourceLoaderImpl(root);
       ClassLoader classLoader = new DeploymentResourceClassLoader(loader);
       GenericAnnotationResourceVisitor visitor = new GenericAnnotationResourceVisitor(classLoader);
-      ResourceFilter filter = this.filter;
+      visitor.setAnnotationNames(scanRegistry != null ? scanRegistry.getAnnotationNames() : getCandidateAnnotationNames());
       if (filter == null)
          filter = visitor.getFilter();
       VFSResourceVisitor.visit(new VirtualFile[]{root}, null, included, excluded, classLoader, visitor, filter, recurseFilter);
-      return visitor.getEnv();
+      AnnotationEnvironment env = visitor.getEnv();
+      if (scanRegistry != null)
+         scanRegistry.putStructureEnvironment(root, fingerprint, env, classLoader);
+      return env;
+   }
+
+   /**
+    * Get the fingerprint of a root, a shared scan is only used while it is unchanged.
+    *
+    * @param root the root
+    * @return the fingerprint
+    */
+   protected long getFingerprint(VirtualFile root)
+   {
+      try
+      {
+         return FileStructureCache.fingerprint(root);
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Unable to fingerprint " + root.getName(), e);
+      }
+   }
+
+   /**
+    * Get the names of the candidate annotations.
+    *
+    * @return the names or null if there are none
+    */
+   protected Set<String> getCandidateAnnotationNames()
+   {
+      Set<Class<? extends Annotation>> annotations = getCandidateAnnotations();
+      if (annotations == null || annotations.isEmpty())
+         return null;
+
+      Set<String> names = new HashSet<String>();
+      for (Class<? extends Annotation> annotation : annotations)
+         names.add(annotation.getName());
+      return names;
+   }
+
+   @Override
+   protected void toConfigurationString(StringBuilder builder)
+   {
+      super.toConfigurationString(builder);
+      builder.append(" included=").append(getClassName(included));
+      builder.append(" excluded=").append(getClassName(excluded));
+      builder.append(" filter=").append(getClassName(filter));
+      builder.append(" recurseFilter=").append(getClassName(recurseFilter));
+   }
+
+   /**
+    * Set the scan registry.
+    *
+    * Structure deployers sharing the registry scan each root once.
+    * They should use the same included and excluded filters.
+    * The interest of this deployer is registered on create,
+    * the candidate annotations and filters need to be set before.
+    *
+    * @param scanRegistry the scan registry
+    */
+   public void setScanRegistry(AnnotationScanRegistry scanRegistry)
+   {
+      this.scanRegistry = scanRegistry;
    }
 
    /**
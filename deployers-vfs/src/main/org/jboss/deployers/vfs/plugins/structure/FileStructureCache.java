@@ -0,0 +1,368 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.plugins.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jboss.deployers.spi.structure.ContextInfo;
+import org.jboss.deployers.spi.structure.ModificationType;
+import org.jboss.deployers.spi.structure.StructureMetaData;
+import org.jboss.logging.Logger;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * FileStructureCache.<p>
+ * 
+ * Keeps the structure of each deployment root in a file in the cache directory.
+ * An entry is keyed by the root url and only used while the structure deployers
+ * and the fingerprint of the root are the same as when it was written.
+ * The fingerprint is the size and last modified of the root,
+ * for exploded directories also of everything below them.
+ * Archives are not opened, they change their own size and last modified.<p>
+ * 
+ * Anything that goes wrong reading or writing an entry means
+ * the structure is determined as usual.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class FileStructureCache implements StructureCache
+{
+   /** The log */
+   private static final Logger log = Logger.getLogger(FileStructureCache.class);
+
+   /** The version of the entry format */
+   private static final int VERSION = 1;
+
+   /** The entry suffix */
+   private static final String SUFFIX = ".structure";
+
+   /** The children by name */
+   private static final Comparator<VirtualFile> NAME_COMPARATOR = new Comparator<VirtualFile>()
+   {
+      public int compare(VirtualFile o1, VirtualFile o2)
+      {
+         return o1.getName().compareTo(o2.getName());
+      }
+   };
+
+   /** The cache directory */
+   private File directory;
+
+   /**
+    * Create a new FileStructureCache.
+    */
+   public FileStructureCache()
+   {
+   }
+
+   /**
+    * Create a new FileStructureCache.
+    * 
+    * @param directory the cache directory
+    */
+   public FileStructureCache(File directory)
+   {
+      setDirectory(directory);
+   }
+
+   /**
+    * Get the directory.
+    * 
+    * @return the directory.
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * Set the directory.
+    * 
+    * @param directory the directory.
+    */
+   public void setDirectory(File directory)
+   {
+      if (directory == null)
+         throw new IllegalArgumentException("Null directory");
+      this.directory = directory;
+   }
+
+   public StructureMetaData getStructure(VirtualFile root, String deployers)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("Null root");
+      if (deployers == null)
+         throw new IllegalArgumentException("Null deployers");
+
+      try
+      {
+         String url = root.toURL().toExternalForm();
+         File file = getFile(url);
+         if (file.exists() == false)
+            return null;
+
+         ObjectInputStream in = new CacheInputStream(new BufferedInputStream(new FileInputStream(file)));
+         try
+         {
+            if (in.readInt() != VERSION || url.equals(in.readUTF()) == false)
+               return null;
+            if (deployers.equals(in.readUTF()) == false || in.readLong() != getFingerprint(root))
+            {
+               if (log.isTraceEnabled())
+                  log.trace("Cached structure is out of date: " + url);
+               return null;
+            }
+            StructureMetaData structure = (StructureMetaData) in.readObject();
+            List<?> modifications = (List<?>) in.readObject();
+            applyModifications(structure, modifications.iterator());
+            return structure;
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      catch (Throwable t)
+      {
+         log.debug("Ignoring cached structure for " + root.getName() + ": " + t);
+         return null;
+      }
+   }
+
+   public void putStructure(VirtualFile root, String deployers, StructureMetaData structure)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("Null root");
+      if (deployers == null)
+         throw new IllegalArgumentException("Null deployers");
+      if (structure == null)
+         throw new IllegalArgumentException("Null structure");
+
+      File temp = null;
+      try
+      {
+         String url = root.toURL().toExternalForm();
+         File file = getFile(url);
+         directory.mkdirs();
+         temp = File.createTempFile("structure", ".tmp", directory);
+
+         List<ModificationType> modifications = new ArrayList<ModificationType>();
+         collectModifications(structure, modifications);
+
+         ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+         try
+         {
+            out.writeInt(VERSION);
+            out.writeUTF(url);
+            out.writeUTF(deployers);
+            out.writeLong(getFingerprint(root));
+            out.writeObject(structure);
+            out.writeObject(modifications);
+         }
+         finally
+         {
+            out.close();
+         }
+
+         if (file.exists())
+            file.delete();
+         if (temp.renameTo(file))
+            temp = null;
+      }
+      catch (Throwable t)
+      {
+         log.debug("Unable to cache structure for " + root.getName() + ": " + t);
+      }
+      finally
+      {
+         if (temp != null)
+            temp.delete();
+      }
+   }
+
+   public void removeStructure(VirtualFile root)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("Null root");
+
+      try
+      {
+         getFile(root.toURL().toExternalForm()).delete();
+      }
+      catch (Throwable t)
+      {
+         log.debug("Unable to remove cached structure for " + root.getName() + ": " + t);
+      }
+   }
+
+   /**
+    * Get the fingerprint of a file.
+    * 
+    * @param file the file
+    * @return the fingerprint
+    * @throws Exception for any error
+    */
+   protected long getFingerprint(VirtualFile file) throws Exception
+   {
+      return fingerprint(file);
+   }
+
+   /**
+    * Fingerprint a file from its size and last modification,
+    * recursing into plain directories.
+    * 
+    * @param file the file
+    * @return the fingerprint
+    * @throws Exception for any error
+    */
+   static long fingerprint(VirtualFile file) throws Exception
+   {
+      long result = file.getSize();
+      result = 31 * result + file.getLastModified();
+      if (file.isLeaf() == false && isDirectory(file))
+      {
+         List<VirtualFile> children = new ArrayList<VirtualFile>(file.getChildren());
+         Collections.sort(children, NAME_COMPARATOR);
+         for (VirtualFile child : children)
+         {
+            result = 31 * result + child.getName().hashCode();
+            result = 31 * result + fingerprint(child);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Is the file a plain directory, as opposed to an archive.
+    * 
+    * @param file the file
+    * @return true for a directory
+    * @throws Exception for any error
+    */
+   private static boolean isDirectory(VirtualFile file) throws Exception
+   {
+      String protocol = file.toURL().getProtocol();
+      return "vfsfile".equals(protocol) || "file".equals(protocol);
+   }
+
+   /**
+    * Get the cache file for a url.
+    * 
+    * @param url the url
+    * @return the file
+    * @throws Exception for any error
+    */
+   protected File getFile(String url) throws Exception
+   {
+      if (directory == null)
+         throw new IllegalStateException("No directory");
+
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      byte[] bytes = digest.digest(url.getBytes("UTF-8"));
+      StringBuilder builder = new StringBuilder(bytes.length * 2 + SUFFIX.length());
+      for (byte b : bytes)
+      {
+         builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+         builder.append(Character.forDigit(b & 0xF, 16));
+      }
+      builder.append(SUFFIX);
+      return new File(directory, builder.toString());
+   }
+
+   /**
+    * The modification type is not part of the serialized context info,
+    * collect it in the order the contexts are written.
+    * 
+    * @param structure the structure
+    * @param modifications the modifications
+    */
+   private static void collectModifications(StructureMetaData structure, List<ModificationType> modifications)
+   {
+      for (ContextInfo context : structure.getContexts())
+      {
+         modifications.add(context.getModificationType());
+         StructureMetaData nested = context.getPredeterminedManagedObjects().getAttachment(StructureMetaData.class);
+         if (nested != null)
+            collectModifications(nested, modifications);
+      }
+   }
+
+   /**
+    * Apply the modification types in the order they were collected.
+    * 
+    * @param structure the structure
+    * @param modifications the modifications
+    */
+   private static void applyModifications(StructureMetaData structure, Iterator<?> modifications)
+   {
+      for (ContextInfo context : structure.getContexts())
+      {
+         context.setModificationType((ModificationType) modifications.next());
+         StructureMetaData nested = context.getPredeterminedManagedObjects().getAttachment(StructureMetaData.class);
+         if (nested != null)
+            applyModifications(nested, modifications);
+      }
+   }
+
+   /**
+    * Resolves classes with the context classloader first.
+    */
+   private static class CacheInputStream extends ObjectInputStream
+   {
+      public CacheInputStream(InputStream in) throws IOException
+      {
+         super(in);
+      }
+
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+         ClassLoader classLoader = SecurityActions.getContextClassLoader();
+         if (classLoader != null)
+         {
+            try
+            {
+               return Class.forName(desc.getName(), false, classLoader);
+            }
+            catch (ClassNotFoundException ignored)
+            {
+            }
+         }
+         return super.resolveClass(desc);
+      }
+   }
+}
@@ -0,0 +1,61 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.deployers.vfs.plugins.structure;
+
+import org.jboss.deployers.spi.structure.StructureMetaData;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * StructureCache.<p>
+ * 
+ * Remembers the structure determined for a deployment root,
+ * so it doesn't have to be determined again while the root is unchanged.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public interface StructureCache
+{
+   /**
+    * Get the cached structure
+    * 
+    * @param root the deployment root
+    * @param deployers the signature of the structure deployers
+    * @return the structure or null when not cached or no longer valid
+    */
+   StructureMetaData getStructure(VirtualFile root, String deployers);
+
+   /**
+    * Cache the structure
+    * 
+    * @param root the deployment root
+    * @param deployers the signature of the structure deployers
+    * @param structure the determined structure
+    */
+   void putStructure(VirtualFile root, String deployers, StructureMetaData structure);
+
+   /**
+    * Remove the cached structure
+    * 
+    * @param root the deployment root
+    */
+   void removeStructure(VirtualFile root);
+}
@@ -91,6 +91,16 @@ public class StructureDeployerWrapper implements StructureDeployer
       return deployer.isSupportsCandidateAnnotations();
    }
 
+   /**
+    * Get the wrapped deployer
+    * 
+    * @return the deployer
+    */
+   public StructureDeployer getDeployer()
+   {
+      return deployer;
+   }
+
    public int getRelativeOrder()
    {
       return deployer.getRelativeOrder();
@@ -56,6 +56,9 @@ public class VFSStructuralDeployersImpl extends AbstractStructuralDeployers impl
    
    /** The deployers */
    private Set<StructureDeployer> structureDeployers = new TreeSet<StructureDeployer>(Ordered.COMPARATOR);
+
+   /** The structure cache, null when structure is always determined */
+   private StructureCache structureCache;
    
    /**
     * Create a new VFSStructuralDeployers.
@@ -109,6 +112,26 @@ public class VFSStructuralDeployersImpl extends AbstractStructuralDeployers impl
          addDeployer(deployer);
    }
 
+   /**
+    * Get the structureCache.
+    * 
+    * @return the structureCache.
+    */
+   public StructureCache getStructureCache()
+   {
+      return structureCache;
+   }
+
+   /**
+    * Set the structureCache.
+    * 
+    * @param structureCache the structureCache.
+    */
+   public void setStructureCache(StructureCache structureCache)
+   {
+      this.structureCache = structureCache;
+   }
+
    /**
     * Add a structure deployer
     * 
@@ -249,8 +272,49 @@ public class VFSStructuralDeployersImpl extends AbstractStructuralDeployers impl
       VirtualFile root = vfsDeployment.getRoot();
       if (root == null)
          throw new IllegalStateException("Deployment has no root " + deployment);
+
+      StructureCache cache = getStructureCache();
+      String signature = null;
+      if (cache != null)
+      {
+         signature = getDeployersSignature();
+         StructureMetaData cached = cache.getStructure(root, signature);
+         if (cached != null)
+         {
+            if (log.isTraceEnabled())
+               log.trace("Using cached structure for " + deployment.getName());
+            for (ContextInfo contextInfo : cached.getContexts())
+               structure.addContext(contextInfo);
+            return;
+         }
+      }
+
       StructureContext context = new StructureContext(root, structure, this);
       if (doDetermineStructure(context) == false)
          throw new DeploymentException("No deployer recognised the structure of " + deployment.getName());
+
+      if (cache != null)
+         cache.putStructure(root, signature, structure);
+   }
+
+   /**
+    * Get the signature of the structure deployers,
+    * a cached structure is only valid for the same deployers and configuration.
+    * 
+    * @return the signature
+    */
+   protected synchronized String getDeployersSignature()
+   {
+      StringBuilder builder = new StringBuilder();
+      for (StructureDeployer deployer : structureDeployers)
+      {
+         if (deployer instanceof StructureDeployerWrapper)
+            deployer = ((StructureDeployerWrapper) deployer).getDeployer();
+         builder.append(deployer.getClass().getName()).append('@').append(deployer.getRelativeOrder());
+         if (deployer instanceof AbstractStructureDeployer)
+            builder.append('[').append(((AbstractStructureDeployer) deployer).getConfigurationSignature()).append(']');
+         builder.append(';');
+      }
+      return builder.toString();
    }
 }
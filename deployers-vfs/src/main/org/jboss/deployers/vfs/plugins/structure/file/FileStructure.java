@@ -22,6 +22,7 @@
 package org.jboss.deployers.vfs.plugins.structure.file;
 
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jboss.beans.metadata.api.annotations.Install;
@@ -128,6 +129,17 @@ public class FileStructure extends AbstractVFSStructureDeployer
       return fileMatchers.remove(fm);   
    }
 
+   @Override
+   protected void toConfigurationString(StringBuilder builder)
+   {
+      super.toConfigurationString(builder);
+      builder.append(" suffixes=").append(new TreeSet<String>(fileSuffixes));
+      Set<String> matchers = new TreeSet<String>();
+      for (FileMatcher fm : fileMatchers)
+         matchers.add(getClassName(fm));
+      builder.append(" fileMatchers=").append(matchers);
+   }
+
    /**
     * Whether this is an archive
     *
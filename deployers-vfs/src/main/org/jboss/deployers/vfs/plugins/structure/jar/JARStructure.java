@@ -23,6 +23,7 @@ package org.jboss.deployers.vfs.plugins.structure.jar;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.jboss.beans.metadata.api.annotations.Install;
 import org.jboss.beans.metadata.api.annotations.Uninstall;
@@ -82,6 +83,13 @@ public class JARStructure extends AbstractVFSStructureDeployer
       JarUtils.setJarSuffixes(suffixes);
    }
 
+   @Override
+   protected void toConfigurationString(StringBuilder builder)
+   {
+      super.toConfigurationString(builder);
+      builder.append(" suffixes=").append(new TreeSet<String>(getSuffixes()));
+   }
+
    @Install
    public void addJarExtension(JarExtensionProvider provider)
    {
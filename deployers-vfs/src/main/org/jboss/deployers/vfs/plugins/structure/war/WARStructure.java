@@ -79,6 +79,13 @@ public class WARStructure extends AbstractVFSStructureDeployer
       this.webInfLibFilter = webInfLibFilter;
    }
 
+   @Override
+   protected void toConfigurationString(StringBuilder builder)
+   {
+      super.toConfigurationString(builder);
+      builder.append(" webInfLibFilter=").append(getClassName(webInfLibFilter));
+   }
+
    public boolean determineStructure(StructureContext structureContext) throws DeploymentException
    {
       ContextInfo context = null;
@@ -59,6 +59,7 @@ public class SchemaResolverDeployerMetaData implements Serializable, BeanMetaDat
    private String jarExtension;
    private boolean includeDeploymentFile;
    private boolean buildManagedObject;
+   private boolean preloadSchemaBinding;
 
    @XmlTransient
    public List<BeanMetaData> getBeans()
@@ -75,6 +76,7 @@ public class SchemaResolverDeployerMetaData implements Serializable, BeanMetaDat
       builder.addPropertyMetaData("registerWithJBossXB", isRegisterWithJBossXB());
       builder.addPropertyMetaData("includeDeploymentFile", isIncludeDeploymentFile());
       builder.addPropertyMetaData("buildManagedObject", isBuildManagedObject());
+      builder.addPropertyMetaData("preloadSchemaBinding", isPreloadSchemaBinding());
       return Collections.singletonList(builder.getBeanMetaData());
    }
 
@@ -187,4 +189,15 @@ public class SchemaResolverDeployerMetaData implements Serializable, BeanMetaDat
    {
       this.buildManagedObject = buildManagedObject;
    }
+
+   public boolean isPreloadSchemaBinding()
+   {
+      return preloadSchemaBinding;
+   }
+
+   @XmlAttribute(name = "preload-schema-binding")
+   public void setPreloadSchemaBinding(boolean preloadSchemaBinding)
+   {
+      this.preloadSchemaBinding = preloadSchemaBinding;
+   }
 }
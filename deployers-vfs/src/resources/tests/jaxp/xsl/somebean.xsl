@@ -0,0 +1,8 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+   <xsl:param name="version" select="'1.0'"/>
+
+   <xsl:template match="/legacybean">
+      <somebean name="{@id}" version="{$version}"/>
+   </xsl:template>
+</xsl:stylesheet>
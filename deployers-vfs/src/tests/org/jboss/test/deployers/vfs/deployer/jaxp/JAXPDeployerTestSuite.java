@@ -25,6 +25,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 import org.jboss.test.deployers.vfs.deployer.jaxp.test.JAXPDeployerUnitTestCase;
+import org.jboss.test.deployers.vfs.deployer.jaxp.test.XSLDeployerUnitTestCase;
 
 /**
  * JAXPDeployerTestSuite.
@@ -44,6 +45,7 @@ public class JAXPDeployerTestSuite extends TestSuite
       TestSuite suite = new TestSuite("JAXP Deployer Tests");
 
       suite.addTest(JAXPDeployerUnitTestCase.suite());
+      suite.addTest(XSLDeployerUnitTestCase.suite());
 
       return suite;
    }
@@ -1,5 +1,8 @@
 package org.jboss.test.deployers.vfs.deployer.jaxp.support;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
 import org.jboss.deployers.vfs.spi.deployer.JAXPDeployer;
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.virtual.VirtualFile;
@@ -35,4 +38,20 @@ public class TestXmlDeployer extends JAXPDeployer<SomeBean>
       lastBean = bean;
       return bean;
    }
+
+   @Override
+   protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, XMLStreamReader reader) throws Exception
+   {
+      while (reader.next() != XMLStreamConstants.START_ELEMENT)
+      {
+      }
+      String name = reader.getAttributeValue(null, "name");
+      String version = reader.getAttributeValue(null, "version");
+
+      SomeBean bean = new SomeBean();
+      bean.setName(name);
+      bean.setVersion(version);
+      lastBean = bean;
+      return bean;
+   }
 }
@@ -0,0 +1,100 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.deployer.jaxp.support;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.sax.SAXSource;
+
+import org.jboss.deployers.vfs.spi.deployer.XSLDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
+import org.jboss.virtual.VirtualFile;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Transforms legacy beans into some beans.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class TestXslDeployer extends XSLDeployer<SomeBean>
+{
+   private SomeBean lastBean;
+
+   private String version;
+
+   public TestXslDeployer()
+   {
+      super(SomeBean.class);
+      setSuffix(".xbean");
+      setXSLPath("jaxp/xsl/somebean.xsl");
+   }
+
+   public SomeBean getLastBean()
+   {
+      return lastBean;
+   }
+
+   public void setVersion(String version)
+   {
+      this.version = version;
+   }
+
+   @Override
+   protected void setParameters(Transformer trans) throws Exception
+   {
+      if (version != null)
+         trans.setParameter("version", version);
+   }
+
+   @Override
+   protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, Document doc) throws Exception
+   {
+      SomeBean bean = new SomeBean();
+      bean.setName(doc.getDocumentElement().getAttribute("name"));
+      bean.setVersion(doc.getDocumentElement().getAttribute("version"));
+      lastBean = bean;
+      return bean;
+   }
+
+   @Override
+   protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, SAXSource source) throws Exception
+   {
+      final SomeBean bean = new SomeBean();
+      XMLReader reader = source.getXMLReader();
+      reader.setContentHandler(new DefaultHandler()
+      {
+         public void startElement(String uri, String localName, String qName, Attributes attributes)
+         {
+            if ("somebean".equals(qName) || "somebean".equals(localName))
+            {
+               bean.setName(attributes.getValue("name"));
+               bean.setVersion(attributes.getValue("version"));
+            }
+         }
+      });
+      reader.parse(source.getInputSource());
+      lastBean = bean;
+      return bean;
+   }
+}
@@ -21,6 +21,9 @@
 */
 package org.jboss.test.deployers.vfs.deployer.jaxp.test;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -31,12 +34,17 @@ import org.jboss.deployers.spi.attachments.MutableAttachments;
 import org.jboss.deployers.vfs.plugins.structure.file.FileStructure;
 import org.jboss.deployers.vfs.plugins.structure.jar.JARStructure;
 import org.jboss.deployers.vfs.spi.client.VFSDeployment;
+import org.jboss.deployers.vfs.spi.deployer.JAXPDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.jboss.test.deployers.vfs.deployer.DeployerClientTest;
 import org.jboss.test.deployers.vfs.deployer.jaxp.support.SomeBean;
 import org.jboss.test.deployers.vfs.deployer.jaxp.support.TestXmlDeployer;
+import org.jboss.util.xml.JBossEntityResolver;
+import org.jboss.virtual.VirtualFile;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
 
 /**
  * Tests of the JAXPDeployer.
@@ -107,6 +115,113 @@ public class JAXPDeployerUnitTestCase extends DeployerClientTest
       assertUndeploy(context);
    }
 
+   public void testStreaming() throws Exception
+   {
+      deployer.setUseStreaming(true);
+      deployer.create();
+
+      VFSDeployment context = createDeployment("/jaxp", "somebean.jbean");
+      assertDeploy(context, null, null);
+      SomeBean bean = deployer.getLastBean();
+      assertNotNull(bean);
+      assertEquals("bean.name", "bean1", bean.getName());
+      assertEquals("bean.version", "1.0", bean.getVersion());
+      assertUndeploy(context);
+   }
+
+   public void testStreamingNotOverridden() throws Exception
+   {
+      JAXPDeployer<SomeBean> documentOnly = new JAXPDeployer<SomeBean>(SomeBean.class)
+      {
+         protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, Document document) throws Exception
+         {
+            return new SomeBean();
+         }
+      };
+      documentOnly.setUseStreaming(true);
+      try
+      {
+         documentOnly.create();
+         fail("Should not create a streaming deployer without a stream parse");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+   }
+
+   public void testStreamingCharacterStreamEntity() throws Exception
+   {
+      assertStreamingEntity(new InputSource(new StringReader("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><!ENTITY beanname \"bean2\">")));
+   }
+
+   public void testStreamingSystemIdEntity() throws Exception
+   {
+      File dtd = File.createTempFile("somebean", ".dtd");
+      try
+      {
+         FileWriter writer = new FileWriter(dtd);
+         try
+         {
+            writer.write("<!ENTITY beanname \"bean2\">");
+         }
+         finally
+         {
+            writer.close();
+         }
+         assertStreamingEntity(new InputSource(dtd.toURI().toString()));
+      }
+      finally
+      {
+         dtd.delete();
+      }
+   }
+
+   protected void assertStreamingEntity(final InputSource source) throws Exception
+   {
+      TestXmlDeployer resolving = new TestXmlDeployer()
+      {
+         protected JBossEntityResolver getEntityResolver()
+         {
+            return new JBossEntityResolver()
+            {
+               public InputSource resolveEntity(String publicId, String systemId)
+               {
+                  if ("urn:jboss:test:somebean.dtd".equals(systemId))
+                     return source;
+                  return super.resolveEntity(publicId, systemId);
+               }
+            };
+         }
+      };
+      resolving.setUseStreaming(true);
+      resolving.create();
+
+      main = createMainDeployer();
+      addStructureDeployer(main, new JARStructure());
+      addStructureDeployer(main, new FileStructure());
+      addDeployer(main, resolving);
+
+      VFSDeployment context = createDeployment("/jaxp", "entitybean.jbean");
+      assertDeploy(context, null, null);
+      SomeBean bean = resolving.getLastBean();
+      assertNotNull(bean);
+      assertEquals("bean.name", "bean2", bean.getName());
+      assertUndeploy(context);
+   }
+
+   public void testReusedDocumentBuilder() throws Exception
+   {
+      VFSDeployment context = createDeployment("/jaxp", "somebean.jbean");
+      for (int i = 0; i < 3; i++)
+      {
+         assertDeploy(context, null, null);
+         SomeBean bean = deployer.getLastBean();
+         assertNotNull(bean);
+         assertEquals("bean.name", "bean1", bean.getName());
+         assertUndeploy(context);
+      }
+   }
+
    protected <T> void assertDeploy(VFSDeployment context, Class<T> clazz, T mo) throws Exception
    {
       main.addDeployment(context);
@@ -0,0 +1,121 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.deployer.jaxp.test;
+
+import javax.xml.transform.sax.SAXSource;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.jboss.deployers.vfs.plugins.structure.file.FileStructure;
+import org.jboss.deployers.vfs.plugins.structure.jar.JARStructure;
+import org.jboss.deployers.vfs.spi.client.VFSDeployment;
+import org.jboss.deployers.vfs.spi.deployer.XSLDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
+import org.jboss.test.deployers.vfs.deployer.DeployerClientTest;
+import org.jboss.test.deployers.vfs.deployer.jaxp.support.SomeBean;
+import org.jboss.test.deployers.vfs.deployer.jaxp.support.TestXslDeployer;
+import org.jboss.virtual.VirtualFile;
+import org.w3c.dom.Document;
+
+/**
+ * Tests of the XSLDeployer.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class XSLDeployerUnitTestCase extends DeployerClientTest
+{
+   public static Test suite()
+   {
+      return new TestSuite(XSLDeployerUnitTestCase.class);
+   }
+
+   public XSLDeployerUnitTestCase(String name) throws Throwable
+   {
+      super(name);
+   }
+
+   public void testTransform() throws Exception
+   {
+      assertTransform(false);
+   }
+
+   public void testStreamTransform() throws Exception
+   {
+      assertTransform(true);
+   }
+
+   public void testStreamTransformNotOverridden() throws Exception
+   {
+      XSLDeployer<SomeBean> documentOnly = new XSLDeployer<SomeBean>(SomeBean.class)
+      {
+         protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, Document document) throws Exception
+         {
+            return new SomeBean();
+         }
+      };
+      documentOnly.setXSLPath("jaxp/xsl/somebean.xsl");
+      documentOnly.setStreamTransform(true);
+      try
+      {
+         documentOnly.create();
+         fail("Should not create a streaming deployer without a SAXSource parse");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+   }
+
+   public void testStreamTransformOverriddenInSuperclass() throws Exception
+   {
+      TestXslDeployer deployer = new TestXslDeployer()
+      {
+         protected SomeBean parse(VFSDeploymentUnit unit, VirtualFile file, SAXSource source) throws Exception
+         {
+            return super.parse(unit, file, source);
+         }
+      };
+      deployer.setStreamTransform(true);
+      deployer.create();
+      assertNotNull(deployer.getTemplates());
+   }
+
+   protected void assertTransform(boolean streamTransform) throws Exception
+   {
+      TestXslDeployer deployer = new TestXslDeployer();
+      deployer.setStreamTransform(streamTransform);
+      deployer.setVersion("2.0");
+      deployer.create();
+
+      main = createMainDeployer();
+      addStructureDeployer(main, new JARStructure());
+      addStructureDeployer(main, new FileStructure());
+      addDeployer(main, deployer);
+
+      VFSDeployment context = createDeployment("/jaxp/xsl", "legacybean.xbean");
+      assertDeploy(context);
+      SomeBean bean = deployer.getLastBean();
+      assertNotNull(bean);
+      assertEquals("bean.name", "bean3", bean.getName());
+      assertEquals("bean.version", "2.0", bean.getVersion());
+      assertUndeploy(context);
+   }
+}
@@ -0,0 +1,296 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.parsing.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import junit.framework.Test;
+import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentContext;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentUnit;
+import org.jboss.deployers.vfs.spi.deployer.JAXBDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentContext;
+import org.jboss.test.BaseTestCase;
+import org.jboss.virtual.VFS;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * JAXBDeployer unmarshaller pool, partial unmarshal and background context.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class JAXBDeployerTestCase extends BaseTestCase
+{
+   private File deployment;
+
+   public static Test suite()
+   {
+      return suite(JAXBDeployerTestCase.class);
+   }
+
+   public JAXBDeployerTestCase(String test)
+   {
+      super(test);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      deployment = File.createTempFile("deployment", "jaxb");
+      deployment.delete();
+      deployment.mkdirs();
+      writeDescriptor("<jaxb-bean name=\"bean\"/>");
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      File[] files = deployment.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+            file.delete();
+      }
+      deployment.delete();
+      super.tearDown();
+   }
+
+   public void testPooledUnmarshaller() throws Exception
+   {
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.create();
+
+      assertEquals("bean", deploy(deployer).getName());
+      assertEquals("bean", deploy(deployer).getName());
+      assertEquals(2, deployer.unmarshallers.size());
+      assertSame(deployer.unmarshallers.get(0), deployer.unmarshallers.get(1));
+   }
+
+   public void testNoPool() throws Exception
+   {
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setUnmarshallerPoolSize(0);
+      deployer.create();
+
+      deploy(deployer);
+      deploy(deployer);
+      assertEquals(0, deployer.getUnmarshallerPoolSize());
+      assertNotSame(deployer.unmarshallers.get(0), deployer.unmarshallers.get(1));
+   }
+
+   public void testStaleUnmarshallerNotPooled() throws Exception
+   {
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.create();
+
+      // the context is replaced while the first parse is running
+      deployer.recreate = true;
+      deploy(deployer);
+      deploy(deployer);
+      assertEquals(2, deployer.contexts.get());
+      assertNotSame(deployer.unmarshallers.get(0), deployer.unmarshallers.get(1));
+
+      deploy(deployer);
+      assertSame(deployer.unmarshallers.get(1), deployer.unmarshallers.get(2));
+   }
+
+   public void testPartialUnmarshal() throws Exception
+   {
+      writeDescriptor("<wrapper><other name=\"other\"/><jaxb-bean name=\"inner\"/><jaxb-bean name=\"second\"/></wrapper>");
+
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setPartialUnmarshal(true);
+      deployer.create();
+
+      assertEquals("inner", deploy(deployer).getName());
+      assertEquals("inner", deploy(deployer).getName());
+      assertSame(deployer.unmarshallers.get(0), deployer.unmarshallers.get(1));
+   }
+
+   public void testPartialUnmarshalNoElement() throws Exception
+   {
+      writeDescriptor("<wrapper><other name=\"other\"/></wrapper>");
+
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setPartialUnmarshal(true);
+      deployer.create();
+      try
+      {
+         deploy(deployer);
+         fail("Should not be here.");
+      }
+      catch (DeploymentException e)
+      {
+         assertInstanceOf(e.getCause(), UnmarshalException.class);
+      }
+   }
+
+   public void testBackgroundContext() throws Exception
+   {
+      final AtomicInteger executed = new AtomicInteger();
+      final List<Runnable> pending = new ArrayList<Runnable>();
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setCreateContextInBackground(true);
+      deployer.setExecutor(new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            executed.incrementAndGet();
+            pending.add(command);
+         }
+      });
+      deployer.create();
+      assertEquals(1, executed.get());
+      assertEquals(0, deployer.contexts.get());
+
+      pending.get(0).run();
+      assertEquals(1, deployer.contexts.get());
+      assertEquals("bean", deploy(deployer).getName());
+      assertEquals(1, deployer.contexts.get());
+   }
+
+   public void testBackgroundContextRejected() throws Exception
+   {
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setCreateContextInBackground(true);
+      deployer.setExecutor(new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            throw new RejectedExecutionException("Saturated");
+         }
+      });
+      deployer.create();
+      // built in the calling thread
+      assertEquals(1, deployer.contexts.get());
+      assertEquals("bean", deploy(deployer).getName());
+   }
+
+   public void testBackgroundContextDefaultExecutor() throws Exception
+   {
+      TestJAXBDeployer deployer = new TestJAXBDeployer();
+      deployer.setCreateContextInBackground(true);
+      deployer.create();
+      assertEquals("bean", deploy(deployer).getName());
+      assertEquals(1, deployer.contexts.get());
+   }
+
+   protected JAXBBean deploy(TestJAXBDeployer deployer) throws Exception
+   {
+      AbstractVFSDeploymentUnit unit = createUnit();
+      deployer.deploy(unit);
+      try
+      {
+         JAXBBean bean = unit.getAttachment(JAXBBean.class);
+         assertNotNull(bean);
+         return bean;
+      }
+      finally
+      {
+         deployer.undeploy(unit);
+      }
+   }
+
+   protected AbstractVFSDeploymentUnit createUnit() throws Exception
+   {
+      VirtualFile root = VFS.getRoot(deployment.toURI());
+      VFSDeploymentContext context = new AbstractVFSDeploymentContext(root, "");
+      context.setMetaDataLocations(Collections.singletonList(root));
+      return new AbstractVFSDeploymentUnit(context);
+   }
+
+   protected void writeDescriptor(String content) throws Exception
+   {
+      FileOutputStream out = new FileOutputStream(new File(deployment, "test-jaxb.xml"));
+      try
+      {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   @XmlRootElement(name = "jaxb-bean")
+   public static class JAXBBean
+   {
+      private String name;
+
+      @XmlAttribute
+      public String getName()
+      {
+         return name;
+      }
+
+      public void setName(String name)
+      {
+         this.name = name;
+      }
+   }
+
+   private static class TestJAXBDeployer extends JAXBDeployer<JAXBBean>
+   {
+      private AtomicInteger contexts = new AtomicInteger();
+      private List<Unmarshaller> unmarshallers = Collections.synchronizedList(new ArrayList<Unmarshaller>());
+      private boolean recreate;
+
+      private TestJAXBDeployer()
+      {
+         super(JAXBBean.class);
+         setName("test-jaxb.xml");
+         setUnmarshallerPoolSize(1);
+      }
+
+      protected JAXBContext createContext() throws Exception
+      {
+         contexts.incrementAndGet();
+         return super.createContext();
+      }
+
+      protected Unmarshaller getUnmarshaller(JAXBContext context) throws Exception
+      {
+         Unmarshaller unmarshaller = super.getUnmarshaller(context);
+         unmarshallers.add(unmarshaller);
+         if (recreate)
+         {
+            recreate = false;
+            create();
+         }
+         return unmarshaller;
+      }
+   }
+}
@@ -0,0 +1,334 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.parsing.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentContext;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentUnit;
+import org.jboss.deployers.vfs.spi.deployer.AbstractVFSParsingDeployer;
+import org.jboss.deployers.vfs.spi.deployer.FileMetaDataCache;
+import org.jboss.deployers.vfs.spi.deployer.MetaDataCache;
+import org.jboss.deployers.vfs.spi.deployer.MultipleVFSParsingDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentContext;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
+import org.jboss.managed.api.ManagedObject;
+import org.jboss.test.BaseTestCase;
+import org.jboss.virtual.VFS;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * Parsed metadata cache tests.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class MetaDataCacheTestCase extends BaseTestCase
+{
+   private File directory;
+   private File deployment;
+
+   public static Test suite()
+   {
+      return suite(MetaDataCacheTestCase.class);
+   }
+
+   public MetaDataCacheTestCase(String test)
+   {
+      super(test);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      directory = createDirectory("metadata");
+      deployment = createDirectory("deployment");
+      writeDescriptor("first");
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      deleteDirectory(directory);
+      deleteDirectory(deployment);
+      super.tearDown();
+   }
+
+   public void testCachedMetaData() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+      assertEquals(1, deployer.count);
+      assertEquals(1, directory.listFiles().length);
+
+      // another deployer, e.g. after a reboot
+      deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+      assertEquals(0, deployer.count);
+   }
+
+   public void testChangedContent() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+
+      writeDescriptor("second");
+      assertEquals("second", deploy(deployer));
+      assertEquals(2, deployer.count);
+   }
+
+   public void testChangedVersion() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+
+      deployer = new CountingDeployer(cache);
+      deployer.version = "2";
+      assertEquals("first", deploy(deployer));
+      assertEquals(1, deployer.count);
+   }
+
+   public void testCorruptEntry() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+
+      File[] files = directory.listFiles();
+      assertEquals(1, files.length);
+      FileOutputStream out = new FileOutputStream(files[0]);
+      try
+      {
+         out.write(new byte[] {1, 2, 3});
+      }
+      finally
+      {
+         out.close();
+      }
+
+      assertEquals("first", deploy(deployer));
+      assertEquals(2, deployer.count);
+   }
+
+   public void testDefaultVersion() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      deployer.version = null;
+      assertEquals("first", deploy(deployer));
+
+      deployer = new CountingDeployer(cache);
+      deployer.version = null;
+      assertEquals("first", deploy(deployer));
+      assertEquals(0, deployer.count);
+   }
+
+   public void testHashedOncePerMiss() throws Exception
+   {
+      HashCountingCache cache = new HashCountingCache(directory);
+
+      CountingDeployer deployer = new CountingDeployer(cache);
+      assertEquals("first", deploy(deployer));
+      assertEquals(1, cache.hashes);
+
+      assertEquals("first", deploy(deployer));
+      assertEquals(2, cache.hashes);
+      assertEquals(1, deployer.count);
+   }
+
+   public void testCachedTypeChecked() throws Exception
+   {
+      MetaDataCache cache = new FileMetaDataCache(directory);
+
+      MappingDeployer<Object> deployer = new MappingDeployer<Object>(Object.class, cache);
+      deploy(deployer, Object.class);
+
+      MappingDeployer<Number> numbers = new MappingDeployer<Number>(Number.class, cache);
+      try
+      {
+         deploy(numbers, Number.class);
+         fail("Should not be here.");
+      }
+      catch (Exception e)
+      {
+         Throwable cause = e;
+         while (cause != null && cause instanceof IllegalArgumentException == false)
+            cause = cause.getCause();
+         assertNotNull("Expected IllegalArgumentException: " + e, cause);
+      }
+   }
+
+   protected String deploy(CountingDeployer deployer) throws Exception
+   {
+      return deploy(deployer, String.class);
+   }
+
+   protected <T> T deploy(AbstractVFSParsingDeployer<T> deployer, Class<T> output) throws Exception
+   {
+      VirtualFile root = VFS.getRoot(deployment.toURI());
+      VFSDeploymentContext context = new AbstractVFSDeploymentContext(root, "");
+      context.setMetaDataLocations(Collections.singletonList(root));
+      AbstractVFSDeploymentUnit unit = new AbstractVFSDeploymentUnit(context);
+
+      deployer.deploy(unit);
+      try
+      {
+         return unit.getAttachment(output);
+      }
+      finally
+      {
+         deployer.undeploy(unit);
+      }
+   }
+
+   protected void writeDescriptor(String content) throws Exception
+   {
+      FileOutputStream out = new FileOutputStream(new File(deployment, "test-cache.xml"));
+      try
+      {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   protected static File createDirectory(String prefix) throws Exception
+   {
+      File result = File.createTempFile(prefix, "cache");
+      result.delete();
+      result.mkdirs();
+      return result;
+   }
+
+   protected static void deleteDirectory(File dir)
+   {
+      File[] files = dir.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+            file.delete();
+      }
+      dir.delete();
+   }
+
+   private static class CountingDeployer extends AbstractVFSParsingDeployer<String>
+   {
+      private int count;
+      private String version = "1";
+
+      private CountingDeployer(MetaDataCache cache)
+      {
+         super(String.class);
+         setName("test-cache.xml");
+         setMetaDataCache(cache);
+      }
+
+      protected String parse(VFSDeploymentUnit unit, VirtualFile file, String root) throws Exception
+      {
+         count++;
+         InputStream in = file.openStream();
+         try
+         {
+            StringBuilder builder = new StringBuilder();
+            int ch;
+            while ((ch = in.read()) != -1)
+               builder.append((char) ch);
+            return builder.toString();
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+
+      protected String getMetaDataCacheVersion(Class<?> type)
+      {
+         return version != null ? version : super.getMetaDataCacheVersion(type);
+      }
+
+      public void build(DeploymentUnit unit, Map<String, ManagedObject> managedObjects) throws DeploymentException
+      {
+      }
+   }
+
+   private static class MappingDeployer<T> extends MultipleVFSParsingDeployer<T>
+   {
+      private MappingDeployer(Class<T> output, MetaDataCache cache)
+      {
+         super(output, Collections.<String, Class<?>>singletonMap("test-cache.xml", String.class));
+         setMetaDataCache(cache);
+      }
+
+      protected <U> U parse(Class<U> expectedType, VirtualFile file, Object root) throws Exception
+      {
+         return expectedType.cast(file.getName());
+      }
+
+      protected T mergeMetaData(VFSDeploymentUnit unit, Map<Class<?>, List<Object>> metadata) throws Exception
+      {
+         return null;
+      }
+
+      protected String getMetaDataCacheVersion(Class<?> type)
+      {
+         return "1";
+      }
+
+      public void build(DeploymentUnit unit, Map<String, ManagedObject> managedObjects) throws DeploymentException
+      {
+      }
+   }
+
+   private static class HashCountingCache extends FileMetaDataCache
+   {
+      private int hashes;
+
+      private HashCountingCache(File directory)
+      {
+         super(directory);
+      }
+
+      protected File getFile(VirtualFile file, Class<?> type) throws Exception
+      {
+         hashes++;
+         return super.getFile(file, type);
+      }
+   }
+}
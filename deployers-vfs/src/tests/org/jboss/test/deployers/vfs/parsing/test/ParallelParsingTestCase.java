@@ -0,0 +1,271 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.parsing.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.structure.spi.DeploymentUnit;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentContext;
+import org.jboss.deployers.vfs.plugins.structure.AbstractVFSDeploymentUnit;
+import org.jboss.deployers.vfs.spi.deployer.AbstractVFSParsingDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentContext;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
+import org.jboss.managed.api.ManagedObject;
+import org.jboss.test.BaseTestCase;
+import org.jboss.virtual.VFS;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * Parallel parsing of multiple matching files.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class ParallelParsingTestCase extends BaseTestCase
+{
+   private static final String[] NAMES = {"a", "b", "c", "d", "e", "f"};
+
+   private File deployment;
+
+   public static Test suite()
+   {
+      return suite(ParallelParsingTestCase.class);
+   }
+
+   public ParallelParsingTestCase(String test)
+   {
+      super(test);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      deployment = File.createTempFile("deployment", "parallel");
+      deployment.delete();
+      deployment.mkdirs();
+      for (String name : NAMES)
+         writeDescriptor(name, name);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      File[] files = deployment.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+            file.delete();
+      }
+      deployment.delete();
+      super.tearDown();
+   }
+
+   public void testParallelParsing() throws Exception
+   {
+      TestParsingDeployer deployer = new TestParsingDeployer();
+      deployer.setParallelism(4);
+
+      AbstractVFSDeploymentUnit unit = createUnit();
+      deployer.deploy(unit);
+      try
+      {
+         assertEquals(NAMES.length, deployer.files.size());
+         for (String name : NAMES)
+         {
+            VirtualFile file = unit.getMetaDataFile(name + "-parallel.xml");
+            assertNotNull(file);
+            assertEquals(name, unit.getAttachment(file.toURL().toString(), String.class));
+         }
+      }
+      finally
+      {
+         deployer.undeploy(unit);
+      }
+   }
+
+   public void testFailurePropagates() throws Exception
+   {
+      writeDescriptor("c", "fail");
+
+      TestParsingDeployer deployer = new TestParsingDeployer();
+      deployer.setParallelism(4);
+
+      AbstractVFSDeploymentUnit unit = createUnit();
+      try
+      {
+         deployer.deploy(unit);
+         fail("Should not be here.");
+      }
+      catch (DeploymentException e)
+      {
+         assertInstanceOf(e.getCause(), IllegalStateException.class);
+         assertEquals("fail", e.getCause().getMessage());
+      }
+   }
+
+   public void testInjectedExecutor() throws Exception
+   {
+      final ExecutorService pool = Executors.newFixedThreadPool(4);
+      try
+      {
+         final AtomicInteger executed = new AtomicInteger();
+         TestParsingDeployer deployer = new TestParsingDeployer();
+         deployer.setParallelism(2);
+         deployer.setExecutor(new Executor()
+         {
+            public void execute(Runnable command)
+            {
+               executed.incrementAndGet();
+               pool.execute(command);
+            }
+         });
+
+         AbstractVFSDeploymentUnit unit = createUnit();
+         deployer.deploy(unit);
+         try
+         {
+            // six files, no more runners than the parallelism
+            assertEquals(2, executed.get());
+            assertEquals(NAMES.length, deployer.files.size());
+         }
+         finally
+         {
+            deployer.undeploy(unit);
+         }
+      }
+      finally
+      {
+         pool.shutdownNow();
+      }
+   }
+
+   public void testRejectingExecutor() throws Exception
+   {
+      TestParsingDeployer deployer = new TestParsingDeployer();
+      deployer.setParallelism(4);
+      deployer.setExecutor(new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            throw new RejectedExecutionException("Saturated");
+         }
+      });
+
+      AbstractVFSDeploymentUnit unit = createUnit();
+      deployer.deploy(unit);
+      try
+      {
+         for (String name : NAMES)
+         {
+            VirtualFile file = unit.getMetaDataFile(name + "-parallel.xml");
+            assertEquals(name, unit.getAttachment(file.toURL().toString(), String.class));
+         }
+      }
+      finally
+      {
+         deployer.undeploy(unit);
+      }
+   }
+
+   public void testIllegalParallelism() throws Exception
+   {
+      try
+      {
+         new TestParsingDeployer().setParallelism(0);
+         fail("Should not be here.");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   protected AbstractVFSDeploymentUnit createUnit() throws Exception
+   {
+      VirtualFile root = VFS.getRoot(deployment.toURI());
+      VFSDeploymentContext context = new AbstractVFSDeploymentContext(root, "");
+      context.setMetaDataLocations(Collections.singletonList(root));
+      return new AbstractVFSDeploymentUnit(context);
+   }
+
+   protected void writeDescriptor(String name, String content) throws Exception
+   {
+      FileOutputStream out = new FileOutputStream(new File(deployment, name + "-parallel.xml"));
+      try
+      {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   private static class TestParsingDeployer extends AbstractVFSParsingDeployer<String>
+   {
+      private Set<String> files = Collections.synchronizedSet(new HashSet<String>());
+
+      private TestParsingDeployer()
+      {
+         super(String.class);
+         setSuffix("-parallel.xml");
+         setAllowMultipleFiles(true);
+      }
+
+      protected String parse(VFSDeploymentUnit unit, VirtualFile file, String root) throws Exception
+      {
+         files.add(file.getName());
+         InputStream in = file.openStream();
+         try
+         {
+            StringBuilder builder = new StringBuilder();
+            int ch;
+            while ((ch = in.read()) != -1)
+               builder.append((char) ch);
+            String result = builder.toString();
+            if ("fail".equals(result))
+               throw new IllegalStateException(result);
+            return result;
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+
+      public void build(DeploymentUnit unit, Map<String, ManagedObject> managedObjects) throws DeploymentException
+      {
+      }
+   }
+}
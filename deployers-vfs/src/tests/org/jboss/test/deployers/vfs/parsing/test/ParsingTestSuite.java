@@ -37,6 +37,9 @@ public class ParsingTestSuite extends TestSuite
       TestSuite suite = new TestSuite("VFS Parsing Tests");
 
       suite.addTest(DeployersAltDDTestCase.suite());
+      suite.addTest(JAXBDeployerTestCase.suite());
+      suite.addTest(MetaDataCacheTestCase.suite());
+      suite.addTest(ParallelParsingTestCase.suite());
 
       return suite;
    }
@@ -37,6 +37,7 @@ import org.jboss.test.deployers.vfs.structure.file.test.FileMatcherTestCase;
 import org.jboss.test.deployers.vfs.structure.jar.test.CombinedJARStructureUnitTestCase;
 import org.jboss.test.deployers.vfs.structure.jar.test.ConfiguredSuffixJARStructureUnitTestCase;
 import org.jboss.test.deployers.vfs.structure.jar.test.JARStructureUnitTestCase;
+import org.jboss.test.deployers.vfs.structure.test.StructureCacheTestCase;
 import org.jboss.test.deployers.vfs.structure.test.StructureDeployerContextClassLoaderTestCase;
 import org.jboss.test.deployers.vfs.structure.test.TerminateStructureTestCase;
 import org.jboss.test.deployers.vfs.structure.war.test.CombinedWARStructureUnitTestCase;
@@ -78,6 +79,7 @@ public class VFSStructureTestSuite extends TestSuite
       suite.addTest(WARUnpackUnitTestCase.suite());
       suite.addTest(ModificationTypeUnitTestCase.suite());
       suite.addTest(InnerModificationUnitTestCase.suite());
+      suite.addTest(StructureCacheTestCase.suite());
 
       return suite;
    }
@@ -0,0 +1,222 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.structure.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.Test;
+import org.jboss.deployers.spi.DeploymentException;
+import org.jboss.deployers.vfs.plugins.structure.FileStructureCache;
+import org.jboss.deployers.vfs.plugins.structure.StructureCache;
+import org.jboss.deployers.vfs.plugins.structure.VFSStructuralDeployersImpl;
+import org.jboss.deployers.vfs.plugins.structure.VFSStructureBuilder;
+import org.jboss.deployers.vfs.plugins.structure.explicit.DeclaredStructure;
+import org.jboss.deployers.vfs.plugins.structure.file.FileStructure;
+import org.jboss.deployers.vfs.plugins.structure.jar.JARStructure;
+import org.jboss.deployers.vfs.plugins.structure.war.WARStructure;
+import org.jboss.deployers.vfs.spi.client.VFSDeployment;
+import org.jboss.deployers.vfs.spi.structure.StructureContext;
+import org.jboss.deployers.vfs.spi.structure.StructureDeployer;
+import org.jboss.deployers.vfs.spi.structure.VFSDeploymentContext;
+import org.jboss.test.deployers.vfs.structure.AbstractStructureTest;
+import org.jboss.virtual.VirtualFile;
+
+/**
+ * Structure cache test case.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class StructureCacheTestCase extends AbstractStructureTest
+{
+   private File directory;
+
+   public StructureCacheTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(StructureCacheTestCase.class);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      directory = File.createTempFile("structure", "cache");
+      directory.delete();
+      directory.mkdirs();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+            file.delete();
+      }
+      directory.delete();
+      super.tearDown();
+   }
+
+   public void testCachedStructure() throws Exception
+   {
+      StructureCache cache = new FileStructureCache(directory);
+
+      CountingJARStructure jar = new CountingJARStructure();
+      VFSDeploymentContext context = determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertChildContexts(context, "archive.jar", "archive.zip");
+      assertTrue(jar.count > 0);
+      assertEquals(1, directory.listFiles().length);
+
+      jar = new CountingJARStructure();
+      context = determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertChildContexts(context, "archive.jar", "archive.zip");
+      assertEquals(0, jar.count);
+   }
+
+   public void testChangedFingerprint() throws Exception
+   {
+      TestStructureCache cache = new TestStructureCache(directory);
+
+      CountingJARStructure jar = new CountingJARStructure();
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertTrue(jar.count > 0);
+
+      cache.fingerprint++;
+      jar = new CountingJARStructure();
+      VFSDeploymentContext context = determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertChildContexts(context, "archive.jar", "archive.zip");
+      assertTrue(jar.count > 0);
+   }
+
+   public void testChangedDeployers() throws Exception
+   {
+      StructureCache cache = new FileStructureCache(directory);
+
+      CountingJARStructure jar = new CountingJARStructure();
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertTrue(jar.count > 0);
+
+      jar = new CountingJARStructure();
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar, new FileStructure());
+      assertTrue(jar.count > 0);
+   }
+
+   public void testChangedConfiguration() throws Exception
+   {
+      StructureCache cache = new FileStructureCache(directory);
+
+      CountingJARStructure jar = new CountingJARStructure();
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertTrue(jar.count > 0);
+
+      jar = new CountingJARStructure();
+      jar.setSupportsCandidateAnnotations(true);
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertTrue(jar.count > 0);
+
+      jar = new CountingJARStructure();
+      jar.setSupportsCandidateAnnotations(true);
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertEquals(0, jar.count);
+   }
+
+   public void testCorruptEntry() throws Exception
+   {
+      StructureCache cache = new FileStructureCache(directory);
+      determineStructure(createDeployment("/structure/jar", "indirectory"), cache, new JARStructure());
+
+      File[] files = directory.listFiles();
+      assertEquals(1, files.length);
+      FileOutputStream out = new FileOutputStream(files[0]);
+      try
+      {
+         out.write("garbage".getBytes());
+      }
+      finally
+      {
+         out.close();
+      }
+
+      CountingJARStructure jar = new CountingJARStructure();
+      VFSDeploymentContext context = determineStructure(createDeployment("/structure/jar", "indirectory"), cache, jar);
+      assertChildContexts(context, "archive.jar", "archive.zip");
+      assertTrue(jar.count > 0);
+   }
+
+   public void testModificationType() throws Throwable
+   {
+      StructureCache cache = new FileStructureCache(directory);
+      StructureDeployer[] deployers = { new DeclaredStructure(), new JARStructure(), new WARStructure(), new FileStructure() };
+
+      determineStructure(createDeployment("/structure/explicit", "explicit.ear"), cache, deployers);
+      VFSDeploymentContext root = determineStructure(createDeployment("/structure/explicit", "explicit.ear"), cache, deployers);
+      assertChildContexts(root, "inner.war");
+      assertUnpacked(root.getRoot().findChild("inner.war"));
+   }
+
+   protected VFSDeploymentContext determineStructure(VFSDeployment deployment, StructureCache cache, StructureDeployer... deployers) throws Exception
+   {
+      VFSStructuralDeployersImpl structuralDeployers = new VFSStructuralDeployersImpl();
+      structuralDeployers.setStructureBuilder(new VFSStructureBuilder());
+      structuralDeployers.setStructureCache(cache);
+      for (StructureDeployer deployer : deployers)
+         structuralDeployers.addDeployer(deployer);
+      return (VFSDeploymentContext) structuralDeployers.determineStructure(deployment);
+   }
+
+   protected VFSDeploymentContext determineStructure(VFSDeployment deployment) throws Exception
+   {
+      throw new UnsupportedOperationException("No use case.");
+   }
+
+   private static class CountingJARStructure extends JARStructure
+   {
+      private int count;
+
+      public boolean determineStructure(StructureContext structureContext) throws DeploymentException
+      {
+         count++;
+         return super.determineStructure(structureContext);
+      }
+   }
+
+   private static class TestStructureCache extends FileStructureCache
+   {
+      private long fingerprint;
+
+      public TestStructureCache(File directory)
+      {
+         super(directory);
+      }
+
+      protected long getFingerprint(VirtualFile file) throws Exception
+      {
+         return fingerprint;
+      }
+   }
+}
@@ -25,7 +25,9 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 import org.jboss.test.deployers.vfs.xb.test.IncludeTestCase;
+import org.jboss.test.deployers.vfs.xb.test.JBossXBDeployerHelperTestCase;
 import org.jboss.test.deployers.vfs.xb.test.SchemaResolverXBPackageTestCase;
+import org.jboss.test.deployers.vfs.xb.test.SchemaResolverXBPreloadTestCase;
 import org.jboss.test.deployers.vfs.xb.test.SchemaResolverXBTestCase;
 
 /**
@@ -46,7 +48,9 @@ public class JBossXBDeployersTestSuite extends TestSuite
 
       suite.addTest(SchemaResolverXBTestCase.suite());
       suite.addTest(SchemaResolverXBPackageTestCase.suite());
+      suite.addTest(SchemaResolverXBPreloadTestCase.suite());
       suite.addTest(IncludeTestCase.suite());
+      suite.addTest(JBossXBDeployerHelperTestCase.suite());
 
       return suite;
    }
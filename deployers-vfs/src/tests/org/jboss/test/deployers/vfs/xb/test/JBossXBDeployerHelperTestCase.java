@@ -0,0 +1,180 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.xb.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import org.jboss.deployers.vfs.spi.deployer.JBossXBDeployerHelper;
+import org.jboss.test.BaseTestCase;
+import org.jboss.test.deployers.vfs.xb.support.TestMetaData;
+import org.jboss.virtual.VFS;
+import org.jboss.virtual.VirtualFile;
+import org.jboss.xb.binding.Unmarshaller;
+import org.jboss.xb.binding.sunday.unmarshalling.DefaultSchemaResolver;
+import org.jboss.xb.binding.sunday.unmarshalling.SingletonSchemaResolverFactory;
+
+/**
+ * JBossXB deployer helper unmarshaller pool and schema binding cache.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class JBossXBDeployerHelperTestCase extends BaseTestCase
+{
+   private static final String NAMESPACE = "urn:jboss:mytest:1.0";
+
+   public JBossXBDeployerHelperTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(JBossXBDeployerHelperTestCase.class);
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      JBossXBDeployerHelper.addClassBinding(NAMESPACE, TestMetaData.class);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      JBossXBDeployerHelper.removeClassBinding(NAMESPACE);
+      super.tearDown();
+   }
+
+   public void testPooledUnmarshaller() throws Exception
+   {
+      TestHelper helper = new TestHelper();
+      assertTrue(helper.getUnmarshallerPoolSize() > 0);
+
+      VirtualFile file = getMetaData();
+      assertEquals("mymetadata", helper.parse(file).getName());
+      assertEquals("mymetadata", helper.parse(file).getName());
+      assertEquals(2, helper.unmarshallers.size());
+      assertSame(helper.unmarshallers.get(0), helper.unmarshallers.get(1));
+   }
+
+   public void testNoPool() throws Exception
+   {
+      TestHelper helper = new TestHelper();
+      helper.setUnmarshallerPoolSize(0);
+      assertEquals(0, helper.getUnmarshallerPoolSize());
+
+      VirtualFile file = getMetaData();
+      helper.parse(file);
+      helper.parse(file);
+      assertNotSame(helper.unmarshallers.get(0), helper.unmarshallers.get(1));
+   }
+
+   public void testFailedUnmarshallerNotPooled() throws Exception
+   {
+      TestHelper helper = new TestHelper();
+      File broken = File.createTempFile("broken", ".xml");
+      try
+      {
+         FileOutputStream out = new FileOutputStream(broken);
+         try
+         {
+            out.write(("<jboss-test xmlns=\"" + NAMESPACE + "\" name=\"broken\"").getBytes("UTF-8"));
+         }
+         finally
+         {
+            out.close();
+         }
+
+         try
+         {
+            helper.parse(VFS.getRoot(broken.toURI().toURL()));
+            fail("Should not be here.");
+         }
+         catch (Exception expected)
+         {
+         }
+         helper.parse(getMetaData());
+         assertNotSame(helper.unmarshallers.get(0), helper.unmarshallers.get(1));
+      }
+      finally
+      {
+         broken.delete();
+      }
+   }
+
+   public void testCachedSchemaBinding() throws Exception
+   {
+      assertNotNull(JBossXBDeployerHelper.resolveSchemaBinding(NAMESPACE));
+      assertTrue(JBossXBDeployerHelper.isSchemaBindingResolved(NAMESPACE));
+      assertSame(JBossXBDeployerHelper.resolveSchemaBinding(NAMESPACE), JBossXBDeployerHelper.resolveSchemaBinding(NAMESPACE));
+
+      // a new class binding drops the cached binding
+      JBossXBDeployerHelper.addClassBinding(NAMESPACE, TestMetaData.class);
+      assertFalse(JBossXBDeployerHelper.isSchemaBindingResolved(NAMESPACE));
+   }
+
+   public void testDirectBindingNotCached() throws Exception
+   {
+      String namespace = "urn:jboss:mytest:direct:1.0";
+      DefaultSchemaResolver resolver = (DefaultSchemaResolver) SingletonSchemaResolverFactory.getInstance().getSchemaBindingResolver();
+      resolver.addClassBinding(namespace, TestMetaData.class);
+      try
+      {
+         assertNotNull(JBossXBDeployerHelper.resolveSchemaBinding(namespace));
+         assertFalse(JBossXBDeployerHelper.isSchemaBindingResolved(namespace));
+      }
+      finally
+      {
+         resolver.removeClassBinding(namespace);
+      }
+   }
+
+   protected VirtualFile getMetaData() throws Exception
+   {
+      URL url = getClass().getResource("/org/jboss/test/deployers/vfs/xb/test/MyMetaData-foobar.xml");
+      assertNotNull(url);
+      return VFS.getRoot(url);
+   }
+
+   private static class TestHelper extends JBossXBDeployerHelper<TestMetaData>
+   {
+      private List<Unmarshaller> unmarshallers = new ArrayList<Unmarshaller>();
+
+      private TestHelper()
+      {
+         super(TestMetaData.class);
+      }
+
+      protected Unmarshaller getUnmarshaller() throws Exception
+      {
+         Unmarshaller unmarshaller = super.getUnmarshaller();
+         unmarshallers.add(unmarshaller);
+         return unmarshaller;
+      }
+   }
+}
@@ -0,0 +1,71 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2008, JBoss Inc., and individual contributors as indicated
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.test.deployers.vfs.xb.test;
+
+import junit.framework.Test;
+import org.jboss.deployers.vfs.spi.deployer.JBossXBDeployerHelper;
+import org.jboss.deployers.vfs.spi.deployer.SchemaResolverDeployer;
+import org.jboss.test.deployers.vfs.xb.support.TestMetaData;
+
+/**
+ * Schema resolver JBossXB preloaded schema binding test case.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class SchemaResolverXBPreloadTestCase extends AbstractSchemaResolverXBTest<TestMetaData>
+{
+   public SchemaResolverXBPreloadTestCase(String name)
+   {
+      super(name);
+   }
+
+   public static Test suite()
+   {
+      return suite(SchemaResolverXBPreloadTestCase.class);
+   }
+
+   protected Class<TestMetaData> getOutput()
+   {
+      return TestMetaData.class;
+   }
+
+   protected String getSuffix()
+   {
+      return "-foobar.xml";
+   }
+
+   protected String getName(TestMetaData metadata)
+   {
+      return metadata.getName();
+   }
+
+   public void testSchemaBindingPreloaded() throws Throwable
+   {
+      SchemaResolverDeployer<?> deployer = assertBean("deployer", SchemaResolverDeployer.class);
+      assertTrue(deployer.isPreloadSchemaBinding());
+
+      String namespace = deployer.getNamespace();
+      assertEquals("urn:jboss:mytest:1.0", namespace);
+      assertTrue(JBossXBDeployerHelper.isSchemaBindingResolved(namespace));
+      assertSame(JBossXBDeployerHelper.resolveSchemaBinding(namespace), JBossXBDeployerHelper.resolveSchemaBinding(namespace));
+   }
+}